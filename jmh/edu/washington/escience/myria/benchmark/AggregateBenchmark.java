@@ -0,0 +1,63 @@
+package edu.washington.escience.myria.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.operator.TupleSource;
+import edu.washington.escience.myria.operator.agg.CountAllAggregatorFactory;
+import edu.washington.escience.myria.operator.agg.MultiGroupByAggregate;
+import edu.washington.escience.myria.operator.agg.PrimitiveAggregator.AggregationOp;
+import edu.washington.escience.myria.operator.agg.SingleColumnAggregatorFactory;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * Group-by aggregation over two group-by columns.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class AggregateBenchmark {
+
+  /** The number of input tuples. */
+  private static final int NUM_TUPLES = 50 * TupleBatch.BATCH_SIZE;
+
+  /** The number of groups. */
+  @Param({ "100", "10000", "250000" })
+  private int numGroups;
+
+  /** The input. */
+  private List<TupleBatch> input;
+
+  /** Generate the input. */
+  @Setup
+  public void setup() {
+    input = BenchmarkData.randomBatches(NUM_TUPLES, numGroups, 1);
+  }
+
+  /**
+   * @return the number of groups.
+   * @throws DbException if the aggregation fails.
+   */
+  @Benchmark
+  public long multiGroupByAggregate() throws DbException {
+    return BenchmarkData.drain(new MultiGroupByAggregate(new TupleSource(input), new int[] {
+        BenchmarkData.KEY, BenchmarkData.NAME }, new CountAllAggregatorFactory(), new SingleColumnAggregatorFactory(
+        BenchmarkData.VALUE, AggregationOp.SUM, AggregationOp.AVG, AggregationOp.MAX)));
+  }
+}
@@ -0,0 +1,98 @@
+package edu.washington.escience.myria.benchmark;
+
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.parallel.QueryExecutionMode;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+/**
+ * Generates the input data of the benchmarks, and runs operators over it.
+ */
+final class BenchmarkData {
+
+  /** The schema of the generated tuples: a unique id, a key, a value and a short string. */
+  static final Schema SCHEMA = Schema.ofFields("id", Type.INT_TYPE, "key", Type.LONG_TYPE, "value", Type.DOUBLE_TYPE,
+      "name", Type.STRING_TYPE);
+  /** The id column of {@link #SCHEMA}. */
+  static final int ID = 0;
+  /** The key column of {@link #SCHEMA}. */
+  static final int KEY = 1;
+  /** The value column of {@link #SCHEMA}. */
+  static final int VALUE = 2;
+  /** The string column of {@link #SCHEMA}. */
+  static final int NAME = 3;
+  /** The execution environment of the operators, as on a worker that runs queries without blocking. */
+  private static final ImmutableMap<String, Object> EXEC_ENV_VARS = ImmutableMap.<String, Object> of(
+      MyriaConstants.EXEC_ENV_VAR_NODE_ID, -1, MyriaConstants.EXEC_ENV_VAR_EXECUTION_MODE,
+      QueryExecutionMode.NON_BLOCKING);
+
+  /** Utility classes have no constructors. */
+  private BenchmarkData() {
+  }
+
+  /**
+   * Generate random tuples, the same ones for the same arguments.
+   * 
+   * @param numTuples the number of tuples.
+   * @param numKeys the number of distinct keys, and of distinct strings.
+   * @param seed the seed of the random values.
+   * @return the tuples, in full batches except for the last one.
+   */
+  static ImmutableList<TupleBatch> randomBatches(final int numTuples, final int numKeys, final long seed) {
+    Random random = new Random(seed);
+    TupleBatchBuffer buffer = new TupleBatchBuffer(SCHEMA);
+    for (int i = 0; i < numTuples; ++i) {
+      int key = random.nextInt(numKeys);
+      buffer.putInt(ID, i);
+      buffer.putLong(KEY, key);
+      buffer.putDouble(VALUE, random.nextDouble());
+      buffer.putString(NAME, "name" + key);
+    }
+    return ImmutableList.copyOf(buffer.getAll());
+  }
+
+  /**
+   * Generate a full batch of random tuples, the same one for the same arguments.
+   * 
+   * @param numKeys the number of distinct keys, and of distinct strings.
+   * @param seed the seed of the random values.
+   * @return the batch.
+   */
+  static TupleBatch randomBatch(final int numKeys, final long seed) {
+    List<TupleBatch> batches = randomBatches(TupleBatch.BATCH_SIZE, numKeys, seed);
+    return batches.get(0);
+  }
+
+  /**
+   * Open an operator, read all its output, and close it.
+   * 
+   * @param operator the operator.
+   * @return the number of output tuples.
+   * @throws DbException if the operator fails.
+   */
+  static long drain(final Operator operator) throws DbException {
+    long numTuples = 0;
+    operator.open(EXEC_ENV_VARS);
+    try {
+      while (!operator.eos()) {
+        TupleBatch tb = operator.nextReady();
+        if (tb != null) {
+          numTuples += tb.numTuples();
+        }
+      }
+    } finally {
+      operator.close();
+    }
+    return numTuples;
+  }
+}
@@ -0,0 +1,82 @@
+package edu.washington.escience.myria.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.builder.DoubleColumnBuilder;
+import edu.washington.escience.myria.column.builder.IntColumnBuilder;
+import edu.washington.escience.myria.column.builder.LongColumnBuilder;
+import edu.washington.escience.myria.column.builder.StringColumnBuilder;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * Building a full column of each type a value at a time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class ColumnBuilderBenchmark {
+
+  /** The input batch, whose columns are rebuilt. */
+  private TupleBatch tb;
+
+  /** Generate the input. */
+  @Setup
+  public void setup() {
+    tb = BenchmarkData.randomBatch(1000, 1);
+  }
+
+  /** @return the built column. */
+  @Benchmark
+  public Column<?> appendInt() {
+    IntColumnBuilder builder = new IntColumnBuilder();
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      builder.appendInt(tb.getInt(BenchmarkData.ID, row));
+    }
+    return builder.build();
+  }
+
+  /** @return the built column. */
+  @Benchmark
+  public Column<?> appendLong() {
+    LongColumnBuilder builder = new LongColumnBuilder();
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      builder.appendLong(tb.getLong(BenchmarkData.KEY, row));
+    }
+    return builder.build();
+  }
+
+  /** @return the built column. */
+  @Benchmark
+  public Column<?> appendDouble() {
+    DoubleColumnBuilder builder = new DoubleColumnBuilder();
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      builder.appendDouble(tb.getDouble(BenchmarkData.VALUE, row));
+    }
+    return builder.build();
+  }
+
+  /** @return the built column. */
+  @Benchmark
+  public Column<?> appendString() {
+    StringColumnBuilder builder = new StringColumnBuilder();
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      builder.appendString(tb.getString(BenchmarkData.NAME, row));
+    }
+    return builder.build();
+  }
+}
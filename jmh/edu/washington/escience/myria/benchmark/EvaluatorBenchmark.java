@@ -0,0 +1,84 @@
+package edu.washington.escience.myria.benchmark;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.builder.ColumnBuilder;
+import edu.washington.escience.myria.column.builder.ColumnFactory;
+import edu.washington.escience.myria.expression.ConstantExpression;
+import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.expression.PlusExpression;
+import edu.washington.escience.myria.expression.TimesExpression;
+import edu.washington.escience.myria.expression.VariableExpression;
+import edu.washington.escience.myria.expression.evaluate.ExpressionOperatorParameter;
+import edu.washington.escience.myria.expression.evaluate.GenericEvaluator;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * Evaluating an arithmetic expression over a full batch, a row at a time and a batch at a time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class EvaluatorBenchmark {
+
+  /** The input batch. */
+  private TupleBatch tb;
+  /** Evaluates <code>value * 2.5 + key</code>. */
+  private GenericEvaluator evaluator;
+
+  /**
+   * Generate the input and compile the expression.
+   * 
+   * @throws DbException if the expression cannot be compiled.
+   */
+  @Setup
+  public void setup() throws DbException {
+    tb = BenchmarkData.randomBatch(1000, 1);
+    Expression expression =
+        new Expression("result", new PlusExpression(new TimesExpression(new VariableExpression(BenchmarkData.VALUE),
+            new ConstantExpression(2.5)), new VariableExpression(BenchmarkData.KEY)));
+    evaluator = new GenericEvaluator(expression, new ExpressionOperatorParameter(tb.getSchema()));
+    evaluator.compile();
+  }
+
+  /**
+   * @return the results.
+   * @throws InvocationTargetException if the evaluation fails.
+   * @throws DbException if the evaluation fails.
+   */
+  @Benchmark
+  public Column<?> perRow() throws InvocationTargetException, DbException {
+    ColumnBuilder<?> result = ColumnFactory.allocateColumn(evaluator.getOutputType());
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      evaluator.eval(tb, row, result, null);
+    }
+    return result.build();
+  }
+
+  /**
+   * @return the results.
+   * @throws InvocationTargetException if the evaluation fails.
+   * @throws DbException if the evaluation fails.
+   */
+  @Benchmark
+  public Column<?> perBatch() throws InvocationTargetException, DbException {
+    return evaluator.evaluateColumn(tb);
+  }
+}
@@ -0,0 +1,94 @@
+package edu.washington.escience.myria.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.operator.RightHashJoin;
+import edu.washington.escience.myria.operator.SymmetricHashJoin;
+import edu.washington.escience.myria.operator.TupleSource;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * Building and probing the hash tables of the hash joins. The right input has about one tuple per key, so that the
+ * output has about as many tuples as the left input.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class HashJoinBenchmark {
+
+  /** The number of tuples of the left input. */
+  private static final int LEFT_TUPLES = 20 * TupleBatch.BATCH_SIZE;
+  /** The names of the output columns. */
+  private static final List<String> OUTPUT_COLUMNS = ImmutableList.of("id1", "key", "value", "id2", "name");
+  /** The left columns in the output. */
+  private static final int[] LEFT_ANSWER_COLUMNS = new int[] {
+      BenchmarkData.ID, BenchmarkData.KEY, BenchmarkData.VALUE };
+  /** The right columns in the output. */
+  private static final int[] RIGHT_ANSWER_COLUMNS = new int[] { BenchmarkData.ID, BenchmarkData.NAME };
+
+  /** The number of distinct keys, and of tuples of the right input. */
+  @Param({ "1000", "100000" })
+  private int numKeys;
+
+  /** Whether to join on the LONG key, which uses the primitive hash tables, or the equivalent STRING column. */
+  @Param({ "long", "string" })
+  private String keyType;
+
+  /** The left input. */
+  private List<TupleBatch> left;
+  /** The right input. */
+  private List<TupleBatch> right;
+  /** The join columns. */
+  private int[] keyColumns;
+
+  /** Generate the input. */
+  @Setup
+  public void setup() {
+    left = BenchmarkData.randomBatches(LEFT_TUPLES, numKeys, 1);
+    right = BenchmarkData.randomBatches(numKeys, numKeys, 2);
+    if ("long".equals(keyType)) {
+      keyColumns = new int[] { BenchmarkData.KEY };
+    } else {
+      keyColumns = new int[] { BenchmarkData.NAME };
+    }
+  }
+
+  /**
+   * @return the number of output tuples.
+   * @throws DbException if the join fails.
+   */
+  @Benchmark
+  public long symmetricHashJoin() throws DbException {
+    return BenchmarkData.drain(new SymmetricHashJoin(OUTPUT_COLUMNS, new TupleSource(left), new TupleSource(right),
+        keyColumns, keyColumns, LEFT_ANSWER_COLUMNS, RIGHT_ANSWER_COLUMNS));
+  }
+
+  /**
+   * @return the number of output tuples.
+   * @throws DbException if the join fails.
+   */
+  @Benchmark
+  public long rightHashJoin() throws DbException {
+    return BenchmarkData.drain(new RightHashJoin(OUTPUT_COLUMNS, new TupleSource(left), new TupleSource(right),
+        keyColumns, keyColumns, LEFT_ANSWER_COLUMNS, RIGHT_ANSWER_COLUMNS));
+  }
+}
@@ -0,0 +1,95 @@
+package edu.washington.escience.myria.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.HashScheme;
+import edu.washington.escience.myria.util.HashUtils;
+
+/**
+ * Hashing the key columns of a full batch, a row at a time and a column at a time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class HashUtilsBenchmark {
+
+  /** The hashed columns: a LONG column. */
+  private static final int[] LONG_KEY = new int[] { BenchmarkData.KEY };
+  /** The hashed columns: a LONG and a STRING column. */
+  private static final int[] COMPOUND_KEY = new int[] { BenchmarkData.KEY, BenchmarkData.NAME };
+
+  /** The input batch. */
+  private TupleBatch tb;
+  /** The hash codes. */
+  private int[] hashes;
+
+  /** Generate the input. */
+  @Setup
+  public void setup() {
+    tb = BenchmarkData.randomBatch(1000, 1);
+    hashes = new int[tb.numTuples()];
+  }
+
+  /** @return the hash codes of the long column, computed a row at a time. */
+  @Benchmark
+  public int[] longKeyPerRow() {
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      hashes[row] = HashUtils.hashSubRow(tb, LONG_KEY, row);
+    }
+    return hashes;
+  }
+
+  /** @return the hash codes of the long column, computed a column at a time. */
+  @Benchmark
+  public int[] longKeyPerColumn() {
+    return HashUtils.hashSubRows(tb, LONG_KEY, hashes);
+  }
+
+  /** @return the hash codes of the long column, with the Guava murmur3 scheme. */
+  @Benchmark
+  public int[] longKeyLegacy() {
+    return HashUtils.hashSubRows(tb, LONG_KEY, 0, HashScheme.MURMUR3_128, hashes);
+  }
+
+  /** @return the hash codes of the compound key, computed a row at a time. */
+  @Benchmark
+  public int[] compoundKeyPerRow() {
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      hashes[row] = HashUtils.hashSubRow(tb, COMPOUND_KEY, row);
+    }
+    return hashes;
+  }
+
+  /** @return the hash codes of the compound key, computed a column at a time. */
+  @Benchmark
+  public int[] compoundKeyPerColumn() {
+    return HashUtils.hashSubRows(tb, COMPOUND_KEY, hashes);
+  }
+
+  /** @return the hash codes of the compound key, with the Guava murmur3 scheme. */
+  @Benchmark
+  public int[] compoundKeyLegacy() {
+    return HashUtils.hashSubRows(tb, COMPOUND_KEY, 0, HashScheme.MURMUR3_128, hashes);
+  }
+
+  /** @return the hash codes of whole rows, computed a column at a time. */
+  @Benchmark
+  public int[] wholeRows() {
+    return HashUtils.hashRows(tb, hashes);
+  }
+}
@@ -0,0 +1,65 @@
+package edu.washington.escience.myria.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.operator.InMemoryOrderBy;
+import edu.washington.escience.myria.operator.TupleSource;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * Sorting the whole input in memory.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class OrderByBenchmark {
+
+  /** The number of input tuples. */
+  private static final int NUM_TUPLES = 20 * TupleBatch.BATCH_SIZE;
+
+  /** Whether to sort on the LONG key and the DOUBLE value, or on the STRING column and the DOUBLE value. */
+  @Param({ "long", "string" })
+  private String keyType;
+
+  /** The input. */
+  private List<TupleBatch> input;
+  /** The sort columns. */
+  private int[] sortColumns;
+
+  /** Generate the input. */
+  @Setup
+  public void setup() {
+    input = BenchmarkData.randomBatches(NUM_TUPLES, NUM_TUPLES / 10, 1);
+    if ("long".equals(keyType)) {
+      sortColumns = new int[] { BenchmarkData.KEY, BenchmarkData.VALUE };
+    } else {
+      sortColumns = new int[] { BenchmarkData.NAME, BenchmarkData.VALUE };
+    }
+  }
+
+  /**
+   * @return the number of sorted tuples.
+   * @throws DbException if the sort fails.
+   */
+  @Benchmark
+  public long inMemoryOrderBy() throws DbException {
+    return BenchmarkData.drain(new InMemoryOrderBy(new TupleSource(input), sortColumns, new boolean[] { true, false }));
+  }
+}
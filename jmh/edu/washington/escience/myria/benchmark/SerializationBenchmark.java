@@ -0,0 +1,79 @@
+package edu.washington.escience.myria.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.washington.escience.myria.parallel.IPCCompression;
+import edu.washington.escience.myria.parallel.TransportMessageSerializer;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * Serializing a full batch for the network and deserializing it, as the IPC layer does, as a protobuf message or as a
+ * columnar frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class SerializationBenchmark {
+
+  /** Whether batches are sent as columnar frames. */
+  @Param({ "false", "true" })
+  public boolean columnar;
+  /** How much effort is spent to make columnar frames smaller. */
+  @Param({ "NONE", "LIGHTWEIGHT", "DEFLATE" })
+  public IPCCompression compression;
+  /** The serializer. */
+  private TransportMessageSerializer serializer;
+  /** The input batch. */
+  private TupleBatch tb;
+  /** The serialized input batch. */
+  private ChannelBuffer serialized;
+
+  /** Generate the input. */
+  @Setup
+  public void setup() {
+    serializer = new TransportMessageSerializer(columnar, compression);
+    tb = BenchmarkData.randomBatch(1000, 1);
+    serialized = serializer.serialize(tb);
+  }
+
+  /** @return the serialized batch. */
+  @Benchmark
+  public ChannelBuffer serialize() {
+    return serializer.serialize(tb);
+  }
+
+  /**
+   * @return the deserialized batch.
+   * @throws IOException if the batch cannot be deserialized.
+   */
+  @Benchmark
+  public Object deserialize() throws IOException {
+    return serializer.deSerialize(serialized.duplicate(), null, tb.getSchema());
+  }
+
+  /**
+   * @return the batch after a round trip.
+   * @throws IOException if the batch cannot be deserialized.
+   */
+  @Benchmark
+  public Object roundTrip() throws IOException {
+    return serializer.deSerialize(serializer.serialize(tb), null, tb.getSchema());
+  }
+}
@@ -0,0 +1,91 @@
+package edu.washington.escience.myria.benchmark;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.washington.escience.myria.operator.network.partition.MultiFieldHashPartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.SingleFieldHashPartitionFunction;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.HashScheme;
+
+/**
+ * Filtering and hash-partitioning a full batch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class TupleBatchBenchmark {
+
+  /** The number of partitions, e.g., of workers. */
+  private static final int NUM_PARTITIONS = 64;
+
+  /** The fraction of rows that pass the filter. */
+  @Param({ "0.01", "0.5", "0.99" })
+  private double selectivity;
+
+  /** The hash scheme of the partition functions. */
+  @Param({ "MURMUR3_128", "MURMUR3_32_PRIMITIVE" })
+  private HashScheme hashScheme;
+
+  /** The input batch. */
+  private TupleBatch tb;
+  /** The rows that pass the filter. */
+  private BitSet filter;
+  /** Partitions on the key column. */
+  private PartitionFunction singleField;
+  /** Partitions on the key and string columns. */
+  private PartitionFunction multiField;
+
+  /** Generate the input. */
+  @Setup
+  public void setup() {
+    tb = BenchmarkData.randomBatch(1000, 1);
+    Random random = new Random(2);
+    filter = new BitSet(tb.numTuples());
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      if (random.nextDouble() < selectivity) {
+        filter.set(row);
+      }
+    }
+    singleField = new SingleFieldHashPartitionFunction(NUM_PARTITIONS, BenchmarkData.KEY);
+    singleField.setHashScheme(hashScheme);
+    multiField =
+        new MultiFieldHashPartitionFunction(NUM_PARTITIONS, new int[] { BenchmarkData.KEY, BenchmarkData.NAME });
+    multiField.setHashScheme(hashScheme);
+  }
+
+  /** @return the filtered batch, compacted so that the copy is measured. */
+  @Benchmark
+  public TupleBatch filter() {
+    return tb.filter(filter).compact();
+  }
+
+  /** @return the batch partitioned on one column. */
+  @Benchmark
+  public TupleBatch[] partitionSingleField() {
+    return tb.partition(singleField);
+  }
+
+  /** @return the batch partitioned on two columns. */
+  @Benchmark
+  public TupleBatch[] partitionMultiField() {
+    return tb.partition(multiField);
+  }
+}
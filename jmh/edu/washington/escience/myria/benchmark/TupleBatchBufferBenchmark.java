@@ -0,0 +1,79 @@
+package edu.washington.escience.myria.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.washington.escience.myria.storage.ReadableColumn;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+/**
+ * Copying a full batch into a {@link TupleBatchBuffer} a value at a time, as the operators that build their output
+ * row by row do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class TupleBatchBufferBenchmark {
+
+  /** The input batch. */
+  private TupleBatch tb;
+
+  /** Generate the input. */
+  @Setup
+  public void setup() {
+    tb = BenchmarkData.randomBatch(1000, 1);
+  }
+
+  /** @return the copied batch, copied from the input columns. */
+  @Benchmark
+  public TupleBatch putFromColumns() {
+    TupleBatchBuffer buffer = new TupleBatchBuffer(tb.getSchema());
+    ReadableColumn[] columns = new ReadableColumn[tb.numColumns()];
+    for (int column = 0; column < columns.length; ++column) {
+      columns[column] = tb.asColumn(column);
+    }
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      for (int column = 0; column < columns.length; ++column) {
+        buffer.put(column, columns[column], row);
+      }
+    }
+    return buffer.popAny();
+  }
+
+  /** @return the copied batch, copied a row at a time. */
+  @Benchmark
+  public TupleBatch putRows() {
+    TupleBatchBuffer buffer = new TupleBatchBuffer(tb.getSchema());
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      buffer.put(tb, row);
+    }
+    return buffer.popAny();
+  }
+
+  /** @return the copied batch, copied with the typed put methods. */
+  @Benchmark
+  public TupleBatch putTyped() {
+    TupleBatchBuffer buffer = new TupleBatchBuffer(tb.getSchema());
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      buffer.putInt(BenchmarkData.ID, tb.getInt(BenchmarkData.ID, row));
+      buffer.putLong(BenchmarkData.KEY, tb.getLong(BenchmarkData.KEY, row));
+      buffer.putDouble(BenchmarkData.VALUE, tb.getDouble(BenchmarkData.VALUE, row));
+      buffer.putString(BenchmarkData.NAME, tb.getString(BenchmarkData.NAME, row));
+    }
+    return buffer.popAny();
+  }
+}
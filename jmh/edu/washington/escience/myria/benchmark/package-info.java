@@ -0,0 +1,5 @@
+/**
+ * JMH microbenchmarks of the hot paths of query execution. Run them with <code>./gradlew jmh</code>, which writes the
+ * results to <code>build/reports/jmh/results.json</code>.
+ */
+package edu.washington.escience.myria.benchmark;
@@ -87,6 +87,57 @@ public final class MyriaConstants {
    */
   public static final int FLOW_CONTROL_WRITE_BUFFER_LOW_MARK_BYTES_DEFAULT_VALUE = 512 * KB;
 
+  /**
+   * Default value for {@link MyriaSystemConfigKeys#HASH_SCHEME_VERSION}, for new deployments. Deployments whose
+   * catalogs predate the key use {@link edu.washington.escience.myria.util.HashScheme#LEGACY}.
+   */
+  public static final int HASH_SCHEME_VERSION_DEFAULT_VALUE = 2;
+
+  /**
+   * Default value for {@link MyriaSystemConfigKeys#IPC_COLUMNAR_TUPLE_BATCHES}. Receivers accept both formats, so the
+   * value only needs to agree with what the receivers understand.
+   */
+  public static final boolean IPC_COLUMNAR_TUPLE_BATCHES_DEFAULT_VALUE = true;
+
+  /**
+   * Default value for {@link MyriaSystemConfigKeys#IPC_COMPRESSION}. Compression costs CPU and a copy on the receiver,
+   * which only pays off when the network is slow, e.g., across racks.
+   */
+  public static final String IPC_COMPRESSION_DEFAULT_VALUE = "none";
+
+  /**
+   * Default value for {@link MyriaSystemConfigKeys#BATCH_SIZE_BYTES}. A batch of narrow tuples still has at most
+   * {@link edu.washington.escience.myria.storage.TupleBatch#BATCH_SIZE} tuples.
+   */
+  public static final long BATCH_SIZE_BYTES_DEFAULT_VALUE = 4L * 1024 * 1024;
+
+  /** Default value for {@link MyriaSystemConfigKeys#IPC_MULTIPLEXED_CONNECTIONS_PER_REMOTE}. */
+  public static final int IPC_MULTIPLEXED_CONNECTIONS_PER_REMOTE_DEFAULT_VALUE = 2;
+
+  /** Default value for {@link MyriaSystemConfigKeys#IPC_STREAM_CREDIT_BYTES}. */
+  public static final long IPC_STREAM_CREDIT_BYTES_DEFAULT_VALUE = 8L * 1024 * 1024;
+
+  /** Default value for {@link MyriaSystemConfigKeys#IPC_SHARED_MEMORY_RING_BYTES}. */
+  public static final int IPC_SHARED_MEMORY_RING_BYTES_DEFAULT_VALUE = 8 * 1024 * 1024;
+
+  /** Default value for {@link MyriaSystemConfigKeys#IPC_SHARED_MEMORY_DIRECTORY}. */
+  public static final String IPC_SHARED_MEMORY_DIRECTORY_DEFAULT_VALUE = "/dev/shm";
+
+  /** Default value for {@link MyriaSystemConfigKeys#PRODUCER_COALESCE_LINGER_MILLIS}. */
+  public static final long PRODUCER_COALESCE_LINGER_MILLIS_DEFAULT_VALUE = 100;
+
+  /** Default value for {@link MyriaSystemConfigKeys#FRAGMENT_QUANTUM_NANOS}: 50 milliseconds. */
+  public static final long FRAGMENT_QUANTUM_NANOS_DEFAULT_VALUE = 50L * 1000 * 1000;
+
+  /** Default value for {@link MyriaSystemConfigKeys#FRAGMENT_QUANTUM_TUPLES}: no limit, the time quantum applies. */
+  public static final long FRAGMENT_QUANTUM_TUPLES_DEFAULT_VALUE = 0;
+
+  /**
+   * Default value for {@link MyriaSystemConfigKeys#OPERATOR_FUSION}: off, since the profiling events and the statistics
+   * of the fused operators are reported under the id of the top of each chain only.
+   */
+  public static final boolean OPERATOR_FUSION_DEFAULT_VALUE = false;
+
   /** Time interval between two heartbeats. */
   public static final int HEARTBEAT_INTERVAL = 1000;
 
@@ -111,6 +162,21 @@ public final class MyriaConstants {
    */
   public static final int OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER_DEFAULT_VALUE = 80;
 
+  /**
+   * Default value for {@link MyriaSystemConfigKeys#OPERATOR_INPUT_BUFFER_CAPACITY_BYTES}.
+   */
+  public static final long OPERATOR_INPUT_BUFFER_CAPACITY_BYTES_DEFAULT_VALUE = 64L * 1024 * 1024;
+
+  /**
+   * Default value for {@link MyriaSystemConfigKeys#OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER_BYTES}.
+   */
+  public static final long OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER_BYTES_DEFAULT_VALUE = 48L * 1024 * 1024;
+
+  /**
+   * Default value for {@link MyriaSystemConfigKeys#OPERATOR_INPUT_BUFFER_MEMORY_POOL_BYTES}.
+   */
+  public static final long OPERATOR_INPUT_BUFFER_MEMORY_POOL_BYTES_DEFAULT_VALUE = 512L * 1024 * 1024;
+
   /** timeout of returning a tuple batch even not filled. */
   public static final long PUSHING_TB_TIMEOUT = 1000000000;
 
@@ -32,6 +32,26 @@ public final class MyriaSystemConfigKeys {
    * */
   public static final String OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER = "operator.consumer.inputbuffer.recover.trigger";
 
+  /**
+   * The max number of estimated bytes of the tuple batches that the input buffer of each {@link Consumer} operator
+   * should hold. Like {@link #OPERATOR_INPUT_BUFFER_CAPACITY}, it's a soft restriction.
+   * */
+  public static final String OPERATOR_INPUT_BUFFER_CAPACITY_BYTES = "operator.consumer.inputbuffer.capacity.bytes";
+
+  /**
+   * After an input buffer full event, the input buffer recover event is issued only once the estimated bytes of the
+   * input buffer reduced to the recover trigger.
+   * */
+  public static final String OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER_BYTES =
+      "operator.consumer.inputbuffer.recover.trigger.bytes";
+
+  /**
+   * The max number of estimated bytes of the tuple batches that all the input buffers of a worker should hold together.
+   * Once they hold more, the input buffers that are not starved pause their input channels.
+   * */
+  public static final String OPERATOR_INPUT_BUFFER_MEMORY_POOL_BYTES =
+      "operator.consumer.inputbuffer.memory.pool.bytes";
+
   /**
    * .
    * */
@@ -52,6 +72,28 @@ public final class MyriaSystemConfigKeys {
    * */
   public static final String FLOW_CONTROL_WRITE_BUFFER_HIGH_MARK_BYTES = "flowcontrol.writebuffer.watermark.high";
 
+  /**
+   * The number of connections to each other worker over which all the streams to it are multiplexed, or 0 to give each
+   * stream a connection of its own. See {@link edu.washington.escience.myria.parallel.ipc.StreamMultiplexing}.
+   * */
+  public static final String IPC_MULTIPLEXED_CONNECTIONS_PER_REMOTE = "ipc.multiplexed.connections.per.remote";
+
+  /**
+   * The number of bytes that a multiplexed stream may send before its receiver credits it with more.
+   * */
+  public static final String IPC_STREAM_CREDIT_BYTES = "ipc.stream.credit.bytes";
+
+  /**
+   * The capacity of the shared memory ring through which each multiplexed connection to a worker on the same host
+   * passes its payloads, or 0 to send them through the connection.
+   * */
+  public static final String IPC_SHARED_MEMORY_RING_BYTES = "ipc.shared.memory.ring.bytes";
+
+  /**
+   * The directory of the files that back the shared memory rings, preferably on a memory file system.
+   * */
+  public static final String IPC_SHARED_MEMORY_DIRECTORY = "ipc.shared.memory.directory";
+
   /**
    * TCP timeout.
    * */
@@ -72,6 +114,52 @@ public final class MyriaSystemConfigKeys {
    * */
   public static final String WORKER_IDENTIFIER = "worker.identifier";
 
+  /**
+   * The version of the {@link edu.washington.escience.myria.util.HashScheme} used to hash-partition tuples.
+   * */
+  public static final String HASH_SCHEME_VERSION = "hash.scheme.version";
+
+  /**
+   * Whether tuple batches are sent between workers in the columnar format of
+   * {@link edu.washington.escience.myria.parallel.ColumnarFrame} instead of as protobuf messages.
+   * */
+  public static final String IPC_COLUMNAR_TUPLE_BATCHES = "ipc.columnar.tuple.batches";
+
+  /**
+   * How much effort is spent to compress tuple batches sent in the columnar format, one of the
+   * {@link edu.washington.escience.myria.parallel.IPCCompression} levels, e.g., <code>lightweight</code>.
+   * */
+  public static final String IPC_COMPRESSION = "ipc.compression";
+
+  /**
+   * The estimated number of bytes at which a tuple batch is finished even if it has fewer than
+   * {@link edu.washington.escience.myria.storage.TupleBatch#BATCH_SIZE} tuples. Queries and operators may override it.
+   * */
+  public static final String BATCH_SIZE_BYTES = "batch.size.bytes";
+
+  /**
+   * How long, in milliseconds, a producer may hold small tuple batches bound to a channel while it waits for more
+   * tuples to merge them with before it writes them.
+   * */
+  public static final String PRODUCER_COALESCE_LINGER_MILLIS = "producer.coalesce.linger.millis";
+
+  /**
+   * How long, in nanoseconds, a fragment may run before it yields its executor thread and is queued again, or 0 for no
+   * limit.
+   * */
+  public static final String FRAGMENT_QUANTUM_NANOS = "fragment.quantum.nanos";
+
+  /**
+   * How many tuples a fragment may output before it yields its executor thread and is queued again, or 0 for no limit.
+   * */
+  public static final String FRAGMENT_QUANTUM_TUPLES = "fragment.quantum.tuples";
+
+  /**
+   * Whether chains of filter and apply operators are fused into one operator that makes a single pass over each tuple
+   * batch, see {@link edu.washington.escience.myria.operator.FusedFilterApply}.
+   * */
+  public static final String OPERATOR_FUSION = "operator.fusion";
+
   /** */
   public static final String WORKING_DIRECTORY = "working.directory";
   /** */
@@ -109,6 +197,21 @@ public final class MyriaSystemConfigKeys {
       config.put(OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER,
           MyriaConstants.OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER_DEFAULT_VALUE + "");
     }
+    if (!config.containsKey(OPERATOR_INPUT_BUFFER_CAPACITY_BYTES)
+        || config.get(OPERATOR_INPUT_BUFFER_CAPACITY_BYTES) == null) {
+      config.put(OPERATOR_INPUT_BUFFER_CAPACITY_BYTES,
+          MyriaConstants.OPERATOR_INPUT_BUFFER_CAPACITY_BYTES_DEFAULT_VALUE + "");
+    }
+    if (!config.containsKey(OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER_BYTES)
+        || config.get(OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER_BYTES) == null) {
+      config.put(OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER_BYTES,
+          MyriaConstants.OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER_BYTES_DEFAULT_VALUE + "");
+    }
+    if (!config.containsKey(OPERATOR_INPUT_BUFFER_MEMORY_POOL_BYTES)
+        || config.get(OPERATOR_INPUT_BUFFER_MEMORY_POOL_BYTES) == null) {
+      config.put(OPERATOR_INPUT_BUFFER_MEMORY_POOL_BYTES,
+          MyriaConstants.OPERATOR_INPUT_BUFFER_MEMORY_POOL_BYTES_DEFAULT_VALUE + "");
+    }
     if (!config.containsKey(TCP_CONNECTION_TIMEOUT_MILLIS) || config.get(TCP_CONNECTION_TIMEOUT_MILLIS) == null) {
       config.put(TCP_CONNECTION_TIMEOUT_MILLIS, MyriaConstants.TCP_CONNECTION_TIMEOUT_MILLIS_DEFAULT_VALUE + "");
     }
@@ -121,6 +224,44 @@ public final class MyriaSystemConfigKeys {
     if (!config.containsKey(WORKER_STORAGE_DATABASE_SYSTEM) || config.get(WORKER_STORAGE_DATABASE_SYSTEM) == null) {
       config.put(WORKER_STORAGE_DATABASE_SYSTEM, MyriaConstants.WORKER_STORAGE_DATABASE_SYSTEM_DEFAULT_VALUE + "");
     }
+    if (!config.containsKey(HASH_SCHEME_VERSION) || config.get(HASH_SCHEME_VERSION) == null) {
+      config.put(HASH_SCHEME_VERSION, MyriaConstants.HASH_SCHEME_VERSION_DEFAULT_VALUE + "");
+    }
+    if (!config.containsKey(IPC_COLUMNAR_TUPLE_BATCHES) || config.get(IPC_COLUMNAR_TUPLE_BATCHES) == null) {
+      config.put(IPC_COLUMNAR_TUPLE_BATCHES, MyriaConstants.IPC_COLUMNAR_TUPLE_BATCHES_DEFAULT_VALUE + "");
+    }
+    if (!config.containsKey(IPC_COMPRESSION) || config.get(IPC_COMPRESSION) == null) {
+      config.put(IPC_COMPRESSION, MyriaConstants.IPC_COMPRESSION_DEFAULT_VALUE);
+    }
+    if (!config.containsKey(IPC_MULTIPLEXED_CONNECTIONS_PER_REMOTE)
+        || config.get(IPC_MULTIPLEXED_CONNECTIONS_PER_REMOTE) == null) {
+      config.put(IPC_MULTIPLEXED_CONNECTIONS_PER_REMOTE,
+          MyriaConstants.IPC_MULTIPLEXED_CONNECTIONS_PER_REMOTE_DEFAULT_VALUE + "");
+    }
+    if (!config.containsKey(IPC_STREAM_CREDIT_BYTES) || config.get(IPC_STREAM_CREDIT_BYTES) == null) {
+      config.put(IPC_STREAM_CREDIT_BYTES, MyriaConstants.IPC_STREAM_CREDIT_BYTES_DEFAULT_VALUE + "");
+    }
+    if (!config.containsKey(IPC_SHARED_MEMORY_RING_BYTES) || config.get(IPC_SHARED_MEMORY_RING_BYTES) == null) {
+      config.put(IPC_SHARED_MEMORY_RING_BYTES, MyriaConstants.IPC_SHARED_MEMORY_RING_BYTES_DEFAULT_VALUE + "");
+    }
+    if (!config.containsKey(IPC_SHARED_MEMORY_DIRECTORY) || config.get(IPC_SHARED_MEMORY_DIRECTORY) == null) {
+      config.put(IPC_SHARED_MEMORY_DIRECTORY, MyriaConstants.IPC_SHARED_MEMORY_DIRECTORY_DEFAULT_VALUE);
+    }
+    if (!config.containsKey(BATCH_SIZE_BYTES) || config.get(BATCH_SIZE_BYTES) == null) {
+      config.put(BATCH_SIZE_BYTES, MyriaConstants.BATCH_SIZE_BYTES_DEFAULT_VALUE + "");
+    }
+    if (!config.containsKey(PRODUCER_COALESCE_LINGER_MILLIS) || config.get(PRODUCER_COALESCE_LINGER_MILLIS) == null) {
+      config.put(PRODUCER_COALESCE_LINGER_MILLIS, MyriaConstants.PRODUCER_COALESCE_LINGER_MILLIS_DEFAULT_VALUE + "");
+    }
+    if (!config.containsKey(FRAGMENT_QUANTUM_NANOS) || config.get(FRAGMENT_QUANTUM_NANOS) == null) {
+      config.put(FRAGMENT_QUANTUM_NANOS, MyriaConstants.FRAGMENT_QUANTUM_NANOS_DEFAULT_VALUE + "");
+    }
+    if (!config.containsKey(FRAGMENT_QUANTUM_TUPLES) || config.get(FRAGMENT_QUANTUM_TUPLES) == null) {
+      config.put(FRAGMENT_QUANTUM_TUPLES, MyriaConstants.FRAGMENT_QUANTUM_TUPLES_DEFAULT_VALUE + "");
+    }
+    if (!config.containsKey(OPERATOR_FUSION) || config.get(OPERATOR_FUSION) == null) {
+      config.put(OPERATOR_FUSION, MyriaConstants.OPERATOR_FUSION_DEFAULT_VALUE + "");
+    }
   }
 
   /**
@@ -33,8 +33,10 @@ import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.TupleWriter;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.StringDictionary;
 import edu.washington.escience.myria.column.builder.ColumnBuilder;
 import edu.washington.escience.myria.column.builder.ColumnFactory;
+import edu.washington.escience.myria.storage.BatchByteBudget;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.util.ErrorUtils;
 
@@ -205,8 +207,8 @@ public final class JdbcAccessMethod extends AccessMethod {
   }
 
   @Override
-  public Iterator<TupleBatch> tupleBatchIteratorFromQuery(final String queryString, final Schema schema)
-      throws DbException {
+  public Iterator<TupleBatch> tupleBatchIteratorFromQuery(final String queryString, final Schema schema,
+      final long batchSizeBytes) throws DbException {
     Objects.requireNonNull(jdbcConnection, "jdbcConnection");
     try {
       Statement statement;
@@ -232,7 +234,7 @@ public final class JdbcAccessMethod extends AccessMethod {
         statement.setFetchSize(TupleBatch.BATCH_SIZE);
       }
       final ResultSet resultSet = statement.executeQuery(queryString);
-      return new JdbcTupleBatchIterator(resultSet, schema);
+      return new JdbcTupleBatchIterator(resultSet, schema, batchSizeBytes);
     } catch (final SQLException e) {
       throw ErrorUtils.mergeSQLException(e);
     }
@@ -600,16 +602,23 @@ class JdbcTupleBatchIterator implements Iterator<TupleBatch> {
   private TupleBatch nextTB = null;
   /** statement is closed or not. */
   private boolean statementClosed = false;
+  /** The dictionaries shared by the string columns of the TupleBatches returned by this Iterator. */
+  private final StringDictionary[] dictionaries;
+  /** The estimated number of bytes of the TupleBatch that is being built. */
+  private final BatchByteBudget budget;
 
   /**
    * Constructs a JdbcTupleBatchIterator from the given ResultSet and Schema objects.
    * 
    * @param resultSet the JDBC ResultSet containing the results.
    * @param schema the Schema of the generated TupleBatch objects.
+   * @param batchSizeBytes the estimated number of bytes at which a TupleBatch is finished.
    */
-  JdbcTupleBatchIterator(final ResultSet resultSet, final Schema schema) {
+  JdbcTupleBatchIterator(final ResultSet resultSet, final Schema schema, final long batchSizeBytes) {
     this.resultSet = resultSet;
     this.schema = schema;
+    dictionaries = ColumnFactory.allocateDictionaries(schema);
+    budget = new BatchByteBudget(schema, batchSizeBytes);
   }
 
   @Override
@@ -635,9 +644,10 @@ class JdbcTupleBatchIterator implements Iterator<TupleBatch> {
       return null;
     }
     final int numFields = schema.numColumns();
-    final List<ColumnBuilder<?>> columnBuilders = ColumnFactory.allocateColumns(schema);
+    final List<ColumnBuilder<?>> columnBuilders = ColumnFactory.allocateColumns(schema, dictionaries);
     int numTuples = 0;
-    for (numTuples = 0; numTuples < TupleBatch.BATCH_SIZE; ++numTuples) {
+    budget.reset();
+    for (numTuples = 0; numTuples < TupleBatch.BATCH_SIZE && !budget.isFull(); ++numTuples) {
       if (!resultSet.next()) {
         final Connection connection = resultSet.getStatement().getConnection();
         resultSet.getStatement().close();
@@ -649,6 +659,7 @@ class JdbcTupleBatchIterator implements Iterator<TupleBatch> {
         /* Warning: JDBC is 1-indexed */
         columnBuilders.get(colIdx).appendFromJdbc(resultSet, colIdx + 1);
       }
+      budget.addTuple(columnBuilders, numTuples);
     }
     if (numTuples > 0) {
       List<Column<?>> columns = new ArrayList<Column<?>>(columnBuilders.size());
@@ -26,8 +26,10 @@ import edu.washington.escience.myria.RelationKey;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.StringDictionary;
 import edu.washington.escience.myria.column.builder.ColumnBuilder;
 import edu.washington.escience.myria.column.builder.ColumnFactory;
+import edu.washington.escience.myria.storage.BatchByteBudget;
 import edu.washington.escience.myria.storage.TupleBatch;
 
 /**
@@ -189,8 +191,8 @@ public final class SQLiteAccessMethod extends AccessMethod {
   private static final int MAX_RETRY_ATTEMPTS = 1000;
 
   @Override
-  public Iterator<TupleBatch> tupleBatchIteratorFromQuery(final String queryString, final Schema schema)
-      throws DbException {
+  public Iterator<TupleBatch> tupleBatchIteratorFromQuery(final String queryString, final Schema schema,
+      final long batchSizeBytes) throws DbException {
     Objects.requireNonNull(sqliteConnection);
     Objects.requireNonNull(schema);
 
@@ -232,7 +234,7 @@ public final class SQLiteAccessMethod extends AccessMethod {
       throw new DbException(e);
     }
 
-    return new SQLiteTupleBatchIterator(statement, schema, sqliteConnection);
+    return new SQLiteTupleBatchIterator(statement, schema, sqliteConnection, batchSizeBytes);
   }
 
   @Override
@@ -308,11 +310,26 @@ public final class SQLiteAccessMethod extends AccessMethod {
    */
   public static Iterator<TupleBatch> tupleBatchIteratorFromQuery(final SQLiteInfo sqliteInfo, final String queryString,
       final Schema schema) throws DbException {
+    return tupleBatchIteratorFromQuery(sqliteInfo, queryString, schema, MyriaConstants.BATCH_SIZE_BYTES_DEFAULT_VALUE);
+  }
+
+  /**
+   * Create a SQLite Connection and then expose the results as an Iterator<TupleBatch>.
+   * 
+   * @param sqliteInfo the SQLite database connection information
+   * @param queryString string containing the SQLite query to be executed
+   * @param schema the Schema describing the format of the TupleBatch containing these results.
+   * @param batchSizeBytes the estimated number of bytes at which a TupleBatch is finished.
+   * @return an Iterator<TupleBatch> containing the results of the query
+   * @throws DbException if there is an error in the database.
+   */
+  public static Iterator<TupleBatch> tupleBatchIteratorFromQuery(final SQLiteInfo sqliteInfo, final String queryString,
+      final Schema schema, final long batchSizeBytes) throws DbException {
 
     SQLiteAccessMethod sqliteAccessMethod = null;
     try {
       sqliteAccessMethod = new SQLiteAccessMethod(sqliteInfo, true);
-      return sqliteAccessMethod.tupleBatchIteratorFromQuery(queryString, schema);
+      return sqliteAccessMethod.tupleBatchIteratorFromQuery(queryString, schema, batchSizeBytes);
     } catch (DbException e) {
       if (sqliteAccessMethod != null) {
         sqliteAccessMethod.close();
@@ -471,6 +488,10 @@ class SQLiteTupleBatchIterator implements Iterator<TupleBatch> {
   private final SQLiteConnection connection;
   /** The Schema of the TupleBatches returned by this Iterator. */
   private final Schema schema;
+  /** The dictionaries shared by the string columns of the TupleBatches returned by this Iterator. */
+  private final StringDictionary[] dictionaries;
+  /** The estimated number of bytes of the TupleBatch that is being built. */
+  private final BatchByteBudget budget;
 
   /**
    * Wraps a SQLiteStatement result set in an Iterator<TupleBatch>.
@@ -478,11 +499,15 @@ class SQLiteTupleBatchIterator implements Iterator<TupleBatch> {
    * @param statement the SQLiteStatement containing the results.
    * @param schema the Schema describing the format of the TupleBatch containing these results.
    * @param connection the connection to the SQLite database.
+   * @param batchSizeBytes the estimated number of bytes at which a TupleBatch is finished.
    */
-  SQLiteTupleBatchIterator(final SQLiteStatement statement, final Schema schema, final SQLiteConnection connection) {
+  SQLiteTupleBatchIterator(final SQLiteStatement statement, final Schema schema, final SQLiteConnection connection,
+      final long batchSizeBytes) {
     this.statement = statement;
     this.connection = connection;
     this.schema = schema;
+    dictionaries = ColumnFactory.allocateDictionaries(schema);
+    budget = new BatchByteBudget(schema, batchSizeBytes);
   }
 
   /**
@@ -492,8 +517,10 @@ class SQLiteTupleBatchIterator implements Iterator<TupleBatch> {
    *          it. Then the Schema of the generated TupleBatchs will be extracted from the statement.
    * @param connection the connection to the SQLite database.
    * @param schema the Schema describing the format of the TupleBatch containing these results.
+   * @param batchSizeBytes the estimated number of bytes at which a TupleBatch is finished.
    */
-  SQLiteTupleBatchIterator(final SQLiteStatement statement, final SQLiteConnection connection, final Schema schema) {
+  SQLiteTupleBatchIterator(final SQLiteStatement statement, final SQLiteConnection connection, final Schema schema,
+      final long batchSizeBytes) {
     this.connection = connection;
     this.statement = statement;
     try {
@@ -504,6 +531,8 @@ class SQLiteTupleBatchIterator implements Iterator<TupleBatch> {
     } catch (final SQLiteException e) {
       throw new RuntimeException(e);
     }
+    dictionaries = ColumnFactory.allocateDictionaries(schema);
+    budget = new BatchByteBudget(schema, batchSizeBytes);
   }
 
   @Override
@@ -520,18 +549,20 @@ class SQLiteTupleBatchIterator implements Iterator<TupleBatch> {
   public TupleBatch next() {
     /* Allocate TupleBatch parameters */
     final int numFields = schema.numColumns();
-    final List<ColumnBuilder<?>> columnBuilders = ColumnFactory.allocateColumns(schema);
+    final List<ColumnBuilder<?>> columnBuilders = ColumnFactory.allocateColumns(schema, dictionaries);
 
     /**
-     * Loop through resultSet, adding one row at a time. Stop when numTuples hits BATCH_SIZE or there are no more
-     * results.
+     * Loop through resultSet, adding one row at a time. Stop when numTuples hits BATCH_SIZE, the batch reaches its byte
+     * budget, or there are no more results.
      */
     int numTuples;
+    budget.reset();
     try {
-      for (numTuples = 0; numTuples < TupleBatch.BATCH_SIZE && statement.hasRow(); ++numTuples) {
+      for (numTuples = 0; numTuples < TupleBatch.BATCH_SIZE && !budget.isFull() && statement.hasRow(); ++numTuples) {
         for (int column = 0; column < numFields; ++column) {
           columnBuilders.get(column).appendFromSQLite(statement, column);
         }
+        budget.addTuple(columnBuilders, numTuples);
         statement.step();
       }
     } catch (final SQLiteException e) {
@@ -0,0 +1,25 @@
+package edu.washington.escience.myria.api.encoding;
+
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.BloomFilter;
+import edu.washington.escience.myria.operator.BloomFilterBuilder;
+
+/**
+ * Encoding for {@link BloomFilterBuilder}.
+ */
+public class BloomFilterBuilderEncoding extends UnaryOperatorEncoding<BloomFilterBuilder> {
+  @Required
+  public int[] argKeyColumns;
+  @Required
+  public Long argNumBits;
+  public Integer argNumHashes;
+
+  @Override
+  public BloomFilterBuilder construct(final ConstructArgs args) {
+    int numHashes = BloomFilter.DEFAULT_NUM_HASHES;
+    if (argNumHashes != null) {
+      numHashes = argNumHashes;
+    }
+    return new BloomFilterBuilder(null, argKeyColumns, argNumBits, numHashes);
+  }
+}
@@ -0,0 +1,25 @@
+package edu.washington.escience.myria.api.encoding;
+
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.BloomFilter;
+import edu.washington.escience.myria.operator.BloomFilterSemiJoin;
+
+/**
+ * Encoding for {@link BloomFilterSemiJoin}. The first child gives the filter words, the second the probe tuples.
+ */
+public class BloomFilterSemiJoinEncoding extends BinaryOperatorEncoding<BloomFilterSemiJoin> {
+  @Required
+  public int[] argProbeColumns;
+  @Required
+  public Long argNumBits;
+  public Integer argNumHashes;
+
+  @Override
+  public BloomFilterSemiJoin construct(final ConstructArgs args) {
+    int numHashes = BloomFilter.DEFAULT_NUM_HASHES;
+    if (argNumHashes != null) {
+      numHashes = argNumHashes;
+    }
+    return new BloomFilterSemiJoin(null, null, argProbeColumns, argNumBits, numHashes);
+  }
+}
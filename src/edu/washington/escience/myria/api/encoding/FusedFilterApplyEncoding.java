@@ -0,0 +1,21 @@
+package edu.washington.escience.myria.api.encoding;
+
+import java.util.List;
+
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.expression.evaluate.FusedEvaluator;
+import edu.washington.escience.myria.operator.FusedFilterApply;
+
+/**
+ * A chain of filters and applies that {@link QueryConstruct} fuses into one operator. It is not part of the JSON API.
+ */
+final class FusedFilterApplyEncoding extends UnaryOperatorEncoding<FusedFilterApply> {
+
+  /** The fused filters and applies, from the child to the output. */
+  public List<FusedEvaluator.Stage> stages;
+
+  @Override
+  public FusedFilterApply construct(final ConstructArgs args) {
+    return new FusedFilterApply(null, stages);
+  }
+}
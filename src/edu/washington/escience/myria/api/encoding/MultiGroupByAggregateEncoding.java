@@ -1,5 +1,8 @@
 package edu.washington.escience.myria.api.encoding;
 
+import javax.ws.rs.core.Response.Status;
+
+import edu.washington.escience.myria.api.MyriaApiException;
 import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
 import edu.washington.escience.myria.operator.agg.AggregatorFactory;
 import edu.washington.escience.myria.operator.agg.MultiGroupByAggregate;
@@ -10,9 +13,22 @@ public class MultiGroupByAggregateEncoding extends UnaryOperatorEncoding<MultiGr
   public int[] argGroupFields;
   @Required
   public AggregatorFactory[] aggregators;
+  public Long argMaxGroupsInMemory;
+  public boolean argMergePartials;
 
   @Override
   public MultiGroupByAggregate construct(ConstructArgs args) {
-    return new MultiGroupByAggregate(null, argGroupFields, aggregators);
+    MultiGroupByAggregate agg = new MultiGroupByAggregate(null, argGroupFields, argMergePartials, aggregators);
+    if (argMaxGroupsInMemory != null) {
+      agg.setMaxGroupsInMemory(argMaxGroupsInMemory);
+    }
+    return agg;
+  }
+
+  @Override
+  protected void validateExtra() {
+    if (argMaxGroupsInMemory != null && argMaxGroupsInMemory <= 0) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "max groups in memory should be positive!");
+    }
   }
 }
@@ -23,6 +23,8 @@ import edu.washington.escience.myria.operator.Operator;
 @JsonSubTypes({
     @Type(name = "Aggregate", value = AggregateEncoding.class), @Type(name = "Apply", value = ApplyEncoding.class),
     @Type(name = "BinaryFileScan", value = BinaryFileScanEncoding.class),
+    @Type(name = "BloomFilterBuilder", value = BloomFilterBuilderEncoding.class),
+    @Type(name = "BloomFilterSemiJoin", value = BloomFilterSemiJoinEncoding.class),
     @Type(name = "BroadcastConsumer", value = BroadcastConsumerEncoding.class),
     @Type(name = "BroadcastProducer", value = BroadcastProducerEncoding.class),
     @Type(name = "CollectConsumer", value = CollectConsumerEncoding.class),
@@ -45,6 +47,8 @@ import edu.washington.escience.myria.operator.Operator;
     @Type(name = "Merge", value = MergeEncoding.class), @Type(name = "MergeJoin", value = MergeJoinEncoding.class),
     @Type(name = "MultiGroupByAggregate", value = MultiGroupByAggregateEncoding.class),
     @Type(name = "NChiladaFileScan", value = NChiladaFileScanEncoding.class),
+    @Type(name = "OrderBy", value = OrderByEncoding.class),
+    @Type(name = "PartialAggregate", value = PartialAggregateEncoding.class),
     @Type(name = "RightHashCountingJoin", value = RightHashCountingJoinEncoding.class),
     @Type(name = "RightHashJoin", value = RightHashJoinEncoding.class),
     @Type(name = "SeaFlowScan", value = SeaFlowFileScanEncoding.class),
@@ -53,6 +57,7 @@ import edu.washington.escience.myria.operator.Operator;
     @Type(name = "ShuffleProducer", value = ShuffleProducerEncoding.class),
     @Type(name = "SingleGroupByAggregate", value = SingleGroupByAggregateEncoding.class),
     @Type(name = "Singleton", value = SingletonEncoding.class),
+    @Type(name = "SkewAwareShuffleProducer", value = SkewAwareShuffleProducerEncoding.class),
     @Type(name = "CrossWithSingleton", value = CrossWithSingletonEncoding.class),
     @Type(name = "SinkRoot", value = SinkRootEncoding.class),
     @Type(name = "StatefulApply", value = StatefulApplyEncoding.class),
@@ -70,6 +75,9 @@ public abstract class OperatorEncoding<T extends Operator> extends MyriaApiEncod
 
   public String opName;
 
+  /** The estimated number of bytes at which the batches built by this operator are finished. optional. */
+  public Long batchSizeBytes;
+
   /**
    * Connect any operators to this one.
    */
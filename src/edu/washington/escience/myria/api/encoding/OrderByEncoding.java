@@ -0,0 +1,40 @@
+package edu.washington.escience.myria.api.encoding;
+
+import javax.ws.rs.core.Response.Status;
+
+import edu.washington.escience.myria.api.MyriaApiException;
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.OrderBy;
+
+public class OrderByEncoding extends UnaryOperatorEncoding<OrderBy> {
+
+  @Required
+  public int[] argSortColumns;
+  @Required
+  public boolean[] argAscending;
+  public Long argLimit;
+  public Long argMaxTuplesInMemory;
+
+  @Override
+  public OrderBy construct(final ConstructArgs args) throws MyriaApiException {
+    OrderBy order = new OrderBy(null, argSortColumns, argAscending, argLimit);
+    if (argMaxTuplesInMemory != null) {
+      order.setMaxTuplesInMemory(argMaxTuplesInMemory);
+    }
+    return order;
+  }
+
+  @Override
+  protected void validateExtra() {
+    if (argSortColumns.length != argAscending.length) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "sort columns number should be equal to ascending orders number!");
+    }
+    if (argLimit != null && argLimit < 0) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "limit should be non-negative!");
+    }
+    if (argMaxTuplesInMemory != null && argMaxTuplesInMemory <= 0) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "max tuples in memory should be positive!");
+    }
+  }
+
+}
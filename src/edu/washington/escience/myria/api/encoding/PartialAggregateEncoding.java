@@ -0,0 +1,40 @@
+package edu.washington.escience.myria.api.encoding;
+
+import javax.ws.rs.core.Response.Status;
+
+import edu.washington.escience.myria.api.MyriaApiException;
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.agg.AggregatorFactory;
+import edu.washington.escience.myria.operator.agg.PartialAggregate;
+
+public class PartialAggregateEncoding extends UnaryOperatorEncoding<PartialAggregate> {
+
+  @Required
+  public int[] argGroupFields;
+  @Required
+  public AggregatorFactory[] aggregators;
+  public Long argMaxGroupsInMemory;
+  public Double argMaxGroupRatio;
+
+  @Override
+  public PartialAggregate construct(ConstructArgs args) {
+    PartialAggregate agg = new PartialAggregate(null, argGroupFields, aggregators);
+    if (argMaxGroupsInMemory != null) {
+      agg.setMaxGroupsInMemory(argMaxGroupsInMemory);
+    }
+    if (argMaxGroupRatio != null) {
+      agg.setMaxGroupRatio(argMaxGroupRatio);
+    }
+    return agg;
+  }
+
+  @Override
+  protected void validateExtra() {
+    if (argMaxGroupsInMemory != null && argMaxGroupsInMemory <= 0) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "max groups in memory should be positive!");
+    }
+    if (argMaxGroupRatio != null && (argMaxGroupRatio < 0 || argMaxGroupRatio > 1)) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "max group ratio should be between 0 and 1!");
+    }
+  }
+}
@@ -23,6 +23,11 @@ public final class PlanFragmentEncoding extends MyriaApiEncoding {
   /** The Operators in this plan fragment. */
   @Required
   public List<OperatorEncoding<? extends Operator>> operators;
+  /**
+   * The number of threads that run the pipeline of this fragment on each worker, see
+   * {@link edu.washington.escience.myria.operator.ParallelPipeline}. optional.
+   */
+  public Integer parallelism;
   /** Index of this fragment. */
   public int fragmentIndex = -1;
   /** List of required fields. */
@@ -46,6 +51,9 @@ public final class PlanFragmentEncoding extends MyriaApiEncoding {
 
   @Override
   protected void validateExtra() {
+    if (parallelism != null && parallelism <= 0) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "the parallelism of a fragment should be positive!");
+    }
     Set<Integer> opNames = new HashSet<Integer>();
     for (OperatorEncoding<? extends Operator> op : operators) {
       op.validate();
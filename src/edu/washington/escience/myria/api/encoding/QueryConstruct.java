@@ -2,6 +2,7 @@ package edu.washington.escience.myria.api.encoding;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -9,6 +10,7 @@ import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.ws.rs.core.Response.Status;
 
 import org.slf4j.LoggerFactory;
@@ -19,9 +21,11 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 
+import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.MyriaConstants.FTMode;
 import edu.washington.escience.myria.MyriaConstants.ProfilingMode;
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
 import edu.washington.escience.myria.RelationKey;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
@@ -30,16 +34,25 @@ import edu.washington.escience.myria.coordinator.catalog.CatalogException;
 import edu.washington.escience.myria.expression.ConstantExpression;
 import edu.washington.escience.myria.expression.Expression;
 import edu.washington.escience.myria.expression.VariableExpression;
+import edu.washington.escience.myria.expression.evaluate.FusedEvaluator;
 import edu.washington.escience.myria.operator.Apply;
 import edu.washington.escience.myria.operator.DbQueryScan;
+import edu.washington.escience.myria.operator.Filter;
+import edu.washington.escience.myria.operator.FusedFilterApply;
 import edu.washington.escience.myria.operator.IDBController;
+import edu.washington.escience.myria.operator.MorselScan;
 import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.operator.ParallelPipeline;
 import edu.washington.escience.myria.operator.RootOperator;
 import edu.washington.escience.myria.operator.SinkRoot;
 import edu.washington.escience.myria.operator.UpdateCatalog;
+import edu.washington.escience.myria.operator.agg.AggregatorFactory;
+import edu.washington.escience.myria.operator.agg.DecomposableAggregator;
 import edu.washington.escience.myria.operator.agg.MultiGroupByAggregate;
+import edu.washington.escience.myria.operator.agg.PartialAggregate;
 import edu.washington.escience.myria.operator.agg.PrimitiveAggregator.AggregationOp;
 import edu.washington.escience.myria.operator.agg.SingleColumnAggregatorFactory;
+import edu.washington.escience.myria.operator.agg.SingleGroupByAggregate;
 import edu.washington.escience.myria.operator.network.CollectConsumer;
 import edu.washington.escience.myria.operator.network.CollectProducer;
 import edu.washington.escience.myria.operator.network.Consumer;
@@ -79,6 +92,7 @@ public class QueryConstruct {
         op2OwnerFragmentMapping.put(op.opId, fragment);
       }
     }
+    args.reserveOpIds(op2OwnerFragmentMapping.keySet());
 
     Map<Integer, SubQueryPlan> plan = new HashMap<Integer, SubQueryPlan>();
     HashMap<PlanFragmentEncoding, RootOperator> instantiatedFragments =
@@ -105,12 +119,19 @@ public class QueryConstruct {
    * @param plans the physical query plan
    * @param ftMode the fault tolerance mode under which the query will be executed
    * @param profilingMode how the query should be profiled
+   * @param batchSizeBytes the estimated number of bytes at which the batches are finished, or null to use the
+   *          configured budget
+   * @param priority the priority of the query on the workers, or null to use the default
+   * @param shareWeight the share of the workers' threads of the query, or null to use the default
    */
   public static void setQueryExecutionOptions(final Map<Integer, SubQueryPlan> plans, final FTMode ftMode,
-      @Nonnull final Set<ProfilingMode> profilingMode) {
+      @Nonnull final Set<ProfilingMode> profilingMode, @Nullable final Long batchSizeBytes,
+      @Nullable final Integer priority, @Nullable final Integer shareWeight) {
     for (SubQueryPlan plan : plans.values()) {
       plan.setFTMode(ftMode);
       plan.setProfilingMode(profilingMode);
+      plan.setBatchSizeBytes(batchSizeBytes);
+      plan.setScheduling(priority, shareWeight);
     }
   }
 
@@ -308,8 +329,12 @@ public class QueryConstruct {
     HashMap<Integer, AbstractConsumerEncoding<?>> nonIterativeConsumers =
         new HashMap<Integer, AbstractConsumerEncoding<?>>();
     HashSet<IDBControllerEncoding> idbs = new HashSet<IDBControllerEncoding>();
+    List<OperatorEncoding<?>> operators = planFragment.operators;
+    if (isFusionEnabled(args)) {
+      operators = fuseFilterApplyChains(operators);
+    }
     /* Instantiate all the operators. */
-    for (OperatorEncoding<?> encoding : planFragment.operators) {
+    for (OperatorEncoding<?> encoding : operators) {
       if (encoding instanceof IDBControllerEncoding) {
         idbs.add((IDBControllerEncoding) encoding);
       }
@@ -321,6 +346,7 @@ public class QueryConstruct {
       /* helpful for debugging. */
       op.setOpName(MoreObjects.firstNonNull(encoding.opName, "Operator" + String.valueOf(encoding.opId)));
       op.setOpId(encoding.opId);
+      op.setBatchSizeBytes(encoding.batchSizeBytes);
       op.setFragmentId(planFragment.fragmentIndex);
       myOperators.put(encoding.opId, op);
       if (op instanceof RootOperator) {
@@ -362,8 +388,11 @@ public class QueryConstruct {
     }
 
     /* Connect all the operators. */
-    for (OperatorEncoding<?> encoding : planFragment.operators) {
-      encoding.connect(myOperators.get(encoding.opId), myOperators);
+    if (planFragment.parallelism == null || planFragment.parallelism <= 1
+        || !connectParallelPipeline(planFragment, operators, myOperators, args)) {
+      for (OperatorEncoding<?> encoding : operators) {
+        encoding.connect(myOperators.get(encoding.opId), myOperators);
+      }
     }
 
     for (IDBControllerEncoding idb : idbs) {
@@ -390,6 +419,286 @@ public class QueryConstruct {
     return fragmentRoot;
   }
 
+  /**
+   * Connect the operators of a fragment that runs its pipeline on several threads. The pipeline is the longest chain of
+   * operators that can run in parallel, i.e., {@link Filter}, {@link Apply} and {@link PartialAggregate}, right above
+   * the first operator below the root that is not unary, e.g., a scan, a consumer or a join, which is the source of the
+   * morsels. The pipeline runs in a {@link ParallelPipeline}. If the operator above the pipeline is a group-by
+   * aggregate of decomposable aggregates, each copy of the pipeline aggregates its morsels with a
+   * {@link PartialAggregate} and the aggregate merges their partial results instead. Each operator that is added to the
+   * plan gets a new id, see {@link ConstructArgs#newOpId()}.
+   * 
+   * @param planFragment the encoded plan fragment.
+   * @param operators the encoded operators of the fragment, after fusion.
+   * @param myOperators the operators of the fragment, not yet connected.
+   * @param args the arguments of the construction, which hand out the ids of the new operators.
+   * @return false, without connecting any operator, if the fragment has no pipeline that can run in parallel.
+   */
+  private static boolean connectParallelPipeline(final PlanFragmentEncoding planFragment,
+      final List<OperatorEncoding<?>> operators, final Map<Integer, Operator> myOperators, final ConstructArgs args) {
+    Map<Integer, OperatorEncoding<?>> encodings = new HashMap<Integer, OperatorEncoding<?>>();
+    UnaryOperatorEncoding<?> rootEncoding = null;
+    for (OperatorEncoding<?> encoding : operators) {
+      encodings.put(encoding.opId, encoding);
+      if (myOperators.get(encoding.opId) instanceof RootOperator && encoding instanceof UnaryOperatorEncoding) {
+        rootEncoding = (UnaryOperatorEncoding<?>) encoding;
+      }
+    }
+    if (rootEncoding == null) {
+      LOGGER.warn("Fragment {} has no unary root to run in parallel.", planFragment.fragmentIndex);
+      return false;
+    }
+
+    /* The chain of unary operators below the root, down to the source. */
+    List<UnaryOperatorEncoding<?>> chain = new ArrayList<UnaryOperatorEncoding<?>>();
+    OperatorEncoding<?> source = encodings.get(rootEncoding.argChild);
+    while (source instanceof UnaryOperatorEncoding) {
+      chain.add((UnaryOperatorEncoding<?>) source);
+      source = encodings.get(((UnaryOperatorEncoding<?>) source).argChild);
+    }
+    int top = chain.size();
+    while (top > 0 && isParallelizable(chain.get(top - 1))) {
+      top--;
+    }
+    List<UnaryOperatorEncoding<?>> pipeline = chain.subList(top, chain.size());
+    OperatorEncoding<?> aggregate = null;
+    if (top > 0 && isSplittable(chain.get(top - 1))) {
+      aggregate = chain.get(top - 1);
+    }
+    if (source == null || pipeline.isEmpty() && aggregate == null) {
+      LOGGER.warn("Fragment {} has no pipeline that can run in parallel.", planFragment.fragmentIndex);
+      return false;
+    }
+
+    /* Connect the operators below the pipeline. */
+    List<OperatorEncoding<?>> above = new ArrayList<OperatorEncoding<?>>(chain.subList(0, top));
+    above.add(rootEncoding);
+    for (OperatorEncoding<?> encoding : operators) {
+      if (encoding != rootEncoding && !chain.contains(encoding)) {
+        encoding.connect(myOperators.get(encoding.opId), myOperators);
+      }
+    }
+
+    /* Connect the pipeline on top of the morsels of the source. */
+    Operator sourceOp = myOperators.get(source.opId);
+    Operator pipelineOp = new MorselScan(sourceOp.getSchema());
+    setUp(pipelineOp, "MorselScan[" + sourceOp.getOpName() + "]", args.newOpId(), null, planFragment.fragmentIndex);
+    Map<Integer, Operator> pipelineOperators = new HashMap<Integer, Operator>(myOperators);
+    pipelineOperators.put(source.opId, pipelineOp);
+    for (UnaryOperatorEncoding<?> encoding : pipeline) {
+      encoding.connect(myOperators.get(encoding.opId), pipelineOperators);
+    }
+    int replacedOpId = source.opId;
+    if (!pipeline.isEmpty()) {
+      pipelineOp = myOperators.get(pipeline.get(0).opId);
+      replacedOpId = pipeline.get(0).opId;
+    }
+
+    /* Split the aggregate above the pipeline, if possible. */
+    Operator merge = null;
+    if (aggregate != null) {
+      int[] groupFields;
+      AggregatorFactory[] factories;
+      Long maxGroupsInMemory;
+      if (aggregate instanceof SingleGroupByAggregateEncoding) {
+        SingleGroupByAggregateEncoding single = (SingleGroupByAggregateEncoding) aggregate;
+        groupFields = new int[] { single.argGroupField };
+        factories = single.aggregators;
+        maxGroupsInMemory = single.argMaxGroupsInMemory;
+      } else {
+        MultiGroupByAggregateEncoding multi = (MultiGroupByAggregateEncoding) aggregate;
+        groupFields = multi.argGroupFields;
+        factories = multi.aggregators;
+        maxGroupsInMemory = multi.argMaxGroupsInMemory;
+      }
+      if (isDecomposable(factories, pipelineOp.getSchema())) {
+        pipelineOp = new PartialAggregate(pipelineOp, groupFields, factories);
+        setUp(pipelineOp, "PartialAggregate[" + myOperators.get(aggregate.opId).getOpName() + "]", args.newOpId(),
+            null, planFragment.fragmentIndex);
+        replacedOpId = aggregate.opId;
+        if (groupFields.length == 1) {
+          merge = new SingleGroupByAggregate(null, 0, true, factories);
+          if (maxGroupsInMemory != null) {
+            ((SingleGroupByAggregate) merge).setMaxGroupsInMemory(maxGroupsInMemory);
+          }
+        } else {
+          int[] mergeGroupFields = new int[groupFields.length];
+          for (int i = 0; i < mergeGroupFields.length; ++i) {
+            mergeGroupFields[i] = i;
+          }
+          merge = new MultiGroupByAggregate(null, mergeGroupFields, true, factories);
+          if (maxGroupsInMemory != null) {
+            ((MultiGroupByAggregate) merge).setMaxGroupsInMemory(maxGroupsInMemory);
+          }
+        }
+        setUp(merge, myOperators.get(aggregate.opId).getOpName(), args.newOpId(), aggregate.batchSizeBytes,
+            planFragment.fragmentIndex);
+        above.remove(aggregate);
+      } else if (pipeline.isEmpty()) {
+        LOGGER.warn("Fragment {} has no pipeline that can run in parallel.", planFragment.fragmentIndex);
+        for (OperatorEncoding<?> encoding : above) {
+          encoding.connect(myOperators.get(encoding.opId), myOperators);
+        }
+        return true;
+      }
+    }
+
+    /* Put the pipeline in its place. */
+    ParallelPipeline parallel = new ParallelPipeline(sourceOp, pipelineOp, planFragment.parallelism);
+    setUp(parallel, "ParallelPipeline[" + pipelineOp.getOpName() + "]", args.newOpId(), null,
+        planFragment.fragmentIndex);
+    Map<Integer, Operator> outerOperators = new HashMap<Integer, Operator>(myOperators);
+    if (merge != null) {
+      merge.setChildren(new Operator[] { parallel });
+      outerOperators.put(replacedOpId, merge);
+    } else {
+      outerOperators.put(replacedOpId, parallel);
+    }
+    for (OperatorEncoding<?> encoding : above) {
+      encoding.connect(myOperators.get(encoding.opId), outerOperators);
+    }
+    return true;
+  }
+
+  /**
+   * @param encoding an operator.
+   * @return if copies of the operator can run on the morsels of its input on several threads.
+   */
+  private static boolean isParallelizable(final OperatorEncoding<?> encoding) {
+    return encoding instanceof FilterEncoding || encoding instanceof ApplyEncoding
+        || encoding instanceof FusedFilterApplyEncoding || encoding instanceof PartialAggregateEncoding;
+  }
+
+  /**
+   * @param args the arguments of the construction of the query.
+   * @return if chains of filters and applies are fused, see {@link MyriaSystemConfigKeys#OPERATOR_FUSION}.
+   */
+  private static boolean isFusionEnabled(final ConstructArgs args) {
+    String fusion = args.getServer().getConfiguration(MyriaSystemConfigKeys.OPERATOR_FUSION);
+    if (fusion == null) {
+      return MyriaConstants.OPERATOR_FUSION_DEFAULT_VALUE;
+    }
+    return Boolean.parseBoolean(fusion);
+  }
+
+  /**
+   * Replace each chain of at least two {@link Filter}s and {@link Apply}s in a fragment by one
+   * {@link FusedFilterApply}. The fused operator takes the place, id and name of the top of the chain; the ids of the
+   * other operators of the chain no longer appear in the profiling events and statistics. Operators whose
+   * expressions cannot be compiled into the loop of the fused operator, e.g., expressions given as Java code, end a
+   * chain.
+   * 
+   * @param operators the encoded operators of the fragment.
+   * @return the encoded operators of the fragment, with the chains replaced.
+   */
+  private static List<OperatorEncoding<?>> fuseFilterApplyChains(final List<OperatorEncoding<?>> operators) {
+    Map<Integer, FusedEvaluator.Stage> fusable = new HashMap<Integer, FusedEvaluator.Stage>();
+    Set<Integer> fusableChildren = new HashSet<Integer>();
+    Map<Integer, OperatorEncoding<?>> encodings = new HashMap<Integer, OperatorEncoding<?>>();
+    for (OperatorEncoding<?> encoding : operators) {
+      encodings.put(encoding.opId, encoding);
+      FusedEvaluator.Stage stage = null;
+      if (encoding.getClass().equals(FilterEncoding.class)) {
+        stage = FusedEvaluator.Stage.filter(((FilterEncoding) encoding).argPredicate);
+      } else if (encoding.getClass().equals(ApplyEncoding.class)) {
+        stage = FusedEvaluator.Stage.apply(((ApplyEncoding) encoding).emitExpressions);
+      }
+      if (stage != null && stage.isFusable()) {
+        fusable.put(encoding.opId, stage);
+        fusableChildren.add(((UnaryOperatorEncoding<?>) encoding).argChild);
+      }
+    }
+
+    Map<Integer, FusedFilterApplyEncoding> fused = new HashMap<Integer, FusedFilterApplyEncoding>();
+    Set<Integer> fusedAway = new HashSet<Integer>();
+    for (OperatorEncoding<?> top : operators) {
+      if (!fusable.containsKey(top.opId) || fusableChildren.contains(top.opId)) {
+        continue;
+      }
+      /* The top of a chain, walk down to its bottom. */
+      List<FusedEvaluator.Stage> stages = new ArrayList<FusedEvaluator.Stage>();
+      UnaryOperatorEncoding<?> bottom = (UnaryOperatorEncoding<?>) top;
+      stages.add(fusable.get(top.opId));
+      while (fusable.containsKey(bottom.argChild)) {
+        fusedAway.add(bottom.argChild);
+        bottom = (UnaryOperatorEncoding<?>) encodings.get(bottom.argChild);
+        stages.add(0, fusable.get(bottom.opId));
+      }
+      if (stages.size() < 2) {
+        continue;
+      }
+      FusedFilterApplyEncoding encoding = new FusedFilterApplyEncoding();
+      encoding.opId = top.opId;
+      encoding.opName = MoreObjects.firstNonNull(top.opName, "Operator" + String.valueOf(top.opId));
+      encoding.batchSizeBytes = top.batchSizeBytes;
+      encoding.argChild = bottom.argChild;
+      encoding.stages = stages;
+      fused.put(top.opId, encoding);
+    }
+    if (fused.isEmpty()) {
+      return operators;
+    }
+
+    List<OperatorEncoding<?>> ret = new ArrayList<OperatorEncoding<?>>(operators.size() - fusedAway.size());
+    for (OperatorEncoding<?> encoding : operators) {
+      if (fused.containsKey(encoding.opId)) {
+        ret.add(fused.get(encoding.opId));
+      } else if (!fusedAway.contains(encoding.opId)) {
+        ret.add(encoding);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * @param encoding an operator.
+   * @return if the operator is a group-by aggregate that may be split into a {@link PartialAggregate} and a merge.
+   */
+  private static boolean isSplittable(final OperatorEncoding<?> encoding) {
+    if (encoding instanceof SingleGroupByAggregateEncoding) {
+      return !((SingleGroupByAggregateEncoding) encoding).argMergePartials;
+    }
+    if (encoding instanceof MultiGroupByAggregateEncoding) {
+      return !((MultiGroupByAggregateEncoding) encoding).argMergePartials;
+    }
+    return false;
+  }
+
+  /**
+   * @param factories the factories of the aggregates.
+   * @param inputSchema the schema of the input tuples.
+   * @return if all the aggregates can be split into a partial and a final half.
+   */
+  private static boolean isDecomposable(final AggregatorFactory[] factories, final Schema inputSchema) {
+    for (AggregatorFactory factory : factories) {
+      try {
+        if (!(factory.get(inputSchema) instanceof DecomposableAggregator)) {
+          return false;
+        }
+      } catch (DbException e) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Set the properties of an operator that is not built from an encoding.
+   * 
+   * @param op the operator.
+   * @param opName the name of the operator.
+   * @param opId the id of the operator.
+   * @param batchSizeBytes the estimated number of bytes at which the batches built by the operator are finished.
+   * @param fragmentIndex the index of the fragment of the operator.
+   */
+  private static void setUp(final Operator op, final String opName, final int opId, final Long batchSizeBytes,
+      final int fragmentIndex) {
+    op.setOpName(opName);
+    op.setOpId(opId);
+    op.setBatchSizeBytes(batchSizeBytes);
+    op.setFragmentId(fragmentIndex);
+  }
+
   /**
    * Builds the query plan to update the {@link Server}'s master catalog with the number of tuples in every relation
    * written by a subquery. The query plan is basically "SELECT RelationKey, COUNT(*)" -> Collect at master ->
@@ -493,6 +802,8 @@ public class QueryConstruct {
   public final static class ConstructArgs {
     private final Server server;
     private final long queryId;
+    /** The id of the next operator that the construction adds to the plan. */
+    private int nextOpId = 0;
 
     public ConstructArgs(@Nonnull final Server server, final long queryId) {
       this.server = Preconditions.checkNotNull(server, "server");
@@ -506,5 +817,23 @@ public class QueryConstruct {
     public Server getServer() {
       return server;
     }
+
+    /**
+     * Make sure that {@link #newOpId()} does not return the ids of the specified operators.
+     * 
+     * @param opIds the ids of the operators of the plan.
+     */
+    void reserveOpIds(final Collection<Integer> opIds) {
+      for (int opId : opIds) {
+        nextOpId = Math.max(nextOpId, opId + 1);
+      }
+    }
+
+    /**
+     * @return the id of an operator that the construction adds to the plan, distinct from those of the other operators.
+     */
+    int newOpId() {
+      return nextOpId++;
+    }
   }
 }
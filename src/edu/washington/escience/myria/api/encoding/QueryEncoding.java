@@ -31,6 +31,12 @@ public class QueryEncoding extends MyriaApiEncoding {
   public List<ProfilingMode> profilingMode = ImmutableList.of();
   /** The fault-tolerance mode used in this query, default: none. */
   public FTMode ftMode = FTMode.NONE;
+  /** The estimated number of bytes at which the batches of this query are finished. optional. */
+  public Long batchSizeBytes;
+  /** The priority of this query on the workers, higher runs first. optional. */
+  public Integer priority;
+  /** The share of the workers' threads of this query among the queries of the same priority. optional. */
+  public Integer shareWeight;
 
   /** The old physical query plan encoding. */
   public List<PlanFragmentEncoding> fragments;
@@ -41,6 +47,8 @@ public class QueryEncoding extends MyriaApiEncoding {
   protected void validateExtra() throws MyriaApiException {
     Preconditions.checkArgument((fragments == null) ^ (plan == null),
         "exactly one of fragments or plan must be specified");
+    Preconditions.checkArgument(batchSizeBytes == null || batchSizeBytes > 0, "batchSizeBytes must be positive");
+    Preconditions.checkArgument(shareWeight == null || shareWeight > 0, "shareWeight must be positive");
     /* If they gave us an old plan type, convert it to a new plan type. */
     if (fragments != null) {
       plan = new SubQueryEncoding(fragments);
@@ -20,9 +20,14 @@ public class RightHashJoinEncoding extends BinaryOperatorEncoding<RightHashJoin>
   public int[] argSelect1;
   @Required
   public int[] argSelect2;
+  public Long argMaxTuplesInMemory;
 
   @Override
   public RightHashJoin construct(ConstructArgs args) {
-    return new RightHashJoin(argColumnNames, null, null, argColumns1, argColumns2, argSelect1, argSelect2);
+    RightHashJoin join = new RightHashJoin(argColumnNames, null, null, argColumns1, argColumns2, argSelect1, argSelect2);
+    if (argMaxTuplesInMemory != null) {
+      join.setMaxTuplesInMemory(argMaxTuplesInMemory);
+    }
+    return join;
   }
 }
@@ -1,5 +1,8 @@
 package edu.washington.escience.myria.api.encoding;
 
+import javax.ws.rs.core.Response.Status;
+
+import edu.washington.escience.myria.api.MyriaApiException;
 import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
 import edu.washington.escience.myria.operator.agg.AggregatorFactory;
 import edu.washington.escience.myria.operator.agg.SingleGroupByAggregate;
@@ -10,9 +13,22 @@ public class SingleGroupByAggregateEncoding extends UnaryOperatorEncoding<Single
   public AggregatorFactory[] aggregators;
   @Required
   public int argGroupField;
+  public Long argMaxGroupsInMemory;
+  public boolean argMergePartials;
 
   @Override
   public SingleGroupByAggregate construct(ConstructArgs args) {
-    return new SingleGroupByAggregate(null, argGroupField, aggregators);
+    SingleGroupByAggregate agg = new SingleGroupByAggregate(null, argGroupField, argMergePartials, aggregators);
+    if (argMaxGroupsInMemory != null) {
+      agg.setMaxGroupsInMemory(argMaxGroupsInMemory);
+    }
+    return agg;
+  }
+
+  @Override
+  protected void validateExtra() {
+    if (argMaxGroupsInMemory != null && argMaxGroupsInMemory <= 0) {
+      throw new MyriaApiException(Status.BAD_REQUEST, "max groups in memory should be positive!");
+    }
   }
 }
@@ -0,0 +1,47 @@
+package edu.washington.escience.myria.api.encoding;
+
+import java.util.List;
+
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.operator.network.GenericShuffleProducer;
+import edu.washington.escience.myria.operator.network.partition.SkewAwareHashPartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.SkewAwareHashPartitionFunction.HeavyHitterPolicy;
+import edu.washington.escience.myria.util.MyriaArrayUtils;
+import edu.washington.escience.myria.util.MyriaUtils;
+
+/**
+ * JSON wrapper for a shuffle that hashes tuples on their key fields, except for the tuples of a few heavy-hitter keys,
+ * which are spread over the workers on the probe side of a join and broadcast on the build side. Its consumers are
+ * ShuffleConsumers.
+ */
+public class SkewAwareShuffleProducerEncoding extends AbstractProducerEncoding<GenericShuffleProducer> {
+  @Required
+  public int[] indexes;
+  @Required
+  public List<List<Object>> heavyHitters;
+  @Required
+  public HeavyHitterPolicy heavyHitterPolicy;
+
+  @Override
+  public GenericShuffleProducer construct(ConstructArgs args) {
+    int[] workerIds = MyriaUtils.integerSetToIntArray(getRealWorkerIds());
+    int numWorkers = workerIds.length;
+    int[][] cellPartition;
+    if (heavyHitterPolicy == HeavyHitterPolicy.BROADCAST) {
+      /* One partition per worker, then one that goes to all the workers. */
+      cellPartition = new int[numWorkers + 1][];
+      int[] allCells = new int[numWorkers];
+      for (int i = 0; i < numWorkers; i++) {
+        cellPartition[i] = new int[] { i };
+        allCells[i] = i;
+      }
+      cellPartition[numWorkers] = allCells;
+    } else {
+      cellPartition = MyriaArrayUtils.create2DVerticalIndex(numWorkers);
+    }
+    SkewAwareHashPartitionFunction pf =
+        new SkewAwareHashPartitionFunction(cellPartition.length, indexes, heavyHitters, heavyHitterPolicy);
+    return new GenericShuffleProducer(null, MyriaUtils.getSingleElement(getRealOperatorIds()), cellPartition,
+        workerIds, pf);
+  }
+}
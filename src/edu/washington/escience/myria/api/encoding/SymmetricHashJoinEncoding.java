@@ -20,6 +20,7 @@ public class SymmetricHashJoinEncoding extends BinaryOperatorEncoding<SymmetricH
   public boolean argSetSemanticsLeft = false;
   public boolean argSetSemanticsRight = false;
   public JoinPullOrder argOrder = JoinPullOrder.ALTER;
+  public Long argMaxTuplesInMemory;
 
   @Override
   public SymmetricHashJoin construct(final ConstructArgs args) {
@@ -27,6 +28,9 @@ public class SymmetricHashJoinEncoding extends BinaryOperatorEncoding<SymmetricH
         new SymmetricHashJoin(argColumnNames, null, null, argColumns1, argColumns2, argSelect1, argSelect2,
             argSetSemanticsLeft, argSetSemanticsRight);
     join.setPullOrder(argOrder);
+    if (argMaxTuplesInMemory != null) {
+      join.setMaxTuplesInMemory(argMaxTuplesInMemory);
+    }
     return join;
   }
 
@@ -0,0 +1,161 @@
+package edu.washington.escience.myria.column;
+
+import java.io.ObjectStreamException;
+import java.nio.charset.StandardCharsets;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.joda.time.DateTime;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.builder.ColumnFactory;
+
+/**
+ * A read-only column of any type that wraps the bytes of a column received over the network, as written by
+ * {@link edu.washington.escience.myria.parallel.ColumnarFrame}, without copying them. Numbers are stored in big-endian
+ * order, DateTimes as their milliseconds, booleans as a bitmap, and strings as <code>size() + 1</code> int offsets into
+ * their UTF-8 bytes.
+ */
+public final class ChannelBufferColumn extends Column<Comparable<?>> {
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The type of this column. */
+  private final Type type;
+  /** The values, or for a string column, the offsets. */
+  private final transient ChannelBuffer data;
+  /** For a string column, the UTF-8 bytes of the strings. */
+  private final transient ChannelBuffer stringBytes;
+  /** The number of rows in this column. */
+  private final int size;
+
+  /**
+   * Wrap a column that is not a string column.
+   * 
+   * @param type the type of the column.
+   * @param data the values, starting at index 0.
+   * @param size the number of rows.
+   */
+  public ChannelBufferColumn(final Type type, final ChannelBuffer data, final int size) {
+    this(type, data, null, size);
+  }
+
+  /**
+   * Wrap a column.
+   * 
+   * @param type the type of the column.
+   * @param data the values, or for a string column, the offsets, starting at index 0.
+   * @param stringBytes for a string column, the UTF-8 bytes of the strings, starting at index 0. Otherwise null.
+   * @param size the number of rows.
+   */
+  public ChannelBufferColumn(final Type type, final ChannelBuffer data, final ChannelBuffer stringBytes,
+      final int size) {
+    Preconditions.checkArgument((type == Type.STRING_TYPE) == (stringBytes != null),
+        "stringBytes must be given for, and only for, string columns");
+    this.type = type;
+    this.data = data;
+    this.stringBytes = stringBytes;
+    this.size = size;
+  }
+
+  @Override
+  public boolean getBoolean(final int row) {
+    checkRow(row, Type.BOOLEAN_TYPE);
+    return (data.getByte(row >>> 3) & (1 << (row & 7))) != 0;
+  }
+
+  @Override
+  public DateTime getDateTime(final int row) {
+    checkRow(row, Type.DATETIME_TYPE);
+    return new DateTime(data.getLong(row * 8));
+  }
+
+  @Override
+  public double getDouble(final int row) {
+    checkRow(row, Type.DOUBLE_TYPE);
+    return Double.longBitsToDouble(data.getLong(row * 8));
+  }
+
+  @Override
+  public float getFloat(final int row) {
+    checkRow(row, Type.FLOAT_TYPE);
+    return Float.intBitsToFloat(data.getInt(row * 4));
+  }
+
+  @Override
+  public int getInt(final int row) {
+    checkRow(row, Type.INT_TYPE);
+    return data.getInt(row * 4);
+  }
+
+  @Override
+  public long getLong(final int row) {
+    checkRow(row, Type.LONG_TYPE);
+    return data.getLong(row * 8);
+  }
+
+  @Override
+  public String getString(final int row) {
+    checkRow(row, Type.STRING_TYPE);
+    final int start = data.getInt(row * 4);
+    final int end = data.getInt(row * 4 + 4);
+    if (stringBytes.hasArray()) {
+      return new String(stringBytes.array(), stringBytes.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+    }
+    return stringBytes.toString(start, end - start, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Check that a row exists and that this column is of the type it is read as.
+   * 
+   * @param row the row.
+   * @param readType the type the row is read as.
+   */
+  private void checkRow(final int row, final Type readType) {
+    Preconditions.checkElementIndex(row, size);
+    if (type != readType) {
+      throw new UnsupportedOperationException("Reading a column of type " + type + " as " + readType);
+    }
+  }
+
+  @Override
+  public Comparable<?> getObject(final int row) {
+    switch (type) {
+      case BOOLEAN_TYPE:
+        return getBoolean(row);
+      case DATETIME_TYPE:
+        return getDateTime(row);
+      case DOUBLE_TYPE:
+        return getDouble(row);
+      case FLOAT_TYPE:
+        return getFloat(row);
+      case INT_TYPE:
+        return getInt(row);
+      case LONG_TYPE:
+        return getLong(row);
+      case STRING_TYPE:
+        return getString(row);
+    }
+    throw new UnsupportedOperationException("Reading a column of type " + type);
+  }
+
+  @Override
+  public Type getType() {
+    return type;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * The wrapped buffers are not serializable, so an array-backed copy of this column is serialized instead.
+   * 
+   * @return an array-backed copy of this column.
+   * @throws ObjectStreamException never.
+   */
+  private Object writeReplace() throws ObjectStreamException {
+    return ColumnFactory.columnFromArray(type, asArray(), size);
+  }
+}
@@ -51,6 +51,11 @@ public final class DateTimeColumn extends Column<DateTime> {
     return Type.DATETIME_TYPE;
   }
 
+  @Override
+  public Object asArray() {
+    return data;
+  }
+
   @Override
   public int size() {
     return position;
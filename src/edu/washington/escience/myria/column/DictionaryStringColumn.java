@@ -0,0 +1,56 @@
+package edu.washington.escience.myria.column;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A column of String values stored as the int codes of the values in a {@link StringDictionary}, which may be shared
+ * with other columns. All the rows with the same value share one String.
+ */
+public final class DictionaryStringColumn extends StringColumn {
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The dictionary of the values. */
+  private final StringDictionary dictionary;
+  /** The code of the value of each row. */
+  private final int[] codes;
+  /** Number of elements in this column. */
+  private final int numStrings;
+
+  /**
+   * Constructs a new column.
+   * 
+   * @param dictionary the dictionary of the values.
+   * @param codes the code of the value of each row.
+   * @param numStrings number of tuples.
+   * */
+  public DictionaryStringColumn(final StringDictionary dictionary, final int[] codes, final int numStrings) {
+    this.dictionary = Preconditions.checkNotNull(dictionary, "dictionary");
+    this.codes = codes;
+    this.numStrings = numStrings;
+  }
+
+  @Override
+  public String getString(final int row) {
+    return dictionary.getString(getCode(row));
+  }
+
+  /**
+   * @param row a row.
+   * @return the code of the value of the specified row in {@link #getDictionary()}.
+   */
+  public int getCode(final int row) {
+    return codes[Preconditions.checkElementIndex(row, numStrings)];
+  }
+
+  /**
+   * @return the dictionary of the values.
+   */
+  public StringDictionary getDictionary() {
+    return dictionary;
+  }
+
+  @Override
+  public int size() {
+    return numStrings;
+  }
+}
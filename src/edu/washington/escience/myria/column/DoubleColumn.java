@@ -53,6 +53,11 @@ public final class DoubleColumn extends Column<Double> {
     return Type.DOUBLE_TYPE;
   }
 
+  @Override
+  public Object asArray() {
+    return data;
+  }
+
   @Override
   public int size() {
     return position;
@@ -51,6 +51,11 @@ public final class FloatColumn extends Column<Float> {
     return Type.FLOAT_TYPE;
   }
 
+  @Override
+  public Object asArray() {
+    return data;
+  }
+
   @Override
   public int size() {
     return position;
@@ -39,6 +39,11 @@ public final class IntArrayColumn extends IntColumn {
     return data[row];
   }
 
+  @Override
+  public Object asArray() {
+    return data;
+  }
+
   @Override
   public int size() {
     return position;
@@ -37,6 +37,11 @@ public final class StringArrayColumn extends StringColumn {
     return data[Preconditions.checkElementIndex(row, numStrings)];
   }
 
+  @Override
+  public Object asArray() {
+    return data;
+  }
+
   @Override
   public int size() {
     return numStrings;
@@ -0,0 +1,127 @@
+package edu.washington.escience.myria.column;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The distinct strings of one or more {@link DictionaryStringColumn}s, each identified by an int code. Codes are
+ * assigned in order and never change, so columns that share a dictionary compare and hash their strings by their codes.
+ * 
+ * A dictionary is appended to by one thread, e.g., the scan that builds the columns, which is also the only thread that
+ * may call {@link #getCode(String)}. Other threads may read the strings of the columns that were handed to them: the
+ * strings are published through a volatile snapshot, so that readers always see arrays that hold all strings up to
+ * the size they see.
+ */
+public final class StringDictionary implements Serializable {
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The initial capacity. */
+  private static final int INITIAL_CAPACITY = 16;
+
+  /** The code of each string. */
+  private final Map<String, Integer> codes;
+  /** The strings that have been published to readers. */
+  private volatile Entries entries;
+
+  /**
+   * The strings of a dictionary, as published by {@link StringDictionary#add(String)}. The arrays may be shared with
+   * later snapshots, which only write at indexes past {@link #size}.
+   */
+  private static final class Entries implements Serializable {
+    /** Required for Java serialization. */
+    private static final long serialVersionUID = 1L;
+    /** The string of each code. */
+    private final String[] strings;
+    /** The {@link String#hashCode()} of each code. */
+    private final int[] hashCodes;
+    /** The number of strings. */
+    private final int size;
+
+    /**
+     * @param strings the string of each code.
+     * @param hashCodes the {@link String#hashCode()} of each code.
+     * @param size the number of strings.
+     */
+    private Entries(final String[] strings, final int[] hashCodes, final int size) {
+      this.strings = strings;
+      this.hashCodes = hashCodes;
+      this.size = size;
+    }
+  }
+
+  /** Constructs an empty dictionary. */
+  public StringDictionary() {
+    codes = new HashMap<>();
+    entries = new Entries(new String[INITIAL_CAPACITY], new int[INITIAL_CAPACITY], 0);
+  }
+
+  /**
+   * @param value a string.
+   * @return the code of the string, or -1 if it is not in this dictionary.
+   */
+  public int getCode(final String value) {
+    final Integer code = codes.get(value);
+    if (code == null) {
+      return -1;
+    }
+    return code;
+  }
+
+  /**
+   * Add a string to this dictionary if it is not already in it.
+   * 
+   * @param value the string.
+   * @return the code of the string.
+   */
+  public int add(final String value) {
+    Objects.requireNonNull(value, "value");
+    final Integer code = codes.get(value);
+    if (code != null) {
+      return code;
+    }
+    final Entries current = entries;
+    final int size = current.size;
+    String[] strings = current.strings;
+    int[] hashCodes = current.hashCodes;
+    if (size == strings.length) {
+      strings = Arrays.copyOf(strings, 2 * size);
+      hashCodes = Arrays.copyOf(hashCodes, 2 * size);
+    }
+    strings[size] = value;
+    hashCodes[size] = value.hashCode();
+    codes.put(value, size);
+    /* Publish the new string, together with the arrays that hold it. */
+    entries = new Entries(strings, hashCodes, size + 1);
+    return size;
+  }
+
+  /**
+   * @param code a code.
+   * @return the string with the specified code.
+   */
+  public String getString(final int code) {
+    final Entries current = entries;
+    return current.strings[Preconditions.checkElementIndex(code, current.size)];
+  }
+
+  /**
+   * @param code a code.
+   * @return the {@link String#hashCode()} of the string with the specified code.
+   */
+  public int getHashCode(final int code) {
+    final Entries current = entries;
+    return current.hashCodes[Preconditions.checkElementIndex(code, current.size)];
+  }
+
+  /**
+   * @return the number of strings in this dictionary.
+   */
+  public int size() {
+    return entries.size;
+  }
+}
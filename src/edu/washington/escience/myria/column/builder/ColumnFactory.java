@@ -1,11 +1,25 @@
 package edu.washington.escience.myria.column.builder;
 
+import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.BooleanColumn;
 import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.DateTimeColumn;
+import edu.washington.escience.myria.column.DoubleColumn;
+import edu.washington.escience.myria.column.FloatColumn;
+import edu.washington.escience.myria.column.IntArrayColumn;
+import edu.washington.escience.myria.column.LongColumn;
+import edu.washington.escience.myria.column.StringArrayColumn;
+import edu.washington.escience.myria.column.StringDictionary;
 import edu.washington.escience.myria.proto.DataProto.ColumnMessage;
 
 /**
@@ -51,6 +65,49 @@ public final class ColumnFactory {
     return allocateColumns(schema.getColumnTypes());
   }
 
+  /**
+   * Allocates an array of Columns to match the given Schema, building the string columns that have a dictionary as
+   * {@link edu.washington.escience.myria.column.DictionaryStringColumn}s while they have few distinct values.
+   * 
+   * @param schema the Schema
+   * @param dictionaries the dictionary of each column, e.g., from {@link #allocateDictionaries(Schema)}, or null for
+   *          the columns that are not dictionary encoded. May be null if no column is.
+   * @return the list of Columns
+   */
+  public static List<ColumnBuilder<?>> allocateColumns(final Schema schema,
+      @Nullable final StringDictionary[] dictionaries) {
+    if (dictionaries == null) {
+      return allocateColumns(schema);
+    }
+    final ArrayList<ColumnBuilder<?>> columns = new ArrayList<ColumnBuilder<?>>(schema.numColumns());
+    for (int i = 0; i < schema.numColumns(); ++i) {
+      if (dictionaries[i] != null) {
+        columns.add(new DictionaryStringColumnBuilder(dictionaries[i],
+            DictionaryStringColumnBuilder.DEFAULT_MAX_DICTIONARY_SIZE));
+      } else {
+        columns.add(allocateColumn(schema.getColumnType(i)));
+      }
+    }
+    return columns;
+  }
+
+  /**
+   * Allocates a dictionary for each string column of the given Schema, to be shared by all the batches built with
+   * {@link #allocateColumns(Schema, StringDictionary[])}, e.g., by a scan.
+   * 
+   * @param schema the Schema
+   * @return a new dictionary for each string column, and null for the other columns
+   */
+  public static StringDictionary[] allocateDictionaries(final Schema schema) {
+    final StringDictionary[] dictionaries = new StringDictionary[schema.numColumns()];
+    for (int i = 0; i < dictionaries.length; ++i) {
+      if (schema.getColumnType(i) == Type.STRING_TYPE) {
+        dictionaries[i] = new StringDictionary();
+      }
+    }
+    return dictionaries;
+  }
+
   /**
    * Allocates an array of Columns to match the given Type array.
    * 
@@ -92,6 +149,54 @@ public final class ColumnFactory {
     return null;
   }
 
+  /**
+   * Allocates an array of the Java type of the specified Myria type, e.g., an <code>int[]</code> for
+   * {@link Type#INT_TYPE}.
+   * 
+   * @param type the Myria type of the values in the array.
+   * @param size the length of the array.
+   * @return the allocated array.
+   */
+  public static Object allocateArray(final Type type, final int size) {
+    return Array.newInstance(type.toJavaType(), size);
+  }
+
+  /**
+   * Wraps an array of the Java type of the specified Myria type, as allocated by {@link #allocateArray(Type, int)}, in
+   * a Column. The array is not copied and must not be modified afterwards.
+   * 
+   * @param type the Myria type of the values in the array.
+   * @param array the array holding the values.
+   * @param numTuples the number of valid values in the array.
+   * @return a Column of the appropriate type and contents.
+   */
+  public static Column<?> columnFromArray(final Type type, final Object array, final int numTuples) {
+    switch (type) {
+      case BOOLEAN_TYPE:
+        boolean[] values = (boolean[]) array;
+        BitSet bits = new BitSet(numTuples);
+        for (int i = 0; i < numTuples; ++i) {
+          if (values[i]) {
+            bits.set(i);
+          }
+        }
+        return new BooleanColumn(bits, numTuples);
+      case DOUBLE_TYPE:
+        return new DoubleColumn((double[]) array, numTuples);
+      case FLOAT_TYPE:
+        return new FloatColumn((float[]) array, numTuples);
+      case INT_TYPE:
+        return new IntArrayColumn((int[]) array, numTuples);
+      case LONG_TYPE:
+        return new LongColumn((long[]) array, numTuples);
+      case STRING_TYPE:
+        return new StringArrayColumn((String[]) array, numTuples);
+      case DATETIME_TYPE:
+        return new DateTimeColumn((DateTime[]) array, numTuples);
+    }
+    throw new IllegalArgumentException("Cannot build a Column from an array of unknown type " + type);
+  }
+
   /** Inaccessible. */
   private ColumnFactory() {
     throw new AssertionError();
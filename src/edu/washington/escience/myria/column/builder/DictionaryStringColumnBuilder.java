@@ -0,0 +1,232 @@
+package edu.washington.escience.myria.column.builder;
+
+import java.nio.BufferOverflowException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Objects;
+
+import com.almworks.sqlite4java.SQLiteException;
+import com.almworks.sqlite4java.SQLiteStatement;
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.DictionaryStringColumn;
+import edu.washington.escience.myria.column.StringArrayColumn;
+import edu.washington.escience.myria.column.StringColumn;
+import edu.washington.escience.myria.column.StringDictionary;
+import edu.washington.escience.myria.column.mutable.StringMutableColumn;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.MyriaUtils;
+
+/**
+ * A column of String values that builds a {@link DictionaryStringColumn} while the values have few distinct strings.
+ * Once the dictionary would grow past its maximum size, the builder stores the values as they are and builds a
+ * {@link StringArrayColumn} instead.
+ * 
+ */
+public final class DictionaryStringColumnBuilder extends ColumnBuilder<String> {
+
+  /** The default maximum number of strings in a dictionary. */
+  public static final int DEFAULT_MAX_DICTIONARY_SIZE = 4096;
+
+  /** The dictionary of the values, which may be shared with other builders. */
+  private final StringDictionary dictionary;
+  /** The maximum number of strings in the dictionary. */
+  private final int maxDictionarySize;
+  /** The code of the value of each row, or null once the values are stored as they are. */
+  private int[] codes;
+  /** The value of each row once the values are stored as they are, or null before. */
+  private String[] data;
+  /** Number of elements in this column. */
+  private int numStrings;
+
+  /**
+   * If the builder has built the column.
+   * */
+  private boolean built = false;
+
+  /** Constructs an empty column with its own dictionary that can hold up to TupleBatch.BATCH_SIZE elements. */
+  public DictionaryStringColumnBuilder() {
+    this(new StringDictionary(), DEFAULT_MAX_DICTIONARY_SIZE);
+  }
+
+  /**
+   * Constructs an empty column that can hold up to TupleBatch.BATCH_SIZE elements.
+   * 
+   * @param dictionary the dictionary of the values, which may be shared with other builders, e.g., the builders of the
+   *          other batches of a scan.
+   * @param maxDictionarySize the maximum number of strings in the dictionary.
+   */
+  public DictionaryStringColumnBuilder(final StringDictionary dictionary, final int maxDictionarySize) {
+    this.dictionary = Objects.requireNonNull(dictionary, "dictionary");
+    this.maxDictionarySize = maxDictionarySize;
+    codes = new int[TupleBatch.BATCH_SIZE];
+    data = null;
+    numStrings = 0;
+  }
+
+  /**
+   * copy.
+   * 
+   * @param dictionary the dictionary of the values
+   * @param maxDictionarySize the maximum number of strings in the dictionary
+   * @param codes the codes of the values, or null
+   * @param data the values, or null
+   * @param numStrings the actual num strings in the data
+   * */
+  private DictionaryStringColumnBuilder(final StringDictionary dictionary, final int maxDictionarySize,
+      final int[] codes, final String[] data, final int numStrings) {
+    this.dictionary = dictionary;
+    this.maxDictionarySize = maxDictionarySize;
+    this.codes = codes;
+    this.data = data;
+    this.numStrings = numStrings;
+  }
+
+  /**
+   * Stop using the dictionary and store the values as they are.
+   */
+  private void storeStrings() {
+    data = new String[TupleBatch.BATCH_SIZE];
+    for (int i = 0; i < numStrings; ++i) {
+      data[i] = dictionary.getString(codes[i]);
+    }
+    codes = null;
+  }
+
+  @Override
+  public DictionaryStringColumnBuilder appendString(final String value) throws BufferOverflowException {
+    Preconditions.checkState(!built, "No further changes are allowed after the builder has built the column.");
+    Objects.requireNonNull(value, "value");
+    if (numStrings >= TupleBatch.BATCH_SIZE) {
+      throw new BufferOverflowException();
+    }
+    if (codes != null) {
+      int code = dictionary.getCode(value);
+      if (code < 0 && dictionary.size() < maxDictionarySize) {
+        code = dictionary.add(value);
+      }
+      if (code >= 0) {
+        codes[numStrings++] = code;
+        return this;
+      }
+      storeStrings();
+    }
+    data[numStrings++] = value;
+    return this;
+  }
+
+  @Override
+  public Type getType() {
+    return Type.STRING_TYPE;
+  }
+
+  @Override
+  public DictionaryStringColumnBuilder appendFromJdbc(final ResultSet resultSet, final int jdbcIndex)
+      throws SQLException, BufferOverflowException {
+    Preconditions.checkState(!built, "No further changes are allowed after the builder has built the column.");
+    return appendString(resultSet.getString(jdbcIndex));
+  }
+
+  @Override
+  public DictionaryStringColumnBuilder appendFromSQLite(final SQLiteStatement statement, final int index)
+      throws SQLiteException, BufferOverflowException {
+    Preconditions.checkState(!built, "No further changes are allowed after the builder has built the column.");
+    return appendString(statement.columnString(index));
+  }
+
+  @Override
+  public int size() {
+    return numStrings;
+  }
+
+  @Override
+  public StringColumn build() {
+    built = true;
+    if (codes != null) {
+      return new DictionaryStringColumn(dictionary, codes, numStrings);
+    }
+    return new StringArrayColumn(data, numStrings);
+  }
+
+  @Override
+  public StringMutableColumn buildMutable() {
+    built = true;
+    if (codes != null) {
+      storeStrings();
+    }
+    return new StringMutableColumn(data, numStrings);
+  }
+
+  @Override
+  public void replaceString(final String value, final int row) throws IndexOutOfBoundsException {
+    Preconditions.checkState(!built, "No further changes are allowed after the builder has built the column.");
+    Preconditions.checkElementIndex(row, numStrings);
+    Objects.requireNonNull(value, "value");
+    if (codes != null) {
+      storeStrings();
+    }
+    data[row] = value;
+  }
+
+  @Override
+  public DictionaryStringColumnBuilder expand(final int size) throws BufferOverflowException {
+    Preconditions.checkState(!built, "No further changes are allowed after the builder has built the column.");
+    Preconditions.checkArgument(size >= 0);
+    if (numStrings + size > TupleBatch.BATCH_SIZE) {
+      throw new BufferOverflowException();
+    }
+    /* The new rows have no values, which have no codes. */
+    if (codes != null) {
+      storeStrings();
+    }
+    numStrings += size;
+    return this;
+  }
+
+  @Override
+  public DictionaryStringColumnBuilder expandAll() {
+    Preconditions.checkState(!built, "No further changes are allowed after the builder has built the column.");
+    if (codes != null) {
+      storeStrings();
+    }
+    numStrings = TupleBatch.BATCH_SIZE;
+    return this;
+  }
+
+  @Override
+  public String getObject(final int row) {
+    return getString(row);
+  }
+
+  @Override
+  public String getString(final int row) {
+    Preconditions.checkElementIndex(row, numStrings);
+    if (codes != null) {
+      return dictionary.getString(codes[row]);
+    }
+    return data[row];
+  }
+
+  @Deprecated
+  @Override
+  public ColumnBuilder<String> appendObject(final Object value) throws BufferOverflowException {
+    Preconditions.checkArgument(!built, "No further changes are allowed after the builder has built the column.");
+    return appendString((String) MyriaUtils.ensureObjectIsValidType(value));
+  }
+
+  @Override
+  public DictionaryStringColumnBuilder forkNewBuilder() {
+    int[] newCodes = null;
+    String[] newData = null;
+    if (codes != null) {
+      newCodes = new int[TupleBatch.BATCH_SIZE];
+      System.arraycopy(codes, 0, newCodes, 0, numStrings);
+    } else {
+      newData = new String[TupleBatch.BATCH_SIZE];
+      System.arraycopy(data, 0, newData, 0, numStrings);
+    }
+    return new DictionaryStringColumnBuilder(dictionary, maxDictionarySize, newCodes, newData, numStrings);
+  }
+
+}
@@ -2,9 +2,12 @@ package edu.washington.escience.myria.expression;
 
 import java.io.Serializable;
 import java.util.LinkedList;
+import java.util.SortedSet;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
 
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.builder.ColumnBuilder;
@@ -52,6 +55,18 @@ public class Expression implements Serializable {
    * Variable name of state.
    */
   public static final String STATE = "state";
+  /**
+   * Variable name of the input column arrays in batch evaluation.
+   */
+  public static final String COLUMNS = "columns";
+  /**
+   * Variable name of the number of tuples in batch evaluation.
+   */
+  public static final String NUM_TUPLES = "numTuples";
+  /**
+   * Prefix of the variables that hold the input column arrays in batch evaluation.
+   */
+  public static final String COLUMN_PREFIX = "col";
 
   /**
    * This is not really unused, it's used automagically by Jackson deserialization.
@@ -116,6 +131,68 @@ public class Expression implements Serializable {
         getJavaExpression(parameters)).append(")").toString();
   }
 
+  /**
+   * Generates a Java script that evaluates this expression over a whole batch. The script reads the referenced input
+   * columns from the arrays in {@link #COLUMNS}, one array per column in the type of the column (e.g., <code>int[]</code>
+   * for an int column), and writes the <code>{@link #NUM_TUPLES}</code> results into the array {@link #RESULT} of the
+   * output type.
+   *
+   * @param parameters parameters that are needed to create the java expression
+   * @return the Java form of this expression as a loop over a batch.
+   */
+  public String getJavaBatchExpression(final ExpressionOperatorParameter parameters) {
+    StringBuilder sb = new StringBuilder();
+    for (int columnIdx : getReferencedColumns()) {
+      String arrayType = getArrayTypeName(parameters.getSchema().getColumnType(columnIdx));
+      sb.append("final ").append(arrayType).append(' ').append(COLUMN_PREFIX).append(columnIdx).append(" = (").append(
+          arrayType).append(") ").append(COLUMNS).append('[').append(columnIdx).append("];\n");
+    }
+    String outputType = getArrayTypeName(getOutputType(parameters));
+    sb.append("final ").append(outputType).append(" output = (").append(outputType).append(") ").append(RESULT)
+        .append(";\n");
+    sb.append("for (int ").append(ROW).append(" = 0; ").append(ROW).append(" < ").append(NUM_TUPLES).append("; ++")
+        .append(ROW).append(") {\n");
+    sb.append("  output[").append(ROW).append("] = ").append(
+        rootExpressionOperator.getJavaString(parameters.forBatchEvaluation())).append(";\n");
+    sb.append("}\n");
+    return sb.toString();
+  }
+
+  /**
+   * @param type a Myria type
+   * @return the name of the Java array type that holds values of this type.
+   */
+  private static String getArrayTypeName(final Type type) {
+    return type.toJavaType().getCanonicalName() + "[]";
+  }
+
+  /**
+   * An expression can be evaluated a batch at a time when it does not access the state and its Java form is generated
+   * from the expression tree.
+   *
+   * @return true if {@link #getJavaBatchExpression(ExpressionOperatorParameter)} can be used for this expression
+   */
+  public boolean isBatchEvaluable() {
+    return javaExpression == null && !hasOperator(StateExpression.class);
+  }
+
+  /**
+   * @return the indices of the input columns that this expression reads, in ascending order.
+   */
+  public int[] getReferencedColumns() {
+    SortedSet<Integer> columns = Sets.newTreeSet();
+    LinkedList<ExpressionOperator> ops = Lists.newLinkedList();
+    ops.add(getRootExpressionOperator());
+    while (!ops.isEmpty()) {
+      final ExpressionOperator op = ops.pop();
+      if (op instanceof VariableExpression) {
+        columns.add(((VariableExpression) op).getColumnIdx());
+      }
+      ops.addAll(op.getChildren());
+    }
+    return Ints.toArray(columns);
+  }
+
   /**
    * @param parameters parameters that are needed to determine the output type
    * @return the type of the output
@@ -42,6 +42,16 @@ public class VariableExpression extends ZeroaryExpression {
 
   @Override
   public String getJavaString(final ExpressionOperatorParameter parameters) {
+    if (parameters.isBatchEvaluation()) {
+      String variable = parameters.getColumnVariable(columnIdx);
+      if (variable != null) {
+        // We are fused with the operators that produce the input, which hold this column in a local variable.
+        return variable;
+      }
+      // We generate an access into the array holding this column.
+      return new StringBuilder(Expression.COLUMN_PREFIX).append(columnIdx).append('[').append(Expression.ROW).append(
+          ']').toString();
+    }
     // We generate a variable access into the tuple buffer.
     return new StringBuilder(Expression.TB).append(".get").append(getOutputType(parameters).getName()).append(
         "(").append(columnIdx).append(", ").append(Expression.ROW).append(")").toString();
@@ -0,0 +1,20 @@
+package edu.washington.escience.myria.expression.evaluate;
+
+import edu.washington.escience.myria.expression.Expression;
+
+/**
+ * Interface for evaluating janino expressions over a whole batch of tuples at a time.
+ */
+public interface BatchEvalInterface {
+  /**
+   * The interface for applying expressions to a batch. The input columns are passed as arrays of their Java type, see
+   * {@link Expression#getJavaBatchExpression}.
+   *
+   * @param columns the input columns as arrays, indexed by column. Columns that the expression does not read may be
+   *          null.
+   * @param numTuples the number of tuples in the batch.
+   * @param result an array of the output type with at least <code>numTuples</code> elements that the results are
+   *          written to
+   */
+  void evaluate(final Object[] columns, final int numTuples, final Object result);
+}
@@ -1,6 +1,7 @@
 package edu.washington.escience.myria.expression.evaluate;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.BitSet;
 
 import org.codehaus.commons.compiler.CompilerFactoryFactory;
 import org.codehaus.commons.compiler.IExpressionEvaluator;
@@ -34,12 +35,26 @@ public class BooleanEvaluator extends Evaluator {
   }
 
   /**
-   * Compiles the {@link #javaExpression}.
+   * Compiles the {@link #javaExpression}. Expressions that do not need state are compiled to evaluate a whole batch at a
+   * time, all other expressions to evaluate one row at a time.
    *
    * @throws DbException compilation failed
    */
   @Override
   public void compile() throws DbException {
+    if (canEvaluateBatch()) {
+      compileBatch();
+    } else {
+      compileRow();
+    }
+  }
+
+  /**
+   * Compiles the {@link #javaExpression} to evaluate one row at a time.
+   *
+   * @throws DbException compilation failed
+   */
+  private void compileRow() throws DbException {
     try {
       IExpressionEvaluator se = CompilerFactoryFactory.getDefaultCompilerFactory().newExpressionEvaluator();
 
@@ -60,10 +75,42 @@ public class BooleanEvaluator extends Evaluator {
    * @param rowId the row that should be used for input data
    * @return the result from the evaluation
    * @throws InvocationTargetException exception thrown from janino
+   * @throws DbException compilation of the row-at-a-time form failed
    */
-  public boolean eval(final TupleBatch tb, final int rowId) throws InvocationTargetException {
+  public boolean eval(final TupleBatch tb, final int rowId) throws InvocationTargetException, DbException {
+    if (evaluator == null && isBatchCompiled()) {
+      compileRow();
+    }
     Preconditions.checkArgument(evaluator != null,
         "Call compile first or copy the data if it is the same in the input.");
     return evaluator.evaluate(tb, rowId);
   }
+
+  /**
+   * Evaluates the expression over all tuples of the batch, a batch at a time if it was compiled that way.
+   *
+   * @param tb a tuple batch
+   * @return the rows of the batch for which the expression is true
+   * @throws InvocationTargetException exception thrown from janino
+   * @throws DbException compilation of the row-at-a-time form failed
+   */
+  public BitSet evalBatch(final TupleBatch tb) throws InvocationTargetException, DbException {
+    final int numTuples = tb.numTuples();
+    BitSet bits = new BitSet(numTuples);
+    if (isBatchCompiled()) {
+      boolean[] valid = (boolean[]) evaluateBatch(tb);
+      for (int rowIdx = 0; rowIdx < numTuples; ++rowIdx) {
+        if (valid[rowIdx]) {
+          bits.set(rowIdx);
+        }
+      }
+      return bits;
+    }
+    for (int rowIdx = 0; rowIdx < numTuples; ++rowIdx) {
+      if (eval(tb, rowIdx)) {
+        bits.set(rowIdx);
+      }
+    }
+    return bits;
+  }
 }
@@ -1,14 +1,20 @@
 package edu.washington.escience.myria.expression.evaluate;
 
+import org.codehaus.commons.compiler.CompilerFactoryFactory;
+import org.codehaus.commons.compiler.IScriptEvaluator;
+
 import com.google.common.base.Preconditions;
 
 import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.builder.ColumnFactory;
 import edu.washington.escience.myria.expression.Expression;
 import edu.washington.escience.myria.expression.ExpressionOperator;
 import edu.washington.escience.myria.expression.StateExpression;
 import edu.washington.escience.myria.expression.VariableExpression;
+import edu.washington.escience.myria.storage.TupleBatch;
 
 /**
  * Compile and evaluate expressions.
@@ -29,6 +35,16 @@ public abstract class Evaluator {
    */
   private final boolean needsState;
 
+  /**
+   * Evaluator that evaluates the expression a batch at a time, if compiled.
+   */
+  private BatchEvalInterface batchEvaluator;
+
+  /**
+   * The input columns read by the expression.
+   */
+  private int[] batchColumns;
+
   /**
    * @param expression the expression to be evaluated
    * @param parameters parameters that are passed to the expression
@@ -133,4 +149,56 @@ public abstract class Evaluator {
   public boolean needsState() {
     return needsState;
   }
+
+  /**
+   * @return true if the expression can be compiled to evaluate a whole batch at a time
+   */
+  public boolean canEvaluateBatch() {
+    return !needsState() && getExpression().isBatchEvaluable();
+  }
+
+  /**
+   * Compiles the expression into a loop over a whole batch, see {@link Expression#getJavaBatchExpression}.
+   *
+   * @throws DbException compilation failed
+   */
+  protected void compileBatch() throws DbException {
+    Preconditions.checkArgument(canEvaluateBatch(), "This expression cannot be evaluated a batch at a time.");
+    String script = getExpression().getJavaBatchExpression(parameters);
+    try {
+      IScriptEvaluator se = CompilerFactoryFactory.getDefaultCompilerFactory().newScriptEvaluator();
+      se.setDefaultImports(MyriaConstants.DEFAULT_JANINO_IMPORTS);
+      batchEvaluator =
+          (BatchEvalInterface) se.createFastEvaluator(script, BatchEvalInterface.class, new String[] {
+              Expression.COLUMNS, Expression.NUM_TUPLES, Expression.RESULT });
+    } catch (Exception e) {
+      throw new DbException("Error when compiling expression: " + script, e);
+    }
+    batchColumns = getExpression().getReferencedColumns();
+  }
+
+  /**
+   * @return true if the expression has been compiled to evaluate a whole batch at a time
+   */
+  public boolean isBatchCompiled() {
+    return batchEvaluator != null;
+  }
+
+  /**
+   * Evaluates the expression over all tuples of the batch using the {@link #batchEvaluator}.
+   *
+   * @param tb the tuples to be input to this expression
+   * @return an array of the Java type of the output type holding the result for each tuple
+   */
+  protected Object evaluateBatch(final TupleBatch tb) {
+    Preconditions.checkArgument(batchEvaluator != null, "Call compileBatch first.");
+    final int numTuples = tb.numTuples();
+    Object[] columns = new Object[tb.numColumns()];
+    for (int columnIdx : batchColumns) {
+      columns[columnIdx] = tb.getDataColumns().get(columnIdx).asArray();
+    }
+    Object result = ColumnFactory.allocateArray(getOutputType(), numTuples);
+    batchEvaluator.evaluate(columns, numTuples, result);
+    return result;
+  }
 }
@@ -12,6 +12,10 @@ public class ExpressionOperatorParameter {
   private final Schema stateSchema;
   /** The id of the worker that is running the expression. */
   private final Integer workerID;
+  /** True if the expression is generated to evaluate a whole batch at a time. */
+  private final boolean batchEvaluation;
+  /** The Java expressions that read the input columns in fused code, or null to read them from the column arrays. */
+  private final String[] columnVariables;
 
   /**
    * Simple constructor.
@@ -20,6 +24,8 @@ public class ExpressionOperatorParameter {
     schema = null;
     stateSchema = null;
     workerID = null;
+    batchEvaluation = false;
+    columnVariables = null;
   }
 
   /**
@@ -29,6 +35,8 @@ public class ExpressionOperatorParameter {
     this.schema = schema;
     stateSchema = null;
     workerID = null;
+    batchEvaluation = false;
+    columnVariables = null;
   }
 
   /**
@@ -39,6 +47,8 @@ public class ExpressionOperatorParameter {
     this.schema = schema;
     this.stateSchema = stateSchema;
     workerID = null;
+    batchEvaluation = false;
+    columnVariables = null;
   }
 
   /**
@@ -49,6 +59,8 @@ public class ExpressionOperatorParameter {
     this.schema = schema;
     stateSchema = null;
     this.workerID = workerID;
+    batchEvaluation = false;
+    columnVariables = null;
   }
 
   /**
@@ -60,6 +72,49 @@ public class ExpressionOperatorParameter {
     this.schema = schema;
     this.stateSchema = stateSchema;
     this.workerID = workerID;
+    batchEvaluation = false;
+    columnVariables = null;
+  }
+
+  /**
+   * @param schema the input schema
+   * @param stateSchema the schema of the state
+   * @param workerID id of the worker that is running the expression
+   * @param batchEvaluation true if the expression is generated to evaluate a whole batch at a time
+   * @param columnVariables the Java expressions that read the input columns in fused code, or null
+   */
+  private ExpressionOperatorParameter(final Schema schema, final Schema stateSchema, final Integer workerID,
+      final boolean batchEvaluation, final String[] columnVariables) {
+    this.schema = schema;
+    this.stateSchema = stateSchema;
+    this.workerID = workerID;
+    this.batchEvaluation = batchEvaluation;
+    this.columnVariables = columnVariables;
+  }
+
+  /**
+   * @return a copy of these parameters that generates code reading input columns from primitive arrays, one batch at a
+   *         time.
+   */
+  public ExpressionOperatorParameter forBatchEvaluation() {
+    return new ExpressionOperatorParameter(schema, stateSchema, workerID, true, null);
+  }
+
+  /**
+   * @param inputSchema the input schema
+   * @return a copy of these parameters for an expression whose input has the given schema.
+   */
+  public ExpressionOperatorParameter withSchema(final Schema inputSchema) {
+    return new ExpressionOperatorParameter(inputSchema, stateSchema, workerID, batchEvaluation, columnVariables);
+  }
+
+  /**
+   * @param inputVariables the Java expressions that read each input column for the current row
+   * @return a copy of these parameters that generates code for an operator in a chain of fused operators, which reads
+   *         its input columns from the given Java expressions.
+   */
+  public ExpressionOperatorParameter forFusedEvaluation(final String[] inputVariables) {
+    return new ExpressionOperatorParameter(schema, stateSchema, workerID, true, inputVariables);
   }
 
   /**
@@ -82,4 +137,22 @@ public class ExpressionOperatorParameter {
   public int getWorkerId() {
     return workerID;
   }
+
+  /**
+   * @return true if the expression is generated to evaluate a whole batch at a time
+   */
+  public boolean isBatchEvaluation() {
+    return batchEvaluation;
+  }
+
+  /**
+   * @param columnIdx the index of an input column
+   * @return the Java expression that reads the input column in fused code, or null if it is read from its array
+   */
+  public String getColumnVariable(final int columnIdx) {
+    if (columnVariables == null) {
+      return null;
+    }
+    return columnVariables[columnIdx];
+  }
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+package edu.washington.escience.myria.expression.evaluate;
+
+/**
+ * Interface for evaluating a chain of fused filters and applies over a whole batch of tuples at a time.
+ */
+public interface FusedEvalInterface {
+  /**
+   * The interface for applying a chain of fused filters and applies to a batch. The input columns are passed as arrays
+   * of their Java type, like in {@link BatchEvalInterface}.
+   *
+   * @param columns the input columns as arrays, indexed by column. Columns that the chain does not read may be null.
+   * @param numTuples the number of tuples in the batch.
+   * @param outputs one array of the output type per output column, each with at least <code>numTuples</code>
+   *          elements, that the rows which pass all filters are written to.
+   * @return the number of rows written to the outputs.
+   */
+  int evaluate(final Object[] columns, final int numTuples, final Object[] outputs);
+}
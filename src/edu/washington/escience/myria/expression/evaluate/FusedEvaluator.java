@@ -0,0 +1,415 @@
+package edu.washington.escience.myria.expression.evaluate;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SortedSet;
+
+import org.codehaus.commons.compiler.CompilerFactoryFactory;
+import org.codehaus.commons.compiler.IScriptEvaluator;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.builder.ColumnFactory;
+import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.expression.VariableExpression;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * Evaluates a chain of filters and applies in one pass over each batch. The chain is compiled into a single loop that
+ * tests the predicates of the filters and computes the expressions of the applies row by row, holding the values of
+ * intermediate columns in local variables, and writes the rows that pass all filters straight into the arrays of the
+ * output columns. If the chain cannot be compiled that way, each filter and apply is evaluated on its own, like in
+ * {@link edu.washington.escience.myria.operator.Filter} and {@link edu.washington.escience.myria.operator.Apply}.
+ */
+public class FusedEvaluator {
+
+  /**
+   * logger for this class.
+   * */
+  private static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(FusedEvaluator.class);
+
+  /** Variable name of the output column arrays. */
+  private static final String OUTPUTS = "outputs";
+  /** Prefix of the variables that hold the output column arrays. */
+  private static final String OUTPUT_PREFIX = "out";
+  /** Prefix of the variables that hold the values of intermediate columns. */
+  private static final String VALUE_PREFIX = "v";
+  /** Variable name of the number of output rows. */
+  private static final String COUNT = "count";
+
+  /**
+   * A filter or an apply in a chain of fused operators.
+   */
+  public static final class Stage implements Serializable {
+    /** Required for Java serialization. */
+    private static final long serialVersionUID = 1L;
+
+    /** The predicate of a filter, or null for an apply. */
+    private final Expression predicate;
+    /** The expressions that create the output of an apply, or null for a filter. */
+    private final ImmutableList<Expression> emitExpressions;
+
+    /**
+     * @param predicate the predicate of a filter, or null for an apply
+     * @param emitExpressions the expressions that create the output of an apply, or null for a filter
+     */
+    private Stage(final Expression predicate, final ImmutableList<Expression> emitExpressions) {
+      this.predicate = predicate;
+      this.emitExpressions = emitExpressions;
+    }
+
+    /**
+     * @param predicate the predicate by which to filter tuples
+     * @return a filter stage
+     */
+    public static Stage filter(final Expression predicate) {
+      return new Stage(Preconditions.checkNotNull(predicate, "predicate"), null);
+    }
+
+    /**
+     * @param emitExpressions the expressions that create the output
+     * @return an apply stage
+     */
+    public static Stage apply(final List<Expression> emitExpressions) {
+      Preconditions.checkArgument(emitExpressions != null && !emitExpressions.isEmpty(),
+          "an apply must have some expressions");
+      return new Stage(null, ImmutableList.copyOf(emitExpressions));
+    }
+
+    /**
+     * @return true if this stage is a filter, false if it is an apply
+     */
+    public boolean isFilter() {
+      return predicate != null;
+    }
+
+    /**
+     * @return the predicate of a filter
+     */
+    public Expression getPredicate() {
+      return predicate;
+    }
+
+    /**
+     * @return the expressions that create the output of an apply
+     */
+    public ImmutableList<Expression> getEmitExpressions() {
+      return emitExpressions;
+    }
+
+    /**
+     * @return the expressions of this stage
+     */
+    private List<Expression> getExpressions() {
+      if (isFilter()) {
+        return ImmutableList.of(predicate);
+      }
+      return emitExpressions;
+    }
+
+    /**
+     * @return true if the expressions of this stage can be compiled into the loop of a chain of fused operators
+     */
+    public boolean isFusable() {
+      for (Expression expr : getExpressions()) {
+        if (!expr.isBatchEvaluable()) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /** The chain of filters and applies, from the input to the output. */
+  private final ImmutableList<Stage> stages;
+  /** Parameters passed for creating the java expressions, with the schema of the input of the chain. */
+  private final ExpressionOperatorParameter parameters;
+  /** The schema of the input of each stage, followed by the schema of the output of the chain. */
+  private final Schema[] schemas;
+
+  /** Evaluator that evaluates the whole chain, if compiled. */
+  private FusedEvalInterface evaluator;
+  /** The input columns read by the compiled chain. */
+  private int[] inputColumns;
+  /** The evaluators of the predicates of the filters when the chain is not compiled, indexed by stage. */
+  private BooleanEvaluator[] predicateEvaluators;
+  /** The evaluators of the expressions of the applies when the chain is not compiled, indexed by stage. */
+  private List<List<GenericEvaluator>> emitEvaluators;
+
+  /**
+   * @param stages the chain of filters and applies, from the input to the output
+   * @param parameters parameters that are passed to the expressions, with the schema of the input of the chain
+   */
+  public FusedEvaluator(final List<Stage> stages, final ExpressionOperatorParameter parameters) {
+    Preconditions.checkArgument(stages != null && !stages.isEmpty(), "the chain must have some operators");
+    this.stages = ImmutableList.copyOf(stages);
+    this.parameters = Preconditions.checkNotNull(parameters, "parameters");
+    schemas = new Schema[stages.size() + 1];
+    schemas[0] = Preconditions.checkNotNull(parameters.getSchema(), "ExpressionOperatorParameter input schema");
+    for (int i = 0; i < stages.size(); ++i) {
+      Stage stage = stages.get(i);
+      if (stage.isFilter()) {
+        schemas[i + 1] = schemas[i];
+        continue;
+      }
+      ImmutableList.Builder<Type> typesBuilder = ImmutableList.builder();
+      ImmutableList.Builder<String> namesBuilder = ImmutableList.builder();
+      for (Expression expr : stage.getEmitExpressions()) {
+        typesBuilder.add(expr.getOutputType(new ExpressionOperatorParameter(schemas[i])));
+        namesBuilder.add(expr.getOutputName());
+      }
+      schemas[i + 1] = new Schema(typesBuilder.build(), namesBuilder.build());
+    }
+  }
+
+  /**
+   * @return the schema of the output of the chain
+   */
+  public Schema getOutputSchema() {
+    return schemas[schemas.length - 1];
+  }
+
+  /**
+   * Compiles the chain into a single loop if all of its expressions can be evaluated a batch at a time, or else each
+   * filter and apply on its own.
+   *
+   * @throws DbException compilation failed
+   */
+  public void compile() throws DbException {
+    boolean fusable = true;
+    for (Stage stage : stages) {
+      fusable = fusable && stage.isFusable();
+    }
+    if (fusable) {
+      String script = getJavaScript();
+      try {
+        IScriptEvaluator se = CompilerFactoryFactory.getDefaultCompilerFactory().newScriptEvaluator();
+        se.setDefaultImports(MyriaConstants.DEFAULT_JANINO_IMPORTS);
+        evaluator =
+            (FusedEvalInterface) se.createFastEvaluator(script, FusedEvalInterface.class, new String[] {
+                Expression.COLUMNS, Expression.NUM_TUPLES, OUTPUTS });
+        return;
+      } catch (Exception e) {
+        LOGGER.warn("Error when compiling fused operators, evaluating them one at a time instead: " + script, e);
+      }
+    }
+    compileStages();
+  }
+
+  /**
+   * Compiles each filter and apply on its own.
+   *
+   * @throws DbException compilation failed
+   */
+  private void compileStages() throws DbException {
+    predicateEvaluators = new BooleanEvaluator[stages.size()];
+    emitEvaluators = new ArrayList<List<GenericEvaluator>>(stages.size());
+    for (int i = 0; i < stages.size(); ++i) {
+      Stage stage = stages.get(i);
+      ExpressionOperatorParameter stageParameters = parameters.withSchema(schemas[i]);
+      if (stage.isFilter()) {
+        BooleanEvaluator predicateEvaluator = new BooleanEvaluator(stage.getPredicate(), stageParameters);
+        if (predicateEvaluator.needsCompiling()) {
+          predicateEvaluator.compile();
+        }
+        predicateEvaluators[i] = predicateEvaluator;
+        emitEvaluators.add(null);
+        continue;
+      }
+      List<GenericEvaluator> evaluators = new ArrayList<GenericEvaluator>(stage.getEmitExpressions().size());
+      for (Expression expr : stage.getEmitExpressions()) {
+        GenericEvaluator emitEvaluator;
+        if (expr.isConstant()) {
+          emitEvaluator = new ConstantEvaluator(expr, stageParameters);
+        } else {
+          emitEvaluator = new GenericEvaluator(expr, stageParameters);
+        }
+        if (emitEvaluator.needsCompiling()) {
+          emitEvaluator.compile();
+        }
+        Preconditions.checkArgument(!emitEvaluator.needsState());
+        evaluators.add(emitEvaluator);
+      }
+      emitEvaluators.add(evaluators);
+    }
+  }
+
+  /**
+   * @return true if the chain has been compiled into a single loop
+   */
+  public boolean isFused() {
+    return evaluator != null;
+  }
+
+  /**
+   * Generates a Java script that evaluates the whole chain over a batch, see {@link FusedEvalInterface}. The script
+   * loops over the rows of the batch. For each row, it tests the predicate of each filter, continuing with the next row
+   * if it fails, and assigns the result of each expression of each apply to a local variable that the expressions of
+   * the stages above read. It then appends the output columns of the row to the output arrays.
+   *
+   * @return the Java form of the chain as a loop over a batch.
+   */
+  public String getJavaScript() {
+    StringBuilder loop = new StringBuilder();
+    SortedSet<Integer> readColumns = Sets.newTreeSet();
+    /* The Java expression that reads each column of the input of the current stage, and the input column it is. */
+    String[] variables = new String[schemas[0].numColumns()];
+    int[] origins = new int[variables.length];
+    for (int columnIdx = 0; columnIdx < variables.length; ++columnIdx) {
+      variables[columnIdx] =
+          new StringBuilder(Expression.COLUMN_PREFIX).append(columnIdx).append('[').append(Expression.ROW).append(']')
+              .toString();
+      origins[columnIdx] = columnIdx;
+    }
+
+    for (int i = 0; i < stages.size(); ++i) {
+      Stage stage = stages.get(i);
+      ExpressionOperatorParameter stageParameters = parameters.withSchema(schemas[i]).forFusedEvaluation(variables);
+      for (Expression expr : stage.getExpressions()) {
+        for (int columnIdx : expr.getReferencedColumns()) {
+          if (origins[columnIdx] >= 0) {
+            readColumns.add(origins[columnIdx]);
+          }
+        }
+      }
+      if (stage.isFilter()) {
+        loop.append("  if (!(").append(stage.getPredicate().getRootExpressionOperator().getJavaString(stageParameters))
+            .append(")) {\n    continue;\n  }\n");
+        continue;
+      }
+      ImmutableList<Expression> emitExpressions = stage.getEmitExpressions();
+      String[] emitVariables = new String[emitExpressions.size()];
+      int[] emitOrigins = new int[emitExpressions.size()];
+      for (int j = 0; j < emitExpressions.size(); ++j) {
+        Expression expr = emitExpressions.get(j);
+        if (expr.getRootExpressionOperator() instanceof VariableExpression) {
+          /* Just a copy of a column of the input, keep reading it from where it is. */
+          int columnIdx = ((VariableExpression) expr.getRootExpressionOperator()).getColumnIdx();
+          emitVariables[j] = variables[columnIdx];
+          emitOrigins[j] = origins[columnIdx];
+          continue;
+        }
+        emitVariables[j] = new StringBuilder(VALUE_PREFIX).append(i).append('_').append(j).toString();
+        emitOrigins[j] = -1;
+        loop.append("  final ").append(schemas[i + 1].getColumnType(j).toJavaType().getCanonicalName()).append(' ')
+            .append(emitVariables[j]).append(" = ").append(
+                expr.getRootExpressionOperator().getJavaString(stageParameters)).append(";\n");
+      }
+      variables = emitVariables;
+      origins = emitOrigins;
+    }
+
+    for (int columnIdx = 0; columnIdx < variables.length; ++columnIdx) {
+      if (origins[columnIdx] >= 0) {
+        readColumns.add(origins[columnIdx]);
+      }
+      loop.append("  ").append(OUTPUT_PREFIX).append(columnIdx).append('[').append(COUNT).append("] = ").append(
+          variables[columnIdx]).append(";\n");
+    }
+
+    StringBuilder sb = new StringBuilder();
+    for (int columnIdx : readColumns) {
+      String arrayType = getArrayTypeName(schemas[0].getColumnType(columnIdx));
+      sb.append("final ").append(arrayType).append(' ').append(Expression.COLUMN_PREFIX).append(columnIdx).append(
+          " = (").append(arrayType).append(") ").append(Expression.COLUMNS).append('[').append(columnIdx).append(
+          "];\n");
+    }
+    Schema outputSchema = getOutputSchema();
+    for (int columnIdx = 0; columnIdx < outputSchema.numColumns(); ++columnIdx) {
+      String arrayType = getArrayTypeName(outputSchema.getColumnType(columnIdx));
+      sb.append("final ").append(arrayType).append(' ').append(OUTPUT_PREFIX).append(columnIdx).append(" = (").append(
+          arrayType).append(") ").append(OUTPUTS).append('[').append(columnIdx).append("];\n");
+    }
+    sb.append("int ").append(COUNT).append(" = 0;\n");
+    sb.append("for (int ").append(Expression.ROW).append(" = 0; ").append(Expression.ROW).append(" < ").append(
+        Expression.NUM_TUPLES).append("; ++").append(Expression.ROW).append(") {\n");
+    sb.append(loop);
+    sb.append("  ++").append(COUNT).append(";\n");
+    sb.append("}\n");
+    sb.append("return ").append(COUNT).append(";\n");
+    inputColumns = Ints.toArray(readColumns);
+    return sb.toString();
+  }
+
+  /**
+   * @param type a Myria type
+   * @return the name of the Java array type that holds values of this type.
+   */
+  private static String getArrayTypeName(final Type type) {
+    return type.toJavaType().getCanonicalName() + "[]";
+  }
+
+  /**
+   * Evaluates the chain over all tuples of the batch.
+   *
+   * @param tb the tuples to be input to the chain
+   * @return the output of the chain, or null if no tuple passes the filters
+   * @throws InvocationTargetException exception thrown from janino
+   * @throws DbException compilation of the row-at-a-time form of an expression failed
+   */
+  public TupleBatch evaluate(final TupleBatch tb) throws InvocationTargetException, DbException {
+    if (evaluator == null) {
+      return evaluateStages(tb);
+    }
+    final int numTuples = tb.numTuples();
+    Object[] columns = new Object[tb.numColumns()];
+    for (int columnIdx : inputColumns) {
+      columns[columnIdx] = tb.getDataColumns().get(columnIdx).asArray();
+    }
+    Schema outputSchema = getOutputSchema();
+    Object[] outputs = new Object[outputSchema.numColumns()];
+    for (int columnIdx = 0; columnIdx < outputs.length; ++columnIdx) {
+      outputs[columnIdx] = ColumnFactory.allocateArray(outputSchema.getColumnType(columnIdx), numTuples);
+    }
+    final int count = evaluator.evaluate(columns, numTuples, outputs);
+    if (count == 0) {
+      return null;
+    }
+    List<Column<?>> output = Lists.newArrayListWithCapacity(outputs.length);
+    for (int columnIdx = 0; columnIdx < outputs.length; ++columnIdx) {
+      output.add(ColumnFactory.columnFromArray(outputSchema.getColumnType(columnIdx), outputs[columnIdx], count));
+    }
+    return new TupleBatch(outputSchema, output);
+  }
+
+  /**
+   * Evaluates each filter and apply of the chain on its own.
+   *
+   * @param input the tuples to be input to the chain
+   * @return the output of the chain, or null if no tuple passes the filters
+   * @throws InvocationTargetException exception thrown from janino
+   * @throws DbException compilation of the row-at-a-time form of an expression failed
+   */
+  private TupleBatch evaluateStages(final TupleBatch input) throws InvocationTargetException, DbException {
+    Preconditions.checkState(emitEvaluators != null, "Call compile first.");
+    TupleBatch tb = input;
+    for (int i = 0; i < stages.size(); ++i) {
+      if (stages.get(i).isFilter()) {
+        BitSet bits = predicateEvaluators[i].evalBatch(tb);
+        if (bits.cardinality() == 0) {
+          return null;
+        }
+        tb = tb.filter(bits);
+        continue;
+      }
+      List<Column<?>> output = Lists.newArrayListWithCapacity(emitEvaluators.get(i).size());
+      for (GenericEvaluator emitEvaluator : emitEvaluators.get(i)) {
+        output.add(emitEvaluator.evaluateColumn(tb));
+      }
+      tb = new TupleBatch(schemas[i + 1], output);
+    }
+    return tb;
+  }
+}
@@ -49,7 +49,8 @@ public class GenericEvaluator extends Evaluator {
   }
 
   /**
-   * Compiles the {@link #javaExpression}.
+   * Compiles the {@link #javaExpression}. Expressions that do not need state are compiled to evaluate a whole batch at a
+   * time, all other expressions to evaluate one row at a time.
    *
    * @throws DbException compilation failed
    */
@@ -58,6 +59,19 @@ public class GenericEvaluator extends Evaluator {
     Preconditions.checkArgument(needsCompiling() || (getStateSchema() != null),
         "This expression does not need to be compiled.");
 
+    if (canEvaluateBatch()) {
+      compileBatch();
+    } else {
+      compileRow();
+    }
+  }
+
+  /**
+   * Compiles the {@link #javaExpression} to evaluate one row at a time.
+   *
+   * @throws DbException compilation failed
+   */
+  private void compileRow() throws DbException {
     String javaExpression = getJavaExpression();
     IExpressionEvaluator se;
     try {
@@ -89,9 +103,13 @@ public class GenericEvaluator extends Evaluator {
    * @param result the column that the result should be appended to
    * @param state additional state that affects the computation
    * @throws InvocationTargetException exception thrown from janino
+   * @throws DbException compilation of the row-at-a-time form failed
    */
   public void eval(final ReadableTable tb, final int rowIdx, final WritableColumn result, final ReadableTable state)
-      throws InvocationTargetException {
+      throws InvocationTargetException, DbException {
+    if (evaluator == null && isBatchCompiled()) {
+      compileRow();
+    }
     Preconditions.checkArgument(evaluator != null,
         "Call compile first or copy the data if it is the same in the input.");
     try {
@@ -117,8 +135,9 @@ public class GenericEvaluator extends Evaluator {
    * @param tb the tuples to be input to this expression
    * @return a column containing the result of evaluating this expression on the entire TupleBatch
    * @throws InvocationTargetException exception thrown from janino
+   * @throws DbException compilation of the row-at-a-time form failed
    */
-  public Column<?> evaluateColumn(final TupleBatch tb) throws InvocationTargetException {
+  public Column<?> evaluateColumn(final TupleBatch tb) throws InvocationTargetException, DbException {
     ExpressionOperator op = getExpression().getRootExpressionOperator();
     /* This expression just copies an input column. */
     if (isCopyFromInput()) {
@@ -127,6 +146,10 @@ public class GenericEvaluator extends Evaluator {
 
     Type type = getOutputType();
 
+    if (isBatchCompiled()) {
+      return ColumnFactory.columnFromArray(type, evaluateBatch(tb), tb.numTuples());
+    }
+
     ColumnBuilder<?> ret = ColumnFactory.allocateColumn(type);
     for (int row = 0; row < tb.numTuples(); ++row) {
       /** We already have an object, so we're not using the wrong version of put. Remove the warning. */
@@ -69,7 +69,7 @@ public class BinaryFileScan extends LeafOperator {
   protected final TupleBatch fetchNextReady() throws DbException {
     boolean building = false;
     try {
-      while (buffer.numTuples() < TupleBatch.BATCH_SIZE) {
+      while (!buffer.hasFilledTB()) {
         for (int count = 0; count < schema.numColumns(); ++count) {
           switch (schema.getColumnType(count)) {
             case DOUBLE_TYPE:
@@ -117,7 +117,7 @@ public class BinaryFileScan extends LeafOperator {
 
   @Override
   protected final void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
-    buffer = new TupleBatchBuffer(getSchema());
+    buffer = new TupleBatchBuffer(getSchema(), false, getBatchSizeBytes());
     InputStream inputStream;
     try {
       inputStream = new BufferedInputStream(source.getInputStream());
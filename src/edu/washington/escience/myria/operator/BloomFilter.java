@@ -0,0 +1,172 @@
+package edu.washington.escience.myria.operator;
+
+import java.util.BitSet;
+import java.util.Objects;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.ReadableTable;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.HashScheme;
+import edu.washington.escience.myria.util.HashUtils;
+
+/**
+ * A Bloom filter over the keys of tuples, i.e., the values of some of their columns, that hashes each key with the
+ * first few of the seeded hash functions of {@link HashUtils}. The filters that are built on different workers with the
+ * same number of bits and of hash functions can be merged, through their set words in the {@link #WORDS_SCHEMA}.
+ * 
+ * A key that was added is always reported as possibly contained. A key that was not is reported as possibly contained
+ * with a probability that grows with the number of added keys per bit.
+ */
+public final class BloomFilter {
+
+  /** The schema of the set words of a filter: the index of a word, and its bits. */
+  public static final Schema WORDS_SCHEMA = new Schema(ImmutableList.of(Type.INT_TYPE, Type.LONG_TYPE), ImmutableList
+      .of("word", "bits"));
+
+  /** The number of hash functions of the filters of plans that do not choose one. */
+  public static final int DEFAULT_NUM_HASHES = 4;
+
+  /** The bits of the filter. */
+  private final long[] words;
+  /** The number of bits of the filter. */
+  private final long numBits;
+  /** The number of hash functions. */
+  private final int numHashes;
+  /** The hash codes of the rows of a batch, reused across batches. */
+  private int[] hashes;
+
+  /**
+   * @param numBits the number of bits of the filter, rounded up to a multiple of 64.
+   * @param numHashes the number of hash functions, at most {@link HashUtils#NUM_OF_HASHFUNCTIONS}.
+   */
+  public BloomFilter(final long numBits, final int numHashes) {
+    Preconditions.checkArgument(numBits > 0, "numBits must be positive");
+    Preconditions.checkArgument(numBits <= (long) Integer.MAX_VALUE * Long.SIZE, "numBits must be at most %s",
+        (long) Integer.MAX_VALUE * Long.SIZE);
+    Preconditions.checkArgument(numHashes > 0 && numHashes <= HashUtils.NUM_OF_HASHFUNCTIONS,
+        "numHashes must be between 1 and %s", HashUtils.NUM_OF_HASHFUNCTIONS);
+    words = new long[(int) ((numBits + Long.SIZE - 1) / Long.SIZE)];
+    this.numBits = (long) words.length * Long.SIZE;
+    this.numHashes = numHashes;
+    hashes = null;
+  }
+
+  /**
+   * @param expectedKeys the number of distinct keys expected to be added.
+   * @param falsePositiveRate the wanted probability that a key that was not added is reported as possibly contained.
+   * @return the number of bits of a filter with the wanted false positive rate.
+   */
+  public static long optimalNumBits(final long expectedKeys, final double falsePositiveRate) {
+    Preconditions.checkArgument(expectedKeys > 0, "expectedKeys must be positive");
+    Preconditions.checkArgument(falsePositiveRate > 0 && falsePositiveRate < 1, "falsePositiveRate must be in (0, 1)");
+    return (long) Math.ceil(-expectedKeys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+  }
+
+  /**
+   * @param numBits the number of bits of a filter.
+   * @param expectedKeys the number of distinct keys expected to be added.
+   * @return the number of hash functions that minimizes the false positive rate, up to the number that are available.
+   */
+  public static int optimalNumHashes(final long numBits, final long expectedKeys) {
+    Preconditions.checkArgument(numBits > 0, "numBits must be positive");
+    Preconditions.checkArgument(expectedKeys > 0, "expectedKeys must be positive");
+    long k = Math.round((double) numBits / expectedKeys * Math.log(2));
+    return (int) Math.max(1, Math.min(HashUtils.NUM_OF_HASHFUNCTIONS, k));
+  }
+
+  /**
+   * @return the number of bits of the filter.
+   */
+  public long getNumBits() {
+    return numBits;
+  }
+
+  /**
+   * @return the number of hash functions.
+   */
+  public int getNumHashes() {
+    return numHashes;
+  }
+
+  /**
+   * Add the keys of all the rows of a table.
+   * 
+   * @param table the tuples.
+   * @param keyColumns the columns of the keys.
+   */
+  public void add(final ReadableTable table, final int[] keyColumns) {
+    Objects.requireNonNull(table, "table");
+    final int numTuples = table.numTuples();
+    for (int seed = 0; seed < numHashes; ++seed) {
+      hashes = HashUtils.hashSubRows(table, keyColumns, seed, HashScheme.CURRENT, hashes);
+      for (int row = 0; row < numTuples; ++row) {
+        final long bit = bitIndex(hashes[row]);
+        words[(int) (bit / Long.SIZE)] |= 1L << bit;
+      }
+    }
+  }
+
+  /**
+   * @param table the tuples.
+   * @param keyColumns the columns of the keys.
+   * @return the rows of the table whose keys may have been added.
+   */
+  public BitSet mightContain(final ReadableTable table, final int[] keyColumns) {
+    Objects.requireNonNull(table, "table");
+    final int numTuples = table.numTuples();
+    final BitSet ret = new BitSet(numTuples);
+    ret.set(0, numTuples);
+    for (int seed = 0; seed < numHashes && !ret.isEmpty(); ++seed) {
+      hashes = HashUtils.hashSubRows(table, keyColumns, seed, HashScheme.CURRENT, hashes);
+      for (int row = ret.nextSetBit(0); row >= 0; row = ret.nextSetBit(row + 1)) {
+        final long bit = bitIndex(hashes[row]);
+        if ((words[(int) (bit / Long.SIZE)] & (1L << bit)) == 0) {
+          ret.clear(row);
+        }
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Merge the set words of another filter, read from a table in the {@link #WORDS_SCHEMA}.
+   * 
+   * @param table the set words of another filter with the same number of bits.
+   */
+  public void merge(final ReadableTable table) {
+    Objects.requireNonNull(table, "table");
+    Preconditions.checkArgument(table.getSchema().getColumnTypes().equals(WORDS_SCHEMA.getColumnTypes()),
+        "a filter is merged from its words, not from %s", table.getSchema());
+    for (int row = 0; row < table.numTuples(); ++row) {
+      final int word = table.getInt(0, row);
+      Preconditions.checkElementIndex(word, words.length, "word of a filter with a different number of bits");
+      words[word] |= table.getLong(1, row);
+    }
+  }
+
+  /**
+   * Write the set words of the filter, to be merged into the filters of other workers.
+   * 
+   * @param out the buffer, in the {@link #WORDS_SCHEMA}.
+   */
+  public void writeWords(final TupleBatchBuffer out) {
+    for (int word = 0; word < words.length; ++word) {
+      if (words[word] != 0) {
+        out.putInt(0, word);
+        out.putLong(1, words[word]);
+      }
+    }
+  }
+
+  /**
+   * @param hash a hash code of a key.
+   * @return the index of the bit of the filter that the hash code maps to.
+   */
+  private long bitIndex(final int hash) {
+    return (hash & 0xffffffffL) % numBits;
+  }
+}
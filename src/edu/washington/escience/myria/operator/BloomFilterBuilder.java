@@ -0,0 +1,88 @@
+package edu.washington.escience.myria.operator;
+
+import java.util.Objects;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+/**
+ * Builds a {@link BloomFilter} over the join keys of the build side of a join, and outputs its set words once the
+ * child is done. The words are meant to be broadcast to all the workers, where a {@link BloomFilterSemiJoin} merges
+ * the words of all the workers and drops the probe tuples that cannot join before they are shuffled.
+ */
+public final class BloomFilterBuilder extends UnaryOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The columns of the join keys. */
+  private final int[] keyColumns;
+  /** The number of bits of the filter. */
+  private final long numBits;
+  /** The number of hash functions of the filter. */
+  private final int numHashes;
+
+  /** The filter. */
+  private transient BloomFilter filter;
+  /** The set words of the filter, once the child is done. */
+  private transient TupleBatchBuffer words;
+
+  /**
+   * @param child the build side of the join.
+   * @param keyColumns the columns of the join keys.
+   * @param numBits the number of bits of the filter.
+   * @param numHashes the number of hash functions of the filter.
+   */
+  public BloomFilterBuilder(final Operator child, final int[] keyColumns, final long numBits, final int numHashes) {
+    super(child);
+    Objects.requireNonNull(keyColumns, "keyColumns");
+    Preconditions.checkArgument(keyColumns.length > 0, "BloomFilterBuilder requires at least 1 key column");
+    this.keyColumns = keyColumns.clone();
+    this.numBits = numBits;
+    this.numHashes = numHashes;
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    final Operator child = getChild();
+    if (words != null) {
+      return words.popAny();
+    }
+    for (TupleBatch tb = child.nextReady(); tb != null; tb = child.nextReady()) {
+      filter.add(tb, keyColumns);
+    }
+    if (child.eos()) {
+      words = new TupleBatchBuffer(getSchema(), false, getBatchSizeBytes());
+      filter.writeWords(words);
+      filter = null;
+      return words.popAny();
+    }
+    return null;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    Schema childSchema = getChild().getSchema();
+    for (int column : keyColumns) {
+      Preconditions.checkElementIndex(column, childSchema.numColumns(), "key column");
+    }
+    filter = new BloomFilter(numBits, numHashes);
+    words = null;
+  }
+
+  @Override
+  protected void cleanup() throws DbException {
+    filter = null;
+    words = null;
+  }
+
+  @Override
+  public Schema generateSchema() {
+    return BloomFilter.WORDS_SCHEMA;
+  }
+}
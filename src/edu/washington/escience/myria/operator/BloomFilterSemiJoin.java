@@ -0,0 +1,101 @@
+package edu.washington.escience.myria.operator;
+
+import java.util.BitSet;
+import java.util.Objects;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * Drops the tuples of the probe side of a join whose join keys are not in a {@link BloomFilter} of the keys of the
+ * build side, so that fewer of them are shuffled to the join. The left child gives the set words of the filters that
+ * {@link BloomFilterBuilder}s built on all the workers, usually through a broadcast, and is drained first. The right
+ * child gives the probe tuples, which are output if their keys may be in the merged filter.
+ * 
+ * Both the builders and this operator must have the same number of bits and of hash functions, and the build and probe
+ * keys must be of the same types, as for the join itself.
+ */
+public final class BloomFilterSemiJoin extends BinaryOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The columns of the join keys of the probe tuples. */
+  private final int[] probeColumns;
+  /** The number of bits of the filter. */
+  private final long numBits;
+  /** The number of hash functions of the filter. */
+  private final int numHashes;
+
+  /** The merged filter. */
+  private transient BloomFilter filter;
+
+  /**
+   * @param filterWords the set words of the filters built on all the workers.
+   * @param probe the probe side of the join.
+   * @param probeColumns the columns of the join keys of the probe tuples.
+   * @param numBits the number of bits of the filter.
+   * @param numHashes the number of hash functions of the filter.
+   */
+  public BloomFilterSemiJoin(final Operator filterWords, final Operator probe, final int[] probeColumns,
+      final long numBits, final int numHashes) {
+    super(filterWords, probe);
+    Objects.requireNonNull(probeColumns, "probeColumns");
+    Preconditions.checkArgument(probeColumns.length > 0, "BloomFilterSemiJoin requires at least 1 key column");
+    this.probeColumns = probeColumns.clone();
+    this.numBits = numBits;
+    this.numHashes = numHashes;
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    final Operator left = getLeft();
+    while (!left.eos()) {
+      TupleBatch words = left.nextReady();
+      if (words == null) {
+        /* The filter is not complete until all the words have arrived. */
+        return null;
+      }
+      filter.merge(words);
+    }
+
+    final Operator right = getRight();
+    for (TupleBatch tb = right.nextReady(); tb != null; tb = right.nextReady()) {
+      BitSet matches = filter.mightContain(tb, probeColumns);
+      if (matches.cardinality() == 0) {
+        continue;
+      }
+      return tb.filter(matches);
+    }
+    return null;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    Preconditions.checkState(getLeft().getSchema().getColumnTypes().equals(
+        BloomFilter.WORDS_SCHEMA.getColumnTypes()), "The left child of BloomFilterSemiJoin must give filter words");
+    Schema probeSchema = getRight().getSchema();
+    for (int column : probeColumns) {
+      Preconditions.checkElementIndex(column, probeSchema.numColumns(), "probe column");
+    }
+    filter = new BloomFilter(numBits, numHashes);
+  }
+
+  @Override
+  protected void cleanup() throws DbException {
+    filter = null;
+  }
+
+  @Override
+  public Schema generateSchema() {
+    Operator right = getRight();
+    if (right == null) {
+      return null;
+    }
+    return right.getSchema();
+  }
+}
@@ -163,7 +163,8 @@ public class DbInsert extends AbstractDbInsert {
     Objects.requireNonNull(tempRelationKey, "tempRelationKey");
     Preconditions.checkArgument(tupleBatch.getSchema().equals(getSchema()),
         "tuple schema %s does not match operator schema %s", tupleBatch.getSchema(), getSchema());
-    accessMethod.tupleBatchInsert(tempRelationKey, tupleBatch);
+    /* Inserts read every row, so materialize a filtered batch once rather than on every access. */
+    accessMethod.tupleBatchInsert(tempRelationKey, tupleBatch.compact());
   }
 
   @Override
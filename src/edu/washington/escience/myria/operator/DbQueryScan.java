@@ -175,7 +175,7 @@ public class DbQueryScan extends LeafOperator implements DbReader {
     if (tuples == null) {
       tuples =
           AccessMethod.of(connectionInfo.getDbms(), connectionInfo, true).tupleBatchIteratorFromQuery(baseSQL,
-              outputSchema);
+              outputSchema, getBatchSizeBytes());
     }
     if (tuples.hasNext()) {
       final TupleBatch tb = tuples.next();
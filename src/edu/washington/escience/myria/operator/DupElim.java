@@ -42,6 +42,11 @@ public final class DupElim extends StreamingState {
    * */
   private transient MutableTupleBuffer uniqueTuples = null;
 
+  /**
+   * The first tuple of the delta in {@link #uniqueTuples}.
+   * */
+  private transient int deltaStart;
+
   @Override
   public void cleanup() {
     uniqueTuples = null;
@@ -63,9 +68,10 @@ public final class DupElim extends StreamingState {
     checkUniqueness.inputTB = tb;
     List<? extends Column<?>> columns = tb.getDataColumns();
     final BitSet toRemove = new BitSet(numTuples);
+    hashCodes = HashUtils.hashRows(tb, hashCodes);
     for (int i = 0; i < numTuples; ++i) {
       final int nextIndex = uniqueTuples.numTuples();
-      final int cntHashCode = HashUtils.hashRow(tb, i);
+      final int cntHashCode = hashCodes[i];
       IntArrayList tupleIndexList = uniqueTupleIndices.get(cntHashCode);
       checkUniqueness.row = i;
       checkUniqueness.unique = true;
@@ -98,6 +104,7 @@ public final class DupElim extends StreamingState {
     uniqueTupleIndices = new IntObjectHashMap<>();
     uniqueTuples = new MutableTupleBuffer(getSchema());
     checkUniqueness = new CheckUniquenessProcedure();
+    deltaStart = 0;
   }
 
   @Override
@@ -114,6 +121,18 @@ public final class DupElim extends StreamingState {
     return uniqueTuples.getAll();
   }
 
+  @Override
+  public void startDelta() {
+    deltaStart = uniqueTuples.numTuples();
+  }
+
+  @Override
+  public List<TupleBatch> exportDelta() {
+    List<TupleBatch> delta = copyDelta(uniqueTuples, null, deltaStart).getAll();
+    startDelta();
+    return delta;
+  }
+
   @Override
   public int numTuples() {
     if (uniqueTuples == null) {
@@ -127,6 +146,9 @@ public final class DupElim extends StreamingState {
    * */
   private transient CheckUniquenessProcedure checkUniqueness;
 
+  /** The hash codes of the rows of the batch being processed, reused across batches. */
+  private transient int[] hashCodes;
+
   /**
    * Traverse through the list of tuples with the same hash code.
    * */
@@ -168,7 +168,7 @@ public final class FileScan extends LeafOperator {
     /* Let's assume that the scanner always starts at the beginning of a line. */
     long lineNumberBegin = lineNumber;
 
-    while ((buffer.numTuples() < TupleBatch.BATCH_SIZE)) {
+    while (!buffer.hasFilledTB()) {
       lineNumber++;
       if (parser.isClosed()) {
         break;
@@ -236,7 +236,8 @@ public final class FileScan extends LeafOperator {
 
   @Override
   protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
-    buffer = new TupleBatchBuffer(getSchema());
+    /* Files such as logs often repeat a few strings in a column, which are stored once per dictionary. */
+    buffer = new TupleBatchBuffer(getSchema(), true, getBatchSizeBytes());
     try {
       parser =
           new CSVParser(new BufferedReader(new InputStreamReader(source.getInputStream())), CSVFormat.newFormat(
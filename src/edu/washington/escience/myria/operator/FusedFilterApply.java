@@ -0,0 +1,97 @@
+package edu.washington.escience.myria.operator;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.expression.evaluate.ExpressionOperatorParameter;
+import edu.washington.escience.myria.expression.evaluate.FusedEvaluator;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * A chain of {@link Filter} and {@link Apply} operators fused into one operator. Instead of materializing a new
+ * {@link TupleBatch} after every filter and apply, the chain is compiled into a single pass over each input batch that
+ * writes the output columns directly, see {@link FusedEvaluator}.
+ */
+public final class FusedFilterApply extends UnaryOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The fused filters and applies, from the child to the output.
+   */
+  private final ImmutableList<FusedEvaluator.Stage> stages;
+
+  /**
+   * Evaluator that evaluates {@link #stages}.
+   */
+  private FusedEvaluator evaluator;
+
+  /**
+   * @param child the child operator.
+   * @param stages the fused filters and applies, from the child to the output.
+   */
+  public FusedFilterApply(final Operator child, final List<FusedEvaluator.Stage> stages) {
+    super(child);
+    Preconditions.checkArgument(stages != null && !stages.isEmpty(), "the chain must have some operators");
+    this.stages = ImmutableList.copyOf(stages);
+  }
+
+  /**
+   * @return the fused filters and applies, from the child to the output.
+   */
+  public ImmutableList<FusedEvaluator.Stage> getStages() {
+    return stages;
+  }
+
+  /**
+   * @return true if the chain has been compiled into a single pass, false if each filter and apply is evaluated on its
+   *         own.
+   */
+  public boolean isFused() {
+    return evaluator != null && evaluator.isFused();
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    Operator child = getChild();
+    for (TupleBatch tb = child.nextReady(); tb != null; tb = child.nextReady()) {
+      TupleBatch result;
+      try {
+        result = evaluator.evaluate(tb);
+      } catch (InvocationTargetException e) {
+        throw new DbException(e);
+      }
+      if (result != null) {
+        return result;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    Schema inputSchema = getChild().getSchema();
+    evaluator = new FusedEvaluator(stages, new ExpressionOperatorParameter(inputSchema, getNodeID()));
+    evaluator.compile();
+  }
+
+  @Override
+  public Schema generateSchema() {
+    Operator child = getChild();
+    if (child == null) {
+      return null;
+    }
+    Schema inputSchema = child.getSchema();
+    if (inputSchema == null) {
+      return null;
+    }
+    return new FusedEvaluator(stages, new ExpressionOperatorParameter(inputSchema)).getOutputSchema();
+  }
+}
@@ -1,8 +1,6 @@
 package edu.washington.escience.myria.operator;
 
-import java.util.ArrayList;
 import java.util.LinkedList;
-import java.util.List;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
@@ -84,14 +82,11 @@ public class IDBController extends Operator implements StreamingStateful {
   /** The state. */
   private StreamingState state;
 
-  /** the buffered tuples came from the previous iteration. */
-  private ArrayList<TupleBatch> bufferedIterTBs;
-
   /** delta tuples of the previous iteration. */
 
   private LinkedList<TupleBatch> deltaTuples;
 
-  /** if the buffer of previous iteration tuples has been cleaned. */
+  /** if the delta of the previous iteration has been exported. */
   private boolean bufferCleared = false;
 
   /** if this IDBController uses sync mode. */
@@ -191,9 +186,9 @@ public class IDBController extends Operator implements StreamingStateful {
    * @throws DbException if any error occurs
    */
   public final TupleBatch fetchNextReadySync() throws DbException {
-    // 1. keeps all the incoming tuples in a buffer without passing them through the streaming state.
+    // 1. updates the streaming state with the incoming tuples.
     // 2. receives an EOI from iterationInput.
-    // 3. generating delta tuples of the previous iteration by passing buffered tuples through the streaming state.
+    // 3. exports the delta tuples of the previous iteration from the state.
     // 4. feeding the delta tuples to the downstream operator as input.
 
     TupleBatch tb;
@@ -208,26 +203,18 @@ public class IDBController extends Operator implements StreamingStateful {
       return null;
     }
 
+    /* semi-naive: the state holds the IDB and the delta of this iteration, so the input needs no buffering. */
     while ((tb = iterationInput.nextReady()) != null) {
-      bufferedIterTBs.add(tb);
+      state.update(tb);
     }
     if (iterationInput.eoi() && !bufferCleared) {
-      StreamingState tmpState = state.newInstanceFromMyself();
-      tmpState.setAttachedOperator(this);
-      tmpState.init(null);
-      for (TupleBatch tb1 : bufferedIterTBs) {
-        tmpState.update(tb1);
-      }
-      List<TupleBatch> tmp = tmpState.exportState();
       Preconditions.checkArgument(deltaTuples.size() == 0);
-      for (TupleBatch tb1 : tmp) {
-        tb = state.update(tb1);
-        if (tb != null) {
-          deltaTuples.add(tb);
+      for (TupleBatch tb1 : state.exportDelta()) {
+        if (tb1.numTuples() > 0) {
+          deltaTuples.add(tb1);
         }
       }
       emptyDelta = (deltaTuples.size() == 0);
-      bufferedIterTBs.clear();
       bufferCleared = true;
     }
     if (deltaTuples.size() > 0) {
@@ -244,6 +231,10 @@ public class IDBController extends Operator implements StreamingStateful {
         setEOI(true);
         emptyDelta = true;
         initialInputEnded = true;
+        if (sync) {
+          /* the first delta is made of the tuples of the first iteration. */
+          state.startDelta();
+        }
       }
     } else {
       try {
@@ -308,7 +299,6 @@ public class IDBController extends Operator implements StreamingStateful {
     eoiReportChannel = resourceManager.startAStream(controllerWorkerID, controllerOpID);
     state.init(execEnvVars);
     deltaTuples = new LinkedList<TupleBatch>();
-    bufferedIterTBs = new ArrayList<TupleBatch>();
   }
 
   @Override
@@ -72,7 +72,7 @@ public final class InMemoryOrderBy extends UnaryOperator {
   @Override
   protected void init(final ImmutableMap<String, Object> execEnvVars) throws Exception {
     Preconditions.checkArgument(sortColumns.length == ascending.length);
-    ans = new TupleBatchBuffer(getSchema());
+    ans = new TupleBatchBuffer(getSchema(), false, getBatchSizeBytes());
     table = new MutableTupleBuffer(getSchema());
   }
 
@@ -43,6 +43,11 @@ public final class KeepAndSortOnMinValue extends StreamingState {
    * */
   private transient MutableTupleBuffer uniqueTuples = null;
 
+  /**
+   * The first tuple of the delta in {@link #uniqueTuples}.
+   * */
+  private transient int deltaStart;
+
   /** column indices of the key. */
   private final int[] keyColIndices;
   /** column indices of the value. */
@@ -102,9 +107,10 @@ public final class KeepAndSortOnMinValue extends StreamingState {
     doReplace.inputTB = tb;
     final List<? extends Column<?>> columns = tb.getDataColumns();
     final BitSet toRemove = new BitSet(numTuples);
+    hashCodes = HashUtils.hashSubRows(tb, keyColIndices, hashCodes);
     for (int i = 0; i < numTuples; ++i) {
       final int nextIndex = uniqueTuples.numTuples();
-      final int cntHashCode = HashUtils.hashSubRow(tb, keyColIndices, i);
+      final int cntHashCode = hashCodes[i];
       IntArrayList tupleIndexList = uniqueTupleIndices.get(cntHashCode);
       doReplace.unique = true;
       if (tupleIndexList == null) {
@@ -139,6 +145,7 @@ public final class KeepAndSortOnMinValue extends StreamingState {
     uniqueTupleIndices = new IntObjectHashMap<>();
     uniqueTuples = new MutableTupleBuffer(getSchema());
     doReplace = new ReplaceProcedure();
+    deltaStart = 0;
   }
 
   @Override
@@ -162,6 +169,9 @@ public final class KeepAndSortOnMinValue extends StreamingState {
    * */
   private transient ReplaceProcedure doReplace;
 
+  /** The hash codes of the rows of the batch being processed, reused across batches. */
+  private transient int[] hashCodes;
+
   /**
    * Traverse through the list of tuples with the same hash code.
    * */
@@ -271,6 +281,25 @@ public final class KeepAndSortOnMinValue extends StreamingState {
     }
   }
 
+  @Override
+  public void startDelta() {
+    deltaStart = uniqueTuples.numTuples();
+  }
+
+  /**
+   * The delta holds the tuples of the keys added since it was started, sorted on their values like the exported state.
+   * As in {@link #update(TupleBatch)}, a smaller value of an existing key is kept but not output.
+   * 
+   * @return the tuples of the keys added since the delta was started.
+   */
+  @Override
+  public List<TupleBatch> exportDelta() {
+    MutableTupleBuffer delta = copyDelta(uniqueTuples, null, deltaStart);
+    sortOn(delta, valueColIndex);
+    startDelta();
+    return delta.getAll();
+  }
+
   @Override
   public int numTuples() {
     return uniqueTuples.numTuples();
@@ -43,6 +43,16 @@ public final class KeepMinValue extends StreamingState {
    * */
   private transient MutableTupleBuffer uniqueTuples = null;
 
+  /**
+   * The first tuple of the delta in {@link #uniqueTuples}.
+   * */
+  private transient int deltaStart;
+
+  /**
+   * The tuples before {@link #deltaStart} whose value has been replaced since the delta was started.
+   * */
+  private transient BitSet replacedTuples;
+
   /** column indices of the key. */
   private final int[] keyColIndices;
   /** column indices of the value. */
@@ -102,9 +112,10 @@ public final class KeepMinValue extends StreamingState {
     doReplace.inputTB = tb;
     final List<? extends Column<?>> columns = tb.getDataColumns();
     final BitSet toRemove = new BitSet(numTuples);
+    hashCodes = HashUtils.hashSubRows(tb, keyColIndices, hashCodes);
     for (int i = 0; i < numTuples; ++i) {
       final int nextIndex = uniqueTuples.numTuples();
-      final int cntHashCode = HashUtils.hashSubRow(tb, keyColIndices, i);
+      final int cntHashCode = hashCodes[i];
       IntArrayList tupleIndexList = uniqueTupleIndices.get(cntHashCode);
       doReplace.unique = true;
       if (tupleIndexList == null) {
@@ -139,6 +150,8 @@ public final class KeepMinValue extends StreamingState {
     uniqueTupleIndices = new IntObjectHashMap<>();
     uniqueTuples = new MutableTupleBuffer(getSchema());
     doReplace = new ReplaceProcedure();
+    deltaStart = 0;
+    replacedTuples = new BitSet();
   }
 
   @Override
@@ -160,6 +173,9 @@ public final class KeepMinValue extends StreamingState {
    * */
   private transient ReplaceProcedure doReplace;
 
+  /** The hash codes of the rows of the batch being processed, reused across batches. */
+  private transient int[] hashCodes;
+
   /**
    * Traverse through the list of tuples with the same hash code.
    * */
@@ -188,11 +204,27 @@ public final class KeepMinValue extends StreamingState {
         if (shouldReplace(index, valueColumn, row)) {
           uniqueTuples.replace(valueColIndex, index, valueColumn, row);
           replaced = true;
+          if (index < deltaStart) {
+            replacedTuples.set(index);
+          }
         }
       }
     }
   };
 
+  @Override
+  public void startDelta() {
+    deltaStart = uniqueTuples.numTuples();
+    replacedTuples.clear();
+  }
+
+  @Override
+  public List<TupleBatch> exportDelta() {
+    List<TupleBatch> delta = copyDelta(uniqueTuples, replacedTuples, deltaStart).getAll();
+    startDelta();
+    return delta;
+  }
+
   @Override
   public int numTuples() {
     if (uniqueTuples == null) {
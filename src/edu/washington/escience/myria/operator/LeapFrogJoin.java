@@ -717,7 +717,7 @@ public class LeapFrogJoin extends NAryOperator {
 
     currentDepth = -1;
 
-    ansTBB = new TupleBatchBuffer(getSchema());
+    ansTBB = new TupleBatchBuffer(getSchema(), false, getBatchSizeBytes());
   }
 
   @Override
@@ -191,7 +191,7 @@ public final class Merge extends NAryOperator {
 
     Preconditions.checkArgument(ascending.length == sortedColumns.length);
 
-    ans = new TupleBatchBuffer(getSchema());
+    ans = new TupleBatchBuffer(getSchema(), false, getBatchSizeBytes());
     for (Operator child : getChildren()) {
       Preconditions.checkNotNull(child);
       Preconditions.checkArgument(getSchema().equals(child.getSchema()));
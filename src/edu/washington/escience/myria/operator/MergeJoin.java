@@ -693,6 +693,6 @@ public final class MergeJoin extends BinaryOperator {
     leftBatches = new LinkedList<TupleBatch>();
     rightBatches = new LinkedList<TupleBatch>();
 
-    ans = new TupleBatchBuffer(getSchema());
+    ans = new TupleBatchBuffer(getSchema(), false, getBatchSizeBytes());
   }
 }
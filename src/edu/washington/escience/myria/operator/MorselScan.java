@@ -0,0 +1,60 @@
+package edu.washington.escience.myria.operator;
+
+import java.util.Objects;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * The leaf of each copy of the pipeline of a {@link ParallelPipeline}: outputs the morsels, i.e., the
+ * {@link TupleBatch}es of the child of the {@link ParallelPipeline}, that it hands out to this copy.
+ */
+public final class MorselScan extends LeafOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The schema of the morsels. */
+  private final Schema schema;
+
+  /** The pipeline that hands out the morsels. */
+  private transient ParallelPipeline pipeline;
+
+  /**
+   * @param schema the schema of the morsels, i.e., of the child of the {@link ParallelPipeline}.
+   */
+  public MorselScan(final Schema schema) {
+    this.schema = Objects.requireNonNull(schema, "schema");
+  }
+
+  /**
+   * @param pipeline the pipeline that hands out the morsels.
+   */
+  void setPipeline(final ParallelPipeline pipeline) {
+    this.pipeline = pipeline;
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    Preconditions.checkState(pipeline != null, "%s is not part of a %s", getOpName(),
+        ParallelPipeline.class.getSimpleName());
+    return pipeline.nextMorsel();
+  }
+
+  @Override
+  protected void checkEOSAndEOI() {
+    if (pipeline.isSourceEOS()) {
+      setEOS();
+    } else if (pipeline.isSourceEOI()) {
+      setEOI(true);
+    }
+  }
+
+  @Override
+  protected Schema generateSchema() {
+    return schema;
+  }
+}
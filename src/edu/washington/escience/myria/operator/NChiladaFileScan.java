@@ -285,7 +285,7 @@ public class NChiladaFileScan extends LeafOperator {
     Preconditions
         .checkArgument(starAttributeFilesToDataInput != null, "starAttributeFilesToDataInput has not been set");
     Preconditions.checkArgument(gasAttributeFilesToDataInput != null, "gasAttributeFilesToDataInput has not been set");
-    buffer = new TupleBatchBuffer(getSchema());
+    buffer = new TupleBatchBuffer(getSchema(), false, getBatchSizeBytes());
     initBasedOnParticleType(ParticleType.GAS);
     initBasedOnParticleType(ParticleType.DARK);
     initBasedOnParticleType(ParticleType.STAR);
@@ -423,7 +423,7 @@ public class NChiladaFileScan extends LeafOperator {
         throw new DbException("Invalide pType: " + pType);
     }
     // TODO(leelee): Put 0 for now to replace null values.
-    while (numRows > 0 && buffer.numTuples() < TupleBatch.BATCH_SIZE) {
+    while (numRows > 0 && !buffer.hasFilledTB()) {
       lineNumber++;
       int column = 0;
       // -2 to exclude grp, and type.
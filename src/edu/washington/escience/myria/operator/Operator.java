@@ -7,6 +7,7 @@ import java.util.Objects;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
@@ -15,6 +16,7 @@ import com.google.common.collect.ImmutableSet;
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.MyriaConstants.ProfilingMode;
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.parallel.LocalFragment;
 import edu.washington.escience.myria.parallel.LocalFragmentResourceManager;
@@ -97,6 +99,12 @@ public abstract class Operator implements Serializable {
    */
   private Set<ProfilingMode> profilingMode;
 
+  /**
+   * The estimated number of bytes at which the batches built by this operator are finished, or null to use the budget
+   * of the query.
+   */
+  private Long batchSizeBytes;
+
   /**
    * @return the profilingLogger
    */
@@ -131,10 +139,13 @@ public abstract class Operator implements Serializable {
   public LocalFragment getFragment() {
     if (execEnvVars == null) {
       return null;
-    } else {
-      return ((LocalFragmentResourceManager) execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_FRAGMENT_RESOURCE_MANAGER))
-          .getFragment();
     }
+    LocalFragmentResourceManager lfrm =
+        (LocalFragmentResourceManager) execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_FRAGMENT_RESOURCE_MANAGER);
+    if (lfrm == null) {
+      return null;
+    }
+    return lfrm.getFragment();
   }
 
   /**
@@ -181,6 +192,42 @@ public abstract class Operator implements Serializable {
     return profilingMode;
   }
 
+  /**
+   * @param batchSizeBytes the estimated number of bytes at which the batches built by this operator are finished, or
+   *          null to use the budget of the query.
+   */
+  public void setBatchSizeBytes(@Nullable final Long batchSizeBytes) {
+    Preconditions.checkArgument(batchSizeBytes == null || batchSizeBytes > 0,
+        "the byte budget of a batch must be positive, not %s", batchSizeBytes);
+    this.batchSizeBytes = batchSizeBytes;
+  }
+
+  /**
+   * @return the estimated number of bytes at which the batches built by this operator are finished: the budget of this
+   *         operator if it has one, else the budget of the query if it has one, else the configured budget of the node.
+   */
+  protected final long getBatchSizeBytes() {
+    if (batchSizeBytes != null) {
+      return batchSizeBytes;
+    }
+    if (execEnvVars == null) {
+      return MyriaConstants.BATCH_SIZE_BYTES_DEFAULT_VALUE;
+    }
+    LocalFragmentResourceManager lfrm =
+        (LocalFragmentResourceManager) execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_FRAGMENT_RESOURCE_MANAGER);
+    if (lfrm != null && lfrm.getFragment() != null) {
+      Long queryBatchSizeBytes = lfrm.getFragment().getLocalSubQuery().getBatchSizeBytes();
+      if (queryBatchSizeBytes != null) {
+        return queryBatchSizeBytes;
+      }
+    }
+    Object configured = execEnvVars.get(MyriaSystemConfigKeys.BATCH_SIZE_BYTES);
+    if (configured == null) {
+      return MyriaConstants.BATCH_SIZE_BYTES_DEFAULT_VALUE;
+    }
+    return Long.parseLong(configured.toString());
+  }
+
   /**
    * Closes this iterator.
    * 
@@ -0,0 +1,670 @@
+package edu.washington.escience.myria.operator;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.storage.MutableTupleBuffer;
+import edu.washington.escience.myria.storage.ReadableColumn;
+import edu.washington.escience.myria.storage.ReadableTable;
+import edu.washington.escience.myria.storage.SpillFile;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+/**
+ * Orders tuples, spilling sorted runs to disk if they do not fit in memory.
+ * 
+ * Each sort column is normalized to a <code>long</code> whose signed order is the sort order of the column, so that
+ * the tuples can be sorted by comparing primitive arrays. Only STRING columns are normalized to a prefix of their
+ * value, and are compared in full when the prefixes are equal. The indices of the buffered tuples are merge-sorted in
+ * an <code>int[]</code>.
+ * 
+ * If more than {@link #setMaxTuplesInMemory(long)} tuples are buffered, they are sorted and written to a
+ * {@link SpillFile} as a run. Once the child is exhausted, the runs are merged. If the operator has a limit, only the
+ * first tuples in the sort order are kept, in a heap that never holds more than the limit.
+ */
+public final class OrderBy extends UnaryOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The default maximum number of tuples held in memory. */
+  public static final long DEFAULT_MAX_TUPLES_IN_MEMORY = 100L * TupleBatch.BATCH_SIZE;
+  /** Ranges of at most this many tuples are sorted by insertion sort. */
+  private static final int INSERTION_SORT_THRESHOLD = 16;
+  /** The number of characters of a STRING that fit in a normalized key. */
+  private static final int STRING_PREFIX_LENGTH = 4;
+
+  /** Which columns to sort the tuples by. */
+  private final int[] sortColumns;
+  /** True for each column that should be sorted ascending. */
+  private final boolean[] ascending;
+  /** The maximum number of tuples returned, or null for all of them. */
+  private final Long limit;
+  /** The maximum number of tuples held in memory before a sorted run is spilled. */
+  private long maxTuplesInMemory = DEFAULT_MAX_TUPLES_IN_MEMORY;
+
+  /** Whether each sort column is a STRING column. */
+  private transient boolean[] isString;
+  /** The buffered tuples. */
+  private transient MutableTupleBuffer table;
+  /** The normalized keys of the buffered tuples, one array per sort column. */
+  private transient long[][] tableKeys;
+  /** The buffered tuples in sorted order, or in heap order while the limit heap is being built. */
+  private transient int[] sortedRows;
+  /** The number of buffered tuples already returned. */
+  private transient int outputRow;
+  /** Whether only the first {@link #limit} tuples are kept in a heap. */
+  private transient boolean useLimitHeap;
+  /** The sorted runs written to disk. */
+  private transient List<SpillFile> runs;
+  /** The readers of the runs being merged, ordered by their current tuple. */
+  private transient PriorityQueue<RunCursor> merge;
+  /** The directory in which runs are written, or null for the default temporary-file directory. */
+  private transient String directory;
+  /** Whether all tuples from the child have been consumed and sorted. */
+  private transient boolean sorted;
+  /** The number of tuples returned. */
+  private transient long numReturned;
+  /** Buffers the output. */
+  private transient TupleBatchBuffer ans;
+
+  /**
+   * @param child the source of the tuples.
+   * @param sortColumns the columns that should be ordered by.
+   * @param ascending true for each column that should be sorted ascending.
+   */
+  public OrderBy(final Operator child, final int[] sortColumns, final boolean[] ascending) {
+    this(child, sortColumns, ascending, null);
+  }
+
+  /**
+   * @param child the source of the tuples.
+   * @param sortColumns the columns that should be ordered by.
+   * @param ascending true for each column that should be sorted ascending.
+   * @param limit the maximum number of tuples returned, or null to return all of them.
+   */
+  public OrderBy(final Operator child, final int[] sortColumns, final boolean[] ascending,
+      @Nullable final Long limit) {
+    super(child);
+    Preconditions.checkNotNull(sortColumns, "sortColumns");
+    Preconditions.checkNotNull(ascending, "ascending");
+    Preconditions.checkArgument(sortColumns.length == ascending.length,
+        "sortColumns and ascending must have the same length");
+    Preconditions.checkArgument(limit == null || limit >= 0, "limit must be non-negative");
+    this.sortColumns = sortColumns;
+    this.ascending = ascending;
+    this.limit = limit;
+  }
+
+  /**
+   * Set the maximum number of tuples held in memory. If more tuples are buffered, they are sorted and spilled to disk.
+   * 
+   * @param maxTuplesInMemory the maximum number of tuples held in memory.
+   */
+  public void setMaxTuplesInMemory(final long maxTuplesInMemory) {
+    Preconditions.checkArgument(maxTuplesInMemory > 0, "maxTuplesInMemory must be positive");
+    this.maxTuplesInMemory = maxTuplesInMemory;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    Schema schema = getSchema();
+    isString = new boolean[sortColumns.length];
+    for (int i = 0; i < sortColumns.length; ++i) {
+      isString[i] = schema.getColumnType(sortColumns[i]) == Type.STRING_TYPE;
+    }
+    useLimitHeap = limit != null && limit <= maxTuplesInMemory;
+    runs = new ArrayList<>();
+    ans = new TupleBatchBuffer(schema);
+    sorted = false;
+    numReturned = 0;
+    resetTable();
+
+    directory = null;
+    Object workingDirectory = null;
+    if (execEnvVars != null) {
+      workingDirectory = execEnvVars.get(MyriaSystemConfigKeys.WORKING_DIRECTORY);
+    }
+    if (workingDirectory instanceof String && new File((String) workingDirectory).isDirectory()) {
+      directory = (String) workingDirectory;
+    }
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    if (!sorted) {
+      while (!getChild().eos()) {
+        TupleBatch tb = getChild().nextReady();
+        if (tb != null) {
+          if (useLimitHeap) {
+            addToLimitHeap(tb);
+          } else {
+            addToRun(tb);
+          }
+        } else if (!getChild().eos()) {
+          return null;
+        }
+      }
+      finishInput();
+      sorted = true;
+    }
+
+    if (limit != null && numReturned >= limit) {
+      return null;
+    }
+    if (merge == null) {
+      fillFromTable();
+    } else {
+      fillFromRuns();
+    }
+    TupleBatch tb = ans.popAny();
+    if (tb != null) {
+      numReturned += tb.numTuples();
+      if (limit != null && numReturned > limit) {
+        tb = tb.prefix((int) (tb.numTuples() - (numReturned - limit)));
+        numReturned = limit;
+      }
+    }
+    return tb;
+  }
+
+  /**
+   * Append the tuples in a batch to the current run, spilling the run if it is full.
+   * 
+   * @param tb the batch.
+   * @throws DbException if the run cannot be spilled.
+   */
+  private void addToRun(final TupleBatch tb) throws DbException {
+    long[][] keys = normalize(tb);
+    List<? extends Column<?>> columns = tb.getDataColumns();
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      appendRow(columns, keys, row);
+      if (table.numTuples() >= maxTuplesInMemory) {
+        spillRun();
+      }
+    }
+  }
+
+  /**
+   * Keep the first {@link #limit} tuples seen so far in a max-heap of the buffered tuples, so that the last of them in
+   * sort order is at the root and is replaced when a tuple that sorts before it arrives.
+   * 
+   * @param tb the batch.
+   */
+  private void addToLimitHeap(final TupleBatch tb) {
+    if (limit == 0) {
+      return;
+    }
+    long[][] keys = normalize(tb);
+    List<? extends Column<?>> columns = tb.getDataColumns();
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      int size = table.numTuples();
+      if (size < limit) {
+        appendRow(columns, keys, row);
+        siftUp(size);
+      } else if (compare(keys, tb, row, tableKeys, table, sortedRows[0]) < 0) {
+        int replaced = sortedRows[0];
+        for (int column = 0; column < columns.size(); ++column) {
+          table.replace(column, replaced, columns.get(column), row);
+        }
+        for (int i = 0; i < sortColumns.length; ++i) {
+          tableKeys[i][replaced] = keys[i][row];
+        }
+        siftDown(0, size);
+      }
+    }
+  }
+
+  /**
+   * Append a row to the buffered tuples.
+   * 
+   * @param columns the columns of the row.
+   * @param keys the normalized keys of the batch holding the row.
+   * @param row the row.
+   */
+  private void appendRow(final List<? extends Column<?>> columns, final long[][] keys, final int row) {
+    int index = table.numTuples();
+    if (index == sortedRows.length) {
+      int capacity = sortedRows.length * 2;
+      sortedRows = Arrays.copyOf(sortedRows, capacity);
+      for (int i = 0; i < sortColumns.length; ++i) {
+        tableKeys[i] = Arrays.copyOf(tableKeys[i], capacity);
+      }
+    }
+    for (int column = 0; column < columns.size(); ++column) {
+      table.put(column, columns.get(column), row);
+    }
+    for (int i = 0; i < sortColumns.length; ++i) {
+      tableKeys[i][index] = keys[i][row];
+    }
+    sortedRows[index] = index;
+  }
+
+  /**
+   * The child is exhausted: sort the buffered tuples, and start merging the runs if any were spilled.
+   * 
+   * @throws DbException if the runs cannot be read.
+   */
+  private void finishInput() throws DbException {
+    if (runs.isEmpty()) {
+      sortTable();
+      return;
+    }
+    if (table.numTuples() > 0) {
+      spillRun();
+    }
+    table = null;
+    tableKeys = null;
+    sortedRows = null;
+    merge = new PriorityQueue<>(runs.size(), new Comparator<RunCursor>() {
+      @Override
+      public int compare(final RunCursor left, final RunCursor right) {
+        return OrderBy.this.compare(left.keys, left.tb, left.row, right.keys, right.tb, right.row);
+      }
+    });
+    for (SpillFile run : runs) {
+      RunCursor cursor = new RunCursor(run.openReader());
+      if (cursor.advance()) {
+        merge.add(cursor);
+      } else {
+        cursor.close();
+      }
+    }
+  }
+
+  /**
+   * Sort the buffered tuples, write them to a new run, and start buffering a new run.
+   * 
+   * @throws DbException if the run cannot be written.
+   */
+  private void spillRun() throws DbException {
+    sortTable();
+    SpillFile run = new SpillFile(getSchema(), directory);
+    runs.add(run);
+    TupleBatchBuffer buffer = new TupleBatchBuffer(getSchema());
+    ReadableColumn[] columns = tableColumns();
+    for (int i = 0; i < table.numTuples(); ++i) {
+      putTableRow(buffer, columns, sortedRows[i]);
+      TupleBatch tb = buffer.popFilled();
+      if (tb != null) {
+        run.write(tb);
+      }
+    }
+    TupleBatch tb = buffer.popAny();
+    if (tb != null) {
+      run.write(tb);
+    }
+    resetTable();
+  }
+
+  /**
+   * Empty the buffered tuples.
+   */
+  private void resetTable() {
+    table = new MutableTupleBuffer(getSchema());
+    int capacity = TupleBatch.BATCH_SIZE;
+    if (useLimitHeap) {
+      capacity = (int) Math.max(1, Math.min(limit, capacity));
+    }
+    tableKeys = new long[sortColumns.length][capacity];
+    sortedRows = new int[capacity];
+    outputRow = 0;
+  }
+
+  /**
+   * Sort the indices of the buffered tuples.
+   */
+  private void sortTable() {
+    int n = table.numTuples();
+    for (int i = 0; i < n; ++i) {
+      sortedRows[i] = i;
+    }
+    sortRows(sortedRows, new int[n], 0, n);
+  }
+
+  /**
+   * Stable merge sort of a range of row indices of the buffered tuples.
+   * 
+   * @param rows the row indices.
+   * @param scratch scratch space, at least as long as the range.
+   * @param from the first index of the range.
+   * @param to one past the last index of the range.
+   */
+  private void sortRows(final int[] rows, final int[] scratch, final int from, final int to) {
+    if (to - from <= INSERTION_SORT_THRESHOLD) {
+      for (int i = from + 1; i < to; ++i) {
+        int row = rows[i];
+        int j = i;
+        while (j > from && compareTableRows(row, rows[j - 1]) < 0) {
+          rows[j] = rows[j - 1];
+          --j;
+        }
+        rows[j] = row;
+      }
+      return;
+    }
+    int mid = (from + to) >>> 1;
+    sortRows(rows, scratch, from, mid);
+    sortRows(rows, scratch, mid, to);
+    if (compareTableRows(rows[mid - 1], rows[mid]) <= 0) {
+      return;
+    }
+    System.arraycopy(rows, from, scratch, 0, to - from);
+    int i = 0;
+    int j = mid - from;
+    int end = to - from;
+    int k = from;
+    while (i < mid - from && j < end) {
+      if (compareTableRows(scratch[j], scratch[i]) < 0) {
+        rows[k++] = scratch[j++];
+      } else {
+        rows[k++] = scratch[i++];
+      }
+    }
+    while (i < mid - from) {
+      rows[k++] = scratch[i++];
+    }
+    while (j < end) {
+      rows[k++] = scratch[j++];
+    }
+  }
+
+  /**
+   * Restore the heap property after a row was added at the specified position of the heap.
+   * 
+   * @param position the position.
+   */
+  private void siftUp(final int position) {
+    int child = position;
+    int row = sortedRows[child];
+    while (child > 0) {
+      int parent = (child - 1) >>> 1;
+      if (compareTableRows(sortedRows[parent], row) >= 0) {
+        break;
+      }
+      sortedRows[child] = sortedRows[parent];
+      child = parent;
+    }
+    sortedRows[child] = row;
+  }
+
+  /**
+   * Restore the heap property after the row at the specified position of the heap was replaced.
+   * 
+   * @param position the position.
+   * @param size the number of rows in the heap.
+   */
+  private void siftDown(final int position, final int size) {
+    int parent = position;
+    int row = sortedRows[parent];
+    while (true) {
+      int child = 2 * parent + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && compareTableRows(sortedRows[child + 1], sortedRows[child]) > 0) {
+        ++child;
+      }
+      if (compareTableRows(sortedRows[child], row) <= 0) {
+        break;
+      }
+      sortedRows[parent] = sortedRows[child];
+      parent = child;
+    }
+    sortedRows[parent] = row;
+  }
+
+  /**
+   * Fill the output buffer with the next sorted buffered tuples.
+   */
+  private void fillFromTable() {
+    ReadableColumn[] columns = tableColumns();
+    int n = table.numTuples();
+    while (outputRow < n && ans.numTuples() < TupleBatch.BATCH_SIZE) {
+      putTableRow(ans, columns, sortedRows[outputRow++]);
+    }
+  }
+
+  /**
+   * Fill the output buffer with the next tuples from the merged runs.
+   * 
+   * @throws DbException if the runs cannot be read.
+   */
+  private void fillFromRuns() throws DbException {
+    while (!merge.isEmpty() && ans.numTuples() < TupleBatch.BATCH_SIZE) {
+      RunCursor cursor = merge.poll();
+      ans.put(cursor.tb, cursor.row);
+      if (cursor.advance()) {
+        merge.add(cursor);
+      } else {
+        cursor.close();
+      }
+    }
+  }
+
+  /**
+   * @return views of the columns of the buffered tuples.
+   */
+  private ReadableColumn[] tableColumns() {
+    ReadableColumn[] columns = new ReadableColumn[table.numColumns()];
+    for (int column = 0; column < columns.length; ++column) {
+      columns[column] = table.asColumn(column);
+    }
+    return columns;
+  }
+
+  /**
+   * Append a buffered tuple to a buffer.
+   * 
+   * @param buffer the buffer.
+   * @param columns views of the columns of the buffered tuples.
+   * @param row the row of the buffered tuple.
+   */
+  private void putTableRow(final TupleBatchBuffer buffer, final ReadableColumn[] columns, final int row) {
+    for (int column = 0; column < columns.length; ++column) {
+      buffer.put(column, columns[column], row);
+    }
+  }
+
+  /**
+   * @param tb a batch.
+   * @return the normalized keys of the batch, one array per sort column.
+   */
+  private long[][] normalize(final TupleBatch tb) {
+    long[][] keys = new long[sortColumns.length][tb.numTuples()];
+    for (int i = 0; i < sortColumns.length; ++i) {
+      int column = sortColumns[i];
+      long[] columnKeys = keys[i];
+      switch (getSchema().getColumnType(column)) {
+        case BOOLEAN_TYPE:
+          for (int row = 0; row < columnKeys.length; ++row) {
+            columnKeys[row] = tb.getBoolean(column, row) ? 1 : 0;
+          }
+          break;
+        case DATETIME_TYPE:
+          for (int row = 0; row < columnKeys.length; ++row) {
+            columnKeys[row] = tb.getDateTime(column, row).getMillis();
+          }
+          break;
+        case DOUBLE_TYPE:
+          for (int row = 0; row < columnKeys.length; ++row) {
+            long bits = Double.doubleToLongBits(tb.getDouble(column, row));
+            columnKeys[row] = bits ^ ((bits >> (Long.SIZE - 1)) & Long.MAX_VALUE);
+          }
+          break;
+        case FLOAT_TYPE:
+          for (int row = 0; row < columnKeys.length; ++row) {
+            int bits = Float.floatToIntBits(tb.getFloat(column, row));
+            columnKeys[row] = bits ^ ((bits >> (Integer.SIZE - 1)) & Integer.MAX_VALUE);
+          }
+          break;
+        case INT_TYPE:
+          for (int row = 0; row < columnKeys.length; ++row) {
+            columnKeys[row] = tb.getInt(column, row);
+          }
+          break;
+        case LONG_TYPE:
+          for (int row = 0; row < columnKeys.length; ++row) {
+            columnKeys[row] = tb.getLong(column, row);
+          }
+          break;
+        case STRING_TYPE:
+          for (int row = 0; row < columnKeys.length; ++row) {
+            columnKeys[row] = stringPrefix(tb.getString(column, row));
+          }
+          break;
+      }
+      if (!ascending[i]) {
+        for (int row = 0; row < columnKeys.length; ++row) {
+          columnKeys[row] = ~columnKeys[row];
+        }
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * @param value a string.
+   * @return a key whose signed order is the order of the first {@link #STRING_PREFIX_LENGTH} characters of the string.
+   */
+  private static long stringPrefix(final String value) {
+    long key = 0;
+    for (int i = 0; i < STRING_PREFIX_LENGTH; ++i) {
+      key <<= Character.SIZE;
+      if (i < value.length()) {
+        key |= value.charAt(i);
+      }
+    }
+    return key ^ Long.MIN_VALUE;
+  }
+
+  /**
+   * @param row a buffered tuple.
+   * @param otherRow another buffered tuple.
+   * @return the sort order of the two tuples.
+   */
+  private int compareTableRows(final int row, final int otherRow) {
+    return compare(tableKeys, table, row, tableKeys, table, otherRow);
+  }
+
+  /**
+   * Compare two tuples by their normalized keys, and by their full values if their STRING prefixes are equal.
+   * 
+   * @param keys the normalized keys of the table holding the first tuple.
+   * @param table the table holding the first tuple.
+   * @param row the row of the first tuple.
+   * @param otherKeys the normalized keys of the table holding the second tuple.
+   * @param otherTable the table holding the second tuple.
+   * @param otherRow the row of the second tuple.
+   * @return the sort order of the two tuples.
+   */
+  private int compare(final long[][] keys, final ReadableTable table, final int row, final long[][] otherKeys,
+      final ReadableTable otherTable, final int otherRow) {
+    for (int i = 0; i < sortColumns.length; ++i) {
+      int compared = Long.compare(keys[i][row], otherKeys[i][otherRow]);
+      if (compared == 0 && isString[i]) {
+        compared =
+            Type.compareRaw(table.getString(sortColumns[i], row), otherTable.getString(sortColumns[i], otherRow));
+        if (!ascending[i]) {
+          compared = -compared;
+        }
+      }
+      if (compared != 0) {
+        return compared;
+      }
+    }
+    return 0;
+  }
+
+  @Override
+  protected void cleanup() throws DbException {
+    if (merge != null) {
+      for (RunCursor cursor : merge) {
+        cursor.close();
+      }
+      merge = null;
+    }
+    if (runs != null) {
+      for (SpillFile run : runs) {
+        run.delete();
+      }
+      runs = null;
+    }
+    table = null;
+    tableKeys = null;
+    sortedRows = null;
+    ans = null;
+  }
+
+  @Override
+  public Schema generateSchema() {
+    Operator child = getChild();
+    if (child == null) {
+      return null;
+    }
+    return child.getSchema();
+  }
+
+  /**
+   * The position of a merge in a sorted run.
+   */
+  private final class RunCursor {
+    /** Reads the run. */
+    private final SpillFile.Reader reader;
+    /** The current batch of the run. */
+    private TupleBatch tb;
+    /** The normalized keys of the current batch. */
+    private long[][] keys;
+    /** The current row in the current batch. */
+    private int row;
+
+    /**
+     * @param reader reads the run.
+     */
+    private RunCursor(final SpillFile.Reader reader) {
+      this.reader = reader;
+      row = -1;
+    }
+
+    /**
+     * Move to the next tuple of the run.
+     * 
+     * @return false if the run is exhausted.
+     * @throws DbException if the run cannot be read.
+     */
+    private boolean advance() throws DbException {
+      ++row;
+      while (tb == null || row >= tb.numTuples()) {
+        tb = reader.next();
+        if (tb == null) {
+          return false;
+        }
+        keys = normalize(tb);
+        row = 0;
+      }
+      return true;
+    }
+
+    /**
+     * Stop reading the run.
+     * 
+     * @throws DbException if the run cannot be closed.
+     */
+    private void close() throws DbException {
+      reader.close();
+    }
+  }
+}
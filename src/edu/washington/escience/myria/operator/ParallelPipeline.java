@@ -0,0 +1,331 @@
+package edu.washington.escience.myria.operator;
+
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.lang3.SerializationException;
+import org.apache.commons.lang3.SerializationUtils;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.parallel.LocalFragment;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * Runs a pipeline of operators, e.g., filter, apply and partial aggregate, on several threads within one fragment. The
+ * pipeline is a chain of operators whose leaf is a {@link MorselScan}. The operator runs one copy of the pipeline per
+ * degree of parallelism, each with its own state, e.g., its own hash table. The copies take turns to take the morsels,
+ * i.e., the {@link TupleBatch}es, of the child, so a copy that runs faster than the others processes more of them. The
+ * outputs of the copies are merged in no particular order; pipeline-breaking operators in the copies output partial
+ * results, e.g., a {@link edu.washington.escience.myria.operator.agg.PartialAggregate} whose results are merged by an
+ * aggregate above this operator.
+ * 
+ * Whenever this operator runs out of output, it runs the copies until they run out of input or fill the output queue.
+ * The thread of the fragment runs the copies together with up to degree - 1 threads of the executor of the fragment.
+ * A copy that no other thread has started yet is run by the thread of the fragment, so the fragment never waits for a
+ * busy executor. Only the thread of the fragment pulls the child, into a bounded queue of morsels from which the copies
+ * take, because the child may hold resources that are confined to that thread, e.g., the SQLite connection of a scan.
+ */
+public final class ParallelPipeline extends UnaryOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The number of output batches per copy at which the copies stop to let the parent consume them. */
+  public static final int QUEUED_BATCHES_PER_COPY = 2;
+  /** The number of morsels per copy that the thread of the fragment pulls ahead of the copies. */
+  public static final int QUEUED_MORSELS_PER_COPY = 2;
+
+  /** The pipeline, the first copy. */
+  private final Operator pipeline;
+  /** The number of copies of the pipeline. */
+  private final int degree;
+
+  /** The copies of the pipeline. */
+  private transient Operator[] copies;
+  /** The output of the copies. */
+  private transient LinkedBlockingQueue<TupleBatch> output;
+  /** The morsels pulled from the child that no copy has taken yet. Only the thread of the fragment adds to it. */
+  private transient ArrayBlockingQueue<TupleBatch> morsels;
+  /** If the child has reached EOS. Set after the last morsel is queued. */
+  private transient volatile boolean sourceEOS;
+  /** If the child has reached an EOI. Set after the last morsel before it is queued. */
+  private transient volatile boolean sourceEOI;
+  /** The first failure of a copy during the current round. */
+  private transient AtomicReference<Throwable> failure;
+  /** The number of morsels handed out so far. */
+  private transient volatile long numMorsels;
+
+  /**
+   * @param child the source of the morsels.
+   * @param pipeline the pipeline, a chain of operators whose leaf is a {@link MorselScan}.
+   * @param degree the number of copies of the pipeline that may run at the same time.
+   */
+  public ParallelPipeline(@Nullable final Operator child, final Operator pipeline, final int degree) {
+    super(child);
+    this.pipeline = Objects.requireNonNull(pipeline, "pipeline");
+    Preconditions.checkArgument(degree > 0, "the degree of parallelism must be positive");
+    this.degree = degree;
+    Preconditions.checkArgument(!(pipeline instanceof MorselScan), "the pipeline must have some operators");
+    getMorselScan(pipeline);
+  }
+
+  /**
+   * @param copy a copy of the pipeline.
+   * @return the leaf of the copy.
+   */
+  private static MorselScan getMorselScan(final Operator copy) {
+    Operator op = copy;
+    while (!(op instanceof MorselScan)) {
+      Operator[] children = op.getChildren();
+      Preconditions.checkArgument(children != null && children.length == 1,
+          "the pipeline must be a chain of operators whose leaf is a %s, but %s has %s children",
+          MorselScan.class.getSimpleName(), op.getOpName(), children == null ? 0 : children.length);
+      op = children[0];
+    }
+    return (MorselScan) op;
+  }
+
+  /**
+   * @return the pipeline, the first copy.
+   */
+  public Operator getPipeline() {
+    return pipeline;
+  }
+
+  /**
+   * @return the number of copies of the pipeline that may run at the same time.
+   */
+  public int getDegree() {
+    return degree;
+  }
+
+  /**
+   * @return the number of morsels handed out so far.
+   */
+  public long getNumMorsels() {
+    return numMorsels;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws Exception {
+    copies = new Operator[degree];
+    copies[0] = pipeline;
+    try {
+      for (int i = 1; i < degree; ++i) {
+        copies[i] = SerializationUtils.clone(pipeline);
+      }
+    } catch (SerializationException e) {
+      throw new DbException("unable to copy the pipeline of " + getOpName(), e);
+    }
+    for (Operator copy : copies) {
+      getMorselScan(copy).setPipeline(this);
+      copy.open(execEnvVars);
+    }
+    output = new LinkedBlockingQueue<TupleBatch>();
+    morsels = new ArrayBlockingQueue<TupleBatch>(QUEUED_MORSELS_PER_COPY * degree);
+    sourceEOS = false;
+    sourceEOI = false;
+    failure = new AtomicReference<Throwable>();
+    numMorsels = 0;
+  }
+
+  @Override
+  protected void cleanup() throws Exception {
+    if (output != null) {
+      output.clear();
+    }
+    if (morsels != null) {
+      morsels.clear();
+    }
+    if (copies == null) {
+      return;
+    }
+    Exception errors = null;
+    for (Operator copy : copies) {
+      if (copy == null) {
+        continue;
+      }
+      try {
+        copy.close();
+      } catch (DbException | RuntimeException e) {
+        if (errors == null) {
+          errors = e;
+        } else {
+          errors.addSuppressed(e);
+        }
+      }
+    }
+    copies = null;
+    if (errors != null) {
+      throw errors;
+    }
+  }
+
+  /**
+   * Called by the {@link MorselScan}s of the copies, from any thread.
+   * 
+   * @return the next morsel, or null if none is queued.
+   */
+  TupleBatch nextMorsel() {
+    return morsels.poll();
+  }
+
+  /**
+   * @return if the child has reached EOS and all its morsels are taken.
+   */
+  boolean isSourceEOS() {
+    return sourceEOS && morsels.isEmpty();
+  }
+
+  /**
+   * @return if the child has reached an EOI and all its morsels before the EOI are taken.
+   */
+  boolean isSourceEOI() {
+    return sourceEOI && morsels.isEmpty();
+  }
+
+  /**
+   * Pull the child until the queue of morsels is full or the child has none ready. Called only by the thread of the
+   * fragment.
+   * 
+   * @throws DbException if there is an error pulling the child.
+   */
+  private void pullMorsels() throws DbException {
+    final Operator child = getChild();
+    while (morsels.remainingCapacity() > 0) {
+      TupleBatch tb = child.nextReady();
+      if (tb == null) {
+        sourceEOI = child.eoi();
+        sourceEOS = child.eos();
+        return;
+      }
+      numMorsels++;
+      morsels.add(tb);
+    }
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws Exception {
+    TupleBatch tb = output.poll();
+    while (tb == null) {
+      pullMorsels();
+      if (morsels.isEmpty()) {
+        /* let the copies see the EOS or EOI of the child. */
+        runCopies();
+        return output.poll();
+      }
+      runCopies();
+      tb = output.poll();
+    }
+    return tb;
+  }
+
+  /**
+   * Run all the copies until each of them runs out of input, or until the output queue is full.
+   * 
+   * @throws Exception if a copy fails.
+   */
+  private void runCopies() throws Exception {
+    /* a thread of the executor may start after this round, and even after this operator is closed. */
+    final Operator[] roundCopies = copies;
+    final Thread fragmentThread = Thread.currentThread();
+    final AtomicInteger nextCopy = new AtomicInteger(0);
+    final CountDownLatch done = new CountDownLatch(roundCopies.length);
+    final Runnable share = new Runnable() {
+      @Override
+      public void run() {
+        for (int i = nextCopy.getAndIncrement(); i < roundCopies.length; i = nextCopy.getAndIncrement()) {
+          try {
+            runCopy(roundCopies[i], Thread.currentThread() == fragmentThread);
+          } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+          } finally {
+            done.countDown();
+          }
+        }
+      }
+    };
+
+    LocalFragment fragment = getFragment();
+    if (fragment != null) {
+      for (int i = 1; i < roundCopies.length; ++i) {
+        try {
+          fragment.submitAuxiliaryTask(share);
+        } catch (RejectedExecutionException e) {
+          /* the executor is shutting down, run the rest of the copies in this thread. */
+          break;
+        }
+      }
+    }
+    share.run();
+    /* the copies that this thread has not run have been started by other threads, they finish soon. */
+    Uninterruptibles.awaitUninterruptibly(done);
+
+    Throwable e = failure.getAndSet(null);
+    if (e != null) {
+      Throwables.propagateIfPossible(e, Exception.class);
+      throw new DbException(e);
+    }
+  }
+
+  /**
+   * @param copy a copy of the pipeline.
+   * @param pullsMorsels if the calling thread is the thread of the fragment, which pulls the child.
+   * @throws DbException if the copy fails.
+   */
+  private void runCopy(final Operator copy, final boolean pullsMorsels) throws DbException {
+    while (output.size() < QUEUED_BATCHES_PER_COPY * copies.length && failure.get() == null) {
+      if (pullsMorsels) {
+        pullMorsels();
+      }
+      TupleBatch tb = copy.nextReady();
+      if (tb == null) {
+        return;
+      }
+      output.add(tb);
+    }
+  }
+
+  @Override
+  protected void checkEOSAndEOI() {
+    if (!output.isEmpty()) {
+      return;
+    }
+    boolean allEOS = true;
+    boolean allEOSOrEOI = true;
+    for (Operator copy : copies) {
+      if (!copy.eos()) {
+        allEOS = false;
+        allEOSOrEOI = allEOSOrEOI && copy.eoi();
+      }
+    }
+    if (allEOS) {
+      setEOS();
+    } else if (allEOSOrEOI) {
+      for (Operator copy : copies) {
+        copy.setEOI(false);
+      }
+      getChild().setEOI(false);
+      sourceEOI = false;
+      setEOI(true);
+    }
+  }
+
+  @Override
+  protected Schema generateSchema() {
+    return pipeline.getSchema();
+  }
+}
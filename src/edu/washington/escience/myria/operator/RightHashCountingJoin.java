@@ -75,6 +75,9 @@ public class RightHashCountingJoin extends BinaryOperator {
    * */
   private transient CountingJoinProcedure doCountingJoin;
 
+  /** The hash codes of the rows of the batch being processed, reused across batches. */
+  private transient int[] hashCodes;
+
   /**
    * Traverse through the list of tuples with the same hash code.
    * */
@@ -254,7 +257,7 @@ public class RightHashCountingJoin extends BinaryOperator {
     occurredTimes = new IntArrayList();
     doCountingJoin = new CountingJoinProcedure();
     ans = 0;
-    ansTBB = new TupleBatchBuffer(getSchema());
+    ansTBB = new TupleBatchBuffer(getSchema(), false, getBatchSizeBytes());
   }
 
   /**
@@ -263,8 +266,9 @@ public class RightHashCountingJoin extends BinaryOperator {
    * @param tb the incoming TupleBatch.
    */
   protected void processRightChildTB(final TupleBatch tb) {
+    hashCodes = HashUtils.hashSubRows(tb, rightCompareIndx, hashCodes);
     for (int row = 0; row < tb.numTuples(); ++row) {
-      final int cntHashCode = HashUtils.hashSubRow(tb, rightCompareIndx, row);
+      final int cntHashCode = hashCodes[row];
       // only build hash table on two sides if none of the children is EOS
       updateHashTableAndOccureTimes(tb, row, cntHashCode, hashTable, hashTableIndices, rightCompareIndx, occurredTimes);
     }
@@ -281,12 +285,13 @@ public class RightHashCountingJoin extends BinaryOperator {
     doCountingJoin.inputTB = tb;
     doCountingJoin.occuredTimesOnJoinAgainstChild = occurredTimes;
     doCountingJoin.joinAgainstHashTable = hashTable;
+    hashCodes = HashUtils.hashSubRows(tb, doCountingJoin.inputCmpColumns, hashCodes);
     for (int row = 0; row < tb.numTuples(); ++row) {
 
       /*
        * update number of count of probing the other child's hash table.
        */
-      final int cntHashCode = HashUtils.hashSubRow(tb, doCountingJoin.inputCmpColumns, row);
+      final int cntHashCode = hashCodes[row];
       IntArrayList tuplesWithHashCode = hashTableIndices.get(cntHashCode);
       if (tuplesWithHashCode != null) {
         doCountingJoin.row = row;
@@ -16,6 +16,7 @@ import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
 import edu.washington.escience.myria.storage.MutableTupleBuffer;
+import edu.washington.escience.myria.storage.PrimitiveJoinHashTable;
 import edu.washington.escience.myria.storage.ReadableColumn;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
@@ -27,6 +28,8 @@ import edu.washington.escience.myria.util.MyriaArrayUtils;
  * This is an implementation of unbalanced hash join. This operator only builds hash tables for its right child, thus
  * will begin to output tuples after right child EOS.
  * 
+ * If the hash table grows beyond {@link #setMaxTuplesInMemory(long)} tuples, both children are partitioned to disk and
+ * the partitions are joined pairwise, see {@link SpilledJoinPartitions}.
  */
 public final class RightHashJoin extends BinaryOperator {
   /** Required for Java serialization. */
@@ -51,6 +54,12 @@ public final class RightHashJoin extends BinaryOperator {
    */
   private transient IntObjectHashMap<IntArrayList> rightHashTableIndices;
 
+  /**
+   * A hash table for tuples from child 2 used instead of {@link #rightHashTableIndices} if the join keys are INT and
+   * LONG columns. {Key -> tuple indices with the same key}
+   */
+  private transient PrimitiveJoinHashTable rightKeyHashTable;
+
   /**
    * The buffer holding the valid tuples from right.
    */
@@ -63,6 +72,12 @@ public final class RightHashJoin extends BinaryOperator {
   private final int[] leftAnswerColumns;
   /** Which columns in the right child are to be output. */
   private final int[] rightAnswerColumns;
+  /** The maximum number of tuples in the hash table before the children are spilled to disk. */
+  private long maxTuplesInMemory = Long.MAX_VALUE;
+  /** The number of times the tuples of the children have been partitioned to disk before this join. */
+  private int spillDepth = 0;
+  /** The partitions of the children if they have been spilled to disk, else null. */
+  private transient SpilledJoinPartitions spilled;
 
   /**
    * Traverse through the list of tuples with the same hash code.
@@ -109,6 +124,9 @@ public final class RightHashJoin extends BinaryOperator {
    * */
   private transient JoinProcedure doJoin;
 
+  /** The hash codes of the rows of the batch being processed, reused across batches. */
+  private transient int[] hashCodes;
+
   /**
    * Construct an EquiJoin operator. It returns all columns from both children when the corresponding columns in
    * compareIndx1 and compareIndx2 match.
@@ -268,7 +286,12 @@ public final class RightHashJoin extends BinaryOperator {
   protected void cleanup() throws DbException {
     rightHashTable = null;
     rightHashTableIndices = null;
+    rightKeyHashTable = null;
     ans = null;
+    if (spilled != null) {
+      spilled.close();
+      spilled = null;
+    }
   }
 
   @Override
@@ -332,6 +355,10 @@ public final class RightHashJoin extends BinaryOperator {
       processRightChildTB(rightTB);
     }
 
+    if (spilled != null) {
+      return fetchNextReadySpilled();
+    }
+
     /* The right child is done, let's drain the left child. */
     final Operator left = getLeft();
     while (!left.eos()) {
@@ -364,14 +391,60 @@ public final class RightHashJoin extends BinaryOperator {
     return nexttb;
   }
 
+  /**
+   * Partition the left child to disk, then join the partitions of both children.
+   * 
+   * @return the next batch of results, or null if there are none yet.
+   * @throws DbException if any error occurs.
+   */
+  private TupleBatch fetchNextReadySpilled() throws DbException {
+    final Operator left = getLeft();
+    if (!spilled.isJoining()) {
+      while (!left.eos()) {
+        TupleBatch leftTB = left.nextReady();
+        if (leftTB == null) {
+          break;
+        }
+        spilled.add(leftTB, true);
+      }
+      if (!isEOIReady()) {
+        return null;
+      }
+      spilled.startJoins(!left.eos(), false);
+    }
+    return spilled.nextReady();
+  }
+
+  /**
+   * Set the maximum number of tuples in the hash table. Beyond it, the tuples of both children are partitioned to disk
+   * by the hash of their join keys, and the partitions are joined pairwise.
+   * 
+   * @param maxTuplesInMemory the maximum number of tuples in the hash table.
+   */
+  public void setMaxTuplesInMemory(final long maxTuplesInMemory) {
+    Preconditions.checkArgument(maxTuplesInMemory > 0, "maxTuplesInMemory must be positive");
+    this.maxTuplesInMemory = maxTuplesInMemory;
+  }
+
+  /**
+   * @param spillDepth the number of times the tuples of the children have been partitioned to disk before this join.
+   */
+  void setSpillDepth(final int spillDepth) {
+    this.spillDepth = spillDepth;
+  }
+
   @Override
   public void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
     final Operator right = getRight();
 
-    rightHashTableIndices = new IntObjectHashMap<>();
+    if (PrimitiveJoinHashTable.supports(right.getSchema(), rightCompareIndx)) {
+      rightKeyHashTable = new PrimitiveJoinHashTable(right.getSchema(), rightCompareIndx);
+    } else {
+      rightHashTableIndices = new IntObjectHashMap<>();
+    }
     rightHashTable = new MutableTupleBuffer(right.getSchema());
 
-    ans = new TupleBatchBuffer(getSchema());
+    ans = new TupleBatchBuffer(getSchema(), false, getBatchSizeBytes());
     doJoin = new JoinProcedure();
   }
 
@@ -381,13 +454,24 @@ public final class RightHashJoin extends BinaryOperator {
    * @param tb TupleBatch to be processed.
    */
   protected void processLeftChildTB(final TupleBatch tb) {
+    if (rightKeyHashTable != null) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        for (int index = rightKeyHashTable.firstMatch(tb, leftCompareIndx, row); index >= 0; index =
+            rightKeyHashTable.nextMatch(index)) {
+          addToAns(tb, row, rightHashTable, index);
+        }
+      }
+      return;
+    }
+
     doJoin.joinAgainstHashTable = rightHashTable;
     doJoin.inputCmpColumns = leftCompareIndx;
     doJoin.joinAgainstCmpColumns = rightCompareIndx;
     doJoin.inputTB = tb;
 
+    hashCodes = HashUtils.hashSubRows(tb, doJoin.inputCmpColumns, hashCodes);
     for (int row = 0; row < tb.numTuples(); ++row) {
-      final int cntHashCode = HashUtils.hashSubRow(tb, doJoin.inputCmpColumns, row);
+      final int cntHashCode = hashCodes[row];
       IntArrayList tuplesWithHashCode = rightHashTableIndices.get(cntHashCode);
       if (tuplesWithHashCode != null) {
         doJoin.row = row;
@@ -400,11 +484,45 @@ public final class RightHashJoin extends BinaryOperator {
    * Process the tuples from right child.
    * 
    * @param tb TupleBatch to be processed.
+   * @throws DbException if the tuples cannot be spilled to disk.
+   */
+  protected void processRightChildTB(final TupleBatch tb) throws DbException {
+    if (spilled != null) {
+      spilled.add(tb, false);
+      return;
+    }
+    processRightChildTBInMemory(tb);
+    if (rightHashTable.numTuples() > maxTuplesInMemory && SpilledJoinPartitions.canSpill(spillDepth)) {
+      spilled =
+          new SpilledJoinPartitions(this, leftCompareIndx, rightCompareIndx, leftAnswerColumns, rightAnswerColumns,
+              maxTuplesInMemory, spillDepth);
+      spilled.add(rightHashTable, false);
+      rightHashTable = null;
+      rightHashTableIndices = null;
+      rightKeyHashTable = null;
+    }
+  }
+
+  /**
+   * Add the tuples from right child to the hash table.
+   * 
+   * @param tb TupleBatch to be processed.
    */
-  protected void processRightChildTB(final TupleBatch tb) {
+  private void processRightChildTBInMemory(final TupleBatch tb) {
+    if (rightKeyHashTable != null) {
+      List<? extends Column<?>> inputColumns = tb.getDataColumns();
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        rightKeyHashTable.add(tb, rightCompareIndx, row);
+        for (int column = 0; column < tb.numColumns(); column++) {
+          rightHashTable.put(column, inputColumns.get(column), row);
+        }
+      }
+      return;
+    }
 
+    hashCodes = HashUtils.hashSubRows(tb, rightCompareIndx, hashCodes);
     for (int row = 0; row < tb.numTuples(); ++row) {
-      final int cntHashCode = HashUtils.hashSubRow(tb, rightCompareIndx, row);
+      final int cntHashCode = hashCodes[row];
       // only build hash table on two sides if none of the children is EOS
       addToHashTable(tb, row, rightHashTable, rightHashTableIndices, cntHashCode);
     }
@@ -71,6 +71,15 @@ public abstract class RootOperator extends Operator {
    * */
   protected abstract void childEOI() throws DbException;
 
+  /**
+   * call if the child has no tuples ready but has not meet EOI or EOS, e.g., to flush what this operator holds before
+   * the fragment goes to sleep.
+   * 
+   * @throws DbException if any error occurs.
+   * */
+  protected void childIdle() throws DbException {
+  }
+
   /**
    * Implement coalescing tuples together if necessary.
    * 
@@ -125,6 +134,8 @@ public abstract class RootOperator extends Operator {
       childEOI();
     } else if (child.eos()) {
       childEOS();
+    } else {
+      childIdle();
     }
     return tb;
   }
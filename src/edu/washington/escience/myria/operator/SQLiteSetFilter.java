@@ -111,7 +111,7 @@ public class SQLiteSetFilter extends UnaryOperator {
       }
       tuples =
           SQLiteAccessMethod.tupleBatchIteratorFromQuery(sqliteInfo, sqlTemplate + StringUtils.join(setValues, ",")
-              + ")", outputSchema);
+              + ")", outputSchema, getBatchSizeBytes());
       if (tuples.hasNext()) {
         return tuples.next();
       }
@@ -30,6 +30,11 @@ public final class SimpleAppender extends StreamingState {
    * */
   private transient List<TupleBatch> tuples;
 
+  /**
+   * The first batch of the delta in {@link #tuples}.
+   * */
+  private transient int deltaStart;
+
   @Override
   public void cleanup() {
     tuples = null;
@@ -43,6 +48,7 @@ public final class SimpleAppender extends StreamingState {
   @Override
   public void init(final ImmutableMap<String, Object> execEnvVars) {
     tuples = new ArrayList<TupleBatch>();
+    deltaStart = 0;
   }
 
   @Override
@@ -58,6 +64,18 @@ public final class SimpleAppender extends StreamingState {
     return tuples;
   }
 
+  @Override
+  public void startDelta() {
+    deltaStart = tuples.size();
+  }
+
+  @Override
+  public List<TupleBatch> exportDelta() {
+    List<TupleBatch> delta = new ArrayList<TupleBatch>(tuples.subList(deltaStart, tuples.size()));
+    startDelta();
+    return delta;
+  }
+
   @Override
   public int numTuples() {
     if (tuples == null) {
@@ -0,0 +1,77 @@
+package edu.washington.escience.myria.operator;
+
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.storage.SpillFile;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * Serves the tuples in a sequence of {@link SpillFile}s, one file after the other. The files are not deleted.
+ */
+public final class SpillFileScan extends LeafOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+  /** The schema of the tuples in the files. */
+  private final Schema schema;
+  /** The files. */
+  private final transient ImmutableList<SpillFile> files;
+  /** The index of the file being read. */
+  private transient int currentFile;
+  /** The reader of the file being read, or null if none is open. */
+  private transient SpillFile.Reader reader;
+
+  /**
+   * @param schema the schema of the tuples in the files.
+   * @param files the files to be read, in order.
+   */
+  public SpillFileScan(final Schema schema, final List<SpillFile> files) {
+    this.schema = schema;
+    this.files = ImmutableList.copyOf(files);
+    for (SpillFile file : files) {
+      Preconditions.checkArgument(file.getSchema().getColumnTypes().equals(schema.getColumnTypes()),
+          "spill file schema %s does not match %s", file.getSchema(), schema);
+    }
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    while (currentFile < files.size()) {
+      if (reader == null) {
+        reader = files.get(currentFile).openReader();
+      }
+      TupleBatch tb = reader.next();
+      if (tb != null) {
+        return tb;
+      }
+      reader.close();
+      reader = null;
+      ++currentFile;
+    }
+    return null;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    currentFile = 0;
+  }
+
+  @Override
+  protected void cleanup() throws DbException {
+    if (reader != null) {
+      reader.close();
+      reader = null;
+    }
+  }
+
+  @Override
+  protected Schema generateSchema() {
+    return schema;
+  }
+}
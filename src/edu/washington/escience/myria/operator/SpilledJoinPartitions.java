@@ -0,0 +1,344 @@
+package edu.washington.escience.myria.operator;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaConstants;
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.storage.ReadableColumn;
+import edu.washington.escience.myria.storage.ReadableTable;
+import edu.washington.escience.myria.storage.SpillFile;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.HashScheme;
+import edu.washington.escience.myria.util.HashUtils;
+
+/**
+ * The inputs of a hash join that did not fit in memory, partitioned on disk by the hash of their join keys (grace hash
+ * join). Matching partitions are joined pairwise by {@link RightHashJoin}s, which partition their inputs again with
+ * another hash function if a partition still does not fit in memory.
+ * 
+ * Tuples are new until they have been joined, and are old afterwards. Joining the partitions produces the pairs in
+ * which at least one tuple is new, so the join can keep consuming tuples after each round, e.g., after an EOI.
+ */
+final class SpilledJoinPartitions {
+  /** The number of partitions of each input. */
+  static final int NUM_PARTITIONS = 16;
+
+  /** The names of the output columns. */
+  private final ImmutableList<String> outputColumns;
+  /** The schemas of the left and the right input. */
+  private final Schema[] schemas;
+  /** The join keys of the left and the right input. */
+  private final int[][] keys;
+  /** The output columns of the left and the right input. */
+  private final int[][] answerColumns;
+  /** The memory budget of the pairwise joins, see {@link RightHashJoin#setMaxTuplesInMemory(long)}. */
+  private final long maxTuplesInMemory;
+  /** The number of times the tuples have been partitioned, including this time. */
+  private final int depth;
+  /** The environment in which the pairwise joins are executed. */
+  private final ImmutableMap<String, Object> execEnvVars;
+  /** The directory of the spill files, or null for the default temporary-file directory. */
+  private final String directory;
+
+  /** The new tuples of each partition of each input that do not yet fill a batch. */
+  private final TupleBatchBuffer[][] buffers;
+  /** The file holding the new tuples of each partition of each input, or null if there are none. */
+  private final SpillFile[][] newFiles;
+  /** The files holding the old tuples of each partition of each input. */
+  private final List<List<List<SpillFile>>> oldFiles;
+  /** Whether there will be more tuples from the left and the right input, respectively. */
+  private final boolean[] moreTuples;
+
+  /** The pairwise joins that have not been started yet. */
+  private final Deque<RightHashJoin> pendingJoins;
+  /** The pairwise join being executed, or null if none is. */
+  private RightHashJoin currentJoin;
+  /** Whether the partitions are being joined. */
+  private boolean joining;
+
+  /**
+   * @param depth the number of times the tuples have already been partitioned.
+   * @return whether tuples that have been partitioned depth times can be partitioned again.
+   */
+  static boolean canSpill(final int depth) {
+    return depth + 1 < HashUtils.NUM_OF_HASHFUNCTIONS;
+  }
+
+  /**
+   * @param join the join whose inputs are partitioned.
+   * @param leftCompareColumns the join keys of the left input.
+   * @param rightCompareColumns the join keys of the right input.
+   * @param leftAnswerColumns the output columns of the left input.
+   * @param rightAnswerColumns the output columns of the right input.
+   * @param maxTuplesInMemory the memory budget of the pairwise joins.
+   * @param depth the number of times the tuples have already been partitioned.
+   */
+  SpilledJoinPartitions(final BinaryOperator join, final int[] leftCompareColumns, final int[] rightCompareColumns,
+      final int[] leftAnswerColumns, final int[] rightAnswerColumns, final long maxTuplesInMemory, final int depth) {
+    outputColumns = ImmutableList.copyOf(join.getSchema().getColumnNames());
+    schemas = new Schema[] { join.getLeft().getSchema(), join.getRight().getSchema() };
+    keys = new int[][] { leftCompareColumns, rightCompareColumns };
+    answerColumns = new int[][] { leftAnswerColumns, rightAnswerColumns };
+    this.maxTuplesInMemory = maxTuplesInMemory;
+    this.depth = depth + 1;
+
+    /* The pairwise joins are not part of the plan, so they must not be profiled. */
+    Map<String, Object> env = new HashMap<>();
+    if (join.getExecEnvVars() != null) {
+      env.putAll(join.getExecEnvVars());
+    }
+    env.remove(MyriaConstants.EXEC_ENV_VAR_FRAGMENT_RESOURCE_MANAGER);
+    execEnvVars = ImmutableMap.copyOf(env);
+    Object workingDirectory = execEnvVars.get(MyriaSystemConfigKeys.WORKING_DIRECTORY);
+    if (workingDirectory instanceof String && new File((String) workingDirectory).isDirectory()) {
+      directory = (String) workingDirectory;
+    } else {
+      directory = null;
+    }
+
+    buffers = new TupleBatchBuffer[2][NUM_PARTITIONS];
+    newFiles = new SpillFile[2][NUM_PARTITIONS];
+    oldFiles = new ArrayList<>(2);
+    for (int side = 0; side < 2; ++side) {
+      List<List<SpillFile>> partitions = new ArrayList<>(NUM_PARTITIONS);
+      for (int p = 0; p < NUM_PARTITIONS; ++p) {
+        buffers[side][p] = new TupleBatchBuffer(schemas[side]);
+        partitions.add(new ArrayList<SpillFile>());
+      }
+      oldFiles.add(partitions);
+    }
+    moreTuples = new boolean[] { true, true };
+    pendingJoins = new ArrayDeque<>();
+  }
+
+  /**
+   * Add new tuples of one of the inputs.
+   * 
+   * @param table the tuples.
+   * @param fromLeft whether the tuples are from the left input.
+   * @throws DbException if the tuples cannot be spilled.
+   */
+  void add(final ReadableTable table, final boolean fromLeft) throws DbException {
+    final int side = fromLeft ? 0 : 1;
+    final int[] keyColumns = keys[side];
+    final ReadableColumn[] columns = new ReadableColumn[table.numColumns()];
+    for (int column = 0; column < columns.length; ++column) {
+      columns[column] = table.asColumn(column);
+    }
+    final int[] hashes = HashUtils.hashSubRows(table, keyColumns, depth, HashScheme.CURRENT, null);
+    for (int row = 0; row < table.numTuples(); ++row) {
+      int p = hashes[row] % NUM_PARTITIONS;
+      if (p < 0) {
+        p += NUM_PARTITIONS;
+      }
+      TupleBatchBuffer buffer = buffers[side][p];
+      for (int column = 0; column < columns.length; ++column) {
+        buffer.put(column, columns[column], row);
+      }
+      TupleBatch tb = buffer.popFilled();
+      if (tb != null) {
+        spill(side, p, tb);
+      }
+    }
+  }
+
+  /**
+   * Add the old tuples of both inputs, i.e., tuples that have already been joined with each other.
+   * 
+   * @param left old tuples from the left input, or null.
+   * @param right old tuples from the right input, or null.
+   * @param moreLeft whether there will be more tuples from the left input.
+   * @param moreRight whether there will be more tuples from the right input.
+   * @throws DbException if the tuples cannot be spilled.
+   */
+  void addJoined(final ReadableTable left, final ReadableTable right, final boolean moreLeft, final boolean moreRight)
+      throws DbException {
+    moreTuples[0] = moreLeft;
+    moreTuples[1] = moreRight;
+    if (left != null) {
+      add(left, true);
+    }
+    if (right != null) {
+      add(right, false);
+    }
+    flushBuffers();
+    retireNewFiles();
+  }
+
+  /**
+   * Start joining the new tuples with each other and with the old tuples.
+   * 
+   * @param moreLeft whether there will be more tuples from the left input.
+   * @param moreRight whether there will be more tuples from the right input.
+   * @throws DbException if the tuples cannot be spilled.
+   */
+  void startJoins(final boolean moreLeft, final boolean moreRight) throws DbException {
+    moreTuples[0] = moreLeft;
+    moreTuples[1] = moreRight;
+    flushBuffers();
+    for (int p = 0; p < NUM_PARTITIONS; ++p) {
+      List<SpillFile> leftOld = oldFiles.get(0).get(p);
+      List<SpillFile> rightOld = oldFiles.get(1).get(p);
+      SpillFile leftNew = newFiles[0][p];
+      SpillFile rightNew = newFiles[1][p];
+      if (rightNew != null && (leftNew != null || !leftOld.isEmpty())) {
+        /* All left tuples with the new right tuples. */
+        List<SpillFile> left = new ArrayList<>(leftOld);
+        if (leftNew != null) {
+          left.add(leftNew);
+        }
+        pendingJoins.add(makeJoin(left, ImmutableList.of(rightNew)));
+      }
+      if (leftNew != null && !rightOld.isEmpty()) {
+        /* The new left tuples with the old right tuples. */
+        pendingJoins.add(makeJoin(ImmutableList.of(leftNew), rightOld));
+      }
+    }
+    joining = true;
+  }
+
+  /**
+   * @return whether the partitions are being joined.
+   */
+  boolean isJoining() {
+    return joining;
+  }
+
+  /**
+   * @return the next batch of join results, or null if all partitions have been joined.
+   * @throws DbException if any error occurs.
+   */
+  TupleBatch nextReady() throws DbException {
+    while (currentJoin != null || !pendingJoins.isEmpty()) {
+      if (currentJoin == null) {
+        currentJoin = pendingJoins.poll();
+        currentJoin.open(execEnvVars);
+      }
+      TupleBatch tb = currentJoin.nextReady();
+      if (tb != null) {
+        return tb;
+      }
+      if (currentJoin.eos()) {
+        currentJoin.close();
+        currentJoin = null;
+      }
+    }
+    if (joining) {
+      joining = false;
+      retireNewFiles();
+    }
+    return null;
+  }
+
+  /**
+   * Delete all files and stop any join being executed.
+   * 
+   * @throws DbException if any error occurs.
+   */
+  void close() throws DbException {
+    if (currentJoin != null) {
+      currentJoin.close();
+      currentJoin = null;
+    }
+    pendingJoins.clear();
+    for (int side = 0; side < 2; ++side) {
+      for (int p = 0; p < NUM_PARTITIONS; ++p) {
+        if (newFiles[side][p] != null) {
+          newFiles[side][p].delete();
+          newFiles[side][p] = null;
+        }
+        deleteAll(oldFiles.get(side).get(p));
+      }
+    }
+  }
+
+  /**
+   * @param left the files holding the left tuples.
+   * @param right the files holding the right tuples.
+   * @return a join of the specified tuples.
+   */
+  private RightHashJoin makeJoin(final List<SpillFile> left, final List<SpillFile> right) {
+    RightHashJoin join =
+        new RightHashJoin(outputColumns, new SpillFileScan(schemas[0], left), new SpillFileScan(schemas[1], right),
+            keys[0], keys[1], answerColumns[0], answerColumns[1]);
+    join.setMaxTuplesInMemory(maxTuplesInMemory);
+    join.setSpillDepth(depth);
+    return join;
+  }
+
+  /**
+   * Write the specified new tuples to the file of their partition.
+   * 
+   * @param side the input of the tuples.
+   * @param p the partition of the tuples.
+   * @param tb the tuples.
+   * @throws DbException if the tuples cannot be written.
+   */
+  private void spill(final int side, final int p, final TupleBatch tb) throws DbException {
+    if (newFiles[side][p] == null) {
+      newFiles[side][p] = new SpillFile(schemas[side], directory);
+    }
+    newFiles[side][p].write(tb);
+  }
+
+  /**
+   * Write all buffered new tuples to the files of their partitions.
+   * 
+   * @throws DbException if the tuples cannot be written.
+   */
+  private void flushBuffers() throws DbException {
+    for (int side = 0; side < 2; ++side) {
+      for (int p = 0; p < NUM_PARTITIONS; ++p) {
+        for (TupleBatch tb = buffers[side][p].popAny(); tb != null; tb = buffers[side][p].popAny()) {
+          spill(side, p, tb);
+        }
+      }
+    }
+  }
+
+  /**
+   * Make the new tuples old, and delete the old tuples that will never be joined again.
+   * 
+   * @throws DbException if the files cannot be deleted.
+   */
+  private void retireNewFiles() throws DbException {
+    for (int side = 0; side < 2; ++side) {
+      for (int p = 0; p < NUM_PARTITIONS; ++p) {
+        List<SpillFile> old = oldFiles.get(side).get(p);
+        if (newFiles[side][p] != null) {
+          old.add(newFiles[side][p]);
+          newFiles[side][p] = null;
+        }
+        /* Old tuples are only joined with new tuples from the other input. */
+        if (!moreTuples[1 - side]) {
+          deleteAll(old);
+        }
+      }
+    }
+  }
+
+  /**
+   * Delete the specified files and clear the list.
+   * 
+   * @param files the files.
+   * @throws DbException if the files cannot be deleted.
+   */
+  private static void deleteAll(final List<SpillFile> files) throws DbException {
+    for (SpillFile file : files) {
+      file.delete();
+    }
+    files.clear();
+  }
+}
@@ -1,12 +1,17 @@
 package edu.washington.escience.myria.operator;
 
 import java.io.Serializable;
+import java.util.BitSet;
 import java.util.List;
 
+import javax.annotation.Nullable;
+
 import com.google.common.collect.ImmutableMap;
 
 import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.storage.MutableTupleBuffer;
 import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleUtils;
 
 /**
  * */
@@ -73,4 +78,52 @@ public abstract class StreamingState implements Serializable {
    * @return a new instance of StreamingState with all the constructor arguments copied.
    * */
   public abstract StreamingState newInstanceFromMyself();
+
+  /**
+   * Start a new, empty delta, i.e., start to keep track of the tuples that this state adds, or whose value it changes.
+   * This lets an {@link IDBController} in synchronous mode update the state with the tuples of an iteration as they
+   * arrive and output the delta once the iteration ends, instead of buffering the tuples of the iteration until then.
+   */
+  public abstract void startDelta();
+
+  /**
+   * Export the delta, each tuple once with its current value, and start a new one.
+   * 
+   * @return the tuples that this state has added, or whose value it has changed, since the delta was started.
+   */
+  public abstract List<TupleBatch> exportDelta();
+
+  /**
+   * Copy the delta of a state whose tuples are kept in a buffer that only changes by appending tuples or by changing
+   * the value of a tuple in place.
+   * 
+   * @param tuples the tuples of the state.
+   * @param changedRows the rows before <code>fromRow</code> whose value has changed, or null if there are none.
+   * @param fromRow the first row appended since the delta was started.
+   * @return a copy of the changed rows followed by the appended rows.
+   */
+  protected static MutableTupleBuffer copyDelta(final MutableTupleBuffer tuples, @Nullable final BitSet changedRows,
+      final int fromRow) {
+    MutableTupleBuffer delta = new MutableTupleBuffer(tuples.getSchema());
+    if (changedRows != null) {
+      for (int row = changedRows.nextSetBit(0); row >= 0 && row < fromRow; row = changedRows.nextSetBit(row + 1)) {
+        copyRow(tuples, row, delta);
+      }
+    }
+    for (int row = fromRow; row < tuples.numTuples(); ++row) {
+      copyRow(tuples, row, delta);
+    }
+    return delta;
+  }
+
+  /**
+   * @param from the source of the tuple.
+   * @param row the row of the tuple.
+   * @param to the destination of the tuple.
+   */
+  private static void copyRow(final MutableTupleBuffer from, final int row, final MutableTupleBuffer to) {
+    for (int column = 0; column < from.numColumns(); ++column) {
+      TupleUtils.copyValue(from, column, row, to, column);
+    }
+  }
 }
@@ -56,6 +56,9 @@ public final class SymmetricHashCountingJoin extends BinaryOperator {
    */
   private transient CountingJoinProcedure doCountingJoin;
 
+  /** The hash codes of the rows of the batch being processed, reused across batches. */
+  private transient int[] hashCodes;
+
   /**
    * Whether this operator has returned answer or not.
    */
@@ -293,7 +296,7 @@ public final class SymmetricHashCountingJoin extends BinaryOperator {
     leftHashTable = new MutableTupleBuffer(getLeft().getSchema().getSubSchema(leftCompareIndx));
     rightHashTable = new MutableTupleBuffer(getRight().getSchema().getSubSchema(rightCompareIndx));
     ans = 0;
-    ansTBB = new TupleBatchBuffer(getSchema());
+    ansTBB = new TupleBatchBuffer(getSchema(), false, getBatchSizeBytes());
     doCountingJoin = new CountingJoinProcedure();
   }
 
@@ -347,12 +350,13 @@ public final class SymmetricHashCountingJoin extends BinaryOperator {
       leftHashTable = null;
     }
 
+    hashCodes = HashUtils.hashSubRows(tb, doCountingJoin.inputCmpColumns, hashCodes);
     for (int row = 0; row < tb.numTuples(); ++row) {
 
       /*
        * update number of count of probing the other child's hash table.
        */
-      final int cntHashCode = HashUtils.hashSubRow(tb, doCountingJoin.inputCmpColumns, row);
+      final int cntHashCode = hashCodes[row];
       IntArrayList tuplesWithHashCode = hashTable2IndicesLocal.get(cntHashCode);
       if (tuplesWithHashCode != null) {
         doCountingJoin.row = row;
@@ -18,6 +18,7 @@ import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
 import edu.washington.escience.myria.parallel.QueryExecutionMode;
 import edu.washington.escience.myria.storage.MutableTupleBuffer;
+import edu.washington.escience.myria.storage.PrimitiveJoinHashTable;
 import edu.washington.escience.myria.storage.ReadableColumn;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
@@ -28,6 +29,10 @@ import edu.washington.escience.myria.util.MyriaArrayUtils;
 /**
  * This is an implementation of hash equal join. The same as in DupElim, this implementation does not keep the
  * references to the incoming TupleBatches in order to get better memory performance.
+ * 
+ * If the hash tables grow beyond {@link #setMaxTuplesInMemory(long)} tuples, both children are partitioned to disk and
+ * the partitions are joined pairwise whenever both children reach EOI or EOS, see {@link SpilledJoinPartitions}. This
+ * is not supported with set semantics.
  */
 public final class SymmetricHashJoin extends BinaryOperator {
   /** Required for Java serialization. */
@@ -54,6 +59,18 @@ public final class SymmetricHashJoin extends BinaryOperator {
    * A hash table for tuples from child 2. {Hashcode -> List of tuple indices with the same hash code}
    */
   private transient IntObjectHashMap<IntArrayList> rightHashTableIndices;
+  /**
+   * A hash table for tuples from child 1 used instead of {@link #leftHashTableIndices} if the join keys are INT and
+   * LONG columns. {Key -> tuple indices with the same key}
+   */
+  private transient PrimitiveJoinHashTable leftKeyHashTable;
+  /**
+   * A hash table for tuples from child 2 used instead of {@link #rightHashTableIndices} if the join keys are INT and
+   * LONG columns. {Key -> tuple indices with the same key}
+   */
+  private transient PrimitiveJoinHashTable rightKeyHashTable;
+  /** Whether the join keys are INT and LONG columns, i.e., whether the {@link PrimitiveJoinHashTable}s are used. */
+  private transient boolean useKeyHashTables;
 
   /**
    * The buffer holding the valid tuples from left.
@@ -71,6 +88,10 @@ public final class SymmetricHashJoin extends BinaryOperator {
   private final int[] leftAnswerColumns;
   /** Which columns in the right child are to be output. */
   private final int[] rightAnswerColumns;
+  /** The maximum number of tuples in the hash tables before the children are spilled to disk. */
+  private long maxTuplesInMemory = Long.MAX_VALUE;
+  /** The partitions of the children if they have been spilled to disk, else null. */
+  private transient SpilledJoinPartitions spilled;
 
   /**
    * Traverse through the list of tuples with the same hash code.
@@ -164,6 +185,9 @@ public final class SymmetricHashJoin extends BinaryOperator {
    * */
   private transient JoinProcedure doJoin;
 
+  /** The hash codes of the rows of the batch being processed, reused across batches. */
+  private transient int[] hashCodes;
+
   /**
    * Traverse through the list of tuples and replace old values.
    * */
@@ -399,7 +423,15 @@ public final class SymmetricHashJoin extends BinaryOperator {
   protected void cleanup() throws DbException {
     hashTable1 = null;
     hashTable2 = null;
+    leftHashTableIndices = null;
+    rightHashTableIndices = null;
+    leftKeyHashTable = null;
+    rightKeyHashTable = null;
     ans = null;
+    if (spilled != null) {
+      spilled.close();
+      spilled = null;
+    }
   }
 
   /**
@@ -443,11 +475,29 @@ public final class SymmetricHashJoin extends BinaryOperator {
       }
     }
     if (nexttb == null) {
-      nexttb = ans.popAny();
+      nexttb = popAnyAtEOI();
     }
     return nexttb;
   }
 
+  /**
+   * Pop any tuples in the output buffer. If there are none and the children have reached EOI or EOS, return the
+   * results of joining the partitions spilled to disk, if any.
+   * 
+   * @return result TB, or null if there are no more results for now.
+   * @throws DbException if any error occurs.
+   */
+  private TupleBatch popAnyAtEOI() throws DbException {
+    TupleBatch nexttb = ans.popAny();
+    if (nexttb != null || spilled == null || !isEOIReady()) {
+      return nexttb;
+    }
+    if (!spilled.isJoining()) {
+      spilled.startJoins(!getLeft().eos(), !getRight().eos());
+    }
+    return spilled.nextReady();
+  }
+
   @Override
   public void checkEOSAndEOI() {
     final Operator left = getLeft();
@@ -524,7 +574,7 @@ public final class SymmetricHashJoin extends BinaryOperator {
      * set EOS or EOI.
      */
     if (isEOIReady()) {
-      nexttb = ans.popAny();
+      nexttb = popAnyAtEOI();
       if (nexttb == null) {
         checkEOSAndEOI();
       }
@@ -579,7 +629,7 @@ public final class SymmetricHashJoin extends BinaryOperator {
      * and/or EOS
      */
     if (isEOIReady()) {
-      nexttb = ans.popAny();
+      nexttb = popAnyAtEOI();
       if (nexttb == null) {
         checkEOSAndEOI();
       }
@@ -591,13 +641,21 @@ public final class SymmetricHashJoin extends BinaryOperator {
   public void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
     final Operator left = getLeft();
     final Operator right = getRight();
-    leftHashTableIndices = new IntObjectHashMap<IntArrayList>();
-    rightHashTableIndices = new IntObjectHashMap<IntArrayList>();
+    useKeyHashTables =
+        PrimitiveJoinHashTable.supports(left.getSchema(), leftCompareIndx)
+            && PrimitiveJoinHashTable.supports(right.getSchema(), rightCompareIndx);
+    if (useKeyHashTables) {
+      leftKeyHashTable = new PrimitiveJoinHashTable(left.getSchema(), leftCompareIndx);
+      rightKeyHashTable = new PrimitiveJoinHashTable(right.getSchema(), rightCompareIndx);
+    } else {
+      leftHashTableIndices = new IntObjectHashMap<IntArrayList>();
+      rightHashTableIndices = new IntObjectHashMap<IntArrayList>();
+    }
 
     hashTable1 = new MutableTupleBuffer(left.getSchema());
     hashTable2 = new MutableTupleBuffer(right.getSchema());
 
-    ans = new TupleBatchBuffer(getSchema());
+    ans = new TupleBatchBuffer(getSchema(), false, getBatchSizeBytes());
 
     nonBlocking =
         (QueryExecutionMode) execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_EXECUTION_MODE) == QueryExecutionMode.NON_BLOCKING;
@@ -610,32 +668,65 @@ public final class SymmetricHashJoin extends BinaryOperator {
    */
   private transient boolean nonBlocking = true;
 
+  /**
+   * @param tb the incoming TupleBatch for processing join.
+   * @param fromLeft if the tb is from left.
+   * @throws DbException if the tuples cannot be spilled to disk.
+   */
+  protected void processChildTB(final TupleBatch tb, final boolean fromLeft) throws DbException {
+    if (spilled != null) {
+      spilled.add(tb, fromLeft);
+      return;
+    }
+    processChildTBInMemory(tb, fromLeft);
+    if (getNumTuplesInHashTables() > maxTuplesInMemory && !setSemanticsLeft && !setSemanticsRight) {
+      /* All pairs of tuples in the hash tables have been joined already. */
+      spilled =
+          new SpilledJoinPartitions(this, leftCompareIndx, rightCompareIndx, leftAnswerColumns, rightAnswerColumns,
+              maxTuplesInMemory, 0);
+      spilled.addJoined(hashTable1, hashTable2, !getLeft().eos(), !getRight().eos());
+      hashTable1 = null;
+      hashTable2 = null;
+      leftHashTableIndices = null;
+      rightHashTableIndices = null;
+      leftKeyHashTable = null;
+      rightKeyHashTable = null;
+    }
+  }
+
   /**
    * @param tb the incoming TupleBatch for processing join.
    * @param fromLeft if the tb is from left.
    */
-  protected void processChildTB(final TupleBatch tb, final boolean fromLeft) {
+  private void processChildTBInMemory(final TupleBatch tb, final boolean fromLeft) {
     final Operator left = getLeft();
     final Operator right = getRight();
 
-    if (left.eos() && rightHashTableIndices != null) {
+    if (left.eos() && hashTable2 != null) {
       /*
        * delete right child's hash table if the left child is EOS, since there will be no incoming tuples from right as
        * it will never be probed again.
        */
       rightHashTableIndices = null;
+      rightKeyHashTable = null;
       hashTable2 = null;
     }
-    if (right.eos() && leftHashTableIndices != null) {
+    if (right.eos() && hashTable1 != null) {
       /*
        * delete left child's hash table if the right child is EOS, since there will be no incoming tuples from left as
        * it will never be probed again.
        */
       leftHashTableIndices = null;
+      leftKeyHashTable = null;
       hashTable1 = null;
     }
 
     final boolean useSetSemantics = fromLeft && setSemanticsLeft || !fromLeft && setSemanticsRight;
+    if (useKeyHashTables) {
+      processChildTBWithKeyHashTables(tb, fromLeft, useSetSemantics);
+      return;
+    }
+
     MutableTupleBuffer hashTable1Local = null;
     IntObjectHashMap<IntArrayList> hashTable1IndicesLocal = null;
     IntObjectHashMap<IntArrayList> hashTable2IndicesLocal = null;
@@ -668,8 +759,9 @@ public final class SymmetricHashJoin extends BinaryOperator {
       doReplace.inputTB = tb;
     }
 
+    hashCodes = HashUtils.hashSubRows(tb, doJoin.inputCmpColumns, hashCodes);
     for (int row = 0; row < tb.numTuples(); ++row) {
-      final int cntHashCode = HashUtils.hashSubRow(tb, doJoin.inputCmpColumns, row);
+      final int cntHashCode = hashCodes[row];
       IntArrayList tuplesWithHashCode = hashTable2IndicesLocal.get(cntHashCode);
       if (tuplesWithHashCode != null) {
         doJoin.row = row;
@@ -683,6 +775,63 @@ public final class SymmetricHashJoin extends BinaryOperator {
     }
   }
 
+  /**
+   * Process the incoming TupleBatch using the {@link PrimitiveJoinHashTable}s.
+   * 
+   * @param tb the incoming TupleBatch for processing join.
+   * @param fromLeft if the tb is from left.
+   * @param useSetSemantics if need to update the hash table using set semantics.
+   */
+  private void processChildTBWithKeyHashTables(final TupleBatch tb, final boolean fromLeft,
+      final boolean useSetSemantics) {
+    final MutableTupleBuffer buildTable;
+    final PrimitiveJoinHashTable buildKeys;
+    final MutableTupleBuffer probeTable;
+    final PrimitiveJoinHashTable probeKeys;
+    final int[] inputCmpColumns;
+    if (fromLeft) {
+      buildTable = hashTable1;
+      buildKeys = leftKeyHashTable;
+      probeTable = hashTable2;
+      probeKeys = rightKeyHashTable;
+      inputCmpColumns = leftCompareIndx;
+    } else {
+      buildTable = hashTable2;
+      buildKeys = rightKeyHashTable;
+      probeTable = hashTable1;
+      probeKeys = leftKeyHashTable;
+      inputCmpColumns = rightCompareIndx;
+    }
+
+    List<? extends Column<?>> inputColumns = tb.getDataColumns();
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      for (int index = probeKeys.firstMatch(tb, inputCmpColumns, row); index >= 0; index = probeKeys.nextMatch(index)) {
+        addToAns(tb, row, probeTable, index, fromLeft);
+      }
+
+      if (buildTable == null) {
+        // only build hash table on two sides if none of the children is EOS
+        continue;
+      }
+      final int replaceIndex;
+      if (useSetSemantics) {
+        replaceIndex = buildKeys.firstMatch(tb, inputCmpColumns, row);
+      } else {
+        replaceIndex = -1;
+      }
+      if (replaceIndex >= 0) {
+        for (int column = 0; column < tb.numColumns(); column++) {
+          buildTable.replace(column, replaceIndex, inputColumns.get(column), row);
+        }
+      } else {
+        buildKeys.add(tb, inputCmpColumns, row);
+        for (int column = 0; column < tb.numColumns(); column++) {
+          buildTable.put(column, inputColumns.get(column), row);
+        }
+      }
+    }
+  }
+
   /**
    * @param tb the source TupleBatch
    * @param row the row number to get added to hash table
@@ -730,6 +879,18 @@ public final class SymmetricHashJoin extends BinaryOperator {
     return sum;
   }
 
+  /**
+   * Set the maximum number of tuples in the hash tables. Beyond it, the tuples of both children are partitioned to disk
+   * by the hash of their join keys, and the partitions are joined pairwise whenever both children reach EOI or EOS.
+   * This is ignored with set semantics.
+   * 
+   * @param maxTuplesInMemory the maximum number of tuples in the hash tables.
+   */
+  public void setMaxTuplesInMemory(final long maxTuplesInMemory) {
+    Preconditions.checkArgument(maxTuplesInMemory > 0, "maxTuplesInMemory must be positive");
+    this.maxTuplesInMemory = maxTuplesInMemory;
+  }
+
   /** Join pull order options. */
   public enum JoinPullOrder {
     /** Alternatively. */
@@ -92,6 +92,32 @@ public final class AggUtils {
     return aggregators;
   }
 
+  /**
+   * Utility class to allocate the final halves of a set of aggregates that were split for a partial aggregation.
+   * 
+   * @param factories The factories that will produce the aggregators.
+   * @param partialSchema The schema of the partial results.
+   * @param firstColumn The first column of the partial results of the first aggregate.
+   * @return the aggregators that merge the partial results.
+   * @throws DbException if an aggregate cannot be split.
+   */
+  public static Aggregator[] allocateFinalAggs(final AggregatorFactory[] factories, final Schema partialSchema,
+      final int firstColumn) throws DbException {
+    Aggregator[] aggregators = new Aggregator[factories.length];
+    int column = firstColumn;
+    for (int j = 0; j < factories.length; ++j) {
+      aggregators[j] = factories[j].getFinal(partialSchema, column);
+      if (!(aggregators[j] instanceof DecomposableAggregator)) {
+        throw new DbException("aggregate " + j + " cannot merge partial results");
+      }
+      column += ((DecomposableAggregator) aggregators[j]).getPartialSchema().numColumns();
+    }
+    if (column != partialSchema.numColumns()) {
+      throw new DbException("the aggregates do not match the partial results " + partialSchema);
+    }
+    return aggregators;
+  }
+
   /**
    * Utility class to allocate the initial aggregation states from a set of {@link Aggregator}s.
    * 
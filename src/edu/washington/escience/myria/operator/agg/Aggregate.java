@@ -83,7 +83,7 @@ public final class Aggregate extends UnaryOperator {
     Preconditions.checkState(getSchema() != null, "unable to determine schema in init");
     aggregators = AggUtils.allocateAggs(factories, getChild().getSchema());
     aggregatorStates = AggUtils.allocateAggStates(aggregators);
-    aggBuffer = new TupleBatchBuffer(getSchema());
+    aggBuffer = new TupleBatchBuffer(getSchema(), false, getBatchSizeBytes());
   }
 
   @Override
@@ -29,4 +29,17 @@ public interface AggregatorFactory extends Serializable {
    */
   @Nonnull
   Aggregator get(Schema inputSchema) throws DbException;
+
+  /**
+   * Create the final half of this aggregate, split in two for a partial aggregation: an aggregator that merges the
+   * partial results of the aggregators created by {@link #get(Schema)}, i.e., of {@link DecomposableAggregator}s, and
+   * produces the same results.
+   * 
+   * @param partialSchema the schema of the partial results that incoming tuples will take.
+   * @param column the first column of the partial results of this aggregate.
+   * @return a new aggregator that merges the partial results of this aggregate.
+   * @throws DbException if this aggregate cannot be split into a partial and a final half.
+   */
+  @Nonnull
+  Aggregator getFinal(Schema partialSchema, int column) throws DbException;
 }
@@ -0,0 +1,43 @@
+package edu.washington.escience.myria.operator.agg;
+
+import java.io.Serializable;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.ReadableTable;
+
+/**
+ * An aggregation that keeps the states of all groups together, e.g., in primitive arrays indexed by the id of the
+ * group, and updates them a batch at a time. Group ids are dense: 0, 1, 2, ...
+ */
+public interface ColumnarAggregator extends Serializable {
+
+  /**
+   * Compute and return the initial state of this aggregation, holding no groups.
+   * 
+   * @return the initial state of this aggregation.
+   */
+  Object getInitialGroupStates();
+
+  /**
+   * Update the groups using all rows of the specified table.
+   * 
+   * @param from the source {@link ReadableTable}.
+   * @param groupIds the group of each row of the table.
+   * @param numGroups the number of groups, i.e., one more than the largest group id seen so far.
+   * @param groupStates the states of the groups, which will be mutated.
+   * @throws DbException if there is an error.
+   */
+  void addRows(ReadableTable from, int[] groupIds, int numGroups, Object groupStates) throws DbException;
+
+  /**
+   * Append the aggregate result(s) of the specified group to the given table starting from the given column.
+   * 
+   * @param dest where to store the aggregate result.
+   * @param destColumn the starting index into which aggregates will be output.
+   * @param group the id of the group.
+   * @param groupStates the states of the groups.
+   * @throws DbException if there is an error.
+   */
+  void getGroupResult(AppendableTable dest, int destColumn, int group, Object groupStates) throws DbException;
+}
@@ -11,7 +11,7 @@ import edu.washington.escience.myria.storage.ReadableTable;
 /**
  * An aggregator that counts the number of rows in its input.
  */
-public final class CountAllAggregator implements Aggregator {
+public final class CountAllAggregator implements Aggregator, DecomposableAggregator {
 
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1L;
@@ -36,6 +36,46 @@ public final class CountAllAggregator implements Aggregator {
     dest.putLong(destColumn, c.count);
   }
 
+  @Override
+  public Object getInitialGroupStates() {
+    return new LongGroupStates(true, false, false, false, false);
+  }
+
+  @Override
+  public void addRows(final ReadableTable from, final int[] groupIds, final int numGroups, final Object groupStates) {
+    LongGroupStates states = (LongGroupStates) groupStates;
+    states.ensureCapacity(numGroups);
+    final long[] count = states.count;
+    final int numTuples = from.numTuples();
+    for (int i = 0; i < numTuples; ++i) {
+      count[groupIds[i]]++;
+    }
+  }
+
+  @Override
+  public void getGroupResult(final AppendableTable dest, final int destColumn, final int group,
+      final Object groupStates) {
+    LongGroupStates states = (LongGroupStates) groupStates;
+    dest.putLong(destColumn, states.count[group]);
+  }
+
+  @Override
+  public Schema getPartialSchema() {
+    return SCHEMA;
+  }
+
+  @Override
+  public void getGroupPartialResult(final AppendableTable dest, final int destColumn, final int group,
+      final Object groupStates) {
+    ((LongGroupStates) groupStates).appendPartial(dest, destColumn, group, Type.LONG_TYPE);
+  }
+
+  @Override
+  public void mergeRows(final ReadableTable from, final int fromColumn, final int[] groupIds, final int numGroups,
+      final Object groupStates) {
+    ((LongGroupStates) groupStates).merge(from, fromColumn, groupIds, numGroups, Type.LONG_TYPE);
+  }
+
   @Override
   public Schema getResultSchema() {
     return SCHEMA;
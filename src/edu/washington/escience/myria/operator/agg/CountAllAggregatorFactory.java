@@ -21,4 +21,9 @@ public final class CountAllAggregatorFactory implements AggregatorFactory {
     return new CountAllAggregator();
   }
 
+  @Override
+  public Aggregator getFinal(final Schema partialSchema, final int column) throws DbException {
+    return new CountAllAggregator();
+  }
+
 }
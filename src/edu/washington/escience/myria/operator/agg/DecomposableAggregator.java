@@ -0,0 +1,43 @@
+package edu.washington.escience.myria.operator.agg;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.ReadableTable;
+
+/**
+ * A {@link ColumnarAggregator} whose state can be written out as a partial result, and rebuilt by merging partial
+ * results, e.g., COUNT, SUM, and AVG, whose partial result is a count and a sum. The states of a group can thus be
+ * computed over parts of the input separately and then combined.
+ */
+public interface DecomposableAggregator extends ColumnarAggregator {
+
+  /**
+   * @return the schema of the partial results of this aggregator.
+   */
+  Schema getPartialSchema();
+
+  /**
+   * Append the partial result of the specified group to the given table starting from the given column.
+   * 
+   * @param dest where to store the partial result.
+   * @param destColumn the starting index into which the partial result will be output.
+   * @param group the id of the group.
+   * @param groupStates the states of the groups.
+   * @throws DbException if there is an error.
+   */
+  void getGroupPartialResult(AppendableTable dest, int destColumn, int group, Object groupStates) throws DbException;
+
+  /**
+   * Merge the partial results in all rows of the specified table into the groups.
+   * 
+   * @param from the source {@link ReadableTable}.
+   * @param fromColumn the first column of the partial results in the table.
+   * @param groupIds the group of each row of the table.
+   * @param numGroups the number of groups, i.e., one more than the largest group id seen so far.
+   * @param groupStates the states of the groups, which will be mutated.
+   * @throws DbException if there is an error.
+   */
+  void mergeRows(ReadableTable from, int fromColumn, int[] groupIds, int numGroups, Object groupStates)
+      throws DbException;
+}
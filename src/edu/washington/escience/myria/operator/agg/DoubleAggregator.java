@@ -6,14 +6,16 @@ import java.util.Set;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.math.LongMath;
 
+import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.ReadableColumn;
 import edu.washington.escience.myria.storage.ReadableTable;
 
 /**
  * Knows how to compute some aggregates over a DoubleColumn.
  */
-public final class DoubleAggregator extends PrimitiveAggregator {
+public final class DoubleAggregator extends PrimitiveAggregator implements DecomposableAggregator {
 
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1L;
@@ -121,6 +123,109 @@ public final class DoubleAggregator extends PrimitiveAggregator {
     }
   }
 
+  @Override
+  public Object getInitialGroupStates() {
+    return new DoubleGroupStates(needsCount, needsSum, needsSumSq, needsMin, needsMax);
+  }
+
+  @Override
+  public void addRows(final ReadableTable from, final int[] groupIds, final int numGroups, final Object groupStates) {
+    Objects.requireNonNull(from, "from");
+    DoubleGroupStates states = (DoubleGroupStates) groupStates;
+    states.ensureCapacity(numGroups);
+    final int numTuples = from.numTuples();
+    if (needsCount) {
+      final long[] count = states.count;
+      for (int i = 0; i < numTuples; i++) {
+        count[groupIds[i]]++;
+      }
+    }
+
+    if (!needsStats) {
+      return;
+    }
+    final ReadableColumn column = from.asColumn(fromColumn);
+    if (needsSum) {
+      final double[] sum = states.sum;
+      for (int i = 0; i < numTuples; i++) {
+        sum[groupIds[i]] += column.getDouble(i);
+      }
+    }
+    if (needsSumSq) {
+      final double[] sumSquared = states.sumSquared;
+      for (int i = 0; i < numTuples; i++) {
+        final int group = groupIds[i];
+        final double value = column.getDouble(i);
+        sumSquared[group] += value * value;
+      }
+    }
+    if (needsMin) {
+      final double[] min = states.min;
+      for (int i = 0; i < numTuples; i++) {
+        final int group = groupIds[i];
+        min[group] = Math.min(min[group], column.getDouble(i));
+      }
+    }
+    if (needsMax) {
+      final double[] max = states.max;
+      for (int i = 0; i < numTuples; i++) {
+        final int group = groupIds[i];
+        max[group] = Math.max(max[group], column.getDouble(i));
+      }
+    }
+  }
+
+  @Override
+  public void getGroupResult(final AppendableTable dest, final int destColumn, final int group,
+      final Object groupStates) {
+    Objects.requireNonNull(dest, "dest");
+    DoubleGroupStates states = (DoubleGroupStates) groupStates;
+    int idx = destColumn;
+    for (AggregationOp op : aggOps) {
+      switch (op) {
+        case AVG:
+          dest.putDouble(idx, states.sum[group] * 1.0 / states.count[group]);
+          break;
+        case COUNT:
+          dest.putLong(idx, states.count[group]);
+          break;
+        case MAX:
+          dest.putDouble(idx, states.max[group]);
+          break;
+        case MIN:
+          dest.putDouble(idx, states.min[group]);
+          break;
+        case STDEV:
+          double first = states.sumSquared[group] / states.count[group];
+          double second = states.sum[group] / states.count[group];
+          double stdev = Math.sqrt(first - second * second);
+          dest.putDouble(idx, stdev);
+          break;
+        case SUM:
+          dest.putDouble(idx, states.sum[group]);
+          break;
+      }
+      idx++;
+    }
+  }
+
+  @Override
+  public Schema getPartialSchema() {
+    return DoubleGroupStates.getPartialSchema(fieldName, getType(), needsCount, needsSum, needsSumSq, needsMin, needsMax);
+  }
+
+  @Override
+  public void getGroupPartialResult(final AppendableTable dest, final int destColumn, final int group,
+      final Object groupStates) {
+    ((DoubleGroupStates) groupStates).appendPartial(dest, destColumn, group, getType());
+  }
+
+  @Override
+  public void mergeRows(final ReadableTable from, final int fromColumn, final int[] groupIds, final int numGroups,
+      final Object groupStates) {
+    ((DoubleGroupStates) groupStates).merge(from, fromColumn, groupIds, numGroups, getType());
+  }
+
   @Override
   public Type getType() {
     return Type.DOUBLE_TYPE;
@@ -0,0 +1,274 @@
+package edu.washington.escience.myria.operator.agg;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.GroupIdTable;
+import edu.washington.escience.myria.storage.ReadableTable;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * The in-progress groups of a group-by aggregation. Each distinct value of the group-by columns gets a dense id from a
+ * {@link GroupIdTable}, and each aggregator keeps the states of all groups together, indexed by that id. Aggregators
+ * that are {@link ColumnarAggregator}s keep their states in primitive arrays and are updated a batch at a time; the
+ * others keep one state object per group.
+ * 
+ * If all aggregators are {@link DecomposableAggregator}s, the groups can also be written out as partial results, and a
+ * merging aggregation rebuilds them from partial results instead of from input tuples.
+ */
+final class GroupedAggregation {
+
+  /** Assigns the group ids. */
+  private final GroupIdTable groupIds;
+  /** The number of group-by columns. */
+  private final int numGroupColumns;
+  /** The aggregators, as columnar aggregators. */
+  private final ColumnarAggregator[] aggregators;
+  /** The number of output columns of each aggregator. */
+  private final int[] aggregatorWidths;
+  /** The states of the groups of each aggregator. */
+  private final Object[] groupStates;
+  /** Whether the input tuples are partial results. */
+  private final boolean merge;
+  /** The first column of the partial results of each aggregator, or null if the aggregators are not decomposable. */
+  private final int[] partialColumns;
+  /** The schema of the partial results, or null if the aggregators are not decomposable. */
+  private final Schema partialSchema;
+  /** The group of each row of the batch being added. */
+  private int[] rowGroups;
+
+  /**
+   * @param aggregators some aggregators.
+   * @return whether all of the aggregators are {@link DecomposableAggregator}s.
+   */
+  static boolean isDecomposable(final Aggregator[] aggregators) {
+    for (Aggregator aggregator : aggregators) {
+      if (!(aggregator instanceof DecomposableAggregator)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param inputSchema the schema of the input tuples.
+   * @param groupColumns the group-by columns of the input tuples.
+   * @param aggregators the aggregators.
+   */
+  GroupedAggregation(final Schema inputSchema, final int[] groupColumns, final Aggregator[] aggregators) {
+    this(inputSchema, groupColumns, aggregators, false);
+  }
+
+  /**
+   * @param inputSchema the schema of the input tuples.
+   * @param groupColumns the group-by columns of the input tuples.
+   * @param aggregators the aggregators.
+   * @param merge whether the input tuples are partial results, i.e., the group-by columns followed by the partial
+   *          results of each aggregator. If so, all aggregators must be decomposable.
+   */
+  GroupedAggregation(final Schema inputSchema, final int[] groupColumns, final Aggregator[] aggregators,
+      final boolean merge) {
+    Preconditions.checkArgument(!merge || isDecomposable(aggregators), "can only merge decomposable aggregates");
+    groupIds = new GroupIdTable(inputSchema, groupColumns);
+    numGroupColumns = groupColumns.length;
+    this.merge = merge;
+    this.aggregators = new ColumnarAggregator[aggregators.length];
+    aggregatorWidths = new int[aggregators.length];
+    groupStates = new Object[aggregators.length];
+    for (int agg = 0; agg < aggregators.length; ++agg) {
+      if (aggregators[agg] instanceof ColumnarAggregator) {
+        this.aggregators[agg] = (ColumnarAggregator) aggregators[agg];
+      } else {
+        this.aggregators[agg] = new RowStateAggregator(aggregators[agg]);
+      }
+      aggregatorWidths[agg] = aggregators[agg].getResultSchema().numColumns();
+      groupStates[agg] = this.aggregators[agg].getInitialGroupStates();
+    }
+
+    if (isDecomposable(aggregators)) {
+      partialColumns = new int[aggregators.length];
+      Schema schema = groupIds.getKeySchema();
+      for (int agg = 0; agg < aggregators.length; ++agg) {
+        partialColumns[agg] = schema.numColumns();
+        schema = Schema.merge(schema, ((DecomposableAggregator) aggregators[agg]).getPartialSchema());
+      }
+      partialSchema = schema;
+    } else {
+      partialColumns = null;
+      partialSchema = null;
+    }
+    rowGroups = new int[0];
+  }
+
+  /**
+   * Add all rows of a table to their groups.
+   * 
+   * @param from the table.
+   * @throws DbException if there is an error.
+   */
+  void add(final ReadableTable from) throws DbException {
+    final int numTuples = from.numTuples();
+    if (numTuples == 0) {
+      return;
+    }
+    ensureRowGroups(numTuples);
+    for (int row = 0; row < numTuples; ++row) {
+      rowGroups[row] = groupIds.getOrAdd(from, row);
+    }
+    update(from);
+  }
+
+  /**
+   * Add the rows of a batch whose groups already exist to their groups, and return the others.
+   * 
+   * @param tb the batch.
+   * @return the rows of the batch whose groups do not exist yet, or null if there are none.
+   * @throws DbException if there is an error.
+   */
+  TupleBatch addExisting(final TupleBatch tb) throws DbException {
+    final int numTuples = tb.numTuples();
+    ensureRowGroups(numTuples);
+    final BitSet existing = new BitSet(numTuples);
+    int numExisting = 0;
+    for (int row = 0; row < numTuples; ++row) {
+      final int group = groupIds.get(tb, row);
+      if (group >= 0) {
+        existing.set(row);
+        rowGroups[numExisting++] = group;
+      }
+    }
+    if (numExisting > 0) {
+      update(tb.filter(existing));
+    }
+    if (numExisting == numTuples) {
+      return null;
+    }
+    return tb.filterOut(existing);
+  }
+
+  /**
+   * Update the groups of the rows of a table, given in {@link #rowGroups}.
+   * 
+   * @param from the table.
+   * @throws DbException if there is an error.
+   */
+  private void update(final ReadableTable from) throws DbException {
+    final int numGroups = groupIds.numKeys();
+    for (int agg = 0; agg < aggregators.length; ++agg) {
+      if (merge) {
+        ((DecomposableAggregator) aggregators[agg]).mergeRows(from, partialColumns[agg], rowGroups, numGroups,
+            groupStates[agg]);
+      } else {
+        aggregators[agg].addRows(from, rowGroups, numGroups, groupStates[agg]);
+      }
+    }
+  }
+
+  /**
+   * Make sure that {@link #rowGroups} holds at least the specified number of rows.
+   * 
+   * @param numTuples the number of rows.
+   */
+  private void ensureRowGroups(final int numTuples) {
+    if (rowGroups.length < numTuples) {
+      rowGroups = new int[numTuples];
+    }
+  }
+
+  /**
+   * @return the number of groups.
+   */
+  int numGroups() {
+    return groupIds.numKeys();
+  }
+
+  /**
+   * @return the schema of the partial results, i.e., the group-by columns followed by the partial results of each
+   *         aggregator, or null if the aggregators are not decomposable.
+   */
+  Schema getPartialSchema() {
+    return partialSchema;
+  }
+
+  /**
+   * Append a group to a table: first the values of the group-by columns, then the results of the aggregators.
+   * 
+   * @param group the id of the group.
+   * @param dest the table.
+   * @throws DbException if there is an error.
+   */
+  void appendGroup(final int group, final AppendableTable dest) throws DbException {
+    groupIds.appendKey(group, dest, 0);
+    int column = numGroupColumns;
+    for (int agg = 0; agg < aggregators.length; ++agg) {
+      aggregators[agg].getGroupResult(dest, column, group, groupStates[agg]);
+      column += aggregatorWidths[agg];
+    }
+  }
+
+  /**
+   * Append the partial results of a group to a table, in the format of {@link #getPartialSchema()}.
+   * 
+   * @param group the id of the group.
+   * @param dest the table.
+   * @throws DbException if there is an error.
+   */
+  void appendGroupPartial(final int group, final AppendableTable dest) throws DbException {
+    Preconditions.checkState(partialSchema != null, "the aggregators are not decomposable");
+    groupIds.appendKey(group, dest, 0);
+    for (int agg = 0; agg < aggregators.length; ++agg) {
+      ((DecomposableAggregator) aggregators[agg]).getGroupPartialResult(dest, partialColumns[agg], group,
+          groupStates[agg]);
+    }
+  }
+
+  /**
+   * Keeps the states of an {@link Aggregator} that is not a {@link ColumnarAggregator}, one object per group.
+   */
+  private static final class RowStateAggregator implements ColumnarAggregator {
+    /** Required for Java serialization. */
+    private static final long serialVersionUID = 1L;
+    /** The aggregator. */
+    private final Aggregator aggregator;
+
+    /**
+     * @param aggregator the aggregator.
+     */
+    private RowStateAggregator(final Aggregator aggregator) {
+      this.aggregator = aggregator;
+    }
+
+    @Override
+    public Object getInitialGroupStates() {
+      return new ArrayList<Object>();
+    }
+
+    @Override
+    public void addRows(final ReadableTable from, final int[] groupIds, final int numGroups, final Object groupStates)
+        throws DbException {
+      @SuppressWarnings("unchecked")
+      List<Object> states = (List<Object>) groupStates;
+      while (states.size() < numGroups) {
+        states.add(aggregator.getInitialState());
+      }
+      final int numTuples = from.numTuples();
+      for (int row = 0; row < numTuples; ++row) {
+        aggregator.addRow(from, row, states.get(groupIds[row]));
+      }
+    }
+
+    @Override
+    public void getGroupResult(final AppendableTable dest, final int destColumn, final int group,
+        final Object groupStates) throws DbException {
+      @SuppressWarnings("unchecked")
+      List<Object> states = (List<Object>) groupStates;
+      aggregator.getResult(dest, destColumn, states.get(group));
+    }
+  }
+}
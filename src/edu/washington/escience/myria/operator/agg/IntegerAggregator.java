@@ -6,14 +6,16 @@ import java.util.Set;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.math.LongMath;
 
+import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.ReadableColumn;
 import edu.washington.escience.myria.storage.ReadableTable;
 
 /**
  * Knows how to compute some aggregate over a set of IntFields.
  */
-public final class IntegerAggregator extends PrimitiveAggregator {
+public final class IntegerAggregator extends PrimitiveAggregator implements DecomposableAggregator {
 
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1L;
@@ -124,6 +126,111 @@ public final class IntegerAggregator extends PrimitiveAggregator {
     }
   }
 
+  @Override
+  public Object getInitialGroupStates() {
+    return new LongGroupStates(needsCount, needsSum, needsSumSq, needsMin, needsMax);
+  }
+
+  @Override
+  public void addRows(final ReadableTable from, final int[] groupIds, final int numGroups, final Object groupStates) {
+    Objects.requireNonNull(from, "from");
+    LongGroupStates states = (LongGroupStates) groupStates;
+    states.ensureCapacity(numGroups);
+    final int numTuples = from.numTuples();
+    if (needsCount) {
+      final long[] count = states.count;
+      for (int i = 0; i < numTuples; i++) {
+        count[groupIds[i]]++;
+      }
+    }
+
+    if (!needsStats) {
+      return;
+    }
+    final ReadableColumn column = from.asColumn(fromColumn);
+    if (needsSum) {
+      final long[] sum = states.sum;
+      for (int i = 0; i < numTuples; i++) {
+        final int group = groupIds[i];
+        sum[group] = LongMath.checkedAdd(sum[group], column.getInt(i));
+      }
+    }
+    if (needsSumSq) {
+      final long[] sumSquared = states.sumSquared;
+      for (int i = 0; i < numTuples; i++) {
+        final int group = groupIds[i];
+        final int value = column.getInt(i);
+        /* Don't need to check value*value since value is an int. */
+        sumSquared[group] = LongMath.checkedAdd(sumSquared[group], ((long) value) * value);
+      }
+    }
+    if (needsMin) {
+      final long[] min = states.min;
+      for (int i = 0; i < numTuples; i++) {
+        final int group = groupIds[i];
+        min[group] = Math.min(min[group], column.getInt(i));
+      }
+    }
+    if (needsMax) {
+      final long[] max = states.max;
+      for (int i = 0; i < numTuples; i++) {
+        final int group = groupIds[i];
+        max[group] = Math.max(max[group], column.getInt(i));
+      }
+    }
+  }
+
+  @Override
+  public void getGroupResult(final AppendableTable dest, final int destColumn, final int group,
+      final Object groupStates) {
+    Objects.requireNonNull(dest, "dest");
+    LongGroupStates states = (LongGroupStates) groupStates;
+    int idx = destColumn;
+    for (AggregationOp op : aggOps) {
+      switch (op) {
+        case AVG:
+          dest.putDouble(idx, states.sum[group] * 1.0 / states.count[group]);
+          break;
+        case COUNT:
+          dest.putLong(idx, states.count[group]);
+          break;
+        case MAX:
+          dest.putInt(idx, (int) states.max[group]);
+          break;
+        case MIN:
+          dest.putInt(idx, (int) states.min[group]);
+          break;
+        case STDEV:
+          double first = (double) states.sumSquared[group] / states.count[group];
+          double second = (double) states.sum[group] / states.count[group];
+          double stdev = Math.sqrt(first - second * second);
+          dest.putDouble(idx, stdev);
+          break;
+        case SUM:
+          dest.putLong(idx, states.sum[group]);
+          break;
+      }
+      idx++;
+    }
+  }
+
+  @Override
+  public Schema getPartialSchema() {
+    return LongGroupStates.getPartialSchema(fieldName, getType(), needsCount, needsSum, needsSumSq, needsMin, needsMax);
+  }
+
+  @Override
+  public void getGroupPartialResult(final AppendableTable dest, final int destColumn, final int group,
+      final Object groupStates) {
+    ((LongGroupStates) groupStates).appendPartial(dest, destColumn, group, getType());
+  }
+
+  @Override
+  public void mergeRows(final ReadableTable from, final int fromColumn, final int[] groupIds, final int numGroups,
+      final Object groupStates) {
+    ((LongGroupStates) groupStates).merge(from, fromColumn, groupIds, numGroups, getType());
+  }
+
   @Override
   public Type getType() {
     return Type.INT_TYPE;
@@ -0,0 +1,223 @@
+package edu.washington.escience.myria.operator.agg;
+
+import java.util.Arrays;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.math.LongMath;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.AppendableTable;
+import edu.washington.escience.myria.storage.ReadableColumn;
+import edu.washington.escience.myria.storage.ReadableTable;
+
+/**
+ * The states of the groups of an aggregation over integral values, in primitive arrays indexed by group id. Only the
+ * arrays for the statistics that are needed are allocated.
+ */
+@SuppressWarnings("checkstyle:visibilitymodifier")
+final class LongGroupStates {
+  /** The initial number of groups that fit in the arrays. */
+  private static final int INITIAL_CAPACITY = 64;
+
+  /** The number of tuples seen so far in each group, or null. */
+  long[] count;
+  /** The sum of the values in each group, or null. */
+  long[] sum;
+  /** The sum of the squared values in each group, or null. */
+  long[] sumSquared;
+  /** The minimum value in each group, or null. */
+  long[] min;
+  /** The maximum value in each group, or null. */
+  long[] max;
+  /** The number of groups that fit in the arrays. */
+  private int capacity;
+
+  /**
+   * @param needsCount whether the count is needed.
+   * @param needsSum whether the sum is needed.
+   * @param needsSumSq whether the sum of squares is needed.
+   * @param needsMin whether the minimum is needed.
+   * @param needsMax whether the maximum is needed.
+   */
+  LongGroupStates(final boolean needsCount, final boolean needsSum, final boolean needsSumSq, final boolean needsMin,
+      final boolean needsMax) {
+    capacity = INITIAL_CAPACITY;
+    if (needsCount) {
+      count = new long[capacity];
+    }
+    if (needsSum) {
+      sum = new long[capacity];
+    }
+    if (needsSumSq) {
+      sumSquared = new long[capacity];
+    }
+    if (needsMin) {
+      min = new long[capacity];
+      Arrays.fill(min, Long.MAX_VALUE);
+    }
+    if (needsMax) {
+      max = new long[capacity];
+      Arrays.fill(max, Long.MIN_VALUE);
+    }
+  }
+
+  /**
+   * Grow the arrays so that they hold at least the specified number of groups.
+   * 
+   * @param numGroups the number of groups.
+   */
+  void ensureCapacity(final int numGroups) {
+    if (numGroups <= capacity) {
+      return;
+    }
+    final int oldCapacity = capacity;
+    capacity = Math.max(numGroups, capacity * 2);
+    if (count != null) {
+      count = Arrays.copyOf(count, capacity);
+    }
+    if (sum != null) {
+      sum = Arrays.copyOf(sum, capacity);
+    }
+    if (sumSquared != null) {
+      sumSquared = Arrays.copyOf(sumSquared, capacity);
+    }
+    if (min != null) {
+      min = Arrays.copyOf(min, capacity);
+      Arrays.fill(min, oldCapacity, capacity, Long.MAX_VALUE);
+    }
+    if (max != null) {
+      max = Arrays.copyOf(max, capacity);
+      Arrays.fill(max, oldCapacity, capacity, Long.MIN_VALUE);
+    }
+  }
+
+  /**
+   * The schema of the partial results of states that hold the count, sum, sum of squares, minimum, and maximum,
+   * whichever are needed.
+   * 
+   * @param fieldName the name of the field being aggregated, for naming the columns.
+   * @param valueType the type of the values being aggregated, which is also the type of the minimum and maximum.
+   * @param needsCount whether the count is needed.
+   * @param needsSum whether the sum is needed.
+   * @param needsSumSq whether the sum of squares is needed.
+   * @param needsMin whether the minimum is needed.
+   * @param needsMax whether the maximum is needed.
+   * @return the schema of the partial results.
+   */
+  static Schema getPartialSchema(final String fieldName, final Type valueType, final boolean needsCount,
+      final boolean needsSum, final boolean needsSumSq, final boolean needsMin, final boolean needsMax) {
+    final ImmutableList.Builder<Type> types = ImmutableList.builder();
+    final ImmutableList.Builder<String> names = ImmutableList.builder();
+    if (needsCount) {
+      types.add(Type.LONG_TYPE);
+      names.add("partial_count_" + fieldName);
+    }
+    if (needsSum) {
+      types.add(Type.LONG_TYPE);
+      names.add("partial_sum_" + fieldName);
+    }
+    if (needsSumSq) {
+      types.add(Type.LONG_TYPE);
+      names.add("partial_sumsq_" + fieldName);
+    }
+    if (needsMin) {
+      types.add(valueType);
+      names.add("partial_min_" + fieldName);
+    }
+    if (needsMax) {
+      types.add(valueType);
+      names.add("partial_max_" + fieldName);
+    }
+    return new Schema(types.build(), names.build());
+  }
+
+  /**
+   * Append the partial result of a group to a table, in the order of their partial schema.
+   * 
+   * @param dest the table.
+   * @param destColumn the column in which the first value is appended.
+   * @param group the id of the group.
+   * @param valueType the type of the values being aggregated.
+   */
+  void appendPartial(final AppendableTable dest, final int destColumn, final int group, final Type valueType) {
+    int idx = destColumn;
+    if (count != null) {
+      dest.putLong(idx++, count[group]);
+    }
+    if (sum != null) {
+      dest.putLong(idx++, sum[group]);
+    }
+    if (sumSquared != null) {
+      dest.putLong(idx++, sumSquared[group]);
+    }
+    if (min != null) {
+      if (valueType == Type.INT_TYPE) {
+        dest.putInt(idx++, (int) min[group]);
+      } else {
+        dest.putLong(idx++, min[group]);
+      }
+    }
+    if (max != null) {
+      if (valueType == Type.INT_TYPE) {
+        dest.putInt(idx++, (int) max[group]);
+      } else {
+        dest.putLong(idx++, max[group]);
+      }
+    }
+  }
+
+  /**
+   * Merge the partial results in all rows of a table, in the order of their partial schema, into the
+   * groups.
+   * 
+   * @param from the table.
+   * @param fromColumn the column of the first value.
+   * @param groupIds the group of each row of the table.
+   * @param numGroups the number of groups.
+   * @param valueType the type of the values being aggregated.
+   */
+  void merge(final ReadableTable from, final int fromColumn, final int[] groupIds, final int numGroups,
+      final Type valueType) {
+    ensureCapacity(numGroups);
+    final int numTuples = from.numTuples();
+    int idx = fromColumn;
+    if (count != null) {
+      final ReadableColumn column = from.asColumn(idx++);
+      for (int i = 0; i < numTuples; ++i) {
+        final int group = groupIds[i];
+        count[group] = LongMath.checkedAdd(count[group], column.getLong(i));
+      }
+    }
+    if (sum != null) {
+      final ReadableColumn column = from.asColumn(idx++);
+      for (int i = 0; i < numTuples; ++i) {
+        final int group = groupIds[i];
+        sum[group] = LongMath.checkedAdd(sum[group], column.getLong(i));
+      }
+    }
+    if (sumSquared != null) {
+      final ReadableColumn column = from.asColumn(idx++);
+      for (int i = 0; i < numTuples; ++i) {
+        final int group = groupIds[i];
+        sumSquared[group] = LongMath.checkedAdd(sumSquared[group], column.getLong(i));
+      }
+    }
+    if (min != null) {
+      final ReadableColumn column = from.asColumn(idx++);
+      final boolean small = valueType == Type.INT_TYPE;
+      for (int i = 0; i < numTuples; ++i) {
+        final int group = groupIds[i];
+        min[group] = Math.min(min[group], small ? column.getInt(i) : column.getLong(i));
+      }
+    }
+    if (max != null) {
+      final ReadableColumn column = from.asColumn(idx++);
+      final boolean small = valueType == Type.INT_TYPE;
+      for (int i = 0; i < numTuples; ++i) {
+        final int group = groupIds[i];
+        max[group] = Math.max(max[group], small ? column.getInt(i) : column.getLong(i));
+      }
+    }
+  }
+}
@@ -1,7 +1,5 @@
 package edu.washington.escience.myria.operator.agg;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Objects;
 
 import javax.annotation.Nullable;
@@ -9,21 +7,13 @@ import javax.annotation.Nullable;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Lists;
-import com.gs.collections.impl.list.mutable.primitive.IntArrayList;
-import com.gs.collections.impl.map.mutable.primitive.IntObjectHashMap;
 
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
-import edu.washington.escience.myria.column.Column;
 import edu.washington.escience.myria.operator.Operator;
 import edu.washington.escience.myria.operator.UnaryOperator;
 import edu.washington.escience.myria.storage.TupleBatch;
-import edu.washington.escience.myria.storage.TupleBatchBuffer;
-import edu.washington.escience.myria.storage.TupleBuffer;
-import edu.washington.escience.myria.storage.TupleUtils;
-import edu.washington.escience.myria.util.HashUtils;
 
 /**
  * The Aggregation operator that computes an aggregate (e.g., sum, avg, max, min). This variant supports aggregates over
@@ -37,18 +27,10 @@ public final class MultiGroupByAggregate extends UnaryOperator {
   /** Java requires this. **/
   private static final long serialVersionUID = 1L;
 
-  /** Holds the distinct grouping keys. */
-  private transient TupleBuffer groupKeys;
-  /** Final group keys. */
-  private List<TupleBatch> groupKeyList;
-  /** Holds the corresponding aggregation state for each group key in {@link #groupKeys}. */
-  private transient List<Object[]> aggStates;
-  /** Maps the hash of a grouping key to a list of indices in {@link #groupKeys}. */
-  private transient IntObjectHashMap<IntArrayList> groupKeyMap;
-  /** The schema of the columns indicated by the group keys. */
-  private Schema groupSchema;
-  /** The schema of the aggregation result. */
-  private Schema aggSchema;
+  /** The in-progress groups and their aggregation states. */
+  private transient SpillableAggregation groups;
+  /** The maximum number of groups held in memory. */
+  private long maxGroupsInMemory = Long.MAX_VALUE;
 
   /** Factories to make the Aggregators. **/
   private final AggregatorFactory[] factories;
@@ -56,8 +38,8 @@ public final class MultiGroupByAggregate extends UnaryOperator {
   private Aggregator[] aggregators;
   /** Group fields. **/
   private final int[] gfields;
-  /** An array [0, 1, .., gfields.length-1] used for comparing tuples. */
-  private final int[] grpRange;
+  /** Whether the input tuples are partial results, produced by a {@link PartialAggregate}. */
+  private final boolean mergePartials;
 
   /**
    * Groups the input tuples according to the specified grouping fields, then produces the specified aggregates.
@@ -68,24 +50,62 @@ public final class MultiGroupByAggregate extends UnaryOperator {
    */
   public MultiGroupByAggregate(@Nullable final Operator child, final int[] gfields,
       final AggregatorFactory... factories) {
+    this(child, gfields, false, factories);
+  }
+
+  /**
+   * Groups the input tuples according to the specified grouping fields, then produces the specified aggregates.
+   * 
+   * @param child The Operator that is feeding us tuples.
+   * @param gfields The columns over which we are grouping the result.
+   * @param mergePartials Whether the input tuples are the partial results of a {@link PartialAggregate} with the same
+   *          factories, which are merged into the final results. If so, the grouping fields must be the first columns.
+   * @param factories The factories that will produce the {@link Aggregator}s for each group..
+   */
+  public MultiGroupByAggregate(@Nullable final Operator child, final int[] gfields, final boolean mergePartials,
+      final AggregatorFactory... factories) {
     super(child);
     this.gfields = Objects.requireNonNull(gfields, "gfields");
     this.factories = Objects.requireNonNull(factories, "factories");
+    this.mergePartials = mergePartials;
     Preconditions.checkArgument(gfields.length > 1, "to use MultiGroupByAggregate, must group over multiple fields");
     Preconditions.checkArgument(factories.length != 0, "to use MultiGroupByAggregate, must specify some aggregates");
-    grpRange = new int[gfields.length];
-    for (int i = 0; i < gfields.length; ++i) {
-      grpRange[i] = i;
+    if (mergePartials) {
+      for (int i = 0; i < gfields.length; ++i) {
+        Preconditions.checkArgument(gfields[i] == i, "to merge partial results, must group by the first columns");
+      }
+    }
+  }
+
+  /**
+   * @param inputSchema the schema of the input tuples.
+   * @return the aggregators, or the final halves of the aggregates if the input tuples are partial results.
+   * @throws DbException if there is an error.
+   */
+  private Aggregator[] allocateAggs(final Schema inputSchema) throws DbException {
+    if (mergePartials) {
+      return AggUtils.allocateFinalAggs(factories, inputSchema, gfields.length);
     }
-    groupKeyList = null;
+    return AggUtils.allocateAggs(factories, inputSchema);
+  }
+
+  /**
+   * Set the maximum number of groups held in memory. If there are more groups, some are spilled to disk. By default,
+   * all groups are held in memory.
+   * 
+   * @param maxGroupsInMemory the maximum number of groups held in memory.
+   */
+  public void setMaxGroupsInMemory(final long maxGroupsInMemory) {
+    Preconditions.checkArgument(maxGroupsInMemory > 0, "maxGroupsInMemory must be positive");
+    this.maxGroupsInMemory = maxGroupsInMemory;
   }
 
   @Override
   protected void cleanup() throws DbException {
-    groupKeys = null;
-    aggStates = null;
-    groupKeyMap = null;
-    groupKeyList = null;
+    if (groups != null) {
+      groups.close();
+      groups = null;
+    }
   }
 
   /**
@@ -106,29 +126,7 @@ public final class MultiGroupByAggregate extends UnaryOperator {
 
     TupleBatch tb = child.nextReady();
     while (tb != null) {
-      for (int row = 0; row < tb.numTuples(); ++row) {
-        int rowHash = HashUtils.hashSubRow(tb, gfields, row);
-        IntArrayList hashMatches = groupKeyMap.get(rowHash);
-        if (hashMatches == null) {
-          hashMatches = newKey(rowHash);
-          newGroup(tb, row, hashMatches);
-          continue;
-        }
-        boolean found = false;
-        for (int i = 0; i < hashMatches.size(); i++) {
-          int value = hashMatches.get(i);
-          if (TupleUtils.tupleEquals(tb, gfields, row, groupKeys, grpRange, value)) {
-            updateGroup(tb, row, aggStates.get(value));
-            found = true;
-            break;
-          }
-        }
-
-        if (!found) {
-          newGroup(tb, row, hashMatches);
-        }
-        Preconditions.checkState(groupKeys.numTuples() == aggStates.size());
-      }
+      groups.add(tb);
       tb = child.nextReady();
     }
 
@@ -143,88 +141,13 @@ public final class MultiGroupByAggregate extends UnaryOperator {
     return null;
   }
 
-  /**
-   * Since row <code>row</code> in {@link TupleBatch} <code>tb</code> does not appear in {@link #groupKeys}, create a
-   * new group for it.
-   * 
-   * @param tb the source {@link TupleBatch}
-   * @param row the row in <code>tb</code> that contains the new group
-   * @param hashMatches the list of all rows in the output {@link TupleBuffer}s that match this hash.
-   * @throws DbException if there is an error.
-   */
-  private void newGroup(final TupleBatch tb, final int row, final IntArrayList hashMatches) throws DbException {
-    int newIndex = groupKeys.numTuples();
-    for (int column = 0; column < gfields.length; ++column) {
-      TupleUtils.copyValue(tb, gfields[column], row, groupKeys, column);
-    }
-    hashMatches.add(newIndex);
-    Object[] curAggStates = AggUtils.allocateAggStates(aggregators);
-    aggStates.add(curAggStates);
-    updateGroup(tb, row, curAggStates);
-    Preconditions.checkState(groupKeys.numTuples() == aggStates.size(), "groupKeys %s != groupAggs %s", groupKeys
-        .numTuples(), aggStates.size());
-  }
-
-  /**
-   * Called when there is no list yet of which output aggregators match the specified hash. Creates a new int list to
-   * store these matches, and insert it into the {@link #groupKeyMap}.
-   * 
-   * @param groupHash the hash of the grouping columns in a tuple
-   * @return the new (empty still) int list storing which output aggregators match the specified hash
-   */
-  private IntArrayList newKey(final int groupHash) {
-    IntArrayList matches = new IntArrayList(1);
-    groupKeyMap.put(groupHash, matches);
-    return matches;
-  }
-
-  /**
-   * Update the aggregation states with the tuples in the specified row.
-   * 
-   * @param tb the source {@link TupleBatch}
-   * @param row the row in <code>tb</code> that contains the new values
-   * @param curAggStates the aggregation states to be updated.
-   * @throws DbException if there is an error.
-   */
-  private void updateGroup(final TupleBatch tb, final int row, final Object[] curAggStates) throws DbException {
-    for (int agg = 0; agg < aggregators.length; ++agg) {
-      aggregators[agg].addRow(tb, row, curAggStates[agg]);
-    }
-  }
-
   /**
    * @return A batch's worth of result tuples from this aggregate.
    * @throws DbException if there is an error.
    */
   private TupleBatch getResultBatch() throws DbException {
     Preconditions.checkState(getChild().eos(), "cannot extract results from an aggregate until child has reached EOS");
-    if (groupKeyList == null) {
-      groupKeyList = Lists.newLinkedList(groupKeys.finalResult());
-      groupKeys = null;
-    }
-
-    if (groupKeyList.isEmpty()) {
-      return null;
-    }
-
-    TupleBatch curGroupKeys = groupKeyList.remove(0);
-    TupleBatchBuffer curGroupAggs = new TupleBatchBuffer(aggSchema);
-    for (int row = 0; row < curGroupKeys.numTuples(); ++row) {
-      Object[] rowAggs = aggStates.get(row);
-      int curCol = 0;
-      for (int agg = 0; agg < aggregators.length; ++agg) {
-        aggregators[agg].getResult(curGroupAggs, curCol, rowAggs[agg]);
-        curCol += aggregators[agg].getResultSchema().numColumns();
-      }
-    }
-    TupleBatch aggResults = curGroupAggs.popAny();
-    Preconditions.checkState(curGroupKeys.numTuples() == aggResults.numTuples(),
-        "curGroupKeys size %s != aggResults size %s", curGroupKeys.numTuples(), aggResults.numTuples());
-
-    /* Note: as of Java7 sublists of sublists do what we want -- the sublists are at most one deep. */
-    aggStates = aggStates.subList(curGroupKeys.numTuples(), aggStates.size());
-    return new TupleBatch(getSchema(), ImmutableList.<Column<?>> builder().addAll(curGroupKeys.getDataColumns())
-        .addAll(aggResults.getDataColumns()).build());
+    return groups.nextResult();
   }
 
   /**
@@ -243,14 +166,14 @@ public final class MultiGroupByAggregate extends UnaryOperator {
       return null;
     }
 
-    groupSchema = inputSchema.getSubSchema(gfields);
+    Schema groupSchema = inputSchema.getSubSchema(gfields);
 
     /* Build the output schema from the group schema and the aggregates. */
     final ImmutableList.Builder<Type> aggTypes = ImmutableList.<Type> builder();
     final ImmutableList.Builder<String> aggNames = ImmutableList.<String> builder();
 
     try {
-      for (Aggregator agg : AggUtils.allocateAggs(factories, inputSchema)) {
+      for (Aggregator agg : allocateAggs(inputSchema)) {
         Schema curAggSchema = agg.getResultSchema();
         aggTypes.addAll(curAggSchema.getColumnTypes());
         aggNames.addAll(curAggSchema.getColumnNames());
@@ -258,16 +181,16 @@ public final class MultiGroupByAggregate extends UnaryOperator {
     } catch (DbException e) {
       throw new RuntimeException("unable to allocate aggregators to determine output schema", e);
     }
-    aggSchema = new Schema(aggTypes, aggNames);
+    Schema aggSchema = new Schema(aggTypes, aggNames);
     return Schema.merge(groupSchema, aggSchema);
   }
 
   @Override
   protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
     Preconditions.checkState(getSchema() != null, "unable to determine schema in init");
-    aggregators = AggUtils.allocateAggs(factories, getChild().getSchema());
-    groupKeys = new TupleBuffer(groupSchema);
-    aggStates = new ArrayList<>();
-    groupKeyMap = new IntObjectHashMap<>();
+    aggregators = allocateAggs(getChild().getSchema());
+    groups =
+        new SpillableAggregation(getChild().getSchema(), gfields, aggregators, mergePartials, getSchema(),
+            maxGroupsInMemory, SpillableAggregation.getSpillDirectory(execEnvVars));
   }
 };
@@ -0,0 +1,249 @@
+package edu.washington.escience.myria.operator.agg;
+
+import java.util.Objects;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.operator.UnaryOperator;
+import edu.washington.escience.myria.storage.ReadableColumn;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+/**
+ * The first half of a two-phase group-by aggregation: aggregates its input locally and outputs the partial results of
+ * each group, e.g., the count and the sum for an average, to be shuffled and merged into the final results by a
+ * {@link SingleGroupByAggregate} or {@link MultiGroupByAggregate} with the same factories that merges partial results.
+ * The output tuples are the group-by columns followed by the partial results of each aggregate. All aggregates must be
+ * decomposable.
+ * 
+ * The partial results of a group may be output several times, so that the operator holds at most
+ * {@link #setMaxGroupsInMemory(long)} groups. If, after at least {@link #SAMPLE_TUPLES} input tuples, the number of
+ * groups is more than {@link #setMaxGroupRatio(double)} times the number of input tuples, aggregating does not reduce
+ * the output enough to pay for itself, and the operator stops aggregating: each input tuple is output as the partial
+ * result of its own group, without hashing.
+ */
+public final class PartialAggregate extends UnaryOperator {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** The default maximum number of groups held in memory. */
+  public static final long DEFAULT_MAX_GROUPS_IN_MEMORY = 64L * TupleBatch.BATCH_SIZE;
+  /** The default ratio of groups to input tuples above which the operator stops aggregating. */
+  public static final double DEFAULT_MAX_GROUP_RATIO = 0.5;
+  /** The number of input tuples after which the operator decides whether to stop aggregating. */
+  public static final long SAMPLE_TUPLES = 8L * TupleBatch.BATCH_SIZE;
+
+  /** Factories to make the Aggregators. */
+  private final AggregatorFactory[] factories;
+  /** Group fields. */
+  private final int[] gfields;
+  /** The maximum number of groups held in memory. */
+  private long maxGroupsInMemory = DEFAULT_MAX_GROUPS_IN_MEMORY;
+  /** The ratio of groups to input tuples above which the operator stops aggregating. */
+  private double maxGroupRatio = DEFAULT_MAX_GROUP_RATIO;
+
+  /** The actual Aggregators. */
+  private transient Aggregator[] aggregators;
+  /** The in-progress groups and their aggregation states. */
+  private transient GroupedAggregation groups;
+  /** The partial results that are ready to be output. */
+  private transient TupleBatchBuffer ans;
+  /** The number of input tuples aggregated so far. */
+  private transient long numInputTuples;
+  /** The number of groups output so far. */
+  private transient long numOutputGroups;
+  /** Whether the operator has stopped aggregating. */
+  private transient boolean passThrough;
+
+  /**
+   * Groups the input tuples according to the specified grouping fields, then produces the partial results of the
+   * specified aggregates.
+   * 
+   * @param child The Operator that is feeding us tuples.
+   * @param gfields The columns over which we are grouping the result.
+   * @param factories The factories that will produce the {@link Aggregator}s for each group.
+   */
+  public PartialAggregate(@Nullable final Operator child, final int[] gfields, final AggregatorFactory... factories) {
+    super(child);
+    this.gfields = Objects.requireNonNull(gfields, "gfields");
+    this.factories = Objects.requireNonNull(factories, "factories");
+    Preconditions.checkArgument(gfields.length > 0, "to use PartialAggregate, must group over some fields");
+    Preconditions.checkArgument(factories.length != 0, "to use PartialAggregate, must specify some aggregates");
+  }
+
+  /**
+   * Set the maximum number of groups held in memory. If there are more groups, their partial results are output.
+   * 
+   * @param maxGroupsInMemory the maximum number of groups held in memory.
+   */
+  public void setMaxGroupsInMemory(final long maxGroupsInMemory) {
+    Preconditions.checkArgument(maxGroupsInMemory > 0, "maxGroupsInMemory must be positive");
+    this.maxGroupsInMemory = maxGroupsInMemory;
+  }
+
+  /**
+   * Set the ratio of groups to input tuples above which the operator stops aggregating. With a ratio of 1, the
+   * operator never stops.
+   * 
+   * @param maxGroupRatio the ratio, between 0 and 1.
+   */
+  public void setMaxGroupRatio(final double maxGroupRatio) {
+    Preconditions.checkArgument(maxGroupRatio >= 0 && maxGroupRatio <= 1, "maxGroupRatio must be between 0 and 1");
+    this.maxGroupRatio = maxGroupRatio;
+  }
+
+  /**
+   * @return whether the operator has stopped aggregating because the groups did not reduce its input enough.
+   */
+  public boolean isPassThrough() {
+    return passThrough;
+  }
+
+  @Override
+  protected void cleanup() throws DbException {
+    groups = null;
+    ans = null;
+  }
+
+  @Override
+  protected TupleBatch fetchNextReady() throws DbException {
+    final Operator child = getChild();
+
+    TupleBatch tb = ans.popFilled();
+    while (tb == null && !child.eos()) {
+      TupleBatch input = child.nextReady();
+      if (input == null) {
+        break;
+      }
+      addBatch(input);
+      tb = ans.popFilled();
+    }
+    if (tb != null) {
+      return tb;
+    }
+
+    if (child.eos()) {
+      if (groups != null) {
+        flushGroups();
+        groups = null;
+      }
+      return ans.popAny();
+    }
+    return null;
+  }
+
+  /**
+   * Aggregate a batch of input tuples, or output each as its own group if the operator has stopped aggregating.
+   * 
+   * @param tb the batch.
+   * @throws DbException if there is an error.
+   */
+  private void addBatch(final TupleBatch tb) throws DbException {
+    if (passThrough) {
+      appendTuplePartials(tb);
+      return;
+    }
+
+    groups.add(tb);
+    numInputTuples += tb.numTuples();
+    if (numInputTuples >= SAMPLE_TUPLES && numOutputGroups + groups.numGroups() > maxGroupRatio * numInputTuples) {
+      flushGroups();
+      groups = null;
+      passThrough = true;
+    } else if (groups.numGroups() >= maxGroupsInMemory) {
+      flushGroups();
+      groups = new GroupedAggregation(getChild().getSchema(), gfields, aggregators);
+    }
+  }
+
+  /**
+   * Output the partial results of all groups in memory.
+   * 
+   * @throws DbException if there is an error.
+   */
+  private void flushGroups() throws DbException {
+    final int numGroups = groups.numGroups();
+    for (int group = 0; group < numGroups; ++group) {
+      groups.appendGroupPartial(group, ans);
+    }
+    numOutputGroups += numGroups;
+  }
+
+  /**
+   * Output the partial result of each tuple of a batch as if it was the only tuple of its group. The aggregators are
+   * updated with group ids 0, 1, 2, ..., so that no hashing is needed.
+   * 
+   * @param tb the batch.
+   * @throws DbException if there is an error.
+   */
+  private void appendTuplePartials(final TupleBatch tb) throws DbException {
+    final int numTuples = tb.numTuples();
+    final int[] groupIds = new int[numTuples];
+    for (int row = 0; row < numTuples; ++row) {
+      groupIds[row] = row;
+    }
+    final Object[] states = new Object[aggregators.length];
+    for (int agg = 0; agg < aggregators.length; ++agg) {
+      states[agg] = ((DecomposableAggregator) aggregators[agg]).getInitialGroupStates();
+      ((DecomposableAggregator) aggregators[agg]).addRows(tb, groupIds, numTuples, states[agg]);
+    }
+    final ReadableColumn[] keys = new ReadableColumn[gfields.length];
+    for (int i = 0; i < gfields.length; ++i) {
+      keys[i] = tb.asColumn(gfields[i]);
+    }
+    for (int row = 0; row < numTuples; ++row) {
+      for (int i = 0; i < gfields.length; ++i) {
+        ans.put(i, keys[i], row);
+      }
+      int column = gfields.length;
+      for (int agg = 0; agg < aggregators.length; ++agg) {
+        DecomposableAggregator aggregator = (DecomposableAggregator) aggregators[agg];
+        aggregator.getGroupPartialResult(ans, column, row, states[agg]);
+        column += aggregator.getPartialSchema().numColumns();
+      }
+    }
+  }
+
+  @Override
+  protected Schema generateSchema() {
+    Operator child = getChild();
+    if (child == null) {
+      return null;
+    }
+    Schema inputSchema = child.getSchema();
+    if (inputSchema == null) {
+      return null;
+    }
+
+    Schema outputSchema = inputSchema.getSubSchema(gfields);
+    try {
+      for (Aggregator agg : AggUtils.allocateAggs(factories, inputSchema)) {
+        if (!(agg instanceof DecomposableAggregator)) {
+          throw new IllegalArgumentException("aggregate " + agg.getResultSchema() + " cannot be computed partially");
+        }
+        outputSchema = Schema.merge(outputSchema, ((DecomposableAggregator) agg).getPartialSchema());
+      }
+    } catch (DbException e) {
+      throw new RuntimeException("unable to allocate aggregators to determine output schema", e);
+    }
+    return outputSchema;
+  }
+
+  @Override
+  protected void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    Preconditions.checkState(getSchema() != null, "unable to determine schema in init");
+    aggregators = AggUtils.allocateAggs(factories, getChild().getSchema());
+    groups = new GroupedAggregation(getChild().getSchema(), gfields, aggregators);
+    ans = new TupleBatchBuffer(getSchema(), false, getBatchSizeBytes());
+    numInputTuples = 0;
+    numOutputGroups = 0;
+    passThrough = false;
+  }
+}
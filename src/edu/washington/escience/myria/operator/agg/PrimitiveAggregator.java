@@ -62,6 +62,9 @@ public abstract class PrimitiveAggregator implements Aggregator, Serializable {
    */
   protected final LinkedHashSet<AggregationOp> aggOps;
 
+  /** The name of the field being aggregated. */
+  protected final String fieldName;
+
   /**
    * Result schema. It's automatically generated according to the {@link #aggOps}.
    */
@@ -77,6 +80,7 @@ public abstract class PrimitiveAggregator implements Aggregator, Serializable {
     Objects.requireNonNull(aggOps, "aggOps");
     Objects.requireNonNull(fieldName, "fieldName");
 
+    this.fieldName = fieldName;
     this.aggOps = new LinkedHashSet<>(Arrays.asList(aggOps));
 
     if (!getAvailableAgg().containsAll(this.aggOps)) {
@@ -1,11 +1,15 @@
 package edu.washington.escience.myria.operator.agg;
 
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.Objects;
+import java.util.Set;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Preconditions;
 
+import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.operator.agg.PrimitiveAggregator.AggregationOp;
@@ -65,4 +69,61 @@ public class SingleColumnAggregatorFactory implements AggregatorFactory {
     }
     throw new IllegalArgumentException("Unknown column type: " + type);
   }
+
+  /**
+   * {@inheritDoc}
+   * 
+   * The type of the values that were aggregated is that of the partial minimum or maximum, if any. Otherwise the
+   * partial results of INT and LONG, or of FLOAT and DOUBLE, values are the same, and so are the final results.
+   */
+  @Override
+  public Aggregator getFinal(final Schema partialSchema, final int column) throws DbException {
+    Objects.requireNonNull(partialSchema, "partialSchema");
+    Set<AggregationOp> ops = EnumSet.copyOf(Arrays.asList(aggOps));
+    String firstStatistic;
+    if (AggUtils.needsCount(ops)) {
+      firstStatistic = "count";
+    } else if (AggUtils.needsSum(ops)) {
+      firstStatistic = "sum";
+    } else if (AggUtils.needsMin(ops)) {
+      firstStatistic = "min";
+    } else if (AggUtils.needsMax(ops)) {
+      firstStatistic = "max";
+    } else {
+      throw new DbException("aggregate " + Arrays.toString(aggOps) + " cannot be split into partial and final halves");
+    }
+    String prefix = "partial_" + firstStatistic + "_";
+    String partialName = partialSchema.getColumnName(column);
+    if (!partialName.startsWith(prefix)) {
+      throw new DbException("column " + column + " of " + partialSchema + " is not a partial " + firstStatistic);
+    }
+    String inputName = partialName.substring(prefix.length());
+
+    int idx = column;
+    if (AggUtils.needsCount(ops)) {
+      ++idx;
+    }
+    Type type = Type.LONG_TYPE;
+    if (AggUtils.needsSum(ops)) {
+      type = partialSchema.getColumnType(idx++);
+    }
+    if (AggUtils.needsSumSq(ops)) {
+      ++idx;
+    }
+    if (AggUtils.needsMin(ops) || AggUtils.needsMax(ops)) {
+      type = partialSchema.getColumnType(idx);
+    }
+    switch (type) {
+      case DOUBLE_TYPE:
+        return new DoubleAggregator(inputName, aggOps, column);
+      case FLOAT_TYPE:
+        return new FloatAggregator(inputName, aggOps, column);
+      case INT_TYPE:
+        return new IntegerAggregator(inputName, aggOps, column);
+      case LONG_TYPE:
+        return new LongAggregator(inputName, aggOps, column);
+      default:
+        throw new DbException("partial results of type " + type + " cannot be merged");
+    }
+  }
 }
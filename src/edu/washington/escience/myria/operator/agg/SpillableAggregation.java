@@ -0,0 +1,333 @@
+package edu.washington.escience.myria.operator.agg;
+
+import java.io.File;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.storage.ReadableColumn;
+import edu.washington.escience.myria.storage.SpillFile;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.HashScheme;
+import edu.washington.escience.myria.util.HashUtils;
+
+/**
+ * A group-by aggregation that holds at most a given number of groups in memory, and spills the rest to disk,
+ * hash-partitioned on the group-by columns. Once all input has been added, the groups in memory are returned, and then
+ * each partition is aggregated in turn, spilling again with a different hash function if it is still too large.
+ * 
+ * If all aggregators are {@link DecomposableAggregator}s, the input is pre-aggregated in memory: when there are too many
+ * groups, the partial results of all groups are written to the partitions and memory is cleared. The partitions are
+ * then aggregated by merging the partial results. Otherwise, the groups already in memory stay there and continue to be
+ * updated, and the input tuples of new groups are written to the partitions.
+ */
+final class SpillableAggregation {
+
+  /** The number of partitions that groups are spilled to. */
+  static final int NUM_PARTITIONS = 16;
+
+  /** The schema of the input tuples. */
+  private final Schema inputSchema;
+  /** The group-by columns of the input tuples. */
+  private final int[] groupColumns;
+  /** The aggregators. */
+  private final Aggregator[] aggregators;
+  /** Whether the input tuples are partial results. */
+  private final boolean merge;
+  /** The schema of the output. */
+  private final Schema outputSchema;
+  /** The maximum number of groups held in memory. */
+  private final long maxGroupsInMemory;
+  /** The directory in which to spill, or null for the default temporary-file directory. */
+  private final String directory;
+  /** The number of times the input has already been partitioned. */
+  private final int depth;
+  /** Whether all aggregators are decomposable. */
+  private final boolean decomposable;
+
+  /** The groups in memory. */
+  private GroupedAggregation groups;
+  /** Buffers the tuples of each partition before they are spilled. Null if nothing has been spilled. */
+  private TupleBatchBuffer[] buffers;
+  /** The spilled tuples of each partition. Null if nothing has been spilled. */
+  private SpillFile[] files;
+  /** Whether all input has been added. */
+  private boolean finished;
+  /** The id of the next group in memory to be returned. */
+  private int nextGroup;
+  /** The next partition to be aggregated. */
+  private int nextPartition;
+  /** The aggregation of the partition being returned, or null. */
+  private SpillableAggregation partition;
+
+  /**
+   * @param inputSchema the schema of the input tuples.
+   * @param groupColumns the group-by columns of the input tuples.
+   * @param aggregators the aggregators.
+   * @param merge whether the input tuples are partial results, i.e., the group-by columns followed by the partial
+   *          results of each aggregator. If so, all aggregators must be decomposable.
+   * @param outputSchema the schema of the output: the group-by columns followed by the results of the aggregators.
+   * @param maxGroupsInMemory the maximum number of groups held in memory.
+   * @param directory the directory in which to spill, or null for the default temporary-file directory.
+   */
+  SpillableAggregation(final Schema inputSchema, final int[] groupColumns, final Aggregator[] aggregators,
+      final boolean merge, final Schema outputSchema, final long maxGroupsInMemory, @Nullable final String directory) {
+    this(inputSchema, groupColumns, aggregators, merge, outputSchema, maxGroupsInMemory, directory, 0);
+  }
+
+  /**
+   * @param inputSchema the schema of the input tuples.
+   * @param groupColumns the group-by columns of the input tuples.
+   * @param aggregators the aggregators.
+   * @param merge whether the input tuples are partial results.
+   * @param outputSchema the schema of the output: the group-by columns followed by the results of the aggregators.
+   * @param maxGroupsInMemory the maximum number of groups held in memory.
+   * @param directory the directory in which to spill, or null for the default temporary-file directory.
+   * @param depth the number of times the input has already been partitioned.
+   */
+  private SpillableAggregation(final Schema inputSchema, final int[] groupColumns, final Aggregator[] aggregators,
+      final boolean merge, final Schema outputSchema, final long maxGroupsInMemory, final String directory,
+      final int depth) {
+    this.inputSchema = inputSchema;
+    this.groupColumns = groupColumns;
+    this.aggregators = aggregators;
+    this.merge = merge;
+    this.outputSchema = outputSchema;
+    this.maxGroupsInMemory = maxGroupsInMemory;
+    this.directory = directory;
+    this.depth = depth;
+    decomposable = GroupedAggregation.isDecomposable(aggregators);
+    groups = new GroupedAggregation(inputSchema, groupColumns, aggregators, merge);
+  }
+
+  /**
+   * @param execEnvVars the execution environment variables of an operator, or null.
+   * @return the working directory of the worker, if it exists, or null.
+   */
+  static String getSpillDirectory(@Nullable final ImmutableMap<String, Object> execEnvVars) {
+    if (execEnvVars == null) {
+      return null;
+    }
+    Object workingDirectory = execEnvVars.get(MyriaSystemConfigKeys.WORKING_DIRECTORY);
+    if (workingDirectory instanceof String && new File((String) workingDirectory).isDirectory()) {
+      return (String) workingDirectory;
+    }
+    return null;
+  }
+
+  /**
+   * @return whether the input can be partitioned again, i.e., whether there is an unused hash function left.
+   */
+  private boolean canSpill() {
+    return depth + 1 < HashUtils.NUM_OF_HASHFUNCTIONS;
+  }
+
+  /**
+   * Add the tuples in a batch to their groups.
+   * 
+   * @param tb the batch.
+   * @throws DbException if there is an error.
+   */
+  void add(final TupleBatch tb) throws DbException {
+    if (files != null && !decomposable) {
+      TupleBatch newGroups = groups.addExisting(tb);
+      if (newGroups != null) {
+        spillRows(newGroups, groupColumns);
+      }
+      return;
+    }
+    groups.add(tb);
+    if (groups.numGroups() > maxGroupsInMemory && canSpill()) {
+      if (files == null) {
+        buffers = new TupleBatchBuffer[NUM_PARTITIONS];
+        files = new SpillFile[NUM_PARTITIONS];
+      }
+      if (decomposable) {
+        spillPartialResults();
+      }
+    }
+  }
+
+  /**
+   * Write the partial results of all groups in memory to the partitions, and clear memory.
+   * 
+   * @throws DbException if there is an error.
+   */
+  private void spillPartialResults() throws DbException {
+    Schema partialSchema = groups.getPartialSchema();
+    int[] keyColumns = new int[groupColumns.length];
+    for (int i = 0; i < keyColumns.length; ++i) {
+      keyColumns[i] = i;
+    }
+    TupleBatchBuffer partialResults = new TupleBatchBuffer(partialSchema);
+    for (int group = 0; group < groups.numGroups(); ++group) {
+      groups.appendGroupPartial(group, partialResults);
+      TupleBatch tb = partialResults.popFilled();
+      if (tb != null) {
+        spillRows(tb, keyColumns);
+      }
+    }
+    TupleBatch tb = partialResults.popAny();
+    if (tb != null) {
+      spillRows(tb, keyColumns);
+    }
+    groups = new GroupedAggregation(inputSchema, groupColumns, aggregators, merge);
+  }
+
+  /**
+   * Append the rows of a batch to their partitions.
+   * 
+   * @param tb the batch.
+   * @param keyColumns the group-by columns of the batch.
+   * @throws DbException if the rows cannot be spilled.
+   */
+  private void spillRows(final TupleBatch tb, final int[] keyColumns) throws DbException {
+    final ReadableColumn[] columns = new ReadableColumn[tb.numColumns()];
+    for (int column = 0; column < columns.length; ++column) {
+      columns[column] = tb.asColumn(column);
+    }
+    final int[] hashes = HashUtils.hashSubRows(tb, keyColumns, depth + 1, HashScheme.CURRENT, null);
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      int p = hashes[row] % NUM_PARTITIONS;
+      if (p < 0) {
+        p += NUM_PARTITIONS;
+      }
+      if (buffers[p] == null) {
+        buffers[p] = new TupleBatchBuffer(tb.getSchema());
+        files[p] = new SpillFile(tb.getSchema(), directory);
+      }
+      for (int column = 0; column < columns.length; ++column) {
+        buffers[p].put(column, columns[column], row);
+      }
+      TupleBatch filled = buffers[p].popFilled();
+      if (filled != null) {
+        files[p].write(filled);
+      }
+    }
+  }
+
+  /**
+   * Return the next results. Must only be called once all input has been added.
+   * 
+   * @return the next batch of results, or null if all results have been returned.
+   * @throws DbException if there is an error.
+   */
+  TupleBatch nextResult() throws DbException {
+    if (!finished) {
+      finished = true;
+      if (files != null) {
+        if (decomposable) {
+          spillPartialResults();
+          groups = null;
+        }
+        for (int p = 0; p < NUM_PARTITIONS; ++p) {
+          if (buffers[p] != null) {
+            TupleBatch tb = buffers[p].popAny();
+            if (tb != null) {
+              files[p].write(tb);
+            }
+            buffers[p] = null;
+          }
+        }
+      }
+    }
+
+    if (groups != null) {
+      int end = Math.min(groups.numGroups(), nextGroup + TupleBatch.BATCH_SIZE);
+      if (nextGroup < end) {
+        TupleBatchBuffer results = new TupleBatchBuffer(outputSchema);
+        for (; nextGroup < end; ++nextGroup) {
+          groups.appendGroup(nextGroup, results);
+        }
+        return results.popAny();
+      }
+      groups = null;
+    }
+
+    while (true) {
+      if (partition != null) {
+        TupleBatch tb = partition.nextResult();
+        if (tb != null) {
+          return tb;
+        }
+        partition.close();
+        partition = null;
+      }
+      if (files == null || nextPartition == NUM_PARTITIONS) {
+        return null;
+      }
+      partition = aggregatePartition(nextPartition++);
+    }
+  }
+
+  /**
+   * Read a partition into a new aggregation, and delete it.
+   * 
+   * @param p the partition.
+   * @return the aggregation of the partition, or null if the partition is empty.
+   * @throws DbException if there is an error.
+   */
+  private SpillableAggregation aggregatePartition(final int p) throws DbException {
+    SpillFile file = files[p];
+    if (file == null) {
+      return null;
+    }
+    files[p] = null;
+    SpillableAggregation aggregation;
+    if (decomposable) {
+      int[] keyColumns = new int[groupColumns.length];
+      for (int i = 0; i < keyColumns.length; ++i) {
+        keyColumns[i] = i;
+      }
+      aggregation =
+          new SpillableAggregation(file.getSchema(), keyColumns, aggregators, true, outputSchema, maxGroupsInMemory,
+              directory, depth + 1);
+    } else {
+      aggregation =
+          new SpillableAggregation(inputSchema, groupColumns, aggregators, merge, outputSchema, maxGroupsInMemory,
+              directory, depth + 1);
+    }
+    try (SpillFile.Reader reader = file.openReader()) {
+      for (TupleBatch tb = reader.next(); tb != null; tb = reader.next()) {
+        aggregation.add(tb);
+      }
+    } finally {
+      file.delete();
+    }
+    return aggregation;
+  }
+
+  /**
+   * @return whether any groups have been spilled.
+   */
+  boolean hasSpilled() {
+    return files != null;
+  }
+
+  /**
+   * Delete all spilled tuples.
+   * 
+   * @throws DbException if there is an error.
+   */
+  void close() throws DbException {
+    if (partition != null) {
+      partition.close();
+      partition = null;
+    }
+    if (files != null) {
+      for (int p = 0; p < NUM_PARTITIONS; ++p) {
+        if (files[p] != null) {
+          files[p].delete();
+          files[p] = null;
+        }
+      }
+    }
+    groups = null;
+    buffers = null;
+  }
+}
@@ -135,6 +135,12 @@ public class UserDefinedAggregatorFactory implements AggregatorFactory {
     return new UserDefinedAggregator(state.clone(), updateEvaluators, emitEvaluators, resultSchema);
   }
 
+  @Override
+  @Nonnull
+  public Aggregator getFinal(final Schema partialSchema, final int column) throws DbException {
+    throw new DbException("user-defined aggregates cannot be split into partial and final aggregates");
+  }
+
   /**
    * Generate the schema of the state.
    * 
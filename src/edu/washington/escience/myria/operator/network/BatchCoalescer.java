@@ -0,0 +1,130 @@
+package edu.washington.escience.myria.operator.network;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.storage.BatchByteBudget;
+import edu.washington.escience.myria.storage.ConcatColumn;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * Merges the small tuple batches bound to the same channels before they are written, so that each frame sent carries
+ * enough tuples to amortize its per-message overhead. Small batches are held until together they reach a target
+ * number of tuples or of estimated bytes, or until the first of them has lingered for a deadline. The columns of the
+ * held batches are concatenated without copying; the copy happens once, when the merged batch is serialized.
+ * 
+ * EOI batches and batches that reach a target on their own are never held: they are released right after the held
+ * batches, so the order of the tuples is kept.
+ */
+final class BatchCoalescer {
+  /** The number of tuples at which the held batches are released. */
+  private final int targetTuples;
+  /** The number of estimated bytes at which the held batches are released. */
+  private final long targetBytes;
+  /** How long the first held batch may wait, in nanoseconds. */
+  private final long lingerNanos;
+  /** The small batches that are held. */
+  private final List<TupleBatch> held;
+  /** The number of tuples in the held batches. */
+  private int heldTuples;
+  /** The estimated bytes of the held batches. */
+  private long heldBytes;
+  /** When the first held batch was added, from {@link System#nanoTime()}. */
+  private long firstHeldTime;
+  /** The batches that are ready to be written, in order. */
+  private final LinkedList<TupleBatch> ready;
+
+  /**
+   * @param targetTuples the number of tuples at which the held batches are released.
+   * @param targetBytes the number of estimated bytes at which the held batches are released.
+   * @param lingerNanos how long the first held batch may wait, in nanoseconds.
+   */
+  BatchCoalescer(final int targetTuples, final long targetBytes, final long lingerNanos) {
+    Preconditions.checkArgument(targetTuples > 0, "targetTuples must be positive");
+    Preconditions.checkArgument(targetBytes > 0, "targetBytes must be positive");
+    Preconditions.checkArgument(lingerNanos >= 0, "lingerNanos must be non-negative");
+    this.targetTuples = targetTuples;
+    this.targetBytes = targetBytes;
+    this.lingerNanos = lingerNanos;
+    held = new ArrayList<TupleBatch>();
+    ready = new LinkedList<TupleBatch>();
+  }
+
+  /**
+   * @param tb a batch bound to the channels of this coalescer.
+   */
+  void add(final TupleBatch tb) {
+    if (tb.isEOI()) {
+      release();
+      ready.add(tb);
+      return;
+    }
+    final int numTuples = tb.numTuples();
+    if (numTuples == 0) {
+      return;
+    }
+    final long bytes = BatchByteBudget.estimateBytes(tb);
+    if (numTuples >= targetTuples || bytes >= targetBytes) {
+      release();
+      ready.add(tb);
+      return;
+    }
+    if (heldTuples + numTuples > targetTuples || heldBytes + bytes > targetBytes) {
+      release();
+    }
+    if (held.isEmpty()) {
+      firstHeldTime = System.nanoTime();
+    }
+    held.add(tb);
+    heldTuples += numTuples;
+    heldBytes += bytes;
+    if (heldTuples == targetTuples || heldBytes == targetBytes) {
+      release();
+    }
+  }
+
+  /**
+   * @param usingTimeout if true, the held batches are only released once they have lingered for the deadline. If
+   *          false, they are released right away, e.g., at EOS.
+   * @return the next batch to be written, or null if there is none.
+   */
+  TupleBatch poll(final boolean usingTimeout) {
+    if (ready.isEmpty() && !held.isEmpty() && (!usingTimeout || System.nanoTime() - firstHeldTime >= lingerNanos)) {
+      release();
+    }
+    return ready.poll();
+  }
+
+  /**
+   * Merge the held batches into one and make it ready to be written.
+   */
+  private void release() {
+    if (held.isEmpty()) {
+      return;
+    }
+    final TupleBatch first = held.get(0);
+    if (held.size() == 1 || first.numColumns() == 0) {
+      ready.addAll(held);
+    } else {
+      List<ConcatColumn<?>> columns = new ArrayList<>(first.numColumns());
+      for (Column<?> c : first.getDataColumns()) {
+        columns.add(new ConcatColumn<>(c.getType()));
+      }
+      for (TupleBatch tb : held) {
+        int i = 0;
+        for (Column<?> c : tb.getDataColumns()) {
+          columns.get(i).addColumn(c);
+          ++i;
+        }
+      }
+      ready.add(new TupleBatch(first.getSchema(), columns, heldTuples));
+    }
+    held.clear();
+    heldTuples = 0;
+    heldBytes = 0;
+  }
+}
@@ -1,13 +1,23 @@
 package edu.washington.escience.myria.operator.network;
 
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
 
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.MyriaConstants.ProfilingMode;
 import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.operator.network.partition.HeavyHitterSketch;
+import edu.washington.escience.myria.operator.network.partition.MultiFieldHashPartitionFunction;
 import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.SingleFieldHashPartitionFunction;
 import edu.washington.escience.myria.parallel.ExchangePairID;
 import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.HashScheme;
 import edu.washington.escience.myria.util.MyriaArrayUtils;
 
 /**
@@ -19,6 +29,15 @@ public class GenericShuffleProducer extends Producer {
   /** Required for Java serialization. */
   private static final long serialVersionUID = 1L;
 
+  /** The logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(GenericShuffleProducer.class);
+
+  /** The min number of counters of the sketch that looks for heavy hitters. */
+  private static final int HEAVY_HITTER_SKETCH_CAPACITY = 64;
+
+  /** One in this number of tuples is sampled by the sketch that looks for heavy hitters. */
+  private static final int HEAVY_HITTER_SKETCH_SAMPLE_EVERY = 16;
+
   /**
    * the partition function.
    * */
@@ -29,6 +48,11 @@ public class GenericShuffleProducer extends Producer {
    */
   private final int[][] partitionToChannel;
 
+  /**
+   * Looks for the keys that make a hash shuffle skewed, when the query is profiled.
+   */
+  private transient HeavyHitterSketch heavyHitterSketch;
+
   /**
    * Shuffle to the same operator ID on multiple workers. (The old "ShuffleProducer")
    * 
@@ -89,6 +113,25 @@ public class GenericShuffleProducer extends Producer {
     return partitionFunction;
   }
 
+  @Override
+  protected void initProducer(final ImmutableMap<String, Object> execEnvVars) throws DbException {
+    partitionFunction.setHashScheme(HashScheme.fromExecEnvVars(execEnvVars));
+    heavyHitterSketch = null;
+    if (getProfilingMode().contains(ProfilingMode.QUERY)) {
+      int[] keys = null;
+      if (partitionFunction instanceof SingleFieldHashPartitionFunction) {
+        keys = new int[] { ((SingleFieldHashPartitionFunction) partitionFunction).getIndex() };
+      } else if (partitionFunction instanceof MultiFieldHashPartitionFunction) {
+        keys = ((MultiFieldHashPartitionFunction) partitionFunction).getIndexes();
+      }
+      if (keys != null) {
+        /* Enough counters to tell the keys that take more than the fair share of one worker. */
+        int capacity = Math.max(HEAVY_HITTER_SKETCH_CAPACITY, 2 * partitionFunction.numPartition());
+        heavyHitterSketch = new HeavyHitterSketch(keys, capacity, HEAVY_HITTER_SKETCH_SAMPLE_EVERY);
+      }
+    }
+  }
+
   @Override
   protected final void consumeTuples(final TupleBatch tup) throws DbException {
     final TupleBatch[] partitions = getTupleBatchPartitions(tup);
@@ -104,6 +147,9 @@ public class GenericShuffleProducer extends Producer {
         }
       }
     }
+    if (heavyHitterSketch != null) {
+      heavyHitterSketch.add(tup);
+    }
     writePartitionsIntoChannels(true, partitionToChannel, partitions);
   }
 
@@ -118,8 +164,30 @@ public class GenericShuffleProducer extends Producer {
     return tb.partition(partitionFunction);
   }
 
+  @Override
+  protected void childIdle() throws DbException {
+    /* The child may not produce anything until the tuples held to be merged are received, so write them. */
+    writePartitionsIntoChannels(false, partitionToChannel, null);
+  }
+
+  /**
+   * Log the keys that may each account for more than the fair share of one worker of the tuples.
+   */
+  private void reportHeavyHitters() {
+    if (heavyHitterSketch == null) {
+      return;
+    }
+    final int numWorkers = partitionFunction.numPartition();
+    List<List<Object>> heavyHitters = heavyHitterSketch.getHeavyHitters(1.0 / numWorkers);
+    if (!heavyHitters.isEmpty()) {
+      LOGGER.info("{}: keys {} may each account for at least 1/{} of the {} sampled tuples; a skew-aware shuffle "
+          + "would spread them", this, heavyHitters, numWorkers, heavyHitterSketch.getNumSampled());
+    }
+  }
+
   @Override
   protected void childEOS() throws DbException {
+    reportHeavyHitters();
     writePartitionsIntoChannels(false, partitionToChannel, null);
     for (int p = 0; p < numChannels(); p++) {
       super.channelEnds(p);
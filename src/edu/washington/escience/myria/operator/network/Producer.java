@@ -3,6 +3,7 @@ package edu.washington.escience.myria.operator.network;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.jboss.netty.channel.ChannelFuture;
 
@@ -12,6 +13,7 @@ import com.google.common.collect.ImmutableMap;
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.MyriaConstants.FTMode;
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
 import edu.washington.escience.myria.operator.DupElim;
 import edu.washington.escience.myria.operator.KeepAndSortOnMinValue;
 import edu.washington.escience.myria.operator.KeepMinValue;
@@ -28,7 +30,6 @@ import edu.washington.escience.myria.parallel.ipc.IPCEventListener;
 import edu.washington.escience.myria.parallel.ipc.StreamIOChannelID;
 import edu.washington.escience.myria.parallel.ipc.StreamOutputChannel;
 import edu.washington.escience.myria.storage.TupleBatch;
-import edu.washington.escience.myria.storage.TupleBatchBuffer;
 import edu.washington.escience.myria.util.MyriaArrayUtils;
 
 /**
@@ -55,9 +56,9 @@ public abstract class Producer extends RootOperator {
   private transient boolean[] ioChannelsAvail;
 
   /**
-   * output buffers of partitions.
+   * output buffers of partitions, which merge small batches before they are written.
    * */
-  private transient TupleBatchBuffer[] partitionBuffers;
+  private transient BatchCoalescer[] partitionBuffers;
 
   /** tried to send tuples for each channel. */
   private List<StreamingState> triedToSendTuples;
@@ -195,9 +196,10 @@ public abstract class Producer extends RootOperator {
   public final void init(final ImmutableMap<String, Object> execEnvVars) throws DbException {
     taskResourceManager =
         (LocalFragmentResourceManager) execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_FRAGMENT_RESOURCE_MANAGER);
-    partitionBuffers = new TupleBatchBuffer[numOfPartition];
+    partitionBuffers = new BatchCoalescer[numOfPartition];
+    long lingerNanos = TimeUnit.MILLISECONDS.toNanos(getCoalesceLingerMillis(execEnvVars));
     for (int i = 0; i < numOfPartition; i++) {
-      partitionBuffers[i] = new TupleBatchBuffer(getSchema());
+      partitionBuffers[i] = new BatchCoalescer(TupleBatch.BATCH_SIZE, getBatchSizeBytes(), lingerNanos);
     }
     ioChannels = new StreamOutputChannel[outputIDs.length];
     ioChannelsAvail = new boolean[outputIDs.length];
@@ -217,6 +219,28 @@ public abstract class Producer extends RootOperator {
     }
     nonBlockingExecution =
         (execEnvVars.get(MyriaConstants.EXEC_ENV_VAR_EXECUTION_MODE) == QueryExecutionMode.NON_BLOCKING);
+    initProducer(execEnvVars);
+  }
+
+  /**
+   * @param execEnvVars execution environment variables
+   * @return how long small batches may be held to be merged before they are written, in milliseconds.
+   */
+  private static long getCoalesceLingerMillis(final ImmutableMap<String, Object> execEnvVars) {
+    Object configured = execEnvVars.get(MyriaSystemConfigKeys.PRODUCER_COALESCE_LINGER_MILLIS);
+    if (configured == null) {
+      return MyriaConstants.PRODUCER_COALESCE_LINGER_MILLIS_DEFAULT_VALUE;
+    }
+    return Long.parseLong(configured.toString());
+  }
+
+  /**
+   * Initialization of subclasses, called at the end of {@link #init(ImmutableMap)}.
+   * 
+   * @param execEnvVars execution environment variables
+   * @throws DbException if any error occurs
+   */
+  protected void initProducer(final ImmutableMap<String, Object> execEnvVars) throws DbException {
   }
 
   /**
@@ -328,7 +352,7 @@ public abstract class Producer extends RootOperator {
   /**
    * Pop tuple batches from each of the buffers and try to write them to corresponding channels, if possible.
    * 
-   * @param usingTimeout use popAny() or popAnyUsingTimeout() when poping
+   * @param usingTimeout hold small batches until they can be merged or have lingered, or write them right away.
    * @param partitions the list of partitions as tuple batches.
    * */
   protected final void writePartitionsIntoChannels(final boolean usingTimeout, final TupleBatch[] partitions) {
@@ -338,8 +362,7 @@ public abstract class Producer extends RootOperator {
   /**
    * Pop tuple batches from each of the buffers and try to write them to corresponding channels, if possible.
    * 
-   * @param usingTimeout use {@link TupleBatchBuffer#popAny()} or {@link TupleBatchBuffer#popAnyUsingTimeout()} when
-   *          popping
+   * @param usingTimeout hold small batches until they can be merged or have lingered, or write them right away.
    * @param channelIndices the same as {@link GenericShuffleProducer#cellPartition}.
    * @param partitions the list of partitions as tuple batches.
    * */
@@ -364,18 +387,13 @@ public abstract class Producer extends RootOperator {
       if (partitions != null) {
         for (int i = 0; i < numOfPartition; ++i) {
           if (partitions[i] != null) {
-            partitionBuffers[i].absorb(partitions[i]);
+            partitionBuffers[i].add(partitions[i]);
           }
         }
       }
       for (int i = 0; i < numOfPartition; ++i) {
         while (true) {
-          TupleBatch tb = null;
-          if (usingTimeout) {
-            tb = partitionBuffers[i].popAnyUsingTimeout();
-          } else {
-            tb = partitionBuffers[i].popAny();
-          }
+          TupleBatch tb = partitionBuffers[i].poll(usingTimeout);
           if (tb == null) {
             break;
           }
@@ -0,0 +1,128 @@
+package edu.washington.escience.myria.operator.network.partition;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.storage.ReadableTable;
+
+/**
+ * Finds the keys that account for a large fraction of a stream of tuples, e.g., the heavy hitters to give a
+ * {@link SkewAwareHashPartitionFunction}, with the Misra-Gries algorithm. It keeps at most a fixed number of counters,
+ * and samples every n-th tuple so that it is cheap enough to run on a shuffle.
+ * 
+ * The count of a key is underestimated by at most the number of sampled tuples divided by the number of counters plus
+ * one, so a key that accounts for at least that fraction of the tuples always has a counter.
+ */
+public final class HeavyHitterSketch {
+
+  /** The indices of the key fields. */
+  private final int[] indexes;
+  /** The max number of counters. */
+  private final int capacity;
+  /** One in this number of tuples is sampled. */
+  private final int sampleEvery;
+  /** The counters of the candidate keys. */
+  private final Map<List<Object>, Long> counters;
+  /** The number of tuples to skip before the next sample. */
+  private int toSkip;
+  /** The number of sampled tuples. */
+  private long numSampled;
+
+  /**
+   * @param indexes the indices of the key fields.
+   * @param capacity the max number of counters.
+   * @param sampleEvery one in this number of tuples is sampled.
+   */
+  public HeavyHitterSketch(final int[] indexes, final int capacity, final int sampleEvery) {
+    Preconditions.checkArgument(indexes.length > 0, "at least one key field is required");
+    Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+    Preconditions.checkArgument(sampleEvery > 0, "sampleEvery must be positive");
+    this.indexes = indexes.clone();
+    this.capacity = capacity;
+    this.sampleEvery = sampleEvery;
+    counters = new HashMap<List<Object>, Long>();
+    toSkip = 0;
+    numSampled = 0;
+  }
+
+  /**
+   * @param table tuples of the stream.
+   */
+  public void add(final ReadableTable table) {
+    final int numTuples = table.numTuples();
+    int row = toSkip;
+    for (; row < numTuples; row += sampleEvery) {
+      List<Object> key = new ArrayList<Object>(indexes.length);
+      for (int index : indexes) {
+        key.add(table.getObject(index, row));
+      }
+      count(key);
+    }
+    toSkip = row - numTuples;
+  }
+
+  /**
+   * @param key the key of a sampled tuple.
+   */
+  private void count(final List<Object> key) {
+    ++numSampled;
+    Long count = counters.get(key);
+    if (count != null) {
+      counters.put(key, count + 1);
+    } else if (counters.size() < capacity) {
+      counters.put(key, 1L);
+    } else {
+      /* No room: this key and one occurrence of each counted key cancel out. */
+      Iterator<Map.Entry<List<Object>, Long>> it = counters.entrySet().iterator();
+      while (it.hasNext()) {
+        Map.Entry<List<Object>, Long> e = it.next();
+        if (e.getValue() == 1) {
+          it.remove();
+        } else {
+          e.setValue(e.getValue() - 1);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the number of sampled tuples.
+   */
+  public long getNumSampled() {
+    return numSampled;
+  }
+
+  /**
+   * @param minFraction the fraction of the tuples that a heavy hitter accounts for.
+   * @return the keys that may account for at least the fraction of the tuples, the most frequent first. Every key that
+   *         does is returned, along with possibly a few that do not.
+   */
+  public List<List<Object>> getHeavyHitters(final double minFraction) {
+    Preconditions.checkArgument(minFraction > 0 && minFraction <= 1, "minFraction must be in (0, 1]");
+    final double minCount = (minFraction - 1.0 / (capacity + 1)) * numSampled;
+    List<Map.Entry<List<Object>, Long>> candidates = new ArrayList<Map.Entry<List<Object>, Long>>();
+    for (Map.Entry<List<Object>, Long> e : counters.entrySet()) {
+      if (e.getValue() >= minCount) {
+        candidates.add(e);
+      }
+    }
+    Collections.sort(candidates, new Comparator<Map.Entry<List<Object>, Long>>() {
+      @Override
+      public int compare(final Map.Entry<List<Object>, Long> o1, final Map.Entry<List<Object>, Long> o2) {
+        return Long.compare(o2.getValue(), o1.getValue());
+      }
+    });
+    List<List<Object>> ret = new ArrayList<List<Object>>(candidates.size());
+    for (Map.Entry<List<Object>, Long> e : candidates) {
+      ret.add(e.getKey());
+    }
+    return ret;
+  }
+}
@@ -5,6 +5,7 @@ import java.util.Arrays;
 import com.google.common.base.Preconditions;
 
 import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.HashScheme;
 
 /**
  * Multiple field multiple dimension hash partition function for HyperCubeJoin.
@@ -42,6 +43,14 @@ public final class MFMDHashPartitionFunction extends PartitionFunction {
     }
   }
 
+  @Override
+  public void setHashScheme(final HashScheme hashScheme) {
+    super.setHashScheme(hashScheme);
+    for (SingleFieldHashPartitionFunction partitionFunction : partitionFunctions) {
+      partitionFunction.setHashScheme(hashScheme);
+    }
+  }
+
   @Override
   public int[] partition(final TupleBatch tb) {
     int[] result = new int[tb.numTuples()];
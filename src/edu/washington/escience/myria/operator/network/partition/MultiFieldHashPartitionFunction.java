@@ -67,14 +67,6 @@ public final class MultiFieldHashPartitionFunction extends PartitionFunction {
 
   @Override
   public int[] partition(@Nonnull final TupleBatch tb) {
-    final int[] result = new int[tb.numTuples()];
-    for (int i = 0; i < result.length; i++) {
-      int p = HashUtils.hashSubRow(tb, indexes, i) % numPartition();
-      if (p < 0) {
-        p = p + numPartition();
-      }
-      result[i] = p;
-    }
-    return result;
+    return hashesToPartitions(HashUtils.hashSubRows(tb, indexes, 0, getHashScheme(), new int[tb.numTuples()]));
   }
 }
\ No newline at end of file
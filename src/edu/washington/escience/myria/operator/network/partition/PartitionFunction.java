@@ -12,6 +12,7 @@ import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.google.common.base.Preconditions;
 
 import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.HashScheme;
 
 /**
  * The ShuffleProducer class uses an instance of the PartitionFunction class to decide which worker a tuple should be
@@ -23,6 +24,7 @@ import edu.washington.escience.myria.storage.TupleBatch;
     @Type(value = RoundRobinPartitionFunction.class, name = "RoundRobin"),
     @Type(value = SingleFieldHashPartitionFunction.class, name = "SingleFieldHash"),
     @Type(value = MultiFieldHashPartitionFunction.class, name = "MultiFieldHash"),
+    @Type(value = SkewAwareHashPartitionFunction.class, name = "SkewAwareHash"),
     @Type(value = WholeTupleHashPartitionFunction.class, name = "WholeTupleHash") })
 public abstract class PartitionFunction implements Serializable {
 
@@ -35,6 +37,12 @@ public abstract class PartitionFunction implements Serializable {
   @JsonProperty
   private Integer numPartitions = null;
 
+  /**
+   * The hash scheme used by hash partition functions. It is not part of the JSON encoding: the scheme is a property of
+   * the deployment, set by the producer from the configuration of its worker.
+   */
+  private HashScheme hashScheme = HashScheme.LEGACY;
+
   /**
    * @param numPartitions the number of partitions into which input tuples can be divided. Note that this is a
    *          {@link Integer} not an {@link int} so that it can properly handle <code>null</code> values, e.g., in JSON
@@ -75,4 +83,39 @@ public abstract class PartitionFunction implements Serializable {
     Preconditions.checkArgument(numPartitions > 0, "numPartitions must be > 0");
     this.numPartitions = numPartitions;
   }
+
+  /**
+   * Set the hash scheme used by hash partition functions. Tuples are only partitioned like the relations that the
+   * deployment has already stored if the scheme is the one that the deployment is configured with.
+   * 
+   * @param hashScheme the hash scheme.
+   */
+  public void setHashScheme(@Nonnull final HashScheme hashScheme) {
+    this.hashScheme = Preconditions.checkNotNull(hashScheme, "hashScheme");
+  }
+
+  /**
+   * @return the hash scheme used by hash partition functions.
+   */
+  protected final HashScheme getHashScheme() {
+    return hashScheme;
+  }
+
+  /**
+   * Map hash codes to partitions, in place.
+   * 
+   * @param hashes the hash codes, which are replaced by their partitions.
+   * @return <code>hashes</code>.
+   */
+  protected final int[] hashesToPartitions(final int[] hashes) {
+    final int numPartitions = numPartition();
+    for (int i = 0; i < hashes.length; i++) {
+      int p = hashes[i] % numPartitions;
+      if (p < 0) {
+        p = p + numPartitions;
+      }
+      hashes[i] = p;
+    }
+    return hashes;
+  }
 }
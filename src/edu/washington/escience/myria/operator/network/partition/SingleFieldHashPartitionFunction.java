@@ -68,14 +68,7 @@ public final class SingleFieldHashPartitionFunction extends PartitionFunction {
    * */
   @Override
   public int[] partition(final TupleBatch tb) {
-    final int[] result = new int[tb.numTuples()];
-    for (int i = 0; i < result.length; i++) {
-      int p = HashUtils.hashValue(tb, index, i, seedIndex) % numPartition();
-      if (p < 0) {
-        p = p + numPartition();
-      }
-      result[i] = p;
-    }
-    return result;
+    final int[] hashes = new int[tb.numTuples()];
+    return hashesToPartitions(HashUtils.hashSubRows(tb, new int[] { index }, seedIndex, getHashScheme(), hashes));
   }
 }
@@ -0,0 +1,258 @@
+package edu.washington.escience.myria.operator.network.partition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.storage.TupleUtils;
+import edu.washington.escience.myria.util.HashUtils;
+
+/**
+ * Hash partitions tuples on a group of fields, like {@link SingleFieldHashPartitionFunction} and
+ * {@link MultiFieldHashPartitionFunction}, except for the tuples whose key is one of a set of heavy hitters. Sending
+ * all the tuples of a heavy hitter to one worker makes that worker run much longer than the others, so:
+ * 
+ * <ul>
+ * <li>on the probe side of a join, {@link HeavyHitterPolicy#SPREAD} sends the heavy-hitter tuples to the workers in
+ * turn, continuing from one batch to the next so that small batches are spread too;</li>
+ * <li>on the build side, {@link HeavyHitterPolicy#BROADCAST} sends them to all the workers, through an extra partition
+ * that the producer maps to all of its channels, as a broadcast producer does.</li>
+ * </ul>
+ * 
+ * The other tuples go to the same workers as with the plain hash partition functions. Both sides of a join must be
+ * given the same heavy hitters.
+ */
+public final class SkewAwareHashPartitionFunction extends PartitionFunction {
+
+  /** Required for Java serialization. */
+  private static final long serialVersionUID = 1L;
+
+  /** How the tuples of the heavy hitters are sent. */
+  public enum HeavyHitterPolicy {
+    /** Send them to the workers in turn, on the probe side of a join. */
+    SPREAD,
+    /** Send them to all the workers, on the build side of a join. */
+    BROADCAST
+  }
+
+  /** The indices of the key fields. */
+  @JsonProperty
+  private final int[] indexes;
+
+  /** The keys of the heavy hitters, each with one value per key field. */
+  @JsonProperty
+  private final List<List<Object>> heavyHitters;
+
+  /** How the tuples of the heavy hitters are sent. */
+  @JsonProperty
+  private final HeavyHitterPolicy heavyHitterPolicy;
+
+  /** The heavy-hitter keys, once the types of the key fields are known. */
+  private transient TupleBatch heavyHitterKeys;
+
+  /** The indices of the key fields in {@link #heavyHitterKeys}. */
+  private transient int[] keyColumns;
+
+  /** The hash code of each heavy-hitter key. */
+  private transient int[] heavyHitterHashes;
+
+  /** The sorted hash codes of the heavy-hitter keys, to rule out most of the other keys quickly. */
+  private transient int[] sortedHeavyHitterHashes;
+
+  /** The next worker that a heavy-hitter tuple is sent to, when they are spread. */
+  private transient int nextWorker;
+
+  /**
+   * @param numPartitions the number of workers, plus one for the broadcast partition if heavy hitters are broadcast.
+   * @param indexes the indices of the key fields.
+   * @param heavyHitters the keys of the heavy hitters, each with one value per key field.
+   * @param heavyHitterPolicy how the tuples of the heavy hitters are sent.
+   */
+  @JsonCreator
+  public SkewAwareHashPartitionFunction(@Nullable @JsonProperty("numPartitions") final Integer numPartitions,
+      @JsonProperty(value = "indexes", required = true) final int[] indexes,
+      @JsonProperty(value = "heavyHitters", required = true) final List<List<Object>> heavyHitters,
+      @JsonProperty(value = "heavyHitterPolicy", required = true) final HeavyHitterPolicy heavyHitterPolicy) {
+    super(numPartitions);
+    Objects.requireNonNull(indexes, "indexes");
+    Objects.requireNonNull(heavyHitters, "heavyHitters");
+    this.heavyHitterPolicy = Objects.requireNonNull(heavyHitterPolicy, "heavyHitterPolicy");
+    Preconditions.checkArgument(indexes.length > 0, "SkewAwareHash requires at least 1 field to hash");
+    for (int i = 0; i < indexes.length; ++i) {
+      Preconditions.checkArgument(indexes[i] >= 0, "SkewAwareHash field index %s cannot take negative value %s", i,
+          indexes[i]);
+    }
+    Preconditions.checkArgument(heavyHitters.size() <= TupleBatch.BATCH_SIZE, "at most %s heavy hitters are supported",
+        TupleBatch.BATCH_SIZE);
+    for (List<Object> key : heavyHitters) {
+      Preconditions.checkArgument(key != null && key.size() == indexes.length,
+          "each heavy hitter must have one value per key field, not %s", key);
+    }
+    this.indexes = indexes.clone();
+    List<List<Object>> keys = new ArrayList<>(heavyHitters.size());
+    for (List<Object> key : heavyHitters) {
+      keys.add(new ArrayList<>(key));
+    }
+    this.heavyHitters = keys;
+  }
+
+  /**
+   * @return the indices of the key fields.
+   */
+  public int[] getIndexes() {
+    return indexes.clone();
+  }
+
+  /**
+   * @return the keys of the heavy hitters.
+   */
+  public List<List<Object>> getHeavyHitters() {
+    return ImmutableList.copyOf(heavyHitters);
+  }
+
+  /**
+   * @return how the tuples of the heavy hitters are sent.
+   */
+  public HeavyHitterPolicy getHeavyHitterPolicy() {
+    return heavyHitterPolicy;
+  }
+
+  /**
+   * @return the number of workers, i.e., of partitions that are not the broadcast partition.
+   */
+  public int numWorkers() {
+    if (heavyHitterPolicy == HeavyHitterPolicy.BROADCAST) {
+      return numPartition() - 1;
+    }
+    return numPartition();
+  }
+
+  @Override
+  public int[] partition(@Nonnull final TupleBatch tb) {
+    final int numWorkers = numWorkers();
+    Preconditions.checkState(numWorkers > 0, "SkewAwareHash needs at least one worker partition");
+    final int[] hashes = HashUtils.hashSubRows(tb, indexes, 0, getHashScheme(), new int[tb.numTuples()]);
+    if (sortedHeavyHitterHashes == null) {
+      buildHeavyHitterKeys(tb.getSchema());
+    }
+    for (int row = 0; row < hashes.length; ++row) {
+      if (isHeavyHitter(tb, row, hashes[row])) {
+        if (heavyHitterPolicy == HeavyHitterPolicy.BROADCAST) {
+          hashes[row] = numWorkers;
+        } else {
+          hashes[row] = nextWorker % numWorkers;
+          nextWorker = (hashes[row] + 1) % numWorkers;
+        }
+      } else {
+        int p = hashes[row] % numWorkers;
+        if (p < 0) {
+          p = p + numWorkers;
+        }
+        hashes[row] = p;
+      }
+    }
+    return hashes;
+  }
+
+  /**
+   * @param tb the data.
+   * @param row a row of the data.
+   * @param hash the hash code of the key of the row.
+   * @return true if the key of the row is a heavy hitter.
+   */
+  private boolean isHeavyHitter(final TupleBatch tb, final int row, final int hash) {
+    if (Arrays.binarySearch(sortedHeavyHitterHashes, hash) < 0) {
+      return false;
+    }
+    for (int key = 0; key < heavyHitterHashes.length; ++key) {
+      if (heavyHitterHashes[key] == hash
+          && TupleUtils.tupleEquals(tb, indexes, row, heavyHitterKeys, keyColumns, key)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Convert the heavy hitters to the types of the key fields and hash them.
+   * 
+   * @param schema the schema of the data.
+   */
+  private void buildHeavyHitterKeys(final Schema schema) {
+    final Schema keySchema = schema.getSubSchema(indexes);
+    final TupleBatchBuffer keys = new TupleBatchBuffer(keySchema);
+    for (List<Object> key : heavyHitters) {
+      for (int i = 0; i < indexes.length; ++i) {
+        putKeyValue(keys, i, keySchema.getColumnType(i), key.get(i));
+      }
+    }
+    keyColumns = new int[indexes.length];
+    for (int i = 0; i < keyColumns.length; ++i) {
+      keyColumns[i] = i;
+    }
+    heavyHitterKeys = keys.popAny();
+    if (heavyHitterKeys == null) {
+      heavyHitterHashes = new int[0];
+    } else {
+      heavyHitterHashes = HashUtils.hashSubRows(heavyHitterKeys, keyColumns, 0, getHashScheme(), null);
+    }
+    sortedHeavyHitterHashes = heavyHitterHashes.clone();
+    Arrays.sort(sortedHeavyHitterHashes);
+  }
+
+  /**
+   * Append a heavy-hitter value, converted to the type of its key field.
+   * 
+   * @param keys the heavy-hitter keys.
+   * @param column the column of the key field in the keys.
+   * @param type the type of the key field.
+   * @param value a value of the key field, as decoded from JSON.
+   */
+  private static void putKeyValue(final TupleBatchBuffer keys, final int column, final Type type, final Object value) {
+    Objects.requireNonNull(value, "heavy hitter value");
+    switch (type) {
+      case BOOLEAN_TYPE:
+        if (value instanceof Boolean) {
+          keys.putBoolean(column, (Boolean) value);
+        } else {
+          keys.putBoolean(column, Boolean.valueOf(value.toString()));
+        }
+        return;
+      case INT_TYPE:
+        keys.putInt(column, ((Number) value).intValue());
+        return;
+      case LONG_TYPE:
+        keys.putLong(column, ((Number) value).longValue());
+        return;
+      case FLOAT_TYPE:
+        keys.putFloat(column, ((Number) value).floatValue());
+        return;
+      case DOUBLE_TYPE:
+        keys.putDouble(column, ((Number) value).doubleValue());
+        return;
+      case DATETIME_TYPE:
+        keys.putDateTime(column, new DateTime(value));
+        return;
+      case STRING_TYPE:
+        keys.putString(column, value.toString());
+        return;
+      default:
+        throw new IllegalArgumentException("Unknown type " + type);
+    }
+  }
+}
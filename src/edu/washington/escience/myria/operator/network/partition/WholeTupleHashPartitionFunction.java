@@ -27,14 +27,10 @@ public final class WholeTupleHashPartitionFunction extends PartitionFunction {
 
   @Override
   public int[] partition(@Nonnull final TupleBatch tb) {
-    final int[] result = new int[tb.numTuples()];
-    for (int i = 0; i < result.length; i++) {
-      int p = HashUtils.hashRow(tb, i) % numPartition();
-      if (p < 0) {
-        p = p + numPartition();
-      }
-      result[i] = p;
+    final int[] columns = new int[tb.numColumns()];
+    for (int i = 0; i < columns.length; i++) {
+      columns[i] = i;
     }
-    return result;
+    return hashesToPartitions(HashUtils.hashSubRows(tb, columns, 0, getHashScheme(), new int[tb.numTuples()]));
   }
 }
@@ -0,0 +1,48 @@
+package edu.washington.escience.myria.parallel;
+
+/**
+ * The encodings of a column in a {@link ColumnarFrame}. The packed encodings store each value as an unsigned difference
+ * of 1, 2, 4, or 8 bytes, whichever is the smallest that fits all of them.
+ */
+public enum ColumnEncoding {
+  /** The values as read by {@link edu.washington.escience.myria.column.ChannelBufferColumn}. */
+  PLAIN(0),
+  /** String columns: the distinct strings, followed by the packed index of the string of each row. */
+  DICTIONARY(1),
+  /** Sorted int and long columns: the first value, followed by the packed difference of each value from the last. */
+  DELTA(2),
+  /** Int and long columns: the smallest value, followed by the packed difference of each value from it. */
+  FRAME_OF_REFERENCE(3),
+  /** Boolean columns: the first value, followed by the lengths of the runs of equal values. */
+  RUN_LENGTH(4);
+
+  /** The identifier of this encoding in a frame. */
+  private final byte id;
+
+  /**
+   * @param id the identifier of this encoding in a frame.
+   */
+  ColumnEncoding(final int id) {
+    this.id = (byte) id;
+  }
+
+  /**
+   * @return the identifier of this encoding in a frame.
+   */
+  public byte getId() {
+    return id;
+  }
+
+  /**
+   * @param id the identifier of an encoding in a frame.
+   * @return the encoding.
+   */
+  public static ColumnEncoding fromId(final byte id) {
+    for (ColumnEncoding encoding : values()) {
+      if (encoding.id == id) {
+        return encoding;
+      }
+    }
+    throw new IllegalArgumentException("Unknown column encoding " + id);
+  }
+}
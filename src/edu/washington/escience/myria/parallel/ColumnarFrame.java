@@ -0,0 +1,732 @@
+package edu.washington.escience.myria.parallel;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.joda.time.DateTime;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.BooleanColumn;
+import edu.washington.escience.myria.column.ChannelBufferColumn;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.DictionaryStringColumn;
+import edu.washington.escience.myria.column.StringDictionary;
+import edu.washington.escience.myria.column.builder.ColumnFactory;
+import edu.washington.escience.myria.storage.TupleBatch;
+
+/**
+ * A binary columnar wire format for {@link TupleBatch}es, an alternative to the protobuf {@link
+ * edu.washington.escience.myria.proto.DataProto.DataMessage}. The sender writes the arrays of the columns into buffers
+ * with bulk copies and sends them as one composite buffer, and the receiver wraps the received buffer in
+ * {@link ChannelBufferColumn}s without copying or parsing it.
+ * 
+ * A frame is a header followed by the bytes of each column. The header is: the byte {@link #MARKER}, which a protobuf
+ * message never starts with, the byte {@link #VERSION}, a byte of flags, the number of tuples, the number of columns,
+ * and the {@link ColumnEncoding} and the number of bytes of each column. The column types are not sent: the receiver
+ * knows the schema of the stream. All numbers are big-endian. The bytes of a {@link ColumnEncoding#PLAIN} column are as
+ * read by {@link ChannelBufferColumn}. If the flag {@link #FLAG_DEFLATED} is set, the bytes of all the columns are
+ * compressed together with deflate.
+ */
+public final class ColumnarFrame {
+
+  /** The first byte of a frame. A protobuf message never starts with 0, which is not a valid field tag. */
+  public static final byte MARKER = 0;
+  /**
+   * The version of the format. Version 1 had no flags and no {@link ColumnEncoding}s; a frame of another version is
+   * rejected rather than misparsed.
+   */
+  public static final byte VERSION = 2;
+  /** The flag set if the bytes of the columns are compressed with deflate. */
+  public static final int FLAG_DEFLATED = 1;
+
+  /** The offset of the flags in a frame. */
+  private static final int FLAGS_OFFSET = 2;
+
+  /** Utility classes have no constructors. */
+  private ColumnarFrame() {
+  }
+
+  /**
+   * @param buffer a received message.
+   * @return whether the message is a columnar frame.
+   */
+  public static boolean isColumnarFrame(final ChannelBuffer buffer) {
+    return buffer.readableBytes() > 0 && buffer.getByte(buffer.readerIndex()) == MARKER;
+  }
+
+  /**
+   * Write a batch as a columnar frame, without compressing it.
+   * 
+   * @param tb the batch.
+   * @return the frame, a composite of a buffer for the header and buffers for the columns.
+   */
+  public static ChannelBuffer encode(final TupleBatch tb) {
+    return encode(tb, IPCCompression.NONE);
+  }
+
+  /**
+   * Write a batch as a columnar frame.
+   * 
+   * @param tb the batch.
+   * @param compression how much effort to spend to make the frame smaller.
+   * @return the frame, a composite of a buffer for the header and buffers for the columns.
+   */
+  public static ChannelBuffer encode(final TupleBatch tb, final IPCCompression compression) {
+    final int numTuples = tb.numTuples();
+    final List<? extends Column<?>> columns = tb.getDataColumns();
+    final ChannelBuffer header = ChannelBuffers.buffer(3 + 4 + 4 + 5 * columns.size());
+    header.writeByte(MARKER);
+    header.writeByte(VERSION);
+    header.writeByte(0);
+    header.writeInt(numTuples);
+    header.writeInt(columns.size());
+    final List<ChannelBuffer> bodies = new ArrayList<>(columns.size() + 1);
+    int bodiesLength = 0;
+    for (Column<?> column : columns) {
+      final ColumnEncoding encoding;
+      if (column instanceof DictionaryStringColumn) {
+        /* Already encoded, so the dictionary costs nothing to use and is smaller. */
+        encoding = ColumnEncoding.DICTIONARY;
+      } else if (compression == IPCCompression.NONE) {
+        encoding = ColumnEncoding.PLAIN;
+      } else {
+        encoding = chooseEncoding(column, numTuples);
+      }
+      final ChannelBuffer body = encodeColumn(column, numTuples, encoding);
+      header.writeByte(encoding.getId());
+      header.writeInt(body.readableBytes());
+      bodies.add(body);
+      bodiesLength += body.readableBytes();
+    }
+
+    if (compression == IPCCompression.DEFLATE && bodiesLength > 0) {
+      final byte[] deflated = deflate(ChannelBuffers.wrappedBuffer(bodies.toArray(new ChannelBuffer[bodies.size()])));
+      if (deflated.length < bodiesLength) {
+        header.setByte(FLAGS_OFFSET, FLAG_DEFLATED);
+        return ChannelBuffers.wrappedBuffer(header, ChannelBuffers.wrappedBuffer(deflated));
+      }
+    }
+    bodies.add(0, header);
+    return ChannelBuffers.wrappedBuffer(bodies.toArray(new ChannelBuffer[bodies.size()]));
+  }
+
+  /**
+   * Choose the encoding that stores a column in the fewest bytes, as measured on its values.
+   * 
+   * @param column the column.
+   * @param numTuples the number of values.
+   * @return the encoding.
+   */
+  private static ColumnEncoding chooseEncoding(final Column<?> column, final int numTuples) {
+    if (numTuples == 0) {
+      return ColumnEncoding.PLAIN;
+    }
+    switch (column.getType()) {
+      case STRING_TYPE: {
+        /* A dictionary only pays off if strings repeat, so stop counting once half of the strings are distinct. */
+        final int maxDistinct = numTuples / 2;
+        final Map<String, Integer> distinct = new HashMap<>();
+        for (int row = 0; row < numTuples && distinct.size() <= maxDistinct; ++row) {
+          distinct.put(column.getString(row), row);
+        }
+        if (distinct.size() <= maxDistinct) {
+          return ColumnEncoding.DICTIONARY;
+        }
+        return ColumnEncoding.PLAIN;
+      }
+      case INT_TYPE:
+      case LONG_TYPE: {
+        long min = integerValue(column, 0);
+        long max = min;
+        long previous = min;
+        boolean sorted = true;
+        int deltaWidth = 1;
+        for (int row = 1; row < numTuples; ++row) {
+          final long value = integerValue(column, row);
+          min = Math.min(min, value);
+          max = Math.max(max, value);
+          if (sorted) {
+            if (value < previous) {
+              sorted = false;
+            } else {
+              deltaWidth = Math.max(deltaWidth, packedWidth(value - previous));
+            }
+          }
+          previous = value;
+        }
+        final int typeWidth;
+        if (column.getType() == Type.INT_TYPE) {
+          typeWidth = 4;
+        } else {
+          typeWidth = 8;
+        }
+        final int rangeWidth = packedWidth(max - min);
+        if (sorted && deltaWidth < Math.min(rangeWidth, typeWidth)) {
+          return ColumnEncoding.DELTA;
+        }
+        if (rangeWidth < typeWidth) {
+          return ColumnEncoding.FRAME_OF_REFERENCE;
+        }
+        return ColumnEncoding.PLAIN;
+      }
+      case BOOLEAN_TYPE: {
+        int numRuns = 1;
+        for (int row = 1; row < numTuples; ++row) {
+          if (column.getBoolean(row) != column.getBoolean(row - 1)) {
+            ++numRuns;
+          }
+        }
+        if (1 + 4 + 4 * numRuns < (numTuples + 7) / 8) {
+          return ColumnEncoding.RUN_LENGTH;
+        }
+        return ColumnEncoding.PLAIN;
+      }
+      default:
+        return ColumnEncoding.PLAIN;
+    }
+  }
+
+  /**
+   * @param column an int or long column.
+   * @param row the row.
+   * @return the value in the specified row.
+   */
+  private static long integerValue(final Column<?> column, final int row) {
+    if (column.getType() == Type.INT_TYPE) {
+      return column.getInt(row);
+    }
+    return column.getLong(row);
+  }
+
+  /**
+   * @param difference a difference between two values, which is unsigned if the subtraction overflowed.
+   * @return the number of bytes that a packed encoding uses to store the difference.
+   */
+  private static int packedWidth(final long difference) {
+    if (difference < 0 || difference > 0xFFFFFFFFL) {
+      return 8;
+    } else if (difference > 0xFFFF) {
+      return 4;
+    } else if (difference > 0xFF) {
+      return 2;
+    }
+    return 1;
+  }
+
+  /**
+   * Write the values of a column.
+   * 
+   * @param column the column.
+   * @param numTuples the number of values.
+   * @param encoding the encoding of the values.
+   * @return the bytes of the column.
+   */
+  private static ChannelBuffer encodeColumn(final Column<?> column, final int numTuples,
+      final ColumnEncoding encoding) {
+    switch (encoding) {
+      case PLAIN:
+        return encodePlainColumn(column, numTuples);
+      case DICTIONARY:
+        return encodeDictionaryColumn(column, numTuples);
+      case DELTA:
+      case FRAME_OF_REFERENCE:
+        return encodePackedColumn(column, numTuples, encoding == ColumnEncoding.DELTA);
+      case RUN_LENGTH:
+        return encodeRunLengthColumn(column, numTuples);
+    }
+    throw new UnsupportedOperationException("Encoding a column as " + encoding);
+  }
+
+  /**
+   * Write the values of a column as they are stored.
+   * 
+   * @param column the column.
+   * @param numTuples the number of values.
+   * @return the bytes of the column.
+   */
+  private static ChannelBuffer encodePlainColumn(final Column<?> column, final int numTuples) {
+    switch (column.getType()) {
+      case INT_TYPE: {
+        final ByteBuffer bytes = ByteBuffer.allocate(4 * numTuples);
+        bytes.asIntBuffer().put((int[]) column.asArray(), 0, numTuples);
+        return ChannelBuffers.wrappedBuffer(bytes);
+      }
+      case LONG_TYPE: {
+        final ByteBuffer bytes = ByteBuffer.allocate(8 * numTuples);
+        bytes.asLongBuffer().put((long[]) column.asArray(), 0, numTuples);
+        return ChannelBuffers.wrappedBuffer(bytes);
+      }
+      case FLOAT_TYPE: {
+        final ByteBuffer bytes = ByteBuffer.allocate(4 * numTuples);
+        bytes.asFloatBuffer().put((float[]) column.asArray(), 0, numTuples);
+        return ChannelBuffers.wrappedBuffer(bytes);
+      }
+      case DOUBLE_TYPE: {
+        final ByteBuffer bytes = ByteBuffer.allocate(8 * numTuples);
+        bytes.asDoubleBuffer().put((double[]) column.asArray(), 0, numTuples);
+        return ChannelBuffers.wrappedBuffer(bytes);
+      }
+      case DATETIME_TYPE: {
+        final ChannelBuffer bytes = ChannelBuffers.buffer(8 * numTuples);
+        final DateTime[] values = (DateTime[]) column.asArray();
+        for (int row = 0; row < numTuples; ++row) {
+          bytes.writeLong(values[row].getMillis());
+        }
+        return bytes;
+      }
+      case BOOLEAN_TYPE: {
+        final ChannelBuffer bytes = ChannelBuffers.buffer((numTuples + 7) / 8);
+        int b = 0;
+        for (int row = 0; row < numTuples; ++row) {
+          if (column.getBoolean(row)) {
+            b |= 1 << (row & 7);
+          }
+          if ((row & 7) == 7) {
+            bytes.writeByte(b);
+            b = 0;
+          }
+        }
+        if ((numTuples & 7) != 0) {
+          bytes.writeByte(b);
+        }
+        return bytes;
+      }
+      case STRING_TYPE:
+        return encodeStrings((String[]) column.asArray(), numTuples);
+    }
+    throw new UnsupportedOperationException("Encoding a column of type " + column.getType());
+  }
+
+  /**
+   * @param values the strings.
+   * @param numStrings the number of strings.
+   * @return the <code>numStrings + 1</code> offsets of the strings, followed by their UTF-8 bytes.
+   */
+  private static ChannelBuffer encodeStrings(final String[] values, final int numStrings) {
+    final ChannelBuffer offsets = ChannelBuffers.buffer(4 * (numStrings + 1));
+    final byte[][] utf8 = new byte[numStrings][];
+    int offset = 0;
+    offsets.writeInt(offset);
+    for (int row = 0; row < numStrings; ++row) {
+      utf8[row] = values[row].getBytes(StandardCharsets.UTF_8);
+      offset += utf8[row].length;
+      offsets.writeInt(offset);
+    }
+    return ChannelBuffers.wrappedBuffer(offsets, ChannelBuffers.wrappedBuffer(utf8));
+  }
+
+  /**
+   * Write a string column as {@link ColumnEncoding#DICTIONARY}: the number of distinct strings, the distinct strings as
+   * by {@link #encodeStrings}, the width of the indexes, and the index of the string of each row.
+   * 
+   * @param column the column.
+   * @param numTuples the number of values.
+   * @return the bytes of the column.
+   */
+  private static ChannelBuffer encodeDictionaryColumn(final Column<?> column, final int numTuples) {
+    final List<String> dictionary = new ArrayList<>();
+    final int[] codes = new int[numTuples];
+    if (column instanceof DictionaryStringColumn) {
+      /* The dictionary may be shared with other batches, so only send the strings of this batch. */
+      final DictionaryStringColumn dictionaryColumn = (DictionaryStringColumn) column;
+      final StringDictionary columnDictionary = dictionaryColumn.getDictionary();
+      final int[] indexes = new int[columnDictionary.size()];
+      Arrays.fill(indexes, -1);
+      for (int row = 0; row < numTuples; ++row) {
+        final int code = dictionaryColumn.getCode(row);
+        if (indexes[code] < 0) {
+          indexes[code] = dictionary.size();
+          dictionary.add(columnDictionary.getString(code));
+        }
+        codes[row] = indexes[code];
+      }
+      return encodeDictionary(dictionary, codes, numTuples);
+    }
+    final Map<String, Integer> indexes = new HashMap<>();
+    for (int row = 0; row < numTuples; ++row) {
+      final String value = column.getString(row);
+      Integer index = indexes.get(value);
+      if (index == null) {
+        index = dictionary.size();
+        indexes.put(value, index);
+        dictionary.add(value);
+      }
+      codes[row] = index;
+    }
+    return encodeDictionary(dictionary, codes, numTuples);
+  }
+
+  /**
+   * @param dictionary the distinct strings.
+   * @param codes the index of the string of each row.
+   * @param numTuples the number of values.
+   * @return the bytes of a {@link ColumnEncoding#DICTIONARY} column.
+   */
+  private static ChannelBuffer encodeDictionary(final List<String> dictionary, final int[] codes,
+      final int numTuples) {
+    final int width = packedWidth(dictionary.size() - 1);
+    final ChannelBuffer size = ChannelBuffers.buffer(4);
+    size.writeInt(dictionary.size());
+    final ChannelBuffer packed = ChannelBuffers.buffer(1 + width * numTuples);
+    packed.writeByte(width);
+    for (int row = 0; row < numTuples; ++row) {
+      writePacked(packed, width, codes[row]);
+    }
+    return ChannelBuffers.wrappedBuffer(size, encodeStrings(dictionary.toArray(new String[dictionary.size()]),
+        dictionary.size()), packed);
+  }
+
+  /**
+   * Write an int or long column as {@link ColumnEncoding#DELTA} or {@link ColumnEncoding#FRAME_OF_REFERENCE}: the base
+   * value, the width of the differences, and the difference of each row.
+   * 
+   * @param column the column.
+   * @param numTuples the number of values.
+   * @param delta whether each value is stored as its difference from the previous value instead of from the smallest.
+   * @return the bytes of the column.
+   */
+  private static ChannelBuffer encodePackedColumn(final Column<?> column, final int numTuples, final boolean delta) {
+    long base = integerValue(column, 0);
+    if (!delta) {
+      for (int row = 1; row < numTuples; ++row) {
+        base = Math.min(base, integerValue(column, row));
+      }
+    }
+    int width = 1;
+    long previous = base;
+    for (int row = 0; row < numTuples; ++row) {
+      final long value = integerValue(column, row);
+      width = Math.max(width, packedWidth(value - previous));
+      if (delta) {
+        previous = value;
+      }
+    }
+    final ChannelBuffer bytes = ChannelBuffers.buffer(8 + 1 + width * numTuples);
+    bytes.writeLong(base);
+    bytes.writeByte(width);
+    previous = base;
+    for (int row = 0; row < numTuples; ++row) {
+      final long value = integerValue(column, row);
+      writePacked(bytes, width, value - previous);
+      if (delta) {
+        previous = value;
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Write a boolean column as {@link ColumnEncoding#RUN_LENGTH}: the first value, the number of runs, and the length of
+   * each run.
+   * 
+   * @param column the column.
+   * @param numTuples the number of values.
+   * @return the bytes of the column.
+   */
+  private static ChannelBuffer encodeRunLengthColumn(final Column<?> column, final int numTuples) {
+    final ChannelBuffer runs = ChannelBuffers.dynamicBuffer();
+    int runStart = 0;
+    for (int row = 1; row <= numTuples; ++row) {
+      if (row == numTuples || column.getBoolean(row) != column.getBoolean(runStart)) {
+        runs.writeInt(row - runStart);
+        runStart = row;
+      }
+    }
+    final ChannelBuffer header = ChannelBuffers.buffer(1 + 4);
+    header.writeByte(column.getBoolean(0) ? 1 : 0);
+    header.writeInt(runs.readableBytes() / 4);
+    return ChannelBuffers.wrappedBuffer(header, runs);
+  }
+
+  /**
+   * @param bytes the buffer to write to.
+   * @param width the number of bytes to write.
+   * @param value an unsigned value that fits in the number of bytes.
+   */
+  private static void writePacked(final ChannelBuffer bytes, final int width, final long value) {
+    switch (width) {
+      case 1:
+        bytes.writeByte((int) value);
+        break;
+      case 2:
+        bytes.writeShort((int) value);
+        break;
+      case 4:
+        bytes.writeInt((int) value);
+        break;
+      default:
+        bytes.writeLong(value);
+    }
+  }
+
+  /**
+   * @param bytes the buffer to read from.
+   * @param width the number of bytes to read.
+   * @return the unsigned value.
+   */
+  private static long readPacked(final ChannelBuffer bytes, final int width) {
+    switch (width) {
+      case 1:
+        return bytes.readUnsignedByte();
+      case 2:
+        return bytes.readUnsignedShort();
+      case 4:
+        return bytes.readUnsignedInt();
+      case 8:
+        return bytes.readLong();
+      default:
+        throw new IllegalArgumentException("Unknown packed width " + width);
+    }
+  }
+
+  /**
+   * @param bodies the bytes of the columns.
+   * @return the bytes compressed with deflate.
+   */
+  private static byte[] deflate(final ChannelBuffer bodies) {
+    final byte[] input = new byte[bodies.readableBytes()];
+    bodies.getBytes(bodies.readerIndex(), input);
+    final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(input);
+      deflater.finish();
+      final ChannelBuffer output = ChannelBuffers.dynamicBuffer(input.length / 2 + 64);
+      final byte[] chunk = new byte[8192];
+      while (!deflater.finished()) {
+        output.writeBytes(chunk, 0, deflater.deflate(chunk));
+      }
+      final byte[] ret = new byte[output.readableBytes()];
+      output.readBytes(ret);
+      return ret;
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * @param buffer the compressed bytes, which are all read.
+   * @param length the number of bytes they decompress to.
+   * @return the decompressed bytes.
+   */
+  private static ChannelBuffer inflate(final ChannelBuffer buffer, final int length) {
+    final byte[] output = new byte[length];
+    final Inflater inflater = new Inflater();
+    try {
+      if (buffer.hasArray()) {
+        inflater.setInput(buffer.array(), buffer.arrayOffset() + buffer.readerIndex(), buffer.readableBytes());
+      } else {
+        final byte[] input = new byte[buffer.readableBytes()];
+        buffer.getBytes(buffer.readerIndex(), input);
+        inflater.setInput(input);
+      }
+      buffer.skipBytes(buffer.readableBytes());
+      int inflated = 0;
+      while (inflated < length && !inflater.finished()) {
+        final int n = inflater.inflate(output, inflated, length - inflated);
+        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        inflated += n;
+      }
+      Preconditions.checkArgument(inflated == length, "the frame decompressed to %s bytes instead of %s", inflated,
+          length);
+    } catch (DataFormatException e) {
+      throw new IllegalArgumentException("the frame is not correctly compressed", e);
+    } finally {
+      inflater.end();
+    }
+    return ChannelBuffers.wrappedBuffer(output);
+  }
+
+  /**
+   * Wrap a columnar frame in a batch. The {@link ColumnEncoding#PLAIN} columns of the batch read the frame, which must
+   * not be modified afterwards.
+   * 
+   * @param buffer the frame, starting at its reader index.
+   * @param schema the schema of the batch.
+   * @return the batch.
+   */
+  public static TupleBatch decode(final ChannelBuffer buffer, final Schema schema) {
+    Preconditions.checkArgument(buffer.readByte() == MARKER, "not a columnar frame");
+    final byte version = buffer.readByte();
+    Preconditions.checkArgument(version == VERSION, "unknown columnar frame version %s", version);
+    final int flags = buffer.readUnsignedByte();
+    final int numTuples = buffer.readInt();
+    final int numColumns = buffer.readInt();
+    Preconditions.checkArgument(numColumns == schema.numColumns(),
+        "the frame has %s columns but the schema has %s columns", numColumns, schema.numColumns());
+    final ColumnEncoding[] encodings = new ColumnEncoding[numColumns];
+    final int[] lengths = new int[numColumns];
+    int bodiesLength = 0;
+    for (int i = 0; i < numColumns; ++i) {
+      encodings[i] = ColumnEncoding.fromId(buffer.readByte());
+      lengths[i] = buffer.readInt();
+      bodiesLength += lengths[i];
+    }
+
+    final ChannelBuffer bodies;
+    if ((flags & FLAG_DEFLATED) != 0) {
+      bodies = inflate(buffer, bodiesLength);
+    } else {
+      bodies = buffer;
+    }
+    final List<Column<?>> columns = new ArrayList<>(numColumns);
+    for (int i = 0; i < numColumns; ++i) {
+      final Type type = schema.getColumnType(i);
+      final ChannelBuffer body = bodies.readSlice(lengths[i]);
+      switch (encodings[i]) {
+        case PLAIN:
+          columns.add(decodePlainColumn(type, body, numTuples));
+          break;
+        case DICTIONARY:
+          Preconditions.checkArgument(type == Type.STRING_TYPE, "column %s of type %s is dictionary encoded", i, type);
+          columns.add(decodeDictionaryColumn(body, numTuples));
+          break;
+        case DELTA:
+        case FRAME_OF_REFERENCE:
+          Preconditions.checkArgument(type == Type.INT_TYPE || type == Type.LONG_TYPE,
+              "column %s of type %s is packed", i, type);
+          columns.add(decodePackedColumn(type, body, numTuples, encodings[i] == ColumnEncoding.DELTA));
+          break;
+        case RUN_LENGTH:
+          Preconditions.checkArgument(type == Type.BOOLEAN_TYPE, "column %s of type %s is run-length encoded", i,
+              type);
+          columns.add(decodeRunLengthColumn(body, numTuples));
+          break;
+      }
+    }
+    return new TupleBatch(schema, columns, numTuples);
+  }
+
+  /**
+   * @param type the type of the column.
+   * @param body the bytes of the column.
+   * @param numTuples the number of values.
+   * @return a column that reads the bytes.
+   */
+  private static Column<?> decodePlainColumn(final Type type, final ChannelBuffer body, final int numTuples) {
+    if (type == Type.STRING_TYPE) {
+      final int offsetsLength = 4 * (numTuples + 1);
+      return new ChannelBufferColumn(type, body.slice(0, offsetsLength), body.slice(offsetsLength, body.readableBytes()
+          - offsetsLength), numTuples);
+    }
+    Preconditions.checkArgument(body.readableBytes() == columnLength(type, numTuples),
+        "a column of type %s has %s bytes, which is wrong for %s values", type, body.readableBytes(), numTuples);
+    return new ChannelBufferColumn(type, body, numTuples);
+  }
+
+  /**
+   * @param body the bytes of a {@link ColumnEncoding#DICTIONARY} column.
+   * @param numTuples the number of values.
+   * @return the column.
+   */
+  private static Column<?> decodeDictionaryColumn(final ChannelBuffer body, final int numTuples) {
+    final int dictionarySize = body.readInt();
+    final int offsetsLength = 4 * (dictionarySize + 1);
+    final ChannelBuffer offsets = body.readSlice(offsetsLength);
+    final ChannelBufferColumn strings =
+        new ChannelBufferColumn(Type.STRING_TYPE, offsets, body.readSlice(offsets.getInt(offsetsLength - 4)),
+            dictionarySize);
+    final StringDictionary dictionary = new StringDictionary();
+    for (int i = 0; i < dictionarySize; ++i) {
+      dictionary.add(strings.getString(i));
+    }
+    final int width = body.readUnsignedByte();
+    final int[] codes = new int[numTuples];
+    for (int row = 0; row < numTuples; ++row) {
+      codes[row] = (int) readPacked(body, width);
+    }
+    return new DictionaryStringColumn(dictionary, codes, numTuples);
+  }
+
+  /**
+   * @param type the type of the column, int or long.
+   * @param body the bytes of a {@link ColumnEncoding#DELTA} or {@link ColumnEncoding#FRAME_OF_REFERENCE} column.
+   * @param numTuples the number of values.
+   * @param delta whether each value is stored as its difference from the previous value instead of from the smallest.
+   * @return the column.
+   */
+  private static Column<?> decodePackedColumn(final Type type, final ChannelBuffer body, final int numTuples,
+      final boolean delta) {
+    final long base = body.readLong();
+    final int width = body.readUnsignedByte();
+    long previous = base;
+    if (type == Type.INT_TYPE) {
+      final int[] values = new int[numTuples];
+      for (int row = 0; row < numTuples; ++row) {
+        final long value = previous + readPacked(body, width);
+        values[row] = (int) value;
+        if (delta) {
+          previous = value;
+        }
+      }
+      return ColumnFactory.columnFromArray(type, values, numTuples);
+    }
+    final long[] values = new long[numTuples];
+    for (int row = 0; row < numTuples; ++row) {
+      final long value = previous + readPacked(body, width);
+      values[row] = value;
+      if (delta) {
+        previous = value;
+      }
+    }
+    return ColumnFactory.columnFromArray(type, values, numTuples);
+  }
+
+  /**
+   * @param body the bytes of a {@link ColumnEncoding#RUN_LENGTH} column.
+   * @param numTuples the number of values.
+   * @return the column.
+   */
+  private static Column<?> decodeRunLengthColumn(final ChannelBuffer body, final int numTuples) {
+    boolean value = body.readByte() != 0;
+    final int numRuns = body.readInt();
+    final BitSet bits = new BitSet(numTuples);
+    int row = 0;
+    for (int i = 0; i < numRuns; ++i) {
+      final int length = body.readInt();
+      if (value) {
+        bits.set(row, row + length);
+      }
+      row += length;
+      value = !value;
+    }
+    Preconditions.checkArgument(row == numTuples, "the runs have %s values instead of %s", row, numTuples);
+    return new BooleanColumn(bits, numTuples);
+  }
+
+  /**
+   * @param type the type of a column that is not a string column.
+   * @param numTuples the number of values.
+   * @return the number of bytes of the column in a frame.
+   */
+  private static int columnLength(final Type type, final int numTuples) {
+    switch (type) {
+      case BOOLEAN_TYPE:
+        return (numTuples + 7) / 8;
+      case INT_TYPE:
+      case FLOAT_TYPE:
+        return 4 * numTuples;
+      case LONG_TYPE:
+      case DOUBLE_TYPE:
+      case DATETIME_TYPE:
+        return 8 * numTuples;
+      default:
+        throw new UnsupportedOperationException("Decoding a column of type " + type);
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package edu.washington.escience.myria.parallel;
+
+import java.util.Locale;
+
+/**
+ * How much effort the sender of a {@link ColumnarFrame} spends to make it smaller, as configured by
+ * {@link edu.washington.escience.myria.MyriaSystemConfigKeys#IPC_COMPRESSION}. Frames describe their own encodings, so
+ * a receiver decodes frames of every level whatever its own configuration.
+ */
+public enum IPCCompression {
+  /** Columns are sent as they are stored, and are read by the receiver without copying. */
+  NONE,
+  /**
+   * Each column is sent in the cheapest {@link ColumnEncoding} for its values, as measured on the batch. The receiver
+   * decodes the encoded columns into arrays.
+   */
+  LIGHTWEIGHT,
+  /** The columns are encoded as by {@link #LIGHTWEIGHT}, and then the frame is compressed with deflate. */
+  DEFLATE;
+
+  /**
+   * @param value the configured value, e.g., <code>lightweight</code>. May be null.
+   * @return the configured level, or {@link #NONE} if none is configured.
+   */
+  public static IPCCompression fromConfiguration(final String value) {
+    if (value == null) {
+      return NONE;
+    }
+    return valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+  }
+}
@@ -1,9 +1,14 @@
 package edu.washington.escience.myria.parallel;
 
+import java.io.File;
+
 import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.bootstrap.ServerBootstrap;
 
+import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.MyriaSystemConfigKeys;
+import edu.washington.escience.myria.parallel.ipc.InputBufferMemoryPool;
+import edu.washington.escience.myria.parallel.ipc.StreamMultiplexing;
 
 /**
  * The configurations of the IPC layer.
@@ -116,6 +121,107 @@ public final class IPCConfigurations {
     return bootstrap;
   }
 
+  /**
+   * @return the memory shared by the input buffers of the master.
+   * @param theMaster the master
+   */
+  public static InputBufferMemoryPool createMasterInputBufferMemoryPool(final Server theMaster) {
+    return createInputBufferMemoryPool(theMaster
+        .getConfiguration(MyriaSystemConfigKeys.OPERATOR_INPUT_BUFFER_MEMORY_POOL_BYTES), theMaster
+        .getConfiguration(MyriaSystemConfigKeys.OPERATOR_INPUT_BUFFER_CAPACITY_BYTES), theMaster
+        .getConfiguration(MyriaSystemConfigKeys.OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER_BYTES));
+  }
+
+  /**
+   * @return the memory shared by the input buffers of a worker.
+   * @param worker the owner worker
+   */
+  public static InputBufferMemoryPool createWorkerInputBufferMemoryPool(final Worker worker) {
+    return createInputBufferMemoryPool(worker
+        .getConfiguration(MyriaSystemConfigKeys.OPERATOR_INPUT_BUFFER_MEMORY_POOL_BYTES), worker
+        .getConfiguration(MyriaSystemConfigKeys.OPERATOR_INPUT_BUFFER_CAPACITY_BYTES), worker
+        .getConfiguration(MyriaSystemConfigKeys.OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER_BYTES));
+  }
+
+  /**
+   * @param poolBytes the configured capacity of the pool, or null for the default.
+   * @param capacityBytes the configured capacity of each input buffer, or null for the default.
+   * @param recoverTriggerBytes the configured recover trigger of each input buffer, or null for the default.
+   * @return the memory shared by the input buffers.
+   */
+  private static InputBufferMemoryPool createInputBufferMemoryPool(final String poolBytes,
+      final String capacityBytes, final String recoverTriggerBytes) {
+    long capacity = MyriaConstants.OPERATOR_INPUT_BUFFER_MEMORY_POOL_BYTES_DEFAULT_VALUE;
+    if (poolBytes != null) {
+      capacity = Long.parseLong(poolBytes);
+    }
+    long bufferCapacity = MyriaConstants.OPERATOR_INPUT_BUFFER_CAPACITY_BYTES_DEFAULT_VALUE;
+    if (capacityBytes != null) {
+      bufferCapacity = Long.parseLong(capacityBytes);
+    }
+    long bufferRecoverTrigger = MyriaConstants.OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER_BYTES_DEFAULT_VALUE;
+    if (recoverTriggerBytes != null) {
+      bufferRecoverTrigger = Long.parseLong(recoverTriggerBytes);
+    }
+    return new InputBufferMemoryPool(capacity, bufferCapacity, bufferRecoverTrigger);
+  }
+
+  /**
+   * @return how the streams of the master to each worker are sent.
+   * @param theMaster the master
+   */
+  public static StreamMultiplexing createMasterStreamMultiplexing(final Server theMaster) {
+    return createStreamMultiplexing(theMaster
+        .getConfiguration(MyriaSystemConfigKeys.IPC_MULTIPLEXED_CONNECTIONS_PER_REMOTE), theMaster
+        .getConfiguration(MyriaSystemConfigKeys.IPC_STREAM_CREDIT_BYTES), theMaster
+        .getConfiguration(MyriaSystemConfigKeys.IPC_SHARED_MEMORY_DIRECTORY), theMaster
+        .getConfiguration(MyriaSystemConfigKeys.IPC_SHARED_MEMORY_RING_BYTES));
+  }
+
+  /**
+   * @return how the streams of a worker to each other worker are sent.
+   * @param worker the owner worker
+   */
+  public static StreamMultiplexing createWorkerStreamMultiplexing(final Worker worker) {
+    return createStreamMultiplexing(worker
+        .getConfiguration(MyriaSystemConfigKeys.IPC_MULTIPLEXED_CONNECTIONS_PER_REMOTE), worker
+        .getConfiguration(MyriaSystemConfigKeys.IPC_STREAM_CREDIT_BYTES), worker
+        .getConfiguration(MyriaSystemConfigKeys.IPC_SHARED_MEMORY_DIRECTORY), worker
+        .getConfiguration(MyriaSystemConfigKeys.IPC_SHARED_MEMORY_RING_BYTES));
+  }
+
+  /**
+   * @param connectionsPerRemote the configured number of multiplexed connections per remote, or null for the default.
+   * @param streamCreditBytes the configured credit of each stream, or null for the default.
+   * @param sharedMemoryDirectory the configured directory of the shared memory files, or null for the default.
+   * @param sharedMemoryRingBytes the configured capacity of each shared memory ring, or null for the default.
+   * @return how the streams to each remote are sent.
+   */
+  private static StreamMultiplexing createStreamMultiplexing(final String connectionsPerRemote,
+      final String streamCreditBytes, final String sharedMemoryDirectory, final String sharedMemoryRingBytes) {
+    int connections = MyriaConstants.IPC_MULTIPLEXED_CONNECTIONS_PER_REMOTE_DEFAULT_VALUE;
+    if (connectionsPerRemote != null) {
+      connections = Integer.parseInt(connectionsPerRemote);
+    }
+    long credit = MyriaConstants.IPC_STREAM_CREDIT_BYTES_DEFAULT_VALUE;
+    if (streamCreditBytes != null) {
+      credit = Long.parseLong(streamCreditBytes);
+    }
+    int ringBytes = MyriaConstants.IPC_SHARED_MEMORY_RING_BYTES_DEFAULT_VALUE;
+    if (sharedMemoryRingBytes != null) {
+      ringBytes = Integer.parseInt(sharedMemoryRingBytes);
+    }
+    File directory = new File(MyriaConstants.IPC_SHARED_MEMORY_DIRECTORY_DEFAULT_VALUE);
+    if (sharedMemoryDirectory != null) {
+      directory = new File(sharedMemoryDirectory);
+    }
+    if (!directory.isDirectory()) {
+      /* e.g., no /dev/shm on this system. The rings are still shared through the page cache. */
+      directory = new File(System.getProperty("java.io.tmpdir"));
+    }
+    return new StreamMultiplexing(connections, credit, directory, ringBytes);
+  }
+
   /** Prevent construction of utility class. */
   private IPCConfigurations() {
   }
@@ -13,14 +13,17 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.collect.ImmutableMap;
 
 import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.MyriaConstants.ProfilingMode;
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
 import edu.washington.escience.myria.operator.IDBController;
 import edu.washington.escience.myria.operator.LeapFrogJoin;
 import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.operator.ParallelPipeline;
 import edu.washington.escience.myria.operator.RootOperator;
 import edu.washington.escience.myria.operator.SymmetricHashJoin;
 import edu.washington.escience.myria.operator.network.Consumer;
@@ -28,8 +31,11 @@ import edu.washington.escience.myria.operator.network.Producer;
 import edu.washington.escience.myria.parallel.ipc.IPCConnectionPool;
 import edu.washington.escience.myria.parallel.ipc.StreamIOChannelID;
 import edu.washington.escience.myria.profiling.ProfilingLogger;
+import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.util.AtomicUtils;
+import edu.washington.escience.myria.util.concurrent.FairShareTask;
 import edu.washington.escience.myria.util.concurrent.ReentrantSpinLock;
+import edu.washington.escience.myria.util.concurrent.SchedulingGroup;
 
 /**
  * Non-blocking driving code for one of the fragments in a {@link LocalSubQuery}.
@@ -69,12 +75,12 @@ public final class LocalFragment {
   /**
    * The actual physical plan to be executed when this {@link LocalFragment} is run.
    */
-  private final Callable<Void> executionPlan;
+  private final FragmentTask executionPlan;
 
   /**
    * Task for executing initialization code .
    */
-  private final Callable<Void> initTask;
+  private final FragmentTask initTask;
 
   /**
    * The output channels belonging to this {@link LocalFragment}.
@@ -141,6 +147,17 @@ public final class LocalFragment {
   /** the thread id of this task. */
   private volatile long threadId = -1;
 
+  /** How long, in nanoseconds, an execution may run before it yields the thread, or 0 for no limit. */
+  private volatile long quantumNanos = MyriaConstants.FRAGMENT_QUANTUM_NANOS_DEFAULT_VALUE;
+  /** How many tuples an execution may output before it yields the thread, or 0 for no limit. */
+  private volatile long quantumTuples = MyriaConstants.FRAGMENT_QUANTUM_TUPLES_DEFAULT_VALUE;
+  /** The number of executions that yielded the thread with work left. */
+  private final AtomicLong numYields = new AtomicLong(0);
+  /** The number of executions that resumed the work of a yielded one. */
+  private final AtomicLong numResumes = new AtomicLong(0);
+  /** If the last execution yielded the thread with work left. Guarded by executionLock. */
+  private boolean yielded = false;
+
   /**
    * @param connectionPool the IPC connection pool.
    * @param localSubQuery the {@link LocalSubQuery} of which this {@link LocalFragment} is a part.
@@ -172,21 +189,18 @@ public final class LocalFragment {
       outputChannelAvailable.set(i);
     }
 
-    executionPlan = new Callable<Void>() {
+    executionPlan = new FragmentTask() {
       @Override
       public Void call() throws Exception {
         // synchronized to keep memory consistency
         if (LOGGER.isTraceEnabled()) {
           LOGGER.trace("Start fragment execution: " + LocalFragment.this);
         }
-        if (threadId == -1) {
-          threadId = Thread.currentThread().getId();
-        }
-        // otherwise threadId should always equal to Thread.currentThread().getId() based on the current design
-
         Set<ProfilingMode> mode = localSubQuery.getProfilingMode();
         if (mode.contains(ProfilingMode.RESOURCE)) {
           synchronized (LocalFragment.this) {
+            // the executor may run each execution in a different thread.
+            threadId = Thread.currentThread().getId();
             cpuBefore = ManagementFactory.getThreadMXBean().getThreadCpuTime(threadId);
           }
         }
@@ -214,7 +228,7 @@ public final class LocalFragment {
       }
     };
 
-    initTask = new Callable<Void>() {
+    initTask = new FragmentTask() {
       @Override
       public Void call() throws Exception {
         // synchronized to keep memory consistency
@@ -239,6 +253,53 @@ public final class LocalFragment {
     };
   }
 
+  /**
+   * A task of this {@link LocalFragment}, scheduled on behalf of its {@link LocalSubQuery}.
+   */
+  private abstract class FragmentTask implements Callable<Void>, FairShareTask {
+    @Override
+    public final SchedulingGroup getSchedulingGroup() {
+      return localSubQuery.getSchedulingGroup();
+    }
+  }
+
+  /**
+   * A share of the work of this {@link LocalFragment} that an operator runs on another thread, scheduled on behalf of
+   * its {@link LocalSubQuery}.
+   */
+  private final class AuxiliaryTask implements Runnable, FairShareTask {
+    /** The work. */
+    private final Runnable work;
+
+    /**
+     * @param work the work.
+     */
+    AuxiliaryTask(final Runnable work) {
+      this.work = work;
+    }
+
+    @Override
+    public SchedulingGroup getSchedulingGroup() {
+      return localSubQuery.getSchedulingGroup();
+    }
+
+    @Override
+    public void run() {
+      work.run();
+    }
+  }
+
+  /**
+   * Run a share of the work of this {@link LocalFragment}, e.g., of an operator that runs in parallel, on the executor
+   * of this {@link LocalFragment}. Each call is a separate task, so that the same work may run on several threads.
+   * 
+   * @param work the work.
+   * @return the future of the work.
+   */
+  public Future<?> submitAuxiliaryTask(final Runnable work) {
+    return myExecutor.submit(new AuxiliaryTask(work));
+  }
+
   /**
    * @return all output channels belonging to this {@link LocalFragment}.
    */
@@ -431,6 +492,12 @@ public final class LocalFragment {
     beginMilliseconds = System.currentTimeMillis();
 
     Throwable failureCause = null;
+    if (yielded) {
+      yielded = false;
+      numResumes.incrementAndGet();
+    }
+    long numTuples = 0;
+    boolean quantumUsed = false;
     if (executionCondition.compareAndSet(EXECUTION_READY | STATE_EXECUTION_REQUESTED, EXECUTION_READY
         | STATE_EXECUTION_REQUESTED | STATE_IN_EXECUTION)) {
       EXECUTE : while (true) {
@@ -453,11 +520,14 @@ public final class LocalFragment {
           boolean breakByOutputUnavailable = false;
           try {
             boolean hasData = true;
-            while (hasData && !breakByOutputUnavailable) {
+            while (hasData && !breakByOutputUnavailable && !quantumUsed) {
               hasData = false;
-              if (root.nextReady() != null) {
+              TupleBatch tb = root.nextReady();
+              if (tb != null) {
                 hasData = true;
                 breakByOutputUnavailable = !isOutputAvailable();
+                numTuples += tb.numTuples();
+                quantumUsed = isQuantumUsed(numTuples);
               } else {
                 // check output
                 if (root.eoi()) {
@@ -478,16 +548,19 @@ public final class LocalFragment {
             AtomicUtils.setBitByValue(executionCondition, STATE_FAIL);
           }
 
-          if (breakByOutputUnavailable) {
+          if (breakByOutputUnavailable || quantumUsed) {
             // we do not know whether all the inputs have been consumed, recover the input available bit
             AtomicUtils.setBitByValue(executionCondition, STATE_INPUT_AVAILABLE);
           }
 
         }
 
-        // Check if another round of execution is needed.
+        // Check if another round of execution is needed. It is left to a new execution if the quantum is used up.
         int oldV = executionCondition.get();
-        while (oldV != EXECUTION_CONTINUE) {
+        if (oldV == EXECUTION_CONTINUE && !quantumUsed) {
+          quantumUsed = isQuantumUsed(numTuples);
+        }
+        while (quantumUsed || oldV != EXECUTION_CONTINUE) {
           // try clear the STATE_EXECUTION_REQUESTED and STATE_IN_EXECUTION bit
           if (executionCondition.compareAndSet(oldV, oldV & ~(STATE_EXECUTION_REQUESTED | STATE_IN_EXECUTION))) {
             // exit execution.
@@ -521,10 +594,28 @@ public final class LocalFragment {
       if (fragmentExecutionFuture.setFailure(new QueryKilledException("LocalFragment was killed"))) {
         cleanup(true);
       }
+    } else if (quantumUsed) {
+      // queue the rest of the work behind the fragments that are waiting for a thread.
+      yielded = true;
+      numYields.incrementAndGet();
+      execute();
     }
     return null;
   }
 
+  /**
+   * @param numTuples the number of tuples output by the current execution so far.
+   * @return if the current execution has used up its quantum and should yield the thread.
+   */
+  private boolean isQuantumUsed(final long numTuples) {
+    long maxTuples = quantumTuples;
+    if (maxTuples > 0 && numTuples >= maxTuples) {
+      return true;
+    }
+    long maxNanos = quantumNanos;
+    return maxNanos > 0 && System.nanoTime() - beginNanoseconds >= maxNanos;
+  }
+
   /**
    * Current execution condition.
    */
@@ -684,6 +775,12 @@ public final class LocalFragment {
    */
   public void init(final ImmutableMap<String, Object> execEnvVars) {
     this.execEnvVars = execEnvVars;
+    quantumNanos =
+        getLongEnvVar(execEnvVars, MyriaSystemConfigKeys.FRAGMENT_QUANTUM_NANOS,
+            MyriaConstants.FRAGMENT_QUANTUM_NANOS_DEFAULT_VALUE);
+    quantumTuples =
+        getLongEnvVar(execEnvVars, MyriaSystemConfigKeys.FRAGMENT_QUANTUM_TUPLES,
+            MyriaConstants.FRAGMENT_QUANTUM_TUPLES_DEFAULT_VALUE);
     try {
       myExecutor.submit(initTask).get();
     } catch (InterruptedException e) {
@@ -694,6 +791,21 @@ public final class LocalFragment {
     }
   }
 
+  /**
+   * @param execEnvVars execution environment variables.
+   * @param key the key of a numeric configuration.
+   * @param defaultValue the value if the configuration is not set.
+   * @return the value of the configuration.
+   */
+  private static long getLongEnvVar(final ImmutableMap<String, Object> execEnvVars, final String key,
+      final long defaultValue) {
+    Object configured = execEnvVars.get(key);
+    if (configured == null) {
+      return defaultValue;
+    }
+    return Long.parseLong(configured.toString());
+  }
+
   /**
    * The actual initialization method.
    * 
@@ -760,6 +872,13 @@ public final class LocalFragment {
     return beginMilliseconds;
   }
 
+  /**
+   * @return the number of executions of this {@link LocalFragment} that yielded the thread with work left.
+   */
+  public long getNumYields() {
+    return numYields.get();
+  }
+
   /**
    * 
    * @param stats the stats to be added into
@@ -796,6 +915,8 @@ public final class LocalFragment {
         }
       }
       addResourceReport(stats, timestamp, op.getOpId(), "cpuTotal", cntCpu, subQueryId);
+      addResourceReport(stats, timestamp, op.getOpId(), "numYields", numYields.get(), subQueryId);
+      addResourceReport(stats, timestamp, op.getOpId(), "numResumes", numResumes.get(), subQueryId);
     }
 
     if (op instanceof Producer) {
@@ -809,6 +930,9 @@ public final class LocalFragment {
     } else if (op instanceof SymmetricHashJoin) {
       addResourceReport(stats, timestamp, op.getOpId(), "hashTableSize", ((SymmetricHashJoin) op)
           .getNumTuplesInHashTables(), subQueryId);
+    } else if (op instanceof ParallelPipeline) {
+      addResourceReport(stats, timestamp, op.getOpId(), "numMorsels", ((ParallelPipeline) op).getNumMorsels(),
+          subQueryId);
     } else if (op instanceof LeapFrogJoin) {
       addResourceReport(stats, timestamp, op.getOpId(), "hashTableSize",
           ((LeapFrogJoin) op).getNumTuplesInHashTables(), subQueryId);
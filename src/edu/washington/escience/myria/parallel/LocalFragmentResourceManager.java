@@ -11,8 +11,10 @@ import edu.washington.escience.myria.parallel.ipc.FlowControlBagInputBuffer;
 import edu.washington.escience.myria.parallel.ipc.IPCConnectionPool;
 import edu.washington.escience.myria.parallel.ipc.IPCEvent;
 import edu.washington.escience.myria.parallel.ipc.IPCEventListener;
+import edu.washington.escience.myria.parallel.ipc.PayloadSizeEstimator;
 import edu.washington.escience.myria.parallel.ipc.StreamInputBuffer;
 import edu.washington.escience.myria.parallel.ipc.StreamOutputChannel;
+import edu.washington.escience.myria.storage.BatchByteBudget;
 import edu.washington.escience.myria.storage.TupleBatch;
 
 /**
@@ -23,6 +25,17 @@ public final class LocalFragmentResourceManager {
   /** The logger for this class. */
   static final org.slf4j.Logger LOGGER = org.slf4j.LoggerFactory.getLogger(LocalFragmentResourceManager.class);
 
+  /**
+   * Estimates the bytes of the tuple batches held in the input buffers.
+   */
+  private static final PayloadSizeEstimator<TupleBatch> TUPLE_BATCH_SIZE_ESTIMATOR =
+      new PayloadSizeEstimator<TupleBatch>() {
+        @Override
+        public long estimateBytes(final TupleBatch payload) {
+          return BatchByteBudget.estimateBytes(payload);
+        }
+      };
+
   /**
    * The ipc pool.
    */
@@ -115,7 +128,7 @@ public final class LocalFragmentResourceManager {
 
     inputBuffer =
         new FlowControlBagInputBuffer<TupleBatch>(ipcPool, consumer.getInputChannelIDs(ipcPool.getMyIPCID()), ipcPool
-            .getInputBufferCapacity(), ipcPool.getInputBufferRecoverTrigger());
+            .getInputBufferCapacity(), ipcPool.getInputBufferRecoverTrigger(), TUPLE_BATCH_SIZE_ESTIMATOR);
     inputBuffer.addListener(FlowControlBagInputBuffer.NEW_INPUT_DATA, new IPCEventListener() {
 
       @Override
@@ -3,9 +3,13 @@ package edu.washington.escience.myria.parallel;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.common.base.MoreObjects;
 
 import edu.washington.escience.myria.MyriaConstants.FTMode;
 import edu.washington.escience.myria.MyriaConstants.ProfilingMode;
+import edu.washington.escience.myria.util.concurrent.SchedulingGroup;
 
 /**
  * A {@link LocalSubQuery} is the instantiation of the part of a distributed subquery that executes at one node. It
@@ -25,9 +29,15 @@ public abstract class LocalSubQuery implements Comparable<LocalSubQuery> {
   private final FTMode ftMode;
 
   /**
-   * Priority, currently not used.
+   * The estimated number of bytes at which the batches built by the operators are finished, or null to use the
+   * configured budget.
+   */
+  private final Long batchSizeBytes;
+
+  /**
+   * How the fragments are scheduled by the query executor.
    */
-  private static final int PRIORITY = 0;
+  private final SchedulingGroup schedulingGroup;
 
   /**
    * get the ftMode.
@@ -49,11 +59,30 @@ public abstract class LocalSubQuery implements Comparable<LocalSubQuery> {
    * @param subQueryId the id of this subquery.
    * @param ftMode the fault-tolerance mode of this subquery.
    * @param profilingMode the profiling mode of this subquery.
-   */
-  public LocalSubQuery(final SubQueryId subQueryId, final FTMode ftMode, @Nonnull final Set<ProfilingMode> profilingMode) {
+   * @param batchSizeBytes the estimated number of bytes at which the batches built by the operators are finished, or
+   *          null to use the configured budget.
+   * @param priority the priority of the fragments of this subquery in the query executor, or null to use the default.
+   * @param shareWeight the share of the query executor of the fragments of this subquery, or null to use the default.
+   */
+  public LocalSubQuery(final SubQueryId subQueryId, final FTMode ftMode,
+      @Nonnull final Set<ProfilingMode> profilingMode, @Nullable final Long batchSizeBytes,
+      @Nullable final Integer priority, @Nullable final Integer shareWeight) {
     this.subQueryId = subQueryId;
     this.ftMode = ftMode;
     this.profilingMode = profilingMode;
+    this.batchSizeBytes = batchSizeBytes;
+    schedulingGroup =
+        new SchedulingGroup(MoreObjects.firstNonNull(priority, SchedulingGroup.DEFAULT_PRIORITY), MoreObjects
+            .firstNonNull(shareWeight, SchedulingGroup.DEFAULT_WEIGHT));
+  }
+
+  /**
+   * @return the estimated number of bytes at which the batches built by the operators are finished, or null to use the
+   *         configured budget.
+   */
+  @Nullable
+  public final Long getBatchSizeBytes() {
+    return batchSizeBytes;
   }
 
   /**
@@ -75,11 +104,14 @@ public abstract class LocalSubQuery implements Comparable<LocalSubQuery> {
    * @return the priority of this subquery.
    */
   final int getPriority() {
-    /*
-     * TODO from @dhalperi, why is any of this here? It seems to never be used anywhere, and the comments in
-     * WorkerSubQuery.java make me think this is an accurate assessment.
-     */
-    return PRIORITY;
+    return schedulingGroup.getPriority();
+  }
+
+  /**
+   * @return how the fragments of this subquery are scheduled by the query executor.
+   */
+  final SchedulingGroup getSchedulingGroup() {
+    return schedulingGroup;
   }
 
   /**
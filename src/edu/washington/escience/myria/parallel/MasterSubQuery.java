@@ -323,7 +323,9 @@ public class MasterSubQuery extends LocalSubQuery {
    */
   public MasterSubQuery(final SubQuery subQuery, final Server master) {
     super(Preconditions.checkNotNull(Preconditions.checkNotNull(subQuery, "subQuery").getSubQueryId(), "subQueryId"),
-        subQuery.getMasterPlan().getFTMode(), subQuery.getMasterPlan().getProfilingMode());
+        subQuery.getMasterPlan().getFTMode(), subQuery.getMasterPlan().getProfilingMode(),
+        subQuery.getMasterPlan().getBatchSizeBytes(), subQuery.getMasterPlan().getPriority(), subQuery
+            .getMasterPlan().getShareWeight());
     Preconditions.checkNotNull(subQuery, "subQuery");
     SubQueryPlan masterPlan = subQuery.getMasterPlan();
     Map<Integer, SubQueryPlan> workerPlans = subQuery.getWorkerPlans();
@@ -71,6 +71,12 @@ public final class Query {
   private final Set<ProfilingMode> profiling;
   /** Indicates whether the query should be run with a particular fault tolerance mode. */
   private final FTMode ftMode;
+  /** The estimated number of bytes at which the batches of this query are finished, or null to use the configured. */
+  private final Long batchSizeBytes;
+  /** The priority of this query on the workers, or null to use the default. */
+  private final Integer priority;
+  /** The share of the workers' threads of this query, or null to use the default. */
+  private final Integer shareWeight;
   /** Global variables that are part of this query. */
   private final ConcurrentHashMap<String, Object> globals;
   /** Temporary relations created during the execution of this query. */
@@ -91,6 +97,9 @@ public final class Query {
     this.server = Preconditions.checkNotNull(server, "server");
     profiling = ImmutableSet.copyOf(query.profilingMode);
     ftMode = query.ftMode;
+    batchSizeBytes = query.batchSizeBytes;
+    priority = query.priority;
+    shareWeight = query.shareWeight;
     this.queryId = queryId;
     subqueryId = 0;
     synchronized (this) {
@@ -189,8 +198,11 @@ public final class Query {
         }
       }
 
-      QueryConstruct.setQueryExecutionOptions(currentSubQuery.getWorkerPlans(), ftMode, profilingMode);
+      QueryConstruct.setQueryExecutionOptions(currentSubQuery.getWorkerPlans(), ftMode, profilingMode,
+          batchSizeBytes, priority, shareWeight);
       currentSubQuery.getMasterPlan().setFTMode(ftMode);
+      currentSubQuery.getMasterPlan().setBatchSizeBytes(batchSizeBytes);
+      currentSubQuery.getMasterPlan().setScheduling(priority, shareWeight);
       currentSubQuery.getMasterPlan().setProfilingMode(ImmutableSet.<ProfilingMode> of());
       ++subqueryId;
       if (subqueryId >= MyriaConstants.MAXIMUM_NUM_SUBQUERIES) {
@@ -433,6 +433,13 @@ public final class Server {
     int inputBufferRecoverTrigger =
         Integer.valueOf(catalog.getConfigurationValue(MyriaSystemConfigKeys.OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER));
 
+    String columnarConfig = catalog.getConfigurationValue(MyriaSystemConfigKeys.IPC_COLUMNAR_TUPLE_BATCHES);
+    boolean columnarTupleBatches =
+        columnarConfig == null ? MyriaConstants.IPC_COLUMNAR_TUPLE_BATCHES_DEFAULT_VALUE : Boolean
+            .parseBoolean(columnarConfig);
+    IPCCompression compression =
+        IPCCompression.fromConfiguration(catalog.getConfigurationValue(MyriaSystemConfigKeys.IPC_COMPRESSION));
+
     execEnvVars = new ConcurrentHashMap<>();
     for (Entry<String, String> cE : allConfigurations.entrySet()) {
       execEnvVars.put(cE.getKey(), cE.getValue());
@@ -457,8 +464,10 @@ public final class Server {
     connectionPool =
         new IPCConnectionPool(MyriaConstants.MASTER_ID, computingUnits, IPCConfigurations
             .createMasterIPCServerBootstrap(this), IPCConfigurations.createMasterIPCClientBootstrap(this),
-            new TransportMessageSerializer(), new QueueBasedShortMessageProcessor<TransportMessage>(messageQueue),
-            inputBufferCapacity, inputBufferRecoverTrigger);
+            new TransportMessageSerializer(columnarTupleBatches, compression),
+            new QueueBasedShortMessageProcessor<TransportMessage>(messageQueue), inputBufferCapacity,
+            inputBufferRecoverTrigger, IPCConfigurations.createMasterInputBufferMemoryPool(this), IPCConfigurations
+                .createMasterStreamMultiplexing(this));
 
     scheduledTaskExecutor =
         Executors.newSingleThreadScheduledExecutor(new RenamingThreadFactory("Master global timer"));
@@ -7,6 +7,7 @@ import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -46,6 +47,15 @@ public class SubQueryPlan implements Serializable, DbReader, DbWriter {
   /** profilingMode. */
   private Set<ProfilingMode> profilingMode;
 
+  /** The estimated number of bytes at which the batches are finished, or null to use the configured budget. */
+  private Long batchSizeBytes;
+
+  /** The priority of the query on the workers, or null to use the default. */
+  private Integer priority;
+
+  /** The share of the workers' threads of the query, or null to use the default. */
+  private Integer shareWeight;
+
   /** Constructor. */
   public SubQueryPlan() {
     rootOps = new ArrayList<RootOperator>();
@@ -160,6 +170,51 @@ public class SubQueryPlan implements Serializable, DbReader, DbWriter {
     this.profilingMode = profilingMode;
   }
 
+  /**
+   * @return the estimated number of bytes at which the batches are finished, or null to use the configured budget.
+   */
+  @Nullable
+  public Long getBatchSizeBytes() {
+    return batchSizeBytes;
+  }
+
+  /**
+   * Set the byte budget of the batches.
+   * 
+   * @param batchSizeBytes the estimated number of bytes at which the batches are finished, or null to use the
+   *          configured budget.
+   */
+  public void setBatchSizeBytes(@Nullable final Long batchSizeBytes) {
+    this.batchSizeBytes = batchSizeBytes;
+  }
+
+  /**
+   * @return the priority of the query on the workers, or null to use the default.
+   */
+  @Nullable
+  public Integer getPriority() {
+    return priority;
+  }
+
+  /**
+   * @return the share of the workers' threads of the query, or null to use the default.
+   */
+  @Nullable
+  public Integer getShareWeight() {
+    return shareWeight;
+  }
+
+  /**
+   * Set how the fragments are scheduled on the workers.
+   * 
+   * @param priority the priority of the query, or null to use the default.
+   * @param shareWeight the share of the workers' threads of the query, or null to use the default.
+   */
+  public void setScheduling(@Nullable final Integer priority, @Nullable final Integer shareWeight) {
+    this.priority = priority;
+    this.shareWeight = shareWeight;
+  }
+
   @Override
   public Map<RelationKey, RelationWriteMetadata> writeSet() {
     return ImmutableMap.copyOf(writeSet);
@@ -21,6 +21,9 @@ import edu.washington.escience.myria.util.IPCUtils;
 /**
  * This class monitors all the input/output IPC data. It makes sure that all input data are of {@link TransportMessage}
  * type. And it does all IPC exception catching and recording.
+ * 
+ * {@link TupleBatch}es are sent either as {@link TransportMessage}s or as {@link ColumnarFrame}s. Both are always
+ * accepted when receiving.
  * */
 @Sharable
 public class TransportMessageSerializer implements PayloadSerializer {
@@ -28,6 +31,36 @@ public class TransportMessageSerializer implements PayloadSerializer {
   /** The logger for this class. */
   protected static final Logger LOGGER = LoggerFactory.getLogger(TransportMessageSerializer.class);
 
+  /** Whether {@link TupleBatch}es are sent as {@link ColumnarFrame}s instead of {@link TransportMessage}s. */
+  private final boolean columnarTupleBatches;
+  /** How much effort is spent to make {@link ColumnarFrame}s smaller. */
+  private final IPCCompression compression;
+
+  /**
+   * Send {@link TupleBatch}es in the default format, {@link MyriaConstants#IPC_COLUMNAR_TUPLE_BATCHES_DEFAULT_VALUE}.
+   */
+  public TransportMessageSerializer() {
+    this(MyriaConstants.IPC_COLUMNAR_TUPLE_BATCHES_DEFAULT_VALUE);
+  }
+
+  /**
+   * @param columnarTupleBatches whether {@link TupleBatch}es are sent as {@link ColumnarFrame}s instead of
+   *          {@link TransportMessage}s.
+   */
+  public TransportMessageSerializer(final boolean columnarTupleBatches) {
+    this(columnarTupleBatches, IPCCompression.NONE);
+  }
+
+  /**
+   * @param columnarTupleBatches whether {@link TupleBatch}es are sent as {@link ColumnarFrame}s instead of
+   *          {@link TransportMessage}s.
+   * @param compression how much effort is spent to make {@link ColumnarFrame}s smaller.
+   */
+  public TransportMessageSerializer(final boolean columnarTupleBatches, final IPCCompression compression) {
+    this.columnarTupleBatches = columnarTupleBatches;
+    this.compression = Preconditions.checkNotNull(compression, "compression");
+  }
+
   @Override
   public final ChannelBuffer serialize(final Object m) {
     Preconditions.checkNotNull(m);
@@ -41,6 +74,9 @@ public class TransportMessageSerializer implements PayloadSerializer {
       // case 3: TupleBatch
       TupleBatch tb = (TupleBatch) m;
       if (!tb.isEOI()) {
+        if (columnarTupleBatches) {
+          return ColumnarFrame.encode(tb, compression);
+        }
         return ChannelBuffers.wrappedBuffer(((TupleBatch) m).toTransportMessage().toByteArray());
       } else {
         return ChannelBuffers.wrappedBuffer(IPCUtils.EOI.toByteArray());
@@ -79,6 +115,13 @@ public class TransportMessageSerializer implements PayloadSerializer {
   public final Object deSerialize(final ChannelBuffer buffer, final Object processor, final Object att)
       throws IOException {
 
+    if (ColumnarFrame.isColumnarFrame(buffer)) {
+      if (att == null) {
+        return null;
+      }
+      return ColumnarFrame.decode(buffer, (Schema) att);
+    }
+
     TransportMessage tm = deSerializeTransportMessage(buffer);
 
     switch (tm.getType()) {
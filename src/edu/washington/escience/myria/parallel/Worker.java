@@ -45,7 +45,7 @@ import edu.washington.escience.myria.util.IPCUtils;
 import edu.washington.escience.myria.util.JVMUtils;
 import edu.washington.escience.myria.util.concurrent.ErrorLoggingTimerTask;
 import edu.washington.escience.myria.util.concurrent.RenamingThreadFactory;
-import edu.washington.escience.myria.util.concurrent.ThreadAffinityFixedRoundRobinExecutionPool;
+import edu.washington.escience.myria.util.concurrent.WorkStealingFairShareExecutionPool;
 
 /**
  * Workers do the real query execution. A query received by the server will be pre-processed and then dispatched to the
@@ -616,10 +616,19 @@ public final class Worker {
     int inputBufferRecoverTrigger =
         Integer.valueOf(catalog.getConfigurationValue(MyriaSystemConfigKeys.OPERATOR_INPUT_BUFFER_RECOVER_TRIGGER));
 
+    String columnarConfig = catalog.getConfigurationValue(MyriaSystemConfigKeys.IPC_COLUMNAR_TUPLE_BATCHES);
+    boolean columnarTupleBatches =
+        columnarConfig == null ? MyriaConstants.IPC_COLUMNAR_TUPLE_BATCHES_DEFAULT_VALUE : Boolean
+            .parseBoolean(columnarConfig);
+    IPCCompression compression =
+        IPCCompression.fromConfiguration(catalog.getConfigurationValue(MyriaSystemConfigKeys.IPC_COMPRESSION));
+
     connectionPool =
         new IPCConnectionPool(myID, computingUnits, IPCConfigurations.createWorkerIPCServerBootstrap(this),
-            IPCConfigurations.createWorkerIPCClientBootstrap(this), new TransportMessageSerializer(),
-            new WorkerShortMessageProcessor(this), inputBufferCapacity, inputBufferRecoverTrigger);
+            IPCConfigurations.createWorkerIPCClientBootstrap(this),
+            new TransportMessageSerializer(columnarTupleBatches, compression), new WorkerShortMessageProcessor(this),
+            inputBufferCapacity, inputBufferRecoverTrigger, IPCConfigurations.createWorkerInputBufferMemoryPool(this),
+            IPCConfigurations.createWorkerStreamMultiplexing(this));
     activeQueries = new ConcurrentHashMap<>();
     executingSubQueries = new ConcurrentHashMap<>();
 
@@ -792,11 +801,9 @@ public final class Worker {
 
     if (queryExecutionMode == QueryExecutionMode.NON_BLOCKING) {
       int numCPU = Runtime.getRuntime().availableProcessors();
+      // the fragments are queued once ready, i.e., once they have new input and their output is available.
       queryExecutor =
-      // new ThreadPoolExecutor(numCPU, numCPU, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
-      // new RenamingThreadFactory("Nonblocking query executor"));
-          new ThreadAffinityFixedRoundRobinExecutionPool(numCPU,
-              new RenamingThreadFactory("Nonblocking query executor"));
+          new WorkStealingFairShareExecutionPool(numCPU, new RenamingThreadFactory("Nonblocking query executor"));
     } else {
       // blocking query execution
       queryExecutor = Executors.newCachedThreadPool(new RenamingThreadFactory("Blocking query executor"));
@@ -149,7 +149,8 @@ public class WorkerSubQuery extends LocalSubQuery {
    * @param ownerWorker the worker on which this {@link WorkerSubQuery} is going to run
    */
   public WorkerSubQuery(final SubQueryPlan plan, final SubQueryId subQueryId, final Worker ownerWorker) {
-    super(subQueryId, plan.getFTMode(), plan.getProfilingMode());
+    super(subQueryId, plan.getFTMode(), plan.getProfilingMode(), plan.getBatchSizeBytes(), plan.getPriority(), plan
+        .getShareWeight());
     List<RootOperator> operators = plan.getRootOps();
     fragments = new HashSet<LocalFragment>(operators.size());
     numFinishedFragments = new AtomicInteger(0);
@@ -5,6 +5,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelException;
@@ -16,6 +17,8 @@ import org.jboss.netty.channel.group.ChannelGroup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.Uninterruptibles;
+
 import edu.washington.escience.myria.parallel.ipc.IPCMessage.Meta.CONNECT;
 import edu.washington.escience.myria.util.AttachmentableAdapter;
 import edu.washington.escience.myria.util.IPCUtils;
@@ -443,6 +446,12 @@ public class ChannelContext extends AttachmentableAdapter {
    * */
   private final DefaultOperationFuture remoteReply;
 
+  /**
+   * Counted down once the remote reply has been handled, i.e., once the channel is registered or dropped. The reply
+   * future is done before its listeners run, so waiting for the reply is not enough.
+   * */
+  private final CountDownLatch remoteReplyHandled = new CountDownLatch(1);
+
   /**
    * last IO timestamp. 0 or negative means the channel is connected by not used. If the channel is assigned to do some
    * IO task, then this field must be updated to the timestamp of assignment. Also, each IO operation on this channel
@@ -1163,16 +1172,22 @@ public class ChannelContext extends AttachmentableAdapter {
 
       @Override
       public void operationComplete(final OperationFuture future) throws Exception {
-        if (remoteReplyID == null || remoteID != remoteReplyID) {
-          idCheckingTimeout(unregisteredNewChannels);
-        } else {
-          registerNormal(remoteID, registeredChannels, unregisteredNewChannels);
+        try {
+          if (remoteReplyID == null || remoteID != remoteReplyID) {
+            idCheckingTimeout(unregisteredNewChannels);
+          } else {
+            registerNormal(remoteID, registeredChannels, unregisteredNewChannels);
+          }
+        } finally {
+          remoteReplyHandled.countDown();
         }
       }
     });
     ownerChannel.write(myIDMsg);
 
-    if (!waitForRemoteReply()) {
+    boolean replied = waitForRemoteReply();
+    Uninterruptibles.awaitUninterruptibly(remoteReplyHandled);
+    if (!replied) {
       throw new ChannelException("ID checking timeout, failed to get the remote ID", remoteReply.getCause());
     }
 
@@ -23,7 +23,9 @@ import edu.washington.escience.myria.util.concurrent.ThreadStackDump;
  * An flow control aware InputBuffer implementation. This type of InputBuffer has a soft capacity. The number of
  * messages held in this InputBuffer can be as large as {@link Integer.MAX_VALUE}. But the soft capacity is a trigger.<br>
  * If the soft capacity is meet, an IOEvent representing the buffer full event is triggered. <br>
- * If the
+ * If the buffer is given a {@link PayloadSizeEstimator}, the soft capacity is also measured in the estimated bytes of
+ * the payloads, both of this buffer and of all the buffers sharing the {@link InputBufferMemoryPool} of the owner
+ * {@link IPCConnectionPool}. <br>
  *
  * @param <PAYLOAD> the type of application defined data the input buffer is going to hold.
  * */
@@ -46,6 +48,21 @@ public final class FlowControlBagInputBuffer<PAYLOAD> extends BagInputBufferAdap
    * */
   private final int softCapacity;
 
+  /**
+   * estimates the bytes of the payloads, or null if the bytes are not counted.
+   * */
+  private final PayloadSizeEstimator<? super PAYLOAD> sizeEstimator;
+
+  /**
+   * the memory shared by the input buffers of the owner.
+   * */
+  private final InputBufferMemoryPool memoryPool;
+
+  /**
+   * the estimated bytes of the payloads in this buffer, protected by the buffer size lock.
+   * */
+  private long bufferedBytes;
+
   /**
    * serialize the events.
    * */
@@ -77,6 +94,19 @@ public final class FlowControlBagInputBuffer<PAYLOAD> extends BagInputBufferAdap
    * */
   public FlowControlBagInputBuffer(final IPCConnectionPool owner,
       final ImmutableSet<StreamIOChannelID> remoteChannelIDs, final int softCapacity, final int recoverEventTrigger) {
+    this(owner, remoteChannelIDs, softCapacity, recoverEventTrigger, null);
+  }
+
+  /**
+   * {@inheritDoc}.
+   *
+   * @param softCapacity soft upper bound of the buffer size.
+   * @param sizeEstimator estimates the bytes of the payloads, or null if the buffer only counts the payloads.
+   *
+   * */
+  public FlowControlBagInputBuffer(final IPCConnectionPool owner,
+      final ImmutableSet<StreamIOChannelID> remoteChannelIDs, final int softCapacity, final int recoverEventTrigger,
+      final PayloadSizeEstimator<? super PAYLOAD> sizeEstimator) {
     super(owner, remoteChannelIDs);
     bufferEmptyListeners = new ConcurrentLinkedQueue<IPCEventListener>();
     bufferFullListeners = new ConcurrentLinkedQueue<IPCEventListener>();
@@ -85,6 +115,13 @@ public final class FlowControlBagInputBuffer<PAYLOAD> extends BagInputBufferAdap
 
     this.softCapacity = softCapacity;
     this.recoverEventTrigger = recoverEventTrigger;
+    this.sizeEstimator = sizeEstimator;
+    if (sizeEstimator == null || owner == null) {
+      memoryPool = InputBufferMemoryPool.unbounded();
+    } else {
+      memoryPool = owner.getInputBufferMemoryPool();
+    }
+    bufferedBytes = 0;
   }
 
   @Override
@@ -107,6 +144,7 @@ public final class FlowControlBagInputBuffer<PAYLOAD> extends BagInputBufferAdap
 
   @Override
   public void postStop() {
+    memoryPool.remove(this);
     this.resumeRead();
   }
 
@@ -196,14 +234,45 @@ public final class FlowControlBagInputBuffer<PAYLOAD> extends BagInputBufferAdap
     return softCapacity - size();
   }
 
+  /**
+   * @return the estimated bytes of the payloads in this buffer.
+   * */
+  public long getBufferedBytes() {
+    try (ClosableReentrantLock l = getBufferSizeLock().open()) {
+      return bufferedBytes;
+    }
+  }
+
+  /**
+   * @param m a message.
+   * @return the estimated bytes of the payload of the message, or 0 if the bytes are not counted.
+   * */
+  private long estimateBytes(final IPCMessage.StreamData<PAYLOAD> m) {
+    if (sizeEstimator == null || m.getPayload() == null) {
+      return 0;
+    }
+    return sizeEstimator.estimateBytes(m.getPayload());
+  }
+
   @Override
   public void postClear() {
+    long released;
+    try (ClosableReentrantLock l = getBufferSizeLock().open()) {
+      released = bufferedBytes;
+      bufferedBytes = 0;
+    }
     checkOutputBufferStateEvents();
+    memoryPool.release(released);
   }
 
   @Override
   protected void postOffer(final IPCMessage.StreamData<PAYLOAD> e, final boolean isSucceed) {
     if (isSucceed) {
+      long bytes = estimateBytes(e);
+      try (ClosableReentrantLock l = getBufferSizeLock().open()) {
+        bufferedBytes += bytes;
+      }
+      memoryPool.reserve(bytes);
       fireNewInput();
       checkInputBufferStateEvents();
     }
@@ -214,12 +283,27 @@ public final class FlowControlBagInputBuffer<PAYLOAD> extends BagInputBufferAdap
    * */
   private void checkInputBufferStateEvents() {
     try (ClosableReentrantLock l = getBufferSizeLock().open()) {
-      if (remainingCapacity() <= 0 && previousEvent != INPUT_BUFFER_FULL) {
+      if (previousEvent == INPUT_BUFFER_FULL) {
+        return;
+      }
+      if (remainingCapacity() <= 0 || bufferedBytes >= memoryPool.getBufferCapacity()) {
         fireBufferFull();
+      } else if (memoryPool.isExhausted() && size() > 1) {
+        /* The pool is exhausted: give way to the buffers of starved consumers unless this consumer is starved too. */
+        fireBufferFull();
+        memoryPool.paused(this);
       }
     }
   }
 
+  /**
+   * @return true if this buffer holds few enough payloads and bytes to recover from being full.
+   * */
+  private boolean canRecover() {
+    return size() <= recoverEventTrigger && bufferedBytes <= memoryPool.getBufferRecoverTrigger()
+        && memoryPool.isRecovered();
+  }
+
   /**
    * Check events triggered by data output methods, i.e. poll/take/clear.
    * */
@@ -227,30 +311,56 @@ public final class FlowControlBagInputBuffer<PAYLOAD> extends BagInputBufferAdap
     try (ClosableReentrantLock l = getBufferSizeLock().open()) {
       if (isEmpty() && previousEvent != INPUT_BUFFER_EMPTY) {
         fireBufferEmpty();
-      } else if (previousEvent == INPUT_BUFFER_FULL && size() <= recoverEventTrigger) {
+      } else if (previousEvent == INPUT_BUFFER_FULL && canRecover()) {
+        fireBufferRecover();
+      }
+    }
+  }
+
+  /**
+   * Called by the {@link InputBufferMemoryPool} once it recovers after this buffer paused because the pool was
+   * exhausted.
+   * */
+  void poolRecovered() {
+    try (ClosableReentrantLock l = getBufferSizeLock().open()) {
+      if (previousEvent == INPUT_BUFFER_FULL && canRecover()) {
         fireBufferRecover();
       }
     }
   }
 
+  /**
+   * Check events triggered by data output methods, and release the bytes of the removed message.
+   *
+   * @param m the removed message.
+   * */
+  private void removed(final IPCMessage.StreamData<PAYLOAD> m) {
+    long bytes = estimateBytes(m);
+    try (ClosableReentrantLock l = getBufferSizeLock().open()) {
+      bufferedBytes -= bytes;
+    }
+    checkOutputBufferStateEvents();
+    memoryPool.release(bytes);
+  }
+
   @Override
   public void postPoll(final IPCMessage.StreamData<PAYLOAD> m) {
     if (m != null) {
-      checkOutputBufferStateEvents();
+      removed(m);
     }
   }
 
   @Override
   protected void postTimeoutPoll(final long time, final TimeUnit unit, final IPCMessage.StreamData<PAYLOAD> m) {
     if (m != null) {
-      checkOutputBufferStateEvents();
+      removed(m);
     }
   }
 
   @Override
   public void postTake(final IPCMessage.StreamData<PAYLOAD> m) {
     if (m != null) {
-      checkOutputBufferStateEvents();
+      removed(m);
     }
   }
 
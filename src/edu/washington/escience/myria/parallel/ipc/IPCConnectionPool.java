@@ -1,6 +1,10 @@
 package edu.washington.escience.myria.parallel.ipc;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
 import java.net.SocketAddress;
+import java.net.SocketException;
 import java.nio.channels.ClosedChannelException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -11,10 +15,12 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -178,6 +184,12 @@ public final class IPCConnectionPool implements ExternalResourceReleasable {
      * */
     private final ChannelPrioritySet registeredChannels;
 
+    /**
+     * The connections over which the streams to the remote IPC entity are multiplexed, created on demand. Each holds a
+     * reference for as long as it is connected, so that it is never recycled. Guarded by itself.
+     * */
+    private final Channel[] multiplexedChannels;
+
     /**
      * remote IPC entity ID.
      * */
@@ -209,6 +221,7 @@ public final class IPCConnectionPool implements ExternalResourceReleasable {
       registeredChannels =
           new ChannelPrioritySet(POOL_SIZE_LOWERBOUND, POOL_SIZE_LOWERBOUND, POOL_SIZE_UPPERBOUND,
               new LastIOTimeAscendingComparator());
+      multiplexedChannels = new Channel[streamMultiplexing.getConnectionsPerRemote()];
       this.bootstrap = bootstrap;
     }
 
@@ -303,6 +316,21 @@ public final class IPCConnectionPool implements ExternalResourceReleasable {
    */
   private final int inputBufferRecoverTrigger;
 
+  /**
+   * The memory shared by the input buffers that estimate the bytes of their payloads.
+   */
+  private final InputBufferMemoryPool inputBufferMemoryPool;
+
+  /**
+   * How the streams to each remote IPC entity are sent.
+   */
+  private final StreamMultiplexing streamMultiplexing;
+
+  /**
+   * The number of payload bytes sent through shared memory rings.
+   */
+  private final AtomicLong sharedMemoryBytesSent = new AtomicLong();
+
   /**
    * pool of connections.
    */
@@ -443,6 +471,20 @@ public final class IPCConnectionPool implements ExternalResourceReleasable {
     return inputBufferRecoverTrigger;
   }
 
+  /**
+   * @return the memory shared by the input buffers that estimate the bytes of their payloads.
+   */
+  public InputBufferMemoryPool getInputBufferMemoryPool() {
+    return inputBufferMemoryPool;
+  }
+
+  /**
+   * @return how the streams to each remote IPC entity are sent.
+   */
+  StreamMultiplexing getStreamMultiplexing() {
+    return streamMultiplexing;
+  }
+
   /**
    * Construct a connection pool.
    *
@@ -459,9 +501,55 @@ public final class IPCConnectionPool implements ExternalResourceReleasable {
       final ServerBootstrap serverBootstrap, final ClientBootstrap clientBootstrap,
       final PayloadSerializer payloadSerializer, final ShortMessageProcessor<?> mp, final int inputBufferCapacity,
       final int inputBufferRecoverTrigger) {
+    this(myID, remoteAddresses, serverBootstrap, clientBootstrap, payloadSerializer, mp, inputBufferCapacity,
+        inputBufferRecoverTrigger, InputBufferMemoryPool.unbounded());
+  }
+
+  /**
+   * Construct a connection pool.
+   *
+   * @param myID self id.
+   * @param remoteAddresses remote address mappings.
+   * @param serverBootstrap IPC server bootstrap
+   * @param clientBootstrap IPC client bootstrap
+   * @param payloadSerializer the payload serializer
+   * @param mp short message processor
+   * @param inputBufferCapacity input buffer capacity
+   * @param inputBufferRecoverTrigger input buffer recover trigger.
+   * @param inputBufferMemoryPool the memory shared by the input buffers that estimate the bytes of their payloads.
+   * */
+  public IPCConnectionPool(final int myID, final Map<Integer, SocketInfo> remoteAddresses,
+      final ServerBootstrap serverBootstrap, final ClientBootstrap clientBootstrap,
+      final PayloadSerializer payloadSerializer, final ShortMessageProcessor<?> mp, final int inputBufferCapacity,
+      final int inputBufferRecoverTrigger, final InputBufferMemoryPool inputBufferMemoryPool) {
+    this(myID, remoteAddresses, serverBootstrap, clientBootstrap, payloadSerializer, mp, inputBufferCapacity,
+        inputBufferRecoverTrigger, inputBufferMemoryPool, StreamMultiplexing.disabled());
+  }
+
+  /**
+   * Construct a connection pool.
+   *
+   * @param myID self id.
+   * @param remoteAddresses remote address mappings.
+   * @param serverBootstrap IPC server bootstrap
+   * @param clientBootstrap IPC client bootstrap
+   * @param payloadSerializer the payload serializer
+   * @param mp short message processor
+   * @param inputBufferCapacity input buffer capacity
+   * @param inputBufferRecoverTrigger input buffer recover trigger.
+   * @param inputBufferMemoryPool the memory shared by the input buffers that estimate the bytes of their payloads.
+   * @param streamMultiplexing how the streams to each remote IPC entity are sent.
+   * */
+  public IPCConnectionPool(final int myID, final Map<Integer, SocketInfo> remoteAddresses,
+      final ServerBootstrap serverBootstrap, final ClientBootstrap clientBootstrap,
+      final PayloadSerializer payloadSerializer, final ShortMessageProcessor<?> mp, final int inputBufferCapacity,
+      final int inputBufferRecoverTrigger, final InputBufferMemoryPool inputBufferMemoryPool,
+      final StreamMultiplexing streamMultiplexing) {
     this.myID = myID;
     this.inputBufferCapacity = inputBufferCapacity;
     this.inputBufferRecoverTrigger = inputBufferRecoverTrigger;
+    this.inputBufferMemoryPool = Objects.requireNonNull(inputBufferMemoryPool, "inputBufferMemoryPool");
+    this.streamMultiplexing = Objects.requireNonNull(streamMultiplexing, "streamMultiplexing");
     myIDMsg = new IPCMessage.Meta.CONNECT(myID);
     myIPCServerAddress = remoteAddresses.get(myID).getBindAddress();
     this.clientBootstrap = clientBootstrap;
@@ -764,6 +852,148 @@ public final class IPCConnectionPool implements ExternalResourceReleasable {
     }
   }
 
+  /**
+   * @return a connection over which to multiplex a new stream to a remote IPC entity, i.e., the one of the fixed set
+   *         of multiplexed connections to the remote that carries the fewest output streams. A connection is created if
+   *         one of the set is not connected.
+   * @param ipcID the remote ID, not this IPC entity.
+   * @throws IllegalStateException if the pool is already shutdown
+   * @throws ChannelException if any error occurs in the Netty layer
+   * */
+  @Nonnull
+  private Channel getAMultiplexedConnection(final int ipcID) throws IllegalStateException, ChannelException {
+    shutdownLock.readLock().lock();
+    try {
+      checkShutdown();
+      final IPCRemote remote = channelPool.get(ipcID);
+      if (remote == null || remote.unregisteredChannelsAtRemove != null) {
+        // id is invalid || remote already get removed
+        throw new IllegalStateException("Remote doesn't exist");
+      }
+
+      synchronized (remote.multiplexedChannels) {
+        int slot = -1;
+        int fewestStreams = Integer.MAX_VALUE;
+        for (int i = 0; i < remote.multiplexedChannels.length; i++) {
+          Channel ch = remote.multiplexedChannels[i];
+          if (ch == null || !ch.isConnected()) {
+            slot = i;
+            break;
+          }
+          RegisteredChannelContext rcc = ChannelContext.getChannelContext(ch).getRegisteredChannelContext();
+          // a channel whose registration has not completed is taken only if no other channel is registered.
+          int numStreams = Integer.MAX_VALUE;
+          if (rcc != null) {
+            numStreams = rcc.getIOPair().numMultiplexedOutputChannels();
+          }
+          if (slot < 0 || numStreams < fewestStreams) {
+            slot = i;
+            fewestStreams = numStreams;
+          }
+        }
+
+        Channel channel = remote.multiplexedChannels[slot];
+        if (channel == null || !channel.isConnected()) {
+          channel = null;
+          int retry = 0;
+          ChannelException failure = null;
+          while ((retry < MAX_NUM_RETRY) && (channel == null)) {
+            try {
+              // a new client channel comes with a reference, which the slot holds.
+              channel = createANewConnection(remote, CONNECTION_WAIT_IN_MS, remote.bootstrap);
+            } catch (ChannelException e) {
+              if (failure == null) {
+                failure = e;
+              }
+            }
+            retry++;
+          }
+          if (channel == null) {
+            throw failure;
+          }
+          remote.multiplexedChannels[slot] = channel;
+          offerSharedMemoryRing(remote, channel);
+        }
+
+        ChannelContext.getChannelContext(channel).updateLastIOTimestamp();
+        return channel;
+      }
+    } finally {
+      shutdownLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * If the remote is on this host, offer it a shared memory ring through which the payloads sent over a new multiplexed
+   * channel go. The payloads go through the channel until the remote has mapped the ring.
+   *
+   * @param remote the remote.
+   * @param channel the new multiplexed channel to the remote.
+   * */
+  private void offerSharedMemoryRing(final IPCRemote remote, final Channel channel) {
+    if (!streamMultiplexing.isSharedMemoryEnabled() || !isOnThisHost(remote.address)) {
+      return;
+    }
+    final RegisteredChannelContext rcc = ChannelContext.getChannelContext(channel).getRegisteredChannelContext();
+    if (rcc == null) {
+      LOGGER.debug("Channel {} to remote #{} is not registered. Payloads go through the channel.", ChannelContext
+          .channelToString(channel), remote.id);
+      return;
+    }
+    final SharedMemoryRing ring;
+    try {
+      ring =
+          SharedMemoryRing.create(streamMultiplexing.getSharedMemoryDirectory(), streamMultiplexing
+              .getSharedMemoryRingBytes());
+    } catch (IOException e) {
+      LOGGER.warn("Failed to create a shared memory ring in {}. Payloads to remote #{} go through the channel.",
+          streamMultiplexing.getSharedMemoryDirectory(), remote.id, e);
+      return;
+    }
+    channel.getCloseFuture().addListener(new ChannelFutureListener() {
+      @Override
+      public void operationComplete(final ChannelFuture future) throws Exception {
+        ring.deleteFile();
+      }
+    });
+    rcc.getIOPair().setOutputRing(ring);
+    channel.write(new IPCMessage.Meta.SHM_ATTACH(ring.getPath(), ring.getCapacity()));
+  }
+
+  /**
+   * @param address the address of a remote.
+   * @return true if the remote is on this host.
+   * */
+  private static boolean isOnThisHost(final SocketInfo address) {
+    InetAddress inetAddress = address.getConnectAddress().getAddress();
+    if (inetAddress == null) {
+      return false;
+    }
+    if (inetAddress.isLoopbackAddress() || inetAddress.isAnyLocalAddress()) {
+      return true;
+    }
+    try {
+      return NetworkInterface.getByInetAddress(inetAddress) != null;
+    } catch (SocketException e) {
+      return false;
+    }
+  }
+
+  /**
+   * @param bytes the number of payload bytes sent through a shared memory ring.
+   * */
+  void sentThroughSharedMemory(final long bytes) {
+    sharedMemoryBytesSent.addAndGet(bytes);
+  }
+
+  /**
+   * @return the number of payload bytes sent through shared memory rings to the co-located remotes, instead of through
+   *         their channels.
+   * */
+  public long getSharedMemoryBytesSent() {
+    return sharedMemoryBytesSent.get();
+  }
+
   /**
    * @return my id as TM.
    * */
@@ -908,7 +1138,15 @@ public final class IPCConnectionPool implements ExternalResourceReleasable {
     shutdownLock.readLock().lock();
     try {
       Channel ch = channel.getIOChannel();
-      if (ch != null) {
+      if (ch != null && channel.isMultiplexed()) {
+        if (!shutdown) {
+          return releaseMultiplexedStream(ch, channel.getID().getStreamID());
+        } else {
+          ChannelFuture cf = new DefaultChannelFuture(ch, false);
+          cf.setSuccess();
+          return cf;
+        }
+      } else if (ch != null) {
         if (!shutdown) {
           return this.releaseLongTermConnection(ch);
         } else {
@@ -924,6 +1162,26 @@ public final class IPCConnectionPool implements ExternalResourceReleasable {
     }
   }
 
+  /**
+   * End a multiplexed stream. The physical channel stays open for the other streams.
+   *
+   * @param channel the physical channel over which the stream is multiplexed.
+   * @param streamID the stream ID.
+   * @return the future of the end of the stream.
+   * */
+  @Nonnull
+  private ChannelFuture releaseMultiplexedStream(final Channel channel, final long streamID) {
+    ChannelFuture cf = channel.write(new IPCMessage.Meta.MUX_EOS(streamID));
+    cf.addListener(new ChannelFutureListener() {
+      @Override
+      public void operationComplete(final ChannelFuture future) throws Exception {
+        ChannelContext cc = ChannelContext.getChannelContext(future.getChannel());
+        cc.getRegisteredChannelContext().getIOPair().deMapMultiplexedOutputChannel(streamID);
+      }
+    });
+    return cf;
+  }
+
   /**
    * @param channel the channel.
    * @return channel release future.
@@ -1057,6 +1315,18 @@ public final class IPCConnectionPool implements ExternalResourceReleasable {
     shutdownLock.readLock().lock();
     try {
       checkShutdown();
+      if (streamMultiplexing.isEnabled() && id != myID && id != SELF_IPC_ID) {
+        Channel ch = getAMultiplexedConnection(id);
+        StreamOutputChannel<PAYLOAD> oc =
+            new StreamOutputChannel<PAYLOAD>(new StreamIOChannelID(streamID, id), this, ch, true, streamMultiplexing
+                .getStreamCreditBytes());
+        ch.write(new IPCMessage.Meta.MUX_BOS(streamID));
+        if (LOGGER.isTraceEnabled()) {
+          LOGGER.trace("reserve multiplexed stream for ({},{}), over physical connection {}", id, streamID,
+              ChannelContext.channelToString(ch), new ThreadStackDump());
+        }
+        return oc;
+      }
       Channel ch = getAConnection(id);
       // write bos even a recovery channel otherwise EOS from a non-stream
       ch.write(new IPCMessage.Meta.BOS(streamID));
@@ -1164,7 +1434,11 @@ public final class IPCConnectionPool implements ExternalResourceReleasable {
         Channel c = sic.getIOChannel();
         if (c != null) {
           ChannelContext cc = ChannelContext.getChannelContext(c);
-          cc.getRegisteredChannelContext().getIOPair().deMapInputChannel();
+          if (sic.isMultiplexed()) {
+            cc.getRegisteredChannelContext().getIOPair().deMapMultiplexedInputChannel(id.getStreamID());
+          } else {
+            cc.getRegisteredChannelContext().getIOPair().deMapInputChannel();
+          }
         }
 
       }
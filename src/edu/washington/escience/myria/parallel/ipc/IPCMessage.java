@@ -1,5 +1,7 @@
 package edu.washington.escience.myria.parallel.ipc;
 
+import java.nio.charset.StandardCharsets;
+
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 
@@ -15,11 +17,14 @@ public interface IPCMessage {
    * */
   enum Header {
     /***/
-    EOS, BOS, CONNECT, DISCONNECT, PING, DATA
+    EOS, BOS, CONNECT, DISCONNECT, PING, DATA, MUX_BOS, MUX_EOS, MUX_DATA, CREDIT, SHM_ATTACH, SHM_ATTACHED, SHM_DATA,
+    SHM_RELEASE
   }
 
   /**
-   * Meta IPCMessages, used inside the IPC module only. It has the following cases: EOS, BOS, CONNECT, DISCONNECT, PING.
+   * Meta IPCMessages, used inside the IPC module only. It has the following cases: EOS, BOS, CONNECT, DISCONNECT, PING,
+   * and MUX_BOS, MUX_EOS, CREDIT for the streams multiplexed over a shared physical channel, and SHM_ATTACH,
+   * SHM_ATTACHED, SHM_RELEASE for the {@link SharedMemoryRing} of a physical channel to a co-located remote.
    * */
   abstract class Meta implements IPCMessage {
 
@@ -113,6 +118,295 @@ public interface IPCMessage {
 
     }
 
+    /**
+     * Begin of a stream that is multiplexed with other streams over a physical channel. Unlike {@link BOS}, the
+     * physical channel is not bound to the stream, and the data of the stream are sent as {@link StreamData} frames.
+     * */
+    static final class MUX_BOS extends Meta {
+      /**
+       * stream id.
+       * */
+      private final long streamID;
+      /**
+       * serialize value.
+       * */
+      private final ChannelBuffer serializeValue;
+
+      /**
+       * @param streamID stream id.
+       * */
+      public MUX_BOS(final long streamID) {
+        this.streamID = streamID;
+        serializeValue = serializeStreamHead(Header.MUX_BOS, streamID);
+      }
+
+      /**
+       * @return the stream id.
+       * */
+      long getStreamID() {
+        return streamID;
+      }
+
+      @Override
+      public ChannelBuffer serialize() {
+        return serializeValue.duplicate();
+      }
+
+      @Override
+      public String toString() {
+        return "IPCMessage.Meta.MUX_BOS(" + streamID + ")";
+      }
+    }
+
+    /**
+     * End of a stream that is multiplexed with other streams over a physical channel.
+     * */
+    static final class MUX_EOS extends Meta {
+      /**
+       * stream id.
+       * */
+      private final long streamID;
+      /**
+       * serialize value.
+       * */
+      private final ChannelBuffer serializeValue;
+
+      /**
+       * @param streamID stream id.
+       * */
+      public MUX_EOS(final long streamID) {
+        this.streamID = streamID;
+        serializeValue = serializeStreamHead(Header.MUX_EOS, streamID);
+      }
+
+      /**
+       * @return the stream id.
+       * */
+      long getStreamID() {
+        return streamID;
+      }
+
+      @Override
+      public ChannelBuffer serialize() {
+        return serializeValue.duplicate();
+      }
+
+      @Override
+      public String toString() {
+        return "IPCMessage.Meta.MUX_EOS(" + streamID + ")";
+      }
+    }
+
+    /**
+     * Sent back by the receiver of a multiplexed stream, to let the sender send more bytes of the stream.
+     * */
+    static final class CREDIT extends Meta {
+      /**
+       * stream id.
+       * */
+      private final long streamID;
+      /**
+       * the number of bytes that the sender may send in addition.
+       * */
+      private final long bytes;
+      /**
+       * serialize value.
+       * */
+      private final ChannelBuffer serializeValue;
+
+      /**
+       * @param streamID stream id.
+       * @param bytes the number of bytes that the sender may send in addition.
+       * */
+      public CREDIT(final long streamID, final long bytes) {
+        this.streamID = streamID;
+        this.bytes = bytes;
+        ChannelBuffer bb = ChannelBuffers.buffer(1 + 2 * Long.SIZE / Byte.SIZE);
+        bb.writeByte((byte) Header.CREDIT.ordinal());
+        bb.writeLong(streamID);
+        bb.writeLong(bytes);
+        serializeValue = ChannelBuffers.unmodifiableBuffer(bb);
+      }
+
+      /**
+       * @return the stream id.
+       * */
+      long getStreamID() {
+        return streamID;
+      }
+
+      /**
+       * @return the number of bytes that the sender may send in addition.
+       * */
+      long getBytes() {
+        return bytes;
+      }
+
+      @Override
+      public ChannelBuffer serialize() {
+        return serializeValue.duplicate();
+      }
+
+      /**
+       * @return De-serialize the CREDIT message.
+       * @param bb serialized data.
+       * */
+      public static CREDIT deSerialize(final ChannelBuffer bb) {
+        long streamID = bb.readLong();
+        return new CREDIT(streamID, bb.readLong());
+      }
+
+      @Override
+      public String toString() {
+        return "IPCMessage.Meta.CREDIT(" + streamID + "," + bytes + ")";
+      }
+    }
+
+    /**
+     * Sent by the sender of a physical channel to a co-located remote, to offer the {@link SharedMemoryRing} through
+     * which it may send the data frames of the channel.
+     * */
+    static final class SHM_ATTACH extends Meta {
+      /**
+       * the path of the file that backs the ring.
+       * */
+      private final String path;
+      /**
+       * the capacity of the ring in bytes.
+       * */
+      private final int capacity;
+      /**
+       * serialize value.
+       * */
+      private final ChannelBuffer serializeValue;
+
+      /**
+       * @param path the path of the file that backs the ring.
+       * @param capacity the capacity of the ring in bytes.
+       * */
+      public SHM_ATTACH(final String path, final int capacity) {
+        this.path = Preconditions.checkNotNull(path, "path");
+        this.capacity = capacity;
+        byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+        ChannelBuffer bb = ChannelBuffers.buffer(1 + 2 * Integer.SIZE / Byte.SIZE + pathBytes.length);
+        bb.writeByte((byte) Header.SHM_ATTACH.ordinal());
+        bb.writeInt(capacity);
+        bb.writeInt(pathBytes.length);
+        bb.writeBytes(pathBytes);
+        serializeValue = ChannelBuffers.unmodifiableBuffer(bb);
+      }
+
+      /**
+       * @return the path of the file that backs the ring.
+       * */
+      String getPath() {
+        return path;
+      }
+
+      /**
+       * @return the capacity of the ring in bytes.
+       * */
+      int getCapacity() {
+        return capacity;
+      }
+
+      @Override
+      public ChannelBuffer serialize() {
+        return serializeValue.duplicate();
+      }
+
+      /**
+       * @return De-serialize the SHM_ATTACH message.
+       * @param bb serialized data.
+       * */
+      public static SHM_ATTACH deSerialize(final ChannelBuffer bb) {
+        int capacity = bb.readInt();
+        byte[] pathBytes = new byte[bb.readInt()];
+        bb.readBytes(pathBytes);
+        return new SHM_ATTACH(new String(pathBytes, StandardCharsets.UTF_8), capacity);
+      }
+
+      @Override
+      public String toString() {
+        return "IPCMessage.Meta.SHM_ATTACH(" + path + "," + capacity + ")";
+      }
+    }
+
+    /**
+     * Sent back by the receiver of a physical channel once it has mapped the {@link SharedMemoryRing} of the channel.
+     * */
+    static final Meta SHM_ATTACHED = new Meta() {
+
+      private final ChannelBuffer serializeValue = ChannelBuffers.wrappedBuffer(new byte[] { (byte) Header.SHM_ATTACHED
+          .ordinal() });
+
+      @Override
+      public ChannelBuffer serialize() {
+        return serializeValue;
+      }
+
+      @Override
+      public String toString() {
+        return "IPCMessage.Meta.SHM_ATTACHED";
+      }
+
+    };
+
+    /**
+     * Sent back by the receiver of a physical channel once it has copied a data frame out of the
+     * {@link SharedMemoryRing} of the channel, so that the sender may reuse the bytes of the frame.
+     * */
+    static final class SHM_RELEASE extends Meta {
+      /**
+       * the ring position right after the copied data frame.
+       * */
+      private final long end;
+      /**
+       * serialize value.
+       * */
+      private final ChannelBuffer serializeValue;
+
+      /**
+       * @param end the ring position right after the copied data frame.
+       * */
+      public SHM_RELEASE(final long end) {
+        this.end = end;
+        ChannelBuffer bb = ChannelBuffers.buffer(1 + Long.SIZE / Byte.SIZE);
+        bb.writeByte((byte) Header.SHM_RELEASE.ordinal());
+        bb.writeLong(end);
+        serializeValue = ChannelBuffers.unmodifiableBuffer(bb);
+      }
+
+      /**
+       * @return the ring position right after the copied data frame.
+       * */
+      long getEnd() {
+        return end;
+      }
+
+      @Override
+      public ChannelBuffer serialize() {
+        return serializeValue.duplicate();
+      }
+
+      @Override
+      public String toString() {
+        return "IPCMessage.Meta.SHM_RELEASE(" + end + ")";
+      }
+    }
+
+    /**
+     * @param header the header.
+     * @param streamID stream id.
+     * @return the header followed by the stream id.
+     * */
+    static ChannelBuffer serializeStreamHead(final Header header, final long streamID) {
+      ChannelBuffer bb = ChannelBuffers.buffer(1 + Long.SIZE / Byte.SIZE);
+      bb.writeByte((byte) header.ordinal());
+      bb.writeLong(streamID);
+      return ChannelBuffers.unmodifiableBuffer(bb);
+    }
+
     /**
      * CONNECT.
      * */
@@ -186,7 +480,7 @@ public interface IPCMessage {
 
     /**
      * Serialize the message.
-     * 
+     *
      * @return serialize result.
      * */
     public abstract ChannelBuffer serialize();
@@ -207,6 +501,18 @@ public interface IPCMessage {
         return EOS;
       } else if (type == Header.PING.ordinal()) {
         return PING;
+      } else if (type == Header.MUX_BOS.ordinal()) {
+        return new MUX_BOS(bb.readLong());
+      } else if (type == Header.MUX_EOS.ordinal()) {
+        return new MUX_EOS(bb.readLong());
+      } else if (type == Header.CREDIT.ordinal()) {
+        return CREDIT.deSerialize(bb);
+      } else if (type == Header.SHM_ATTACH.ordinal()) {
+        return SHM_ATTACH.deSerialize(bb);
+      } else if (type == Header.SHM_ATTACHED.ordinal()) {
+        return SHM_ATTACHED;
+      } else if (type == Header.SHM_RELEASE.ordinal()) {
+        return new SHM_RELEASE(bb.readLong());
       } else {
         return null;
       }
@@ -216,7 +522,7 @@ public interface IPCMessage {
 
   /**
    * Unit of IPC transmission.
-   * 
+   *
    * @param <PAYLOAD> the type of payload. Currently, this PAYLOAD could only be: TransportMessage.QUERY,
    *          TransportMessage.CONTROL.
    * */
@@ -283,7 +589,7 @@ public interface IPCMessage {
 
   /**
    * Unit of IPC Stream.
-   * 
+   *
    * @param <PAYLOAD> the type of payload. Currently, this PAYLOAD could only be TupleBatch.
    * */
   public final class StreamData<PAYLOAD> extends Data<PAYLOAD> {
@@ -346,6 +652,30 @@ public interface IPCMessage {
       }
     }
 
+    /**
+     * @param streamID stream ID.
+     * @return the serialize head of a data frame of a multiplexed stream.
+     * */
+    static ChannelBuffer serializeHead(final long streamID) {
+      return Meta.serializeStreamHead(Header.MUX_DATA, streamID);
+    }
+
+    /**
+     * @param streamID stream ID.
+     * @param start the ring position of the serialized payload.
+     * @param length the number of bytes of the serialized payload.
+     * @return the serialized data frame of a multiplexed stream whose payload is in the {@link SharedMemoryRing} of
+     *         the physical channel.
+     * */
+    static ChannelBuffer serializeSharedMemoryHead(final long streamID, final long start, final int length) {
+      ChannelBuffer bb = ChannelBuffers.buffer(1 + 2 * Long.SIZE / Byte.SIZE + Integer.SIZE / Byte.SIZE);
+      bb.writeByte((byte) Header.SHM_DATA.ordinal());
+      bb.writeLong(streamID);
+      bb.writeLong(start);
+      bb.writeInt(length);
+      return bb;
+    }
+
     @Override
     public String toString() {
       return String.format("IPCMessage.StreamData(from:%1$d,stream:%2$d,payload:%3$s)", getRemoteID(), streamID,
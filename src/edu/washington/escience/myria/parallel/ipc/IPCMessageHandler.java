@@ -1,5 +1,7 @@
 package edu.washington.escience.myria.parallel.ipc;
 
+import java.io.IOException;
+
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
@@ -35,7 +37,7 @@ public final class IPCMessageHandler extends SimpleChannelHandler {
 
   /**
    * Help the session management for ipc connection pool at IPC server.
-   * 
+   *
    * @param connectionPool the IPC connection pool, this session manager serves to.
    * */
   public IPCMessageHandler(final IPCConnectionPool connectionPool) {
@@ -60,6 +62,7 @@ public final class IPCMessageHandler extends SimpleChannelHandler {
       StreamIOChannelPair pair = rcc.getIOPair();
       pair.deMapInputChannel();
       pair.deMapOutputChannel();
+      pair.deMapMultiplexedChannels();
     }
     ownerConnectionPool.channelDisconnected(ctx.getChannel());
   }
@@ -110,7 +113,36 @@ public final class IPCMessageHandler extends SimpleChannelHandler {
     int remoteID = cc.getRegisteredChannelContext().getRemoteID();
     StreamInputChannel<Object> existingIChannel = cc.getRegisteredChannelContext().getIOPair().getInputChannel();
 
-    if (metaMessage instanceof IPCMessage.Meta.BOS) {
+    if (metaMessage instanceof IPCMessage.Meta.MUX_BOS) {
+      receiveMultiplexedBOS(ch, cc, ((IPCMessage.Meta.MUX_BOS) metaMessage).getStreamID());
+      return;
+    } else if (metaMessage instanceof IPCMessage.Meta.MUX_EOS) {
+      receiveMultiplexedEOS(ch, cc, ((IPCMessage.Meta.MUX_EOS) metaMessage).getStreamID());
+      return;
+    } else if (metaMessage instanceof IPCMessage.Meta.CREDIT) {
+      IPCMessage.Meta.CREDIT credit = (IPCMessage.Meta.CREDIT) metaMessage;
+      StreamOutputChannel<?> oc = cc.getRegisteredChannelContext().getIOPair().getMultiplexedOutputChannel(
+          credit.getStreamID());
+      if (oc != null) {
+        oc.addCredit(credit.getBytes());
+      }
+      return;
+    } else if (metaMessage instanceof IPCMessage.Meta.SHM_ATTACH) {
+      receiveSharedMemoryAttach(ch, cc, (IPCMessage.Meta.SHM_ATTACH) metaMessage);
+      return;
+    } else if (metaMessage == IPCMessage.Meta.SHM_ATTACHED) {
+      SharedMemoryRing ring = cc.getRegisteredChannelContext().getIOPair().getOutputRing();
+      if (ring != null) {
+        ring.attached();
+      }
+      return;
+    } else if (metaMessage instanceof IPCMessage.Meta.SHM_RELEASE) {
+      SharedMemoryRing ring = cc.getRegisteredChannelContext().getIOPair().getOutputRing();
+      if (ring != null) {
+        ring.release(((IPCMessage.Meta.SHM_RELEASE) metaMessage).getEnd());
+      }
+      return;
+    } else if (metaMessage instanceof IPCMessage.Meta.BOS) {
       // At the beginning of a stream, record the operator id.
       final long streamID = ((IPCMessage.Meta.BOS) metaMessage).getStreamID();
       if (existingIChannel != null) {
@@ -175,6 +207,192 @@ public final class IPCMessageHandler extends SimpleChannelHandler {
     }
   }
 
+  /**
+   * At the beginning of a multiplexed stream, link it with its input buffer.
+   *
+   * @param ch the source channel.
+   * @param cc channel context of ch.
+   * @param streamID the stream ID.
+   * */
+  private void receiveMultiplexedBOS(final Channel ch, final ChannelContext cc, final long streamID) {
+    int remoteID = cc.getRegisteredChannelContext().getRemoteID();
+    StreamIOChannelPair pair = cc.getRegisteredChannelContext().getIOPair();
+    StreamInputChannel<Object> existingIChannel = pair.getMultiplexedInputChannel(streamID);
+    if (existingIChannel != null) {
+      LOGGER.error("Duplicate MUX_BOS received from physical channel {}. Stream: (RemoteID:{}, StreamID:{}). Dropped.",
+          ChannelContext.channelToString(ch), remoteID, streamID);
+      return;
+    }
+    StreamIOChannelID ecID = new StreamIOChannelID(streamID, remoteID);
+    StreamInputBuffer<Object> ib = ownerConnectionPool.getInputBuffer(ecID);
+    if (ib == null) {
+      if (LOGGER.isErrorEnabled()) {
+        LOGGER.error("Unknown data stream: (RemoteID {}, stream ID:{}). Received through {}. Denined.", remoteID,
+            streamID, ChannelContext.channelToString(ch));
+      }
+      return;
+    }
+    pair.mapMultiplexedInputChannel(ib.getInputChannel(ecID));
+  }
+
+  /**
+   * At the end of a multiplexed stream, push the EOS to its input buffer and unlink it.
+   *
+   * @param ch the source channel.
+   * @param cc channel context of ch.
+   * @param streamID the stream ID.
+   * */
+  private void receiveMultiplexedEOS(final Channel ch, final ChannelContext cc, final long streamID) {
+    int remoteID = cc.getRegisteredChannelContext().getRemoteID();
+    StreamIOChannelPair pair = cc.getRegisteredChannelContext().getIOPair();
+    StreamInputChannel<Object> ic = pair.getMultiplexedInputChannel(streamID);
+    if (ic == null) {
+      LOGGER.error("MUX_EOS received for an unknown stream from {}. Stream: (RemoteID:{}, StreamID:{}).",
+          ChannelContext.channelToString(ch), remoteID, streamID);
+      return;
+    }
+    offerStreamMessage(ic.getInputBuffer(), IPCMessage.StreamData.<Object> eos(remoteID, streamID));
+    pair.deMapMultiplexedInputChannel(streamID);
+  }
+
+  /**
+   * Deliver a data frame of a multiplexed stream to its input buffer.
+   *
+   * @param ch the source channel.
+   * @param cb the data frame, starting with its header.
+   * @throws Exception if the payload cannot be de-serialized.
+   * */
+  private void receiveMultiplexedData(final Channel ch, final ChannelBuffer cb) throws Exception {
+    final ChannelContext cc = ChannelContext.getChannelContext(ch);
+    if (cc == null || cc.getRegisteredChannelContext() == null) {
+      receiveUnregisteredData(ch);
+      return;
+    }
+    cc.updateLastIOTimestamp();
+    final long bytes = cb.readableBytes();
+    cb.readByte();
+    final long streamID = cb.readLong();
+    final int remoteID = cc.getRegisteredChannelContext().getRemoteID();
+    StreamInputChannel<Object> ic = cc.getRegisteredChannelContext().getIOPair().getMultiplexedInputChannel(streamID);
+    if (ic == null) {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("Drop data of stream (RemoteID:{}, StreamID:{}) because the destination operator already ends.",
+            remoteID, streamID);
+      }
+      // the sender must not stall on the credits of the dropped data.
+      ch.write(new IPCMessage.Meta.CREDIT(streamID, bytes));
+      return;
+    }
+    StreamInputBuffer<Object> ib = ic.getInputBuffer();
+    Object msg = ownerConnectionPool.getPayloadSerializer().deSerialize(cb, ib.getProcessor(), ib.getAttachment());
+    if (msg == null) {
+      LOGGER.error("Unknown stream message from {} to {}, through {}, msg: {}", remoteID, ib.getProcessor(),
+          ChannelContext.channelToString(ch), cb);
+      return;
+    }
+    offerStreamMessage(ib, IPCMessage.StreamData.wrap(remoteID, streamID, msg));
+    ic.received(bytes);
+  }
+
+  /**
+   * Map the shared memory ring offered by the sender of a physical channel, and tell it to use the ring. If the ring
+   * cannot be mapped, e.g., because the sender is not on this host after all, or if it is not a ring file in the shared
+   * memory directory of this process, the sender keeps sending the payloads through the channel.
+   *
+   * @param ch the source channel.
+   * @param cc channel context of ch.
+   * @param attach the offer.
+   * */
+  private void receiveSharedMemoryAttach(final Channel ch, final ChannelContext cc,
+      final IPCMessage.Meta.SHM_ATTACH attach) {
+    final StreamMultiplexing streamMultiplexing = ownerConnectionPool.getStreamMultiplexing();
+    if (!streamMultiplexing.isSharedMemoryEnabled()) {
+      LOGGER.warn("Ignore shared memory file {} of physical channel {}, because shared memory is disabled.", attach
+          .getPath(), ChannelContext.channelToString(ch));
+      return;
+    }
+    try {
+      SharedMemoryRing ring =
+          SharedMemoryRing.open(streamMultiplexing.getSharedMemoryDirectory(), attach.getPath(), attach.getCapacity(),
+              streamMultiplexing.getSharedMemoryRingBytes());
+      cc.getRegisteredChannelContext().getIOPair().setInputRing(ring);
+      ch.write(IPCMessage.Meta.SHM_ATTACHED);
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn("Failed to map shared memory file {} of physical channel {}. Payloads go through the channel.",
+          attach.getPath(), ChannelContext.channelToString(ch), e);
+    }
+  }
+
+  /**
+   * Deliver a data frame of a multiplexed stream whose payload is in the shared memory ring of the physical channel.
+   *
+   * @param ch the source channel.
+   * @param cb the data frame, starting with its header.
+   * @throws Exception if the payload cannot be de-serialized.
+   * */
+  private void receiveSharedMemoryData(final Channel ch, final ChannelBuffer cb) throws Exception {
+    final ChannelContext cc = ChannelContext.getChannelContext(ch);
+    if (cc == null || cc.getRegisteredChannelContext() == null) {
+      receiveUnregisteredData(ch);
+      return;
+    }
+    cc.updateLastIOTimestamp();
+    final long frameBytes = cb.readableBytes();
+    cb.readByte();
+    final long streamID = cb.readLong();
+    final long start = cb.readLong();
+    final int length = cb.readInt();
+    final int remoteID = cc.getRegisteredChannelContext().getRemoteID();
+    StreamIOChannelPair pair = cc.getRegisteredChannelContext().getIOPair();
+    SharedMemoryRing ring = pair.getInputRing();
+    if (ring == null) {
+      LOGGER.error("Shared memory data frame received from physical channel {} without a shared memory ring.",
+          ChannelContext.channelToString(ch));
+      return;
+    }
+    ChannelBuffer payload = ring.read(start, length);
+    ch.write(new IPCMessage.Meta.SHM_RELEASE(start + length));
+
+    final long bytes = frameBytes + length;
+    StreamInputChannel<Object> ic = pair.getMultiplexedInputChannel(streamID);
+    if (ic == null) {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("Drop data of stream (RemoteID:{}, StreamID:{}) because the destination operator already ends.",
+            remoteID, streamID);
+      }
+      // the sender must not stall on the credits of the dropped data.
+      ch.write(new IPCMessage.Meta.CREDIT(streamID, bytes));
+      return;
+    }
+    StreamInputBuffer<Object> ib = ic.getInputBuffer();
+    Object msg = ownerConnectionPool.getPayloadSerializer().deSerialize(payload, ib.getProcessor(), ib.getAttachment());
+    if (msg == null) {
+      LOGGER.error("Unknown stream message from {} to {}, through {}, msg: {}", remoteID, ib.getProcessor(),
+          ChannelContext.channelToString(ch), payload);
+      return;
+    }
+    offerStreamMessage(ib, IPCMessage.StreamData.wrap(remoteID, streamID, msg));
+    ic.received(bytes);
+  }
+
+  /**
+   * @param ib the destination input buffer.
+   * @param message the message of a multiplexed stream.
+   * */
+  private void offerStreamMessage(final StreamInputBuffer<Object> ib, final IPCMessage.StreamData<Object> message) {
+    if (ib == null) {
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug("Drop Data messge because the destination operator already ends.: {}", message);
+      }
+      return;
+    }
+    while (!ib.offer(message)) {
+      if (LOGGER.isErrorEnabled()) {
+        LOGGER.error("Input buffer out of memory. With the flow control input buffers, it should not happen normally.");
+      }
+    }
+  }
+
   /**
    * @param ch the source channel.
    * */
@@ -217,6 +435,14 @@ public final class IPCMessageHandler extends SimpleChannelHandler {
     if (msg instanceof ChannelBuffer) {
       // message from remote, deserialize
       ChannelBuffer cb = (ChannelBuffer) msg;
+      if (cb.readable() && cb.getByte(cb.readerIndex()) == IPCMessage.Header.MUX_DATA.ordinal()) {
+        receiveMultiplexedData(ch, cb);
+        return;
+      }
+      if (cb.readable() && cb.getByte(cb.readerIndex()) == IPCMessage.Header.SHM_DATA.ordinal()) {
+        receiveSharedMemoryData(ch, cb);
+        return;
+      }
       msg = IPCMessage.Meta.deSerialize(cb);
       if (msg == null) {
         // user message
@@ -325,6 +551,7 @@ public final class IPCMessageHandler extends SimpleChannelHandler {
         StreamIOChannelPair pair = rcc.getIOPair();
         pair.deMapInputChannel();
         pair.deMapOutputChannel();
+        pair.deMapMultiplexedChannels();
       }
       ownerConnectionPool.errorEncountered(c, cause);
     } else {
@@ -355,6 +582,34 @@ public final class IPCMessageHandler extends SimpleChannelHandler {
       ChannelBuffer codedMsg = null;
       if (m instanceof IPCMessage.Meta) {
         codedMsg = ((IPCMessage.Meta) m).serialize();
+      } else if (m instanceof IPCMessage.StreamData) {
+        /*
+         * a payload of a multiplexed stream, framed with its stream ID. Its bytes are charged to the credit of the
+         * stream.
+         */
+        IPCMessage.StreamData<?> sd = (IPCMessage.StreamData<?>) m;
+        StreamIOChannelPair pair = cc.getRegisteredChannelContext().getIOPair();
+        ChannelBuffer payload = ownerConnectionPool.getPayloadSerializer().serialize(sd.getPayload());
+        SharedMemoryRing ring = pair.getOutputRing();
+        if (ring != null && ring.isAttached()) {
+          /*
+           * the remote is on this host, pass the payload through the ring. The frames must be written in the order of
+           * their positions in the ring.
+           */
+          synchronized (ring) {
+            long start = ring.write(payload);
+            if (start >= 0) {
+              int length = payload.readableBytes();
+              codedMsg = IPCMessage.StreamData.serializeSharedMemoryHead(sd.getStreamID(), start, length);
+              chargeCredit(pair, sd.getStreamID(), codedMsg.readableBytes() + length);
+              ownerConnectionPool.sentThroughSharedMemory(length);
+              ctx.sendDownstream(new DownstreamMessageEvent(ch, e.getFuture(), codedMsg, e.getRemoteAddress()));
+              return;
+            }
+          }
+        }
+        codedMsg = ChannelBuffers.wrappedBuffer(IPCMessage.StreamData.serializeHead(sd.getStreamID()), payload);
+        chargeCredit(pair, sd.getStreamID(), codedMsg.readableBytes());
       } else {
         /*
          * m could be: 1. a TupleBatch (corresponds to IPCMessage.StreamData), 2. TransportMessage.QUERY or a
@@ -369,6 +624,18 @@ public final class IPCMessageHandler extends SimpleChannelHandler {
     }
   }
 
+  /**
+   * @param pair the IO pair of the physical channel.
+   * @param streamID the stream ID of a multiplexed stream.
+   * @param bytes the number of bytes of a data frame of the stream, which are charged to its credit.
+   * */
+  private void chargeCredit(final StreamIOChannelPair pair, final long streamID, final long bytes) {
+    StreamOutputChannel<?> oc = pair.getMultiplexedOutputChannel(streamID);
+    if (oc != null) {
+      oc.consumeCredit(bytes);
+    }
+  }
+
   @Override
   public void channelInterestChanged(final ChannelHandlerContext ctx, final ChannelStateEvent e) throws Exception {
     Channel ioChannel = ctx.getChannel();
@@ -377,6 +644,9 @@ public final class IPCMessageHandler extends SimpleChannelHandler {
     if (oc != null) {
       oc.channelInterestChangedCallback();
     }
+    for (StreamOutputChannel<?> moc : p.getMultiplexedOutputChannels()) {
+      moc.channelInterestChangedCallback();
+    }
 
     if (LOGGER.isTraceEnabled()) {
       String v = "readable";
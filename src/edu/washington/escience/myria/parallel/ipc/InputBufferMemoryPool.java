@@ -0,0 +1,180 @@
+package edu.washington.escience.myria.parallel.ipc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The memory shared by all the {@link FlowControlBagInputBuffer}s of an {@link IPCConnectionPool}, i.e., of a worker,
+ * along with the byte limits of each of the buffers.<br>
+ * Once the payloads held in all the buffers reach the capacity of the pool, a buffer that receives a payload pauses the
+ * reads of its input channels, unless its consumer is starved, i.e., the buffer held nothing else. Once the pool
+ * recovers, the paused buffers resume, the most starved first, i.e., those holding the fewest bytes.
+ * */
+public final class InputBufferMemoryPool {
+
+  /**
+   * The capacity of the pool, in bytes.
+   * */
+  private final long capacity;
+
+  /**
+   * If the pool is exhausted, the buffers it paused resume once the pool holds this number of bytes.
+   * */
+  private final long recoverTrigger;
+
+  /**
+   * The soft capacity of each buffer, in bytes.
+   * */
+  private final long bufferCapacity;
+
+  /**
+   * The number of bytes at which a full buffer recovers.
+   * */
+  private final long bufferRecoverTrigger;
+
+  /**
+   * The number of bytes held in the buffers.
+   * */
+  private final AtomicLong used = new AtomicLong();
+
+  /**
+   * The buffers that are paused because the pool is exhausted.
+   * */
+  private final Set<FlowControlBagInputBuffer<?>> pausedBuffers = Collections
+      .newSetFromMap(new ConcurrentHashMap<FlowControlBagInputBuffer<?>, Boolean>());
+
+  /**
+   * Orders the buffers by the number of bytes they hold, the most starved first.
+   * */
+  private static final Comparator<FlowControlBagInputBuffer<?>> MOST_STARVED_FIRST =
+      new Comparator<FlowControlBagInputBuffer<?>>() {
+        @Override
+        public int compare(final FlowControlBagInputBuffer<?> o1, final FlowControlBagInputBuffer<?> o2) {
+          long diff = o1.getBufferedBytes() - o2.getBufferedBytes();
+          if (diff > 0) {
+            return 1;
+          }
+          if (diff < 0) {
+            return -1;
+          }
+          return 0;
+        }
+      };
+
+  /**
+   * @param capacity the capacity of the pool, in bytes. The pool recovers at 3/4 of its capacity.
+   * @param bufferCapacity the soft capacity of each buffer, in bytes.
+   * @param bufferRecoverTrigger the number of bytes at which a full buffer recovers.
+   * */
+  public InputBufferMemoryPool(final long capacity, final long bufferCapacity, final long bufferRecoverTrigger) {
+    Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+    Preconditions.checkArgument(bufferRecoverTrigger < bufferCapacity,
+        "the recover trigger of a buffer must be less than its capacity");
+    this.capacity = capacity;
+    recoverTrigger = capacity - capacity / 4;
+    this.bufferCapacity = bufferCapacity;
+    this.bufferRecoverTrigger = bufferRecoverTrigger;
+  }
+
+  /**
+   * @return a pool that never pauses reads.
+   * */
+  public static InputBufferMemoryPool unbounded() {
+    return new InputBufferMemoryPool(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE - 1);
+  }
+
+  /**
+   * @return the soft capacity of each buffer, in bytes.
+   * */
+  public long getBufferCapacity() {
+    return bufferCapacity;
+  }
+
+  /**
+   * @return the number of bytes at which a full buffer recovers.
+   * */
+  public long getBufferRecoverTrigger() {
+    return bufferRecoverTrigger;
+  }
+
+  /**
+   * @return the capacity of the pool, in bytes.
+   * */
+  public long getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * @return the number of bytes held in the buffers.
+   * */
+  public long getUsed() {
+    return used.get();
+  }
+
+  /**
+   * @return true if the buffers hold at least the capacity of the pool.
+   * */
+  public boolean isExhausted() {
+    return used.get() >= capacity;
+  }
+
+  /**
+   * @return true if the buffers hold few enough bytes for the paused buffers to resume.
+   * */
+  boolean isRecovered() {
+    return used.get() <= recoverTrigger;
+  }
+
+  /**
+   * Account for a payload that was put into a buffer.
+   *
+   * @param bytes the estimated number of bytes of the payload.
+   * */
+  void reserve(final long bytes) {
+    used.addAndGet(bytes);
+  }
+
+  /**
+   * Account for payloads that were removed from a buffer, and resume the paused buffers if the pool recovers. Must not
+   * be called with the lock of a buffer held.
+   *
+   * @param bytes the estimated number of bytes of the payloads.
+   * */
+  void release(final long bytes) {
+    used.addAndGet(-bytes);
+    if (!pausedBuffers.isEmpty() && isRecovered()) {
+      List<FlowControlBagInputBuffer<?>> buffers = new ArrayList<FlowControlBagInputBuffer<?>>(pausedBuffers);
+      Collections.sort(buffers, MOST_STARVED_FIRST);
+      for (FlowControlBagInputBuffer<?> buffer : buffers) {
+        if (pausedBuffers.remove(buffer)) {
+          buffer.poolRecovered();
+        }
+      }
+    }
+  }
+
+  /**
+   * Record that a buffer paused because the pool is exhausted, so that it resumes when the pool recovers.
+   *
+   * @param buffer the buffer.
+   * */
+  void paused(final FlowControlBagInputBuffer<?> buffer) {
+    pausedBuffers.add(buffer);
+  }
+
+  /**
+   * Forget a buffer, e.g., once it stops.
+   *
+   * @param buffer the buffer.
+   * */
+  void remove(final FlowControlBagInputBuffer<?> buffer) {
+    pausedBuffers.remove(buffer);
+  }
+}
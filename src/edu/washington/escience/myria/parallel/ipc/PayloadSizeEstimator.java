@@ -0,0 +1,17 @@
+package edu.washington.escience.myria.parallel.ipc;
+
+/**
+ * Estimate the memory held by IPC payloads, for flow control that bounds the bytes held in input buffers.
+ *
+ * @param <PAYLOAD> the type of application defined data.
+ * */
+public interface PayloadSizeEstimator<PAYLOAD> {
+
+  /**
+   * @param payload a payload.
+   * @return the estimated number of bytes held by the payload. Must return the same value every time it is called with
+   *         the same payload.
+   * */
+  long estimateBytes(PAYLOAD payload);
+
+}
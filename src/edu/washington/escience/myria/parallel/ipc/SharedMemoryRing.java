@@ -0,0 +1,236 @@
+package edu.washington.escience.myria.parallel.ipc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A ring buffer in a memory-mapped file, through which the sender of a physical channel to a co-located remote passes
+ * the serialized payloads of the data frames, so that only their positions in the ring go through the channel.<br>
+ * The sender allocates the payloads in the order in which it writes their frames to the channel. The receiver copies
+ * each payload out of the ring when it receives its frame, and then releases it with a
+ * {@link IPCMessage.Meta.SHM_RELEASE}. The channel orders all the accesses to the ring, so there is no other
+ * synchronization between the two processes. If a payload does not fit in the free part of the ring, its frame is sent
+ * through the channel as usual.
+ * */
+final class SharedMemoryRing {
+
+  /** The logger for this class. */
+  private static final Logger LOGGER = LoggerFactory.getLogger(SharedMemoryRing.class);
+
+  /**
+   * The prefix of the names of the files that back the rings.
+   * */
+  private static final String FILE_PREFIX = "myria-ipc-";
+
+  /**
+   * The suffix of the names of the files that back the rings.
+   * */
+  private static final String FILE_SUFFIX = ".ring";
+
+  /**
+   * The file that backs the ring.
+   * */
+  private final File file;
+
+  /**
+   * The mapped file.
+   * */
+  private final MappedByteBuffer buffer;
+
+  /**
+   * The capacity of the ring in bytes.
+   * */
+  private final int capacity;
+
+  /**
+   * The position after the last allocated payload. Positions grow forever, the offset in the ring is the position
+   * modulo the capacity. Guarded by this.
+   * */
+  private long head;
+
+  /**
+   * The position after the last released payload. Guarded by this.
+   * */
+  private long tail;
+
+  /**
+   * If the receiver has mapped the ring.
+   * */
+  private volatile boolean attached;
+
+  /**
+   * @param file the file that backs the ring.
+   * @param buffer the mapped file.
+   * @param capacity the capacity of the ring in bytes.
+   * */
+  private SharedMemoryRing(final File file, final MappedByteBuffer buffer, final int capacity) {
+    this.file = file;
+    this.buffer = buffer;
+    this.capacity = capacity;
+    head = 0;
+    tail = 0;
+    attached = false;
+  }
+
+  /**
+   * Create a ring on the sender side.
+   *
+   * @param directory the directory of the file that backs the ring, preferably on a memory file system.
+   * @param capacity the capacity of the ring in bytes.
+   * @return the ring.
+   * @throws IOException if the file cannot be created or mapped.
+   * */
+  static SharedMemoryRing create(final File directory, final int capacity) throws IOException {
+    Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+    File file = File.createTempFile(FILE_PREFIX, FILE_SUFFIX, directory);
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(capacity);
+      return new SharedMemoryRing(file, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity), capacity);
+    } catch (IOException | RuntimeException e) {
+      if (!file.delete()) {
+        LOGGER.warn("Failed to delete shared memory file {}", file);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Map a ring on the receiver side, and delete its file, so that it goes away with the two processes. The path comes
+   * from a remote, so only the files that {@link #create(File, int)} makes in the shared memory directory are accepted.
+   *
+   * @param directory the directory of the files that back the rings.
+   * @param path the path of the file that backs the ring.
+   * @param capacity the capacity of the ring in bytes.
+   * @param maxCapacity the configured capacity of the rings, which the ring must not exceed.
+   * @return the ring.
+   * @throws IOException if the file cannot be mapped.
+   * */
+  static SharedMemoryRing open(final File directory, final String path, final int capacity, final int maxCapacity)
+      throws IOException {
+    Preconditions.checkArgument(capacity > 0 && capacity <= maxCapacity,
+        "Shared memory ring capacity %s is not in (0, %s]", capacity, maxCapacity);
+    File file = new File(path).getCanonicalFile();
+    String name = file.getName();
+    Preconditions.checkArgument(directory.getCanonicalFile().equals(file.getParentFile())
+        && name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX), "%s is not a shared memory ring file in %s",
+        path, directory);
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      Preconditions.checkState(raf.length() == capacity, "Shared memory file %s is not of %s bytes", path, capacity);
+      SharedMemoryRing ring =
+          new SharedMemoryRing(file, raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, capacity), capacity);
+      ring.attached = true;
+      ring.deleteFile();
+      return ring;
+    }
+  }
+
+  /**
+   * @return the path of the file that backs the ring.
+   * */
+  String getPath() {
+    return file.getAbsolutePath();
+  }
+
+  /**
+   * @return the capacity of the ring in bytes.
+   * */
+  int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * @return if the receiver has mapped the ring.
+   * */
+  boolean isAttached() {
+    return attached;
+  }
+
+  /**
+   * Called on the sender side once the receiver has mapped the ring.
+   * */
+  void attached() {
+    attached = true;
+  }
+
+  /**
+   * Copy a payload into the ring. The caller must hold the lock of the ring until it has written the frame of the
+   * payload, so that the frames are in the order of their positions.
+   *
+   * @param payload the serialized payload.
+   * @return the position of the payload, or -1 if it does not fit in the free part of the ring.
+   * */
+  long write(final ChannelBuffer payload) {
+    assert Thread.holdsLock(this);
+    final int length = payload.readableBytes();
+    if (!attached || length > capacity) {
+      return -1;
+    }
+    long start = head;
+    int offset = (int) (start % capacity);
+    if (offset + length > capacity) {
+      // payloads do not wrap around, skip the end of the ring.
+      start += capacity - offset;
+      offset = 0;
+    }
+    if (start + length - tail > capacity) {
+      return -1;
+    }
+    ByteBuffer dst = buffer.duplicate();
+    dst.position(offset);
+    dst.limit(offset + length);
+    payload.getBytes(payload.readerIndex(), dst);
+    head = start + length;
+    return start;
+  }
+
+  /**
+   * Copy a payload out of the ring. Columns may keep referencing the bytes they are decoded from, so they must not be
+   * decoded from the ring itself.
+   *
+   * @param start the position of the payload.
+   * @param length the number of bytes of the payload.
+   * @return a copy of the payload.
+   * */
+  ChannelBuffer read(final long start, final int length) {
+    Preconditions.checkArgument(length >= 0 && length <= capacity, "Invalid shared memory payload length %s", length);
+    final int offset = (int) (start % capacity);
+    Preconditions.checkArgument(offset + length <= capacity, "Shared memory payload %s+%s wraps around", start, length);
+    ByteBuffer src = buffer.duplicate();
+    src.position(offset);
+    src.limit(offset + length);
+    ChannelBuffer copy = ChannelBuffers.buffer(length);
+    copy.writeBytes(src);
+    return copy;
+  }
+
+  /**
+   * Release the payloads before a position, once the receiver has copied them.
+   *
+   * @param end the position after the copied payload.
+   * */
+  synchronized void release(final long end) {
+    if (end > tail) {
+      tail = end;
+    }
+  }
+
+  /**
+   * Delete the file of the ring. The mapping is kept until the ring is garbage collected.
+   * */
+  void deleteFile() {
+    if (file.exists() && !file.delete()) {
+      LOGGER.warn("Failed to delete shared memory file {}", file);
+    }
+  }
+}
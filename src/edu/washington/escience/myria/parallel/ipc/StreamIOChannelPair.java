@@ -1,5 +1,8 @@
 package edu.washington.escience.myria.parallel.ipc;
 
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.jboss.netty.channel.Channel;
 
 import com.google.common.base.Preconditions;
@@ -15,6 +18,10 @@ import edu.washington.escience.myria.util.concurrent.ThreadStackDump;
  * <p>
  * An IO channel can be an input of a {@link Consumer} operator (inputChannel) and in the same time an output of a
  * {@link Producer} operator (outputChannel).
+ * <p>
+ * If the streams are multiplexed, an IO channel is in the same time an input of any number of streams and an output of
+ * any number of streams, each identified by its stream ID. The payloads of the multiplexed streams may go through a
+ * {@link SharedMemoryRing} of the IO channel, one in each direction.
  * */
 class StreamIOChannelPair {
 
@@ -41,6 +48,28 @@ class StreamIOChannelPair {
    * */
   private StreamOutputChannel<?> outputStreamChannel;
 
+  /**
+   * The input stream channels multiplexed over the IO channel, by stream ID.
+   * */
+  private final ConcurrentHashMap<Long, StreamInputChannel<?>> multiplexedInputChannels =
+      new ConcurrentHashMap<Long, StreamInputChannel<?>>();
+
+  /**
+   * The output stream channels multiplexed over the IO channel, by stream ID.
+   * */
+  private final ConcurrentHashMap<Long, StreamOutputChannel<?>> multiplexedOutputChannels =
+      new ConcurrentHashMap<Long, StreamOutputChannel<?>>();
+
+  /**
+   * The ring through which the payloads sent over the IO channel go, or null.
+   * */
+  private volatile SharedMemoryRing outputRing;
+
+  /**
+   * The ring through which the payloads received over the IO channel come, or null.
+   * */
+  private volatile SharedMemoryRing inputRing;
+
   /**
    * Owner channel context. A StreamIOChannelPair must be attached to a channel.
    * */
@@ -167,4 +196,138 @@ class StreamIOChannelPair {
       outputMappingLock.unlock();
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * @param streamID the stream ID.
+   * @return the multiplexed input channel of the stream, or null if none.
+   * @param <PAYLOAD> the payload type.
+   * */
+  @SuppressWarnings("unchecked")
+  final <PAYLOAD> StreamInputChannel<PAYLOAD> getMultiplexedInputChannel(final long streamID) {
+    return (StreamInputChannel<PAYLOAD>) multiplexedInputChannels.get(streamID);
+  }
+
+  /**
+   * @param streamID the stream ID.
+   * @return the multiplexed output channel of the stream, or null if none.
+   * @param <PAYLOAD> the payload type.
+   * */
+  @SuppressWarnings("unchecked")
+  final <PAYLOAD> StreamOutputChannel<PAYLOAD> getMultiplexedOutputChannel(final long streamID) {
+    return (StreamOutputChannel<PAYLOAD>) multiplexedOutputChannels.get(streamID);
+  }
+
+  /**
+   * @return the multiplexed output channels.
+   * */
+  final Collection<StreamOutputChannel<?>> getMultiplexedOutputChannels() {
+    return multiplexedOutputChannels.values();
+  }
+
+  /**
+   * @return the number of multiplexed output channels.
+   * */
+  final int numMultiplexedOutputChannels() {
+    return multiplexedOutputChannels.size();
+  }
+
+  /**
+   * Link a logical input channel with the physical IO channel, along with the other multiplexed input channels.
+   *
+   * @param inputChannel the logical input channel.
+   * */
+  final void mapMultiplexedInputChannel(final StreamInputChannel<?> inputChannel) {
+    Preconditions.checkNotNull(inputChannel);
+    Channel ioChannel = ownerChannelContext.getChannel();
+    StreamInputChannel<?> old = multiplexedInputChannels.putIfAbsent(inputChannel.getID().getStreamID(), inputChannel);
+    if (old != null) {
+      throw new IllegalStateException("Physical channel " + ChannelContext.channelToString(ioChannel)
+          + " already attached to stream input channel " + old.getID());
+    }
+    inputChannel.attachMultiplexedIOChannel(ioChannel);
+  }
+
+  /**
+   * Remove the link between a multiplexed logical input channel and the physical IO channel.
+   *
+   * @param streamID the stream ID.
+   * */
+  final void deMapMultiplexedInputChannel(final long streamID) {
+    StreamInputChannel<?> old = multiplexedInputChannels.remove(streamID);
+    if (old != null) {
+      old.release();
+    }
+  }
+
+  /**
+   * Link a logical output channel with the physical IO channel, along with the other multiplexed output channels.
+   *
+   * @param outputChannel the logical output channel.
+   * */
+  final void mapMultiplexedOutputChannel(final StreamOutputChannel<?> outputChannel) {
+    Preconditions.checkNotNull(outputChannel);
+    Channel ioChannel = ownerChannelContext.getChannel();
+    StreamOutputChannel<?> old =
+        multiplexedOutputChannels.putIfAbsent(outputChannel.getID().getStreamID(), outputChannel);
+    if (old != null) {
+      throw new IllegalStateException("Physical channel " + ChannelContext.channelToString(ioChannel)
+          + " already attached to stream output channel " + old.getID());
+    }
+    outputChannel.attachIOChannel(ioChannel);
+  }
+
+  /**
+   * Remove the link between a multiplexed logical output channel and the physical IO channel.
+   *
+   * @param streamID the stream ID.
+   * */
+  final void deMapMultiplexedOutputChannel(final long streamID) {
+    StreamOutputChannel<?> old = multiplexedOutputChannels.remove(streamID);
+    if (old != null) {
+      old.detachIOChannel();
+    }
+  }
+
+  /**
+   * Remove the links between all the multiplexed logical channels and the physical IO channel, e.g., once it is
+   * disconnected.
+   * */
+  final void deMapMultiplexedChannels() {
+    for (Long streamID : multiplexedInputChannels.keySet()) {
+      deMapMultiplexedInputChannel(streamID);
+    }
+    for (Long streamID : multiplexedOutputChannels.keySet()) {
+      deMapMultiplexedOutputChannel(streamID);
+    }
+    outputRing = null;
+    inputRing = null;
+  }
+
+  /**
+   * @return the ring through which the payloads sent over the IO channel go, or null.
+   * */
+  final SharedMemoryRing getOutputRing() {
+    return outputRing;
+  }
+
+  /**
+   * @param ring the ring through which the payloads sent over the IO channel go.
+   * */
+  final void setOutputRing(final SharedMemoryRing ring) {
+    outputRing = ring;
+  }
+
+  /**
+   * @return the ring through which the payloads received over the IO channel come, or null.
+   * */
+  final SharedMemoryRing getInputRing() {
+    return inputRing;
+  }
+
+  /**
+   * @param ring the ring through which the payloads received over the IO channel come.
+   * */
+  final void setInputRing(final SharedMemoryRing ring) {
+    inputRing = ring;
+  }
+}
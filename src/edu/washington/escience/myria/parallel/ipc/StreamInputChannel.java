@@ -1,6 +1,7 @@
 package edu.washington.escience.myria.parallel.ipc;
 
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
@@ -30,12 +31,23 @@ public class StreamInputChannel<PAYLOAD> extends StreamIOChannel {
    */
   private final AtomicBoolean paused = new AtomicBoolean(false);
 
+  /**
+   * If this logical input channel is multiplexed with others over its physical channel. If so, pausing it withholds the
+   * credits of the bytes it receives instead of pausing the read of the physical channel.
+   */
+  private volatile boolean multiplexed = false;
+
+  /**
+   * The number of received bytes that are not credited back to the sender yet.
+   */
+  private final AtomicLong uncreditedBytes = new AtomicLong();
+
   /**
    * release this logical input channel.
    */
   public final void release() {
     Channel channel = detachIOChannel();
-    if (channel != null) {
+    if (channel != null && !multiplexed) {
       ChannelContext.resumeRead(channel);
     }
   }
@@ -61,6 +73,53 @@ public class StreamInputChannel<PAYLOAD> extends StreamIOChannel {
     return inputBuffer;
   }
 
+  /**
+   * Attach a physical channel over which this logical input channel is multiplexed with others.
+   *
+   * @param ioChannel the physical channel.
+   * */
+  final void attachMultiplexedIOChannel(final Channel ioChannel) {
+    multiplexed = true;
+    attachIOChannel(ioChannel);
+  }
+
+  /**
+   * @return true if this logical input channel is multiplexed with others over its physical channel.
+   * */
+  final boolean isMultiplexed() {
+    return multiplexed;
+  }
+
+  /**
+   * Record that a message of a multiplexed stream is received, and credit its bytes back to the sender unless this
+   * logical input channel is paused.
+   *
+   * @param bytes the number of bytes of the message.
+   * */
+  final void received(final long bytes) {
+    uncreditedBytes.addAndGet(bytes);
+    if (!paused.get()) {
+      credit();
+    }
+  }
+
+  /**
+   * Credit the received bytes back to the sender of a multiplexed stream.
+   *
+   * @return future of the credit message.
+   * */
+  private ChannelFuture credit() {
+    Channel ch = getIOChannel();
+    if (ch == null) {
+      return new SucceededChannelFuture(NullChannel.NULL);
+    }
+    long bytes = uncreditedBytes.getAndSet(0);
+    if (bytes <= 0) {
+      return new SucceededChannelFuture(ch);
+    }
+    return ch.write(new IPCMessage.Meta.CREDIT(getID().getStreamID(), bytes));
+  }
+
   /**
    * pause the read from this logical input channel, no matter the state of the underlying physical input channel.
    *
@@ -69,6 +128,10 @@ public class StreamInputChannel<PAYLOAD> extends StreamIOChannel {
   public ChannelFuture pauseRead() {
     if (this.paused.compareAndSet(false, true)) {
       Channel ch = getIOChannel();
+      if (ch != null && multiplexed) {
+        // the sender stops once it runs out of credits.
+        return new SucceededChannelFuture(ch);
+      }
       if (ch != null) {
         return ChannelContext.pauseRead(ch);
       }
@@ -86,6 +149,9 @@ public class StreamInputChannel<PAYLOAD> extends StreamIOChannel {
   public ChannelFuture resumeRead() {
     if (this.paused.compareAndSet(true, false)) {
       Channel ch = getIOChannel();
+      if (ch != null && multiplexed) {
+        return credit();
+      }
       if (ch != null) {
         return ChannelContext.resumeRead(ch);
       }
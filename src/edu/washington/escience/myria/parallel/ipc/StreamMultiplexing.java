@@ -0,0 +1,116 @@
+package edu.washington.escience.myria.parallel.ipc;
+
+import java.io.File;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * How an {@link IPCConnectionPool} sends the streams to a remote IPC entity.<br>
+ * If disabled, each stream is bound to a physical channel of its own for as long as it lasts, so the number of channels
+ * grows with the number of streams, i.e., with the size of the query plans. If enabled, all the streams to a remote are
+ * multiplexed over a fixed number of physical channels, and each stream may only send the bytes that its receiver
+ * credits it with, so that a stream whose receiver is paused does not block the others.<br>
+ * The multiplexed channels to a remote on the same host may in addition pass the payloads of the data frames through a
+ * {@link SharedMemoryRing}, instead of the TCP loopback.
+ * */
+public final class StreamMultiplexing {
+
+  /**
+   * The number of physical channels over which the streams to a remote are multiplexed, 0 if disabled.
+   * */
+  private final int connectionsPerRemote;
+
+  /**
+   * The number of bytes that a stream may send before its receiver credits it.
+   * */
+  private final long streamCreditBytes;
+
+  /**
+   * The directory of the files that back the shared memory rings.
+   * */
+  private final File sharedMemoryDirectory;
+
+  /**
+   * The capacity of the shared memory ring of each multiplexed channel to a co-located remote, 0 if disabled.
+   * */
+  private final int sharedMemoryRingBytes;
+
+  /**
+   * @param connectionsPerRemote the number of physical channels over which the streams to a remote are multiplexed, 0
+   *          to bind each stream to a physical channel of its own.
+   * @param streamCreditBytes the number of bytes that a stream may send before its receiver credits it.
+   * */
+  public StreamMultiplexing(final int connectionsPerRemote, final long streamCreditBytes) {
+    this(connectionsPerRemote, streamCreditBytes, null, 0);
+  }
+
+  /**
+   * @param connectionsPerRemote the number of physical channels over which the streams to a remote are multiplexed, 0
+   *          to bind each stream to a physical channel of its own.
+   * @param streamCreditBytes the number of bytes that a stream may send before its receiver credits it.
+   * @param sharedMemoryDirectory the directory of the files that back the shared memory rings, null if disabled.
+   * @param sharedMemoryRingBytes the capacity of the shared memory ring of each multiplexed channel to a co-located
+   *          remote, 0 if disabled.
+   * */
+  public StreamMultiplexing(final int connectionsPerRemote, final long streamCreditBytes,
+      final File sharedMemoryDirectory, final int sharedMemoryRingBytes) {
+    Preconditions.checkArgument(connectionsPerRemote >= 0, "connectionsPerRemote must be non-negative");
+    Preconditions.checkArgument(streamCreditBytes > 0, "streamCreditBytes must be positive");
+    Preconditions.checkArgument(sharedMemoryRingBytes >= 0, "sharedMemoryRingBytes must be non-negative");
+    Preconditions.checkArgument(sharedMemoryRingBytes == 0 || sharedMemoryDirectory != null,
+        "sharedMemoryDirectory is required by the shared memory rings");
+    this.connectionsPerRemote = connectionsPerRemote;
+    this.streamCreditBytes = streamCreditBytes;
+    this.sharedMemoryDirectory = sharedMemoryDirectory;
+    this.sharedMemoryRingBytes = sharedMemoryRingBytes;
+  }
+
+  /**
+   * @return a policy that binds each stream to a physical channel of its own.
+   * */
+  public static StreamMultiplexing disabled() {
+    return new StreamMultiplexing(0, Long.MAX_VALUE);
+  }
+
+  /**
+   * @return true if the streams are multiplexed.
+   * */
+  public boolean isEnabled() {
+    return connectionsPerRemote > 0;
+  }
+
+  /**
+   * @return the number of physical channels over which the streams to a remote are multiplexed, 0 if disabled.
+   * */
+  public int getConnectionsPerRemote() {
+    return connectionsPerRemote;
+  }
+
+  /**
+   * @return the number of bytes that a stream may send before its receiver credits it.
+   * */
+  public long getStreamCreditBytes() {
+    return streamCreditBytes;
+  }
+
+  /**
+   * @return true if the multiplexed channels to co-located remotes pass the payloads through shared memory rings.
+   * */
+  public boolean isSharedMemoryEnabled() {
+    return isEnabled() && sharedMemoryRingBytes > 0;
+  }
+
+  /**
+   * @return the directory of the files that back the shared memory rings, null if disabled.
+   * */
+  public File getSharedMemoryDirectory() {
+    return sharedMemoryDirectory;
+  }
+
+  /**
+   * @return the capacity of the shared memory ring of each multiplexed channel to a co-located remote, 0 if disabled.
+   * */
+  public int getSharedMemoryRingBytes() {
+    return sharedMemoryRingBytes;
+  }
+}
@@ -1,6 +1,7 @@
 package edu.washington.escience.myria.parallel.ipc;
 
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
@@ -51,6 +52,16 @@ public class StreamOutputChannel<PAYLOAD> extends StreamIOChannel {
    * */
   private ChannelFuture releaseFuture = null;
 
+  /**
+   * If this output channel is multiplexed with others over its physical channel.
+   * */
+  private final boolean multiplexed;
+
+  /**
+   * The number of bytes that a multiplexed output channel may still send before its receiver credits it with more.
+   * */
+  private final AtomicLong credit;
+
   /**
    * @param ecID stream output channel ID
    * @param ownerPool the owner of this output channel.
@@ -58,21 +69,70 @@ public class StreamOutputChannel<PAYLOAD> extends StreamIOChannel {
    * */
   StreamOutputChannel(final StreamIOChannelID ecID, final IPCConnectionPool ownerPool,
       final Channel initialPhysicalChannel) {
+    this(ecID, ownerPool, initialPhysicalChannel, false, 0);
+  }
+
+  /**
+   * @param ecID stream output channel ID
+   * @param ownerPool the owner of this output channel.
+   * @param initialPhysicalChannel the physical channel associated to this output channel in the beginning
+   * @param multiplexed if this output channel is multiplexed with others over the physical channel.
+   * @param initialCredit the number of bytes that a multiplexed output channel may send before its receiver credits it.
+   * */
+  StreamOutputChannel(final StreamIOChannelID ecID, final IPCConnectionPool ownerPool,
+      final Channel initialPhysicalChannel, final boolean multiplexed, final long initialCredit) {
     super(ecID);
     outputDisableListeners = new ConcurrentLinkedQueue<IPCEventListener>();
     outputRecoverListeners = new ConcurrentLinkedQueue<IPCEventListener>();
     this.ownerPool = ownerPool;
-    ChannelContext.getChannelContext(initialPhysicalChannel).getRegisteredChannelContext().getIOPair()
-    .mapOutputChannel(this);
+    this.multiplexed = multiplexed;
+    credit = new AtomicLong(initialCredit);
+    StreamIOChannelPair pair =
+        ChannelContext.getChannelContext(initialPhysicalChannel).getRegisteredChannelContext().getIOPair();
+    if (multiplexed) {
+      pair.mapMultiplexedOutputChannel(this);
+    } else {
+      pair.mapOutputChannel(this);
+    }
   }
 
   /**
-   * Callback from the physical IO layer if the channel interest changed.
+   * @return true if this output channel is multiplexed with others over its physical channel.
+   * */
+  final boolean isMultiplexed() {
+    return multiplexed;
+  }
+
+  /**
+   * Called when a message of this multiplexed output channel is written to the physical channel.
+   *
+   * @param bytes the number of bytes of the message.
+   * */
+  final void consumeCredit(final long bytes) {
+    if (credit.addAndGet(-bytes) <= 0) {
+      channelInterestChangedCallback();
+    }
+  }
+
+  /**
+   * Called when the receiver of this multiplexed output channel credits it.
+   *
+   * @param bytes the number of bytes that this output channel may send in addition.
+   * */
+  final void addCredit(final long bytes) {
+    if (credit.addAndGet(bytes) > 0) {
+      channelInterestChangedCallback();
+    }
+  }
+
+  /**
+   * Callback from the physical IO layer if the channel interest changed, or if the credit of a multiplexed output
+   * channel changed.
    * */
   final void channelInterestChangedCallback() {
     Channel ch = getIOChannel();
     if (ch != null) {
-      boolean writable = ch.isWritable();
+      boolean writable = isWritable();
 
       eventSerializeLock.lock();
       try {
@@ -205,6 +265,9 @@ public class StreamOutputChannel<PAYLOAD> extends StreamIOChannel {
         if (LOGGER.isTraceEnabled()) {
           LOGGER.trace("OutputChannel {} write a message through {}", getID(), ChannelContext.channelToString(ch));
         }
+        if (multiplexed) {
+          return ch.write(IPCMessage.StreamData.wrap(ownerPool.getMyIPCID(), getID().getStreamID(), message));
+        }
         return ch.write(message);
       } finally {
         this.ownerPool.getShutdownLock().readLock().unlock();
@@ -230,7 +293,7 @@ public class StreamOutputChannel<PAYLOAD> extends StreamIOChannel {
    * */
   public final boolean isWritable() {
     Channel ch = getIOChannel();
-    return ch != null && ch.isWritable();
+    return ch != null && ch.isWritable() && (!multiplexed || credit.get() > 0);
   }
 
 }
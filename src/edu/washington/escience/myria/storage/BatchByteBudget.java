@@ -0,0 +1,184 @@
+package edu.washington.escience.myria.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.Ints;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+
+/**
+ * Tracks the estimated number of bytes of the tuples appended to a batch that is being built, so that the batch can be
+ * finished once it reaches a byte budget instead of only once it has {@link TupleBatch#BATCH_SIZE} tuples. Batches of
+ * wide tuples are then smaller, which keeps the memory held by buffers such as the input buffers of consumers bounded.
+ * 
+ * The estimates count the bytes of the values without the overhead of the Java objects that hold them: the width of
+ * each fixed-width value, 8 bytes for a DateTime, and 4 bytes plus 2 bytes per char for a String.
+ */
+public final class BatchByteBudget {
+  /** The max number of rows whose strings {@link #estimateBytes(ReadableTable)} reads. */
+  public static final int STRING_SAMPLE_ROWS = 64;
+  /** The number of bytes at which a batch is full. */
+  private final long maxBytes;
+  /** The estimated number of bytes of a tuple, not counting the chars of its strings. */
+  private final long fixedTupleBytes;
+  /** The indices of the string columns. */
+  private final int[] stringColumns;
+  /** The estimated number of bytes of the tuples appended since the last reset. */
+  private long bytes;
+
+  /**
+   * @param schema the schema of the tuples.
+   * @param maxBytes the number of bytes at which a batch is full.
+   */
+  public BatchByteBudget(final Schema schema, final long maxBytes) {
+    Objects.requireNonNull(schema, "schema");
+    Preconditions.checkArgument(maxBytes > 0, "the byte budget of a batch must be positive, not %s", maxBytes);
+    this.maxBytes = maxBytes;
+    long tupleBytes = 0;
+    List<Integer> strings = new ArrayList<>();
+    for (int i = 0; i < schema.numColumns(); ++i) {
+      Type type = schema.getColumnType(i);
+      tupleBytes += getFixedBytes(type);
+      if (type == Type.STRING_TYPE) {
+        strings.add(i);
+      }
+    }
+    fixedTupleBytes = tupleBytes;
+    stringColumns = Ints.toArray(strings);
+    bytes = 0;
+  }
+
+  /**
+   * copy.
+   * 
+   * @param maxBytes the number of bytes at which a batch is full.
+   * @param fixedTupleBytes the estimated number of bytes of a tuple, not counting the chars of its strings.
+   * @param stringColumns the indices of the string columns.
+   * @param bytes the estimated number of bytes of the tuples appended since the last reset.
+   */
+  private BatchByteBudget(final long maxBytes, final long fixedTupleBytes, final int[] stringColumns,
+      final long bytes) {
+    this.maxBytes = maxBytes;
+    this.fixedTupleBytes = fixedTupleBytes;
+    this.stringColumns = stringColumns;
+    this.bytes = bytes;
+  }
+
+  /**
+   * @param type a type.
+   * @return the estimated number of bytes of a value of the specified type, not counting the chars of a String.
+   */
+  public static long getFixedBytes(final Type type) {
+    switch (type) {
+      case BOOLEAN_TYPE:
+        return 1;
+      case INT_TYPE:
+      case FLOAT_TYPE:
+      case STRING_TYPE:
+        return 4;
+      case LONG_TYPE:
+      case DOUBLE_TYPE:
+      case DATETIME_TYPE:
+        return 8;
+      default:
+        throw new IllegalArgumentException("Unknown type " + type);
+    }
+  }
+
+  /**
+   * Estimate the bytes of a whole table the way a budget counts its tuples. The chars of the strings are extrapolated
+   * from at most {@link #STRING_SAMPLE_ROWS} evenly spaced rows, so that the estimate is cheap even when the strings are
+   * decoded lazily.
+   * 
+   * @param table the table.
+   * @return the estimated number of bytes of the tuples of the table.
+   */
+  public static long estimateBytes(final ReadableTable table) {
+    Schema schema = table.getSchema();
+    int numTuples = table.numTuples();
+    if (schema == null || numTuples == 0) {
+      return 0;
+    }
+    long bytes = 0;
+    for (int column = 0; column < schema.numColumns(); ++column) {
+      Type type = schema.getColumnType(column);
+      bytes += getFixedBytes(type) * numTuples;
+      if (type == Type.STRING_TYPE) {
+        int step = Math.max(1, numTuples / STRING_SAMPLE_ROWS);
+        long chars = 0;
+        int sampled = 0;
+        for (int row = 0; row < numTuples; row += step) {
+          chars += table.getString(column, row).length();
+          ++sampled;
+        }
+        bytes += 2 * chars * numTuples / sampled;
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Account for a tuple that was appended to the batch.
+   * 
+   * @param columns the columns of the batch.
+   * @param row the row of the tuple in the columns.
+   */
+  public void addTuple(final List<? extends ReadableColumn> columns, final int row) {
+    bytes += fixedTupleBytes;
+    for (int column : stringColumns) {
+      bytes += 2L * columns.get(column).getString(row).length();
+    }
+  }
+
+  /**
+   * Account for a tuple that was appended to the batch.
+   * 
+   * @param columns the columns of the batch.
+   * @param row the row of the tuple in the columns.
+   */
+  public void addTuple(final ReadableColumn[] columns, final int row) {
+    bytes += fixedTupleBytes;
+    for (int column : stringColumns) {
+      bytes += 2L * columns[column].getString(row).length();
+    }
+  }
+
+  /**
+   * @return true if the tuples appended since the last reset have reached the byte budget.
+   */
+  public boolean isFull() {
+    return bytes >= maxBytes;
+  }
+
+  /**
+   * @return the estimated number of bytes of the tuples appended since the last reset.
+   */
+  public long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * @return the number of bytes at which a batch is full.
+   */
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * @return a budget with the same limit that has counted the same tuples as this one.
+   */
+  public BatchByteBudget copy() {
+    return new BatchByteBudget(maxBytes, fixedTupleBytes, stringColumns, bytes);
+  }
+
+  /**
+   * Start a new batch.
+   */
+  public void reset() {
+    bytes = 0;
+  }
+}
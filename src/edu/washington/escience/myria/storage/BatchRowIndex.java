@@ -0,0 +1,102 @@
+package edu.washington.escience.myria.storage;
+
+import java.util.Arrays;
+
+/**
+ * Maps the rows of a buffer made of a list of batches to the batch that holds each row and its row in that batch. The
+ * batches may have any number of rows. While all of them are full, i.e., have {@link TupleBatch#BATCH_SIZE} rows, the
+ * mapping is a division; otherwise it is a binary search over the first row of each batch.
+ */
+final class BatchRowIndex implements Cloneable {
+  /** The first row of each finished batch. */
+  private int[] firstRows;
+  /** The number of finished batches. */
+  private int numBatches;
+  /** The number of rows in the finished batches, i.e., the first row of the batch that is being built. */
+  private int numRows;
+  /** Whether all the finished batches have {@link TupleBatch#BATCH_SIZE} rows. */
+  private boolean allFull;
+
+  /** Constructs an index with no finished batches. */
+  BatchRowIndex() {
+    firstRows = new int[4];
+    clear();
+  }
+
+  /** Remove all the batches. */
+  void clear() {
+    numBatches = 0;
+    numRows = 0;
+    allFull = true;
+  }
+
+  /**
+   * Record that the batch that was being built was finished.
+   * 
+   * @param batchSize the number of rows of the batch.
+   */
+  void addBatch(final int batchSize) {
+    if (numBatches == firstRows.length) {
+      firstRows = Arrays.copyOf(firstRows, 2 * numBatches);
+    }
+    firstRows[numBatches++] = numRows;
+    numRows += batchSize;
+    allFull &= batchSize == TupleBatch.BATCH_SIZE;
+  }
+
+  /**
+   * @param row a row of the buffer.
+   * @return the index of the batch that holds the row. The batch that is being built has index
+   *         {@link #numBatches()}.
+   */
+  int getBatch(final int row) {
+    if (row >= numRows) {
+      return numBatches;
+    }
+    if (allFull) {
+      return row / TupleBatch.BATCH_SIZE;
+    }
+    int batch = Arrays.binarySearch(firstRows, 0, numBatches, row);
+    if (batch < 0) {
+      batch = -batch - 2;
+    }
+    return batch;
+  }
+
+  /**
+   * @param row a row of the buffer.
+   * @param batch the index of the batch that holds the row, as returned by {@link #getBatch(int)}.
+   * @return the row in the batch.
+   */
+  int getRowInBatch(final int row, final int batch) {
+    if (batch == numBatches) {
+      return row - numRows;
+    }
+    return row - firstRows[batch];
+  }
+
+  /**
+   * @return the number of finished batches.
+   */
+  int numBatches() {
+    return numBatches;
+  }
+
+  /**
+   * @return the number of rows in the finished batches.
+   */
+  int numRows() {
+    return numRows;
+  }
+
+  @Override
+  public BatchRowIndex clone() {
+    try {
+      BatchRowIndex ret = (BatchRowIndex) super.clone();
+      ret.firstRows = firstRows.clone();
+      return ret;
+    } catch (CloneNotSupportedException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
@@ -0,0 +1,185 @@
+package edu.washington.escience.myria.storage;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.util.HashUtils;
+
+/**
+ * Assigns dense ids 0, 1, 2, ... to the distinct values of the key columns of the rows added to it, e.g., to index the
+ * states of the groups of an aggregate in primitive arrays.
+ * 
+ * The table is open-addressed. If all key columns are INT or LONG columns, the keys are stored inline in a primitive
+ * array; otherwise they are stored in a {@link MutableTupleBuffer}, in the order of their ids.
+ */
+public final class GroupIdTable extends KeyIdHashTable {
+  /** The key columns of the rows that are added to the table. */
+  private final int[] keyColumns;
+  /** The schema of the keys. */
+  private final Schema keySchema;
+  /** The number of key columns. */
+  private final int keyWidth;
+  /** Whether each key column is an INT column. If not, it is a LONG column. Null if the keys are not inline. */
+  private final boolean[] isIntKey;
+  /**
+   * Whether some key column is a DOUBLE or FLOAT column, whose values are compared like {@link Double#equals(Object)}
+   * so that all NaN keys are in one group.
+   */
+  private final boolean hasFloatingPointKey;
+  /** The inline keys, keyWidth values per key id, or null if the keys are stored in {@link #keys}. */
+  private long[] inlineKeys;
+  /** The keys, or null if the keys are inline. */
+  private final MutableTupleBuffer keys;
+  /** The columns [0, 1, .., keyWidth - 1] of {@link #keys}. */
+  private final int[] keyRange;
+  /** The inline key of the row most recently looked up. */
+  private final long[] lookupKey;
+
+  /**
+   * Create an empty table.
+   * 
+   * @param schema the schema of the rows that are added to the table.
+   * @param keyColumns the key columns of the rows that are added to the table.
+   */
+  public GroupIdTable(final Schema schema, final int[] keyColumns) {
+    Preconditions.checkArgument(keyColumns.length > 0, "must have at least one key column");
+    this.keyColumns = keyColumns.clone();
+    keySchema = schema.getSubSchema(keyColumns);
+    keyWidth = keyColumns.length;
+    keyRange = new int[keyWidth];
+    for (int i = 0; i < keyWidth; ++i) {
+      keyRange[i] = i;
+    }
+    boolean floatingPoint = false;
+    for (int i = 0; i < keyWidth; ++i) {
+      Type type = keySchema.getColumnType(i);
+      floatingPoint |= type == Type.DOUBLE_TYPE || type == Type.FLOAT_TYPE;
+    }
+    hasFloatingPointKey = floatingPoint;
+    lookupKey = new long[keyWidth];
+    if (PrimitiveJoinHashTable.supports(schema, keyColumns)) {
+      isIntKey = new boolean[keyWidth];
+      for (int i = 0; i < keyWidth; ++i) {
+        isIntKey[i] = keySchema.getColumnType(i) == Type.INT_TYPE;
+      }
+      inlineKeys = new long[INITIAL_CAPACITY * keyWidth];
+      keys = null;
+    } else {
+      isIntKey = null;
+      inlineKeys = null;
+      keys = new MutableTupleBuffer(keySchema);
+    }
+  }
+
+  /**
+   * Look up the key of the specified row, and add it to the table if it is not there yet.
+   * 
+   * @param table the table holding the row.
+   * @param row the row.
+   * @return the id of the key of the row.
+   */
+  public int getOrAdd(final ReadableTable table, final int row) {
+    final int slot = findSlot(table, row);
+    final int keyId = keyIdAt(slot);
+    if (keyId != NONE) {
+      return keyId;
+    }
+    return addKey(slot, table, row);
+  }
+
+  /**
+   * Look up the key of the specified row.
+   * 
+   * @param table the table holding the row.
+   * @param row the row.
+   * @return the id of the key of the row, or -1 if it is not in the table.
+   */
+  public int get(final ReadableTable table, final int row) {
+    return keyIdAt(findSlot(table, row));
+  }
+
+  /**
+   * @return the number of distinct keys in the table, i.e., one more than the largest id.
+   */
+  public int numKeys() {
+    return keyCount();
+  }
+
+  /**
+   * @return the schema of the keys.
+   */
+  public Schema getKeySchema() {
+    return keySchema;
+  }
+
+  /**
+   * Append the key with the specified id to a table.
+   * 
+   * @param keyId the id of the key.
+   * @param dest the table.
+   * @param destColumn the column of the table in which the first key column is appended.
+   */
+  public void appendKey(final int keyId, final AppendableTable dest, final int destColumn) {
+    Preconditions.checkElementIndex(keyId, keyCount());
+    for (int i = 0; i < keyWidth; ++i) {
+      if (inlineKeys == null) {
+        TupleUtils.copyValue(keys, i, keyId, dest, destColumn + i);
+      } else if (isIntKey[i]) {
+        dest.putInt(destColumn + i, (int) inlineKeys[keyId * keyWidth + i]);
+      } else {
+        dest.putLong(destColumn + i, inlineKeys[keyId * keyWidth + i]);
+      }
+    }
+  }
+
+  /**
+   * Hash the key of the specified row and find the slot holding it, or the empty slot where it belongs.
+   * 
+   * @param table the table holding the row.
+   * @param row the row.
+   * @return the slot.
+   */
+  private int findSlot(final ReadableTable table, final int row) {
+    if (inlineKeys == null) {
+      return findSlot(HashUtils.hashSubRow(table, keyColumns, row), table, row);
+    }
+    return findSlot(loadInlineKey(table, keyColumns, row, isIntKey, lookupKey), table, row);
+  }
+
+  @Override
+  protected boolean keyEquals(final int keyId, final ReadableTable table, final int row) {
+    if (inlineKeys != null) {
+      return inlineKeyEquals(inlineKeys, keyId, lookupKey);
+    }
+    if (!hasFloatingPointKey) {
+      return TupleUtils.tupleEquals(table, keyColumns, row, keys, keyRange, keyId);
+    }
+    for (int i = 0; i < keyWidth; ++i) {
+      if (TupleUtils.cellCompare(table, keyColumns[i], row, keys, i, keyId) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  protected void growKeys(final int capacity) {
+    if (inlineKeys != null) {
+      inlineKeys = Arrays.copyOf(inlineKeys, capacity * keyWidth);
+    }
+  }
+
+  @Override
+  protected void storeKey(final int keyId, final ReadableTable table, final int row) {
+    if (inlineKeys == null) {
+      for (int i = 0; i < keyWidth; ++i) {
+        TupleUtils.copyValue(table, keyColumns[i], row, keys, i);
+      }
+    } else {
+      System.arraycopy(lookupKey, 0, inlineKeys, keyId * keyWidth, keyWidth);
+    }
+  }
+}
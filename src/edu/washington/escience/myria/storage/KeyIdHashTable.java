@@ -0,0 +1,204 @@
+package edu.washington.escience.myria.storage;
+
+import java.util.Arrays;
+
+/**
+ * The open-addressed slots of a hash table that assigns dense ids 0, 1, 2, ... to the distinct keys added to it.
+ * Subclasses store the keys themselves, in arrays indexed by key id, and compare them with the key being looked up.
+ * 
+ * Keys made of INT and LONG columns can be stored inline, keyWidth longs per key id, with
+ * {@link #loadInlineKey(ReadableTable, int[], int, boolean[], long[])} and
+ * {@link #inlineKeyEquals(long[], int, long[])}.
+ */
+abstract class KeyIdHashTable {
+  /** The initial number of slots. Must be a power of two. */
+  private static final int INITIAL_SLOTS = 1 << 10;
+  /** The initial number of keys that fit in the arrays indexed by key id. */
+  protected static final int INITIAL_CAPACITY = INITIAL_SLOTS / 2;
+  /** Marks an empty slot. */
+  protected static final int NONE = -1;
+  /** Multiplier used to combine the keys of compound keys. */
+  private static final long COMBINE_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+  /** The open-addressed slots, holding the id of the key stored there or {@link #NONE}. */
+  private int[] slots;
+  /** slots.length - 1. */
+  private int mask;
+  /** The hash of each key id. */
+  private int[] keyHashes;
+  /** The number of distinct keys. */
+  private int numKeys;
+  /** The hash of the key most recently looked up. */
+  private int lookupHash;
+
+  /**
+   * Create an empty table.
+   */
+  protected KeyIdHashTable() {
+    slots = new int[INITIAL_SLOTS];
+    Arrays.fill(slots, NONE);
+    mask = INITIAL_SLOTS - 1;
+    keyHashes = new int[INITIAL_CAPACITY];
+  }
+
+  /**
+   * @param keyId a key id.
+   * @param table the table holding the row being looked up.
+   * @param row the row being looked up.
+   * @return whether the key of the row being looked up equals the key with the specified id.
+   */
+  protected abstract boolean keyEquals(int keyId, ReadableTable table, int row);
+
+  /**
+   * Grow the arrays indexed by key id.
+   * 
+   * @param capacity the new number of keys that must fit in the arrays.
+   */
+  protected abstract void growKeys(int capacity);
+
+  /**
+   * Store the key of the row most recently looked up.
+   * 
+   * @param keyId the id of the new key.
+   * @param table the table holding the row.
+   * @param row the row.
+   */
+  protected abstract void storeKey(int keyId, ReadableTable table, int row);
+
+  /**
+   * Find the slot holding the key of the specified row, or the empty slot where it belongs.
+   * 
+   * @param hash the hash of the key of the row.
+   * @param table the table holding the row.
+   * @param row the row.
+   * @return the slot.
+   */
+  protected final int findSlot(final int hash, final ReadableTable table, final int row) {
+    lookupHash = hash;
+    int slot = hash & mask;
+    while (true) {
+      final int keyId = slots[slot];
+      if (keyId == NONE || keyHashes[keyId] == hash && keyEquals(keyId, table, row)) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /**
+   * @param slot a slot.
+   * @return the id of the key stored in the slot, or {@link #NONE}.
+   */
+  protected final int keyIdAt(final int slot) {
+    return slots[slot];
+  }
+
+  /**
+   * @return the number of distinct keys in the table.
+   */
+  protected final int keyCount() {
+    return numKeys;
+  }
+
+  /**
+   * Store the key of the row most recently looked up in the specified empty slot.
+   * 
+   * @param slot the slot.
+   * @param table the table holding the row.
+   * @param row the row.
+   * @return the id of the new key.
+   */
+  protected final int addKey(final int slot, final ReadableTable table, final int row) {
+    final int keyId = numKeys;
+    if (keyId == keyHashes.length) {
+      final int capacity = keyId * 2;
+      keyHashes = Arrays.copyOf(keyHashes, capacity);
+      growKeys(capacity);
+    }
+    storeKey(keyId, table, row);
+    keyHashes[keyId] = lookupHash;
+    slots[slot] = keyId;
+    ++numKeys;
+    /* Keep the load factor at most 1/2. */
+    if (numKeys * 2 > slots.length) {
+      rehash(slots.length * 2);
+    }
+    return keyId;
+  }
+
+  /**
+   * Move all keys into a new array of slots.
+   * 
+   * @param numSlots the number of new slots. Must be a power of two.
+   */
+  private void rehash(final int numSlots) {
+    slots = new int[numSlots];
+    Arrays.fill(slots, NONE);
+    mask = numSlots - 1;
+    for (int keyId = 0; keyId < numKeys; ++keyId) {
+      int slot = keyHashes[keyId] & mask;
+      while (slots[slot] != NONE) {
+        slot = (slot + 1) & mask;
+      }
+      slots[slot] = keyId;
+    }
+  }
+
+  /**
+   * Load the INT and LONG key columns of the specified row into an array, and hash them.
+   * 
+   * @param table the table holding the row.
+   * @param keyColumns the key columns of the row.
+   * @param row the row.
+   * @param isIntKey whether each key column is an INT column. If not, it is a LONG column.
+   * @param dest the array that receives the key.
+   * @return the hash of the key.
+   */
+  protected static int loadInlineKey(final ReadableTable table, final int[] keyColumns, final int row,
+      final boolean[] isIntKey, final long[] dest) {
+    long hash = 0;
+    for (int i = 0; i < dest.length; ++i) {
+      final long key;
+      if (isIntKey[i]) {
+        key = table.getInt(keyColumns[i], row);
+      } else {
+        key = table.getLong(keyColumns[i], row);
+      }
+      dest[i] = key;
+      hash = hash * COMBINE_MULTIPLIER + key;
+    }
+    return mix(hash);
+  }
+
+  /**
+   * @param keys the inline keys, key.length values per key id.
+   * @param keyId a key id.
+   * @param key a key loaded by {@link #loadInlineKey(ReadableTable, int[], int, boolean[], long[])}.
+   * @return whether the key with the specified id equals the specified key.
+   */
+  protected static boolean inlineKeyEquals(final long[] keys, final int keyId, final long[] key) {
+    final int offset = keyId * key.length;
+    for (int i = 0; i < key.length; ++i) {
+      if (keys[offset + i] != key[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The finalizer of MurmurHash3's 64-bit hash, so that keys that differ only in high bits spread over the slots.
+   * 
+   * @param hash the value to mix.
+   * @return the mixed value.
+   */
+  private static int mix(final long hash) {
+    long h = hash;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return (int) h;
+  }
+}
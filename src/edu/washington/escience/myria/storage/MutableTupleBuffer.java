@@ -9,6 +9,7 @@ import org.joda.time.DateTime;
 
 import com.google.common.base.Preconditions;
 
+import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
@@ -19,8 +20,11 @@ import edu.washington.escience.myria.column.builder.WritableColumn;
 import edu.washington.escience.myria.column.mutable.MutableColumn;
 import edu.washington.escience.myria.util.MyriaUtils;
 
-/** A simplified TupleBatchBuffer which supports random access. Designed for hash tables to use. */
-
+/**
+ * A simplified TupleBatchBuffer which supports random access. Designed for hash tables to use. A batch is finished
+ * once it has {@link TupleBatch#BATCH_SIZE} tuples or once its tuples reach the byte budget of the buffer, so the
+ * batches may have different sizes.
+ */
 public class MutableTupleBuffer implements ReadableTable, AppendableTable, Cloneable {
   /** Format of the emitted tuples. */
   private final Schema schema;
@@ -36,6 +40,10 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
   private int numColumnsReady;
   /** Internal state representing the number of tuples in the in-progress TupleBatch. */
   private int currentInProgressTuples;
+  /** The estimated number of bytes of the in-progress TupleBatch. */
+  private BatchByteBudget budget;
+  /** Maps the rows of this buffer to the rows of the ready batches. */
+  private BatchRowIndex index;
 
   /**
    * Constructs an empty TupleBuffer to hold tuples matching the specified Schema.
@@ -43,6 +51,16 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
    * @param schema specified the columns of the emitted TupleBatch objects.
    */
   public MutableTupleBuffer(final Schema schema) {
+    this(schema, MyriaConstants.BATCH_SIZE_BYTES_DEFAULT_VALUE);
+  }
+
+  /**
+   * Constructs an empty TupleBuffer to hold tuples matching the specified Schema.
+   * 
+   * @param schema specified the columns of the emitted TupleBatch objects.
+   * @param batchSizeBytes the estimated number of bytes at which a batch is finished.
+   */
+  public MutableTupleBuffer(final Schema schema, final long batchSizeBytes) {
     this.schema = Objects.requireNonNull(schema);
     readyTuples = new ArrayList<MutableColumn<?>[]>();
     currentBuildingColumns = ColumnFactory.allocateColumns(schema).toArray(new ColumnBuilder<?>[] {});
@@ -50,6 +68,8 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
     columnsReady = new BitSet(numColumns);
     numColumnsReady = 0;
     currentInProgressTuples = 0;
+    budget = new BatchByteBudget(schema, batchSizeBytes);
+    index = new BatchRowIndex();
   }
 
   /**
@@ -61,6 +81,8 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
     currentInProgressTuples = 0;
     numColumnsReady = 0;
     readyTuples.clear();
+    budget.reset();
+    index.clear();
   }
 
   /**
@@ -69,15 +91,17 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
    */
   private void finishBatch() {
     Preconditions.checkArgument(numColumnsReady == 0);
-    Preconditions.checkArgument(currentInProgressTuples == TupleBatch.BATCH_SIZE);
+    Preconditions.checkArgument(currentInProgressTuples == TupleBatch.BATCH_SIZE || budget.isFull());
     MutableColumn<?>[] buildingColumns = new MutableColumn<?>[numColumns];
     int i = 0;
     for (ColumnBuilder<?> cb : currentBuildingColumns) {
       buildingColumns[i++] = cb.buildMutable();
     }
     readyTuples.add(buildingColumns);
+    index.addBatch(currentInProgressTuples);
     currentBuildingColumns = ColumnFactory.allocateColumns(schema).toArray(new ColumnBuilder<?>[] {});
     currentInProgressTuples = 0;
+    budget.reset();
   }
 
   @Override
@@ -87,14 +111,14 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
 
   @Override
   public final int numTuples() {
-    return readyTuples.size() * TupleBatch.BATCH_SIZE + currentInProgressTuples;
+    return index.numRows() + currentInProgressTuples;
   }
 
   @Override
   @Deprecated
   public final Object getObject(final int colIndex, final int rowIndex) throws IndexOutOfBoundsException {
-    int tupleBatchIndex = rowIndex / TupleBatch.BATCH_SIZE;
-    int tupleIndex = rowIndex % TupleBatch.BATCH_SIZE;
+    int tupleBatchIndex = index.getBatch(rowIndex);
+    int tupleIndex = index.getRowInBatch(rowIndex, tupleBatchIndex);
     if (tupleBatchIndex > readyTuples.size() || tupleBatchIndex == readyTuples.size()
         && tupleIndex >= currentInProgressTuples) {
       throw new IndexOutOfBoundsException();
@@ -107,8 +131,8 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
 
   @Override
   public final boolean getBoolean(final int column, final int row) {
-    int tupleBatchIndex = row / TupleBatch.BATCH_SIZE;
-    int tupleIndex = row % TupleBatch.BATCH_SIZE;
+    int tupleBatchIndex = index.getBatch(row);
+    int tupleIndex = index.getRowInBatch(row, tupleBatchIndex);
     if (tupleBatchIndex > readyTuples.size() || tupleBatchIndex == readyTuples.size()
         && tupleIndex >= currentInProgressTuples) {
       throw new IndexOutOfBoundsException();
@@ -121,8 +145,8 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
 
   @Override
   public final double getDouble(final int column, final int row) {
-    int tupleBatchIndex = row / TupleBatch.BATCH_SIZE;
-    int tupleIndex = row % TupleBatch.BATCH_SIZE;
+    int tupleBatchIndex = index.getBatch(row);
+    int tupleIndex = index.getRowInBatch(row, tupleBatchIndex);
     if (tupleBatchIndex > readyTuples.size() || tupleBatchIndex == readyTuples.size()
         && tupleIndex >= currentInProgressTuples) {
       throw new IndexOutOfBoundsException();
@@ -135,8 +159,8 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
 
   @Override
   public final float getFloat(final int column, final int row) {
-    int tupleBatchIndex = row / TupleBatch.BATCH_SIZE;
-    int tupleIndex = row % TupleBatch.BATCH_SIZE;
+    int tupleBatchIndex = index.getBatch(row);
+    int tupleIndex = index.getRowInBatch(row, tupleBatchIndex);
     if (tupleBatchIndex > readyTuples.size() || tupleBatchIndex == readyTuples.size()
         && tupleIndex >= currentInProgressTuples) {
       throw new IndexOutOfBoundsException();
@@ -149,8 +173,8 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
 
   @Override
   public final long getLong(final int column, final int row) {
-    int tupleBatchIndex = row / TupleBatch.BATCH_SIZE;
-    int tupleIndex = row % TupleBatch.BATCH_SIZE;
+    int tupleBatchIndex = index.getBatch(row);
+    int tupleIndex = index.getRowInBatch(row, tupleBatchIndex);
     if (tupleBatchIndex > readyTuples.size() || tupleBatchIndex == readyTuples.size()
         && tupleIndex >= currentInProgressTuples) {
       throw new IndexOutOfBoundsException();
@@ -163,8 +187,8 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
 
   @Override
   public final int getInt(final int column, final int row) {
-    int tupleBatchIndex = row / TupleBatch.BATCH_SIZE;
-    int tupleIndex = row % TupleBatch.BATCH_SIZE;
+    int tupleBatchIndex = index.getBatch(row);
+    int tupleIndex = index.getRowInBatch(row, tupleBatchIndex);
     if (tupleBatchIndex > readyTuples.size() || tupleBatchIndex == readyTuples.size()
         && tupleIndex >= currentInProgressTuples) {
       throw new IndexOutOfBoundsException();
@@ -177,8 +201,8 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
 
   @Override
   public final String getString(final int column, final int row) {
-    int tupleBatchIndex = row / TupleBatch.BATCH_SIZE;
-    int tupleIndex = row % TupleBatch.BATCH_SIZE;
+    int tupleBatchIndex = index.getBatch(row);
+    int tupleIndex = index.getRowInBatch(row, tupleBatchIndex);
     if (tupleBatchIndex > readyTuples.size() || tupleBatchIndex == readyTuples.size()
         && tupleIndex >= currentInProgressTuples) {
       throw new IndexOutOfBoundsException();
@@ -191,8 +215,8 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
 
   @Override
   public final DateTime getDateTime(final int column, final int row) {
-    int tupleBatchIndex = row / TupleBatch.BATCH_SIZE;
-    int tupleIndex = row % TupleBatch.BATCH_SIZE;
+    int tupleBatchIndex = index.getBatch(row);
+    int tupleIndex = index.getRowInBatch(row, tupleBatchIndex);
     if (tupleBatchIndex > readyTuples.size() || tupleBatchIndex == readyTuples.size()
         && tupleIndex >= currentInProgressTuples) {
       throw new IndexOutOfBoundsException();
@@ -208,7 +232,7 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
    * @return the index of the row in the containing TB.
    * */
   public final int getTupleIndexInContainingTB(final int row) {
-    return row % TupleBatch.BATCH_SIZE;
+    return index.getRowInBatch(row, index.getBatch(row));
   }
 
   /**
@@ -216,8 +240,8 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
    * @return the columns
    */
   public ReadableColumn[] getColumns(final int row) {
-    int tupleBatchIndex = row / TupleBatch.BATCH_SIZE;
-    int tupleIndex = row % TupleBatch.BATCH_SIZE;
+    int tupleBatchIndex = index.getBatch(row);
+    int tupleIndex = index.getRowInBatch(row, tupleBatchIndex);
 
     if (tupleBatchIndex < readyTuples.size()) {
       return readyTuples.get(tupleBatchIndex);
@@ -311,10 +335,11 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
     columnsReady.set(column, true);
     numColumnsReady++;
     if (numColumnsReady == numColumns) {
+      budget.addTuple(currentBuildingColumns, currentInProgressTuples);
       currentInProgressTuples++;
       numColumnsReady = 0;
       columnsReady.clear();
-      if (currentInProgressTuples == TupleBatch.BATCH_SIZE) {
+      if (currentInProgressTuples == TupleBatch.BATCH_SIZE || budget.isFull()) {
         finishBatch();
       }
     }
@@ -344,10 +369,10 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
     Preconditions.checkElementIndex(destRow, numTuples);
     Preconditions.checkElementIndex(sourceRow, numTuples);
 
-    int destBatch = destRow / TupleBatch.BATCH_SIZE;
-    int destBatchRow = destRow % TupleBatch.BATCH_SIZE;
-    int sourceBatch = sourceRow / TupleBatch.BATCH_SIZE;
-    int sourceBatchRow = sourceRow % TupleBatch.BATCH_SIZE;
+    int destBatch = index.getBatch(destRow);
+    int destBatchRow = index.getRowInBatch(destRow, destBatch);
+    int sourceBatch = index.getBatch(sourceRow);
+    int sourceBatchRow = index.getRowInBatch(sourceRow, sourceBatch);
 
     ReplaceableColumn sourceColumn;
     if (sourceBatch < readyTuples.size()) {
@@ -419,8 +444,8 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
    */
   public final void replace(final int destColumn, final int destRow, final Column<?> sourceColumn, final int sourceRow) {
     checkPutIndex(destColumn);
-    int tupleBatchIndex = destRow / TupleBatch.BATCH_SIZE;
-    int tupleIndex = destRow % TupleBatch.BATCH_SIZE;
+    int tupleBatchIndex = index.getBatch(destRow);
+    int tupleIndex = index.getRowInBatch(destRow, tupleBatchIndex);
     if (tupleBatchIndex > readyTuples.size() || tupleBatchIndex == readyTuples.size()
         && tupleIndex >= currentInProgressTuples) {
       throw new IndexOutOfBoundsException();
@@ -469,7 +494,7 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
       for (MutableColumn<?> mutableColumn : mutableColumns) {
         columns.add(mutableColumn.toColumn());
       }
-      output.add(new TupleBatch(schema, columns, TupleBatch.BATCH_SIZE));
+      output.add(new TupleBatch(schema, columns, mutableColumns[0].size()));
     }
     if (currentInProgressTuples > 0) {
       output.add(new TupleBatch(schema, getInProgressColumns(), currentInProgressTuples));
@@ -492,8 +517,10 @@ public class MutableTupleBuffer implements ReadableTable, AppendableTable, Clone
 
   @Override
   public MutableTupleBuffer clone() {
-    MutableTupleBuffer ret = new MutableTupleBuffer(getSchema());
+    MutableTupleBuffer ret = new MutableTupleBuffer(getSchema(), budget.getMaxBytes());
     ret.columnsReady = (BitSet) columnsReady.clone();
+    ret.index = index.clone();
+    ret.budget = budget.copy();
     ret.numColumnsReady = numColumnsReady;
     ret.currentInProgressTuples = currentInProgressTuples;
     for (MutableColumn<?>[] columns : readyTuples) {
@@ -0,0 +1,168 @@
+package edu.washington.escience.myria.storage;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+
+/**
+ * A hash table for equi-joins on one or more INT or LONG key columns.
+ * 
+ * The table is open-addressed. Each distinct key is stored inline in a primitive array, and the rows that share a key
+ * are chained through an array of row indices, so that neither keys nor duplicates need an object each. The table
+ * stores only the indices of the rows; the rows themselves are kept by the caller, e.g., in a
+ * {@link MutableTupleBuffer}, in the order in which they were added.
+ */
+public final class PrimitiveJoinHashTable extends KeyIdHashTable {
+  /** Whether each key column is an INT column. If not, it is a LONG column. */
+  private final boolean[] isIntKey;
+  /** The number of key columns. */
+  private final int keyWidth;
+  /** The keys, keyWidth values per key id. */
+  private long[] keys;
+  /** The first row with each key id. */
+  private int[] firstRows;
+  /** The last row with each key id. */
+  private int[] lastRows;
+  /** The next row with the same key as each row, or {@link #NONE}. */
+  private int[] nextRows;
+  /** The number of rows. */
+  private int numRows;
+  /** The key of the row most recently looked up. */
+  private final long[] lookupKey;
+
+  /**
+   * @param schema the schema of the rows that are added to the table.
+   * @param keyColumns the key columns of the rows that are added to the table.
+   * @return whether the table supports the specified key columns, i.e., whether they are all INT or LONG columns.
+   */
+  public static boolean supports(final Schema schema, final int[] keyColumns) {
+    if (keyColumns.length == 0) {
+      return false;
+    }
+    for (int column : keyColumns) {
+      Type type = schema.getColumnType(column);
+      if (type != Type.INT_TYPE && type != Type.LONG_TYPE) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Create an empty table. Tables that are probed with this table must have key columns of the same types.
+   * 
+   * @param schema the schema of the rows that are added to the table.
+   * @param keyColumns the key columns of the rows that are added to the table.
+   */
+  public PrimitiveJoinHashTable(final Schema schema, final int[] keyColumns) {
+    Preconditions.checkArgument(supports(schema, keyColumns), "key columns %s of %s must be INT or LONG columns",
+        Arrays.toString(keyColumns), schema);
+    keyWidth = keyColumns.length;
+    isIntKey = new boolean[keyWidth];
+    for (int i = 0; i < keyWidth; ++i) {
+      isIntKey[i] = schema.getColumnType(keyColumns[i]) == Type.INT_TYPE;
+    }
+    keys = new long[INITIAL_CAPACITY * keyWidth];
+    firstRows = new int[INITIAL_CAPACITY];
+    lastRows = new int[INITIAL_CAPACITY];
+    nextRows = new int[INITIAL_CAPACITY];
+    lookupKey = new long[keyWidth];
+  }
+
+  /**
+   * Add a row to the table. The row gets the next index, i.e., the number of rows already in the table.
+   * 
+   * @param table the table holding the row.
+   * @param keyColumns the key columns of the row.
+   * @param row the row.
+   * @return the index of the row in this table.
+   */
+  public int add(final ReadableTable table, final int[] keyColumns, final int row) {
+    final int slot = findSlot(table, keyColumns, row);
+    final int index = numRows;
+    if (index == nextRows.length) {
+      nextRows = Arrays.copyOf(nextRows, index * 2);
+    }
+    nextRows[index] = NONE;
+    int keyId = keyIdAt(slot);
+    if (keyId == NONE) {
+      keyId = addKey(slot, table, row);
+      firstRows[keyId] = index;
+    } else {
+      nextRows[lastRows[keyId]] = index;
+    }
+    lastRows[keyId] = index;
+    ++numRows;
+    return index;
+  }
+
+  /**
+   * Find the first row in this table whose key equals the key of the specified row.
+   * 
+   * @param table the table holding the row.
+   * @param keyColumns the key columns of the row.
+   * @param row the row.
+   * @return the index of the first matching row in this table, or -1 if there is none.
+   */
+  public int firstMatch(final ReadableTable table, final int[] keyColumns, final int row) {
+    final int keyId = keyIdAt(findSlot(table, keyColumns, row));
+    if (keyId == NONE) {
+      return NONE;
+    }
+    return firstRows[keyId];
+  }
+
+  /**
+   * @param index the index of a row in this table.
+   * @return the index of the next row in this table with the same key, or -1 if there is none.
+   */
+  public int nextMatch(final int index) {
+    return nextRows[index];
+  }
+
+  /**
+   * @return the number of rows in this table.
+   */
+  public int numRows() {
+    return numRows;
+  }
+
+  /**
+   * @return the number of distinct keys in this table.
+   */
+  public int numKeys() {
+    return keyCount();
+  }
+
+  /**
+   * Load the key of the specified row and find the slot holding it, or the empty slot where it belongs.
+   * 
+   * @param table the table holding the row.
+   * @param keyColumns the key columns of the row.
+   * @param row the row.
+   * @return the slot.
+   */
+  private int findSlot(final ReadableTable table, final int[] keyColumns, final int row) {
+    return findSlot(loadInlineKey(table, keyColumns, row, isIntKey, lookupKey), table, row);
+  }
+
+  @Override
+  protected boolean keyEquals(final int keyId, final ReadableTable table, final int row) {
+    return inlineKeyEquals(keys, keyId, lookupKey);
+  }
+
+  @Override
+  protected void growKeys(final int capacity) {
+    keys = Arrays.copyOf(keys, capacity * keyWidth);
+    firstRows = Arrays.copyOf(firstRows, capacity);
+    lastRows = Arrays.copyOf(lastRows, capacity);
+  }
+
+  @Override
+  protected void storeKey(final int keyId, final ReadableTable table, final int row) {
+    System.arraycopy(lookupKey, 0, keys, keyId * keyWidth, keyWidth);
+  }
+}
@@ -0,0 +1,172 @@
+package edu.washington.escience.myria.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Objects;
+
+import javax.annotation.Nullable;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.proto.DataProto.DataMessage;
+import edu.washington.escience.myria.util.IPCUtils;
+
+/**
+ * A temporary file holding TupleBatches that do not fit in memory. The batches are stored as length-delimited
+ * {@link DataMessage}s, i.e., in the same binary column format in which they are sent over the network. A file can be
+ * written, then read any number of times, and must be deleted when it is no longer needed.
+ */
+public final class SpillFile {
+  /** The schema of the tuples in the file. */
+  private final Schema schema;
+  /** The file. */
+  private final File file;
+  /** The stream writing to the file, or null if it is not being written. */
+  private OutputStream output;
+  /** The number of tuples in the file. */
+  private long numTuples;
+
+  /**
+   * Create an empty spill file.
+   * 
+   * @param schema the schema of the tuples in the file.
+   * @param directory the directory in which to create the file, or null for the default temporary-file directory.
+   * @throws DbException if the file cannot be created.
+   */
+  public SpillFile(final Schema schema, @Nullable final String directory) throws DbException {
+    this.schema = Objects.requireNonNull(schema, "schema");
+    File dir = null;
+    if (directory != null) {
+      dir = new File(directory);
+    }
+    try {
+      file = File.createTempFile("myria-", ".spill", dir);
+    } catch (IOException e) {
+      throw new DbException("Error creating a spill file", e);
+    }
+  }
+
+  /**
+   * Append the tuples in the specified batch to the file.
+   * 
+   * @param tb the batch.
+   * @throws DbException if the batch cannot be written.
+   */
+  public void write(final TupleBatch tb) throws DbException {
+    if (tb.numTuples() == 0) {
+      return;
+    }
+    try {
+      if (output == null) {
+        output = new BufferedOutputStream(new FileOutputStream(file, true));
+      }
+      tb.toTransportMessage().getDataMessage().writeDelimitedTo(output);
+    } catch (IOException e) {
+      throw new DbException("Error writing spill file " + file, e);
+    }
+    numTuples += tb.numTuples();
+  }
+
+  /**
+   * @return the number of tuples in the file.
+   */
+  public long numTuples() {
+    return numTuples;
+  }
+
+  /**
+   * @return the schema of the tuples in the file.
+   */
+  public Schema getSchema() {
+    return schema;
+  }
+
+  /**
+   * Finish writing and read the file from the beginning.
+   * 
+   * @return a reader of the TupleBatches in the file.
+   * @throws DbException if the file cannot be read.
+   */
+  public Reader openReader() throws DbException {
+    try {
+      closeOutput();
+      return new Reader(new BufferedInputStream(new FileInputStream(file)));
+    } catch (IOException e) {
+      throw new DbException("Error reading spill file " + file, e);
+    }
+  }
+
+  /**
+   * Delete the file.
+   * 
+   * @throws DbException if the file cannot be closed.
+   */
+  public void delete() throws DbException {
+    try {
+      closeOutput();
+    } catch (IOException e) {
+      throw new DbException("Error closing spill file " + file, e);
+    } finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * Close the stream writing to the file, if any.
+   * 
+   * @throws IOException if the stream cannot be closed.
+   */
+  private void closeOutput() throws IOException {
+    if (output != null) {
+      OutputStream out = output;
+      output = null;
+      out.close();
+    }
+  }
+
+  /**
+   * Reads the TupleBatches in a {@link SpillFile}, in the order in which they were written.
+   */
+  public final class Reader implements AutoCloseable {
+    /** The stream reading the file. */
+    private final InputStream input;
+
+    /**
+     * @param input the stream reading the file.
+     */
+    private Reader(final InputStream input) {
+      this.input = input;
+    }
+
+    /**
+     * @return the next TupleBatch in the file, or null if there are no more.
+     * @throws DbException if the file cannot be read.
+     */
+    public TupleBatch next() throws DbException {
+      try {
+        DataMessage dm = DataMessage.parseDelimitedFrom(input);
+        if (dm == null) {
+          return null;
+        }
+        return IPCUtils.tmToTupleBatch(dm, schema);
+      } catch (IOException e) {
+        throw new DbException("Error reading spill file " + file, e);
+      }
+    }
+
+    @Override
+    public void close() throws DbException {
+      try {
+        input.close();
+      } catch (IOException e) {
+        throw new DbException("Error closing spill file " + file, e);
+      }
+    }
+  }
+}
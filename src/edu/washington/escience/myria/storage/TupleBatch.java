@@ -6,6 +6,8 @@ import java.util.BitSet;
 import java.util.List;
 import java.util.Objects;
 
+import javax.annotation.Nullable;
+
 import net.jcip.annotations.ThreadSafe;
 
 import org.joda.time.DateTime;
@@ -16,14 +18,21 @@ import com.google.common.collect.ImmutableList;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.DictionaryStringColumn;
 import edu.washington.escience.myria.column.PrefixColumn;
+import edu.washington.escience.myria.column.builder.ColumnBuilder;
+import edu.washington.escience.myria.column.builder.ColumnFactory;
 import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
 import edu.washington.escience.myria.proto.TransportProto.TransportMessage;
 import edu.washington.escience.myria.util.IPCUtils;
+import edu.washington.escience.myria.util.ImmutableIntArray;
 
 /**
  * Container class for a batch of tuples. The goal is to amortize memory management overhead.
  * 
+ * A batch may carry a selection vector, i.e., the indices of the rows of its columns that are in the batch. Filtering a
+ * batch only computes a new selection vector and leaves the columns untouched. The accessors of the batch read through
+ * the selection vector, and the columns are only compacted when that is needed, see {@link #compact()}.
  */
 @ThreadSafe
 public class TupleBatch implements ReadableTable, Serializable {
@@ -35,6 +44,10 @@ public class TupleBatch implements ReadableTable, Serializable {
   private final Schema schema;
   /** Tuple data stored as columns in this batch. */
   private final ImmutableList<? extends Column<?>> columns;
+  /** The rows of {@link #columns} that are in this TB, in order, or null if all rows are. */
+  private final int[] selection;
+  /** The {@link #columns} restricted to the rows in {@link #selection}. Built lazily. */
+  private transient ImmutableList<Column<?>> selectedColumns;
   /** Number of tuples in this TB. */
   private final int numTuples;
   /** Whether this TB is an EOI TB. */
@@ -54,6 +67,7 @@ public class TupleBatch implements ReadableTable, Serializable {
       b.add(Column.emptyColumn(type));
     }
     columns = b.build();
+    selection = null;
     isEOI = isEoi;
   }
 
@@ -63,7 +77,7 @@ public class TupleBatch implements ReadableTable, Serializable {
    */
   public TupleBatch rename(final List<String> columnNames) {
     Schema newSchema = Schema.of(schema.getColumnTypes(), Objects.requireNonNull(columnNames, "columnNames"));
-    return new TupleBatch(newSchema, columns, numTuples, isEOI);
+    return new TupleBatch(newSchema, columns, numTuples, selection, isEOI);
   }
 
   /**
@@ -105,9 +119,49 @@ public class TupleBatch implements ReadableTable, Serializable {
       Preconditions.checkArgument(numTuples == column.size(), "Column %s != %s tuples", column.size(), numTuples);
     }
     this.numTuples = numTuples;
+    selection = null;
+    this.isEOI = isEOI;
+  }
+
+  /**
+   * Construct a TupleBatch that shares the columns of another batch.
+   * 
+   * @param schema schema of the tuples in this batch. Must match columns.
+   * @param columns the column-stored data.
+   * @param numTuples the number of tuples in this batch. Must match columns if there is no selection.
+   * @param selection the rows of the columns that are in this batch, or null if all rows are.
+   * @param isEOI whether this is an EOI TupleBatch.
+   */
+  private TupleBatch(final Schema schema, final ImmutableList<? extends Column<?>> columns, final int numTuples,
+      final int[] selection, final boolean isEOI) {
+    this.schema = schema;
+    this.columns = columns;
+    this.numTuples = numTuples;
+    this.selection = selection;
     this.isEOI = isEOI;
   }
 
+  /**
+   * Construct a TupleBatch that holds the specified rows of the columns of this batch.
+   * 
+   * @param newSelection the rows of {@link #columns} that are in the new batch.
+   * @return the new batch.
+   */
+  private TupleBatch withSelection(final int[] newSelection) {
+    return new TupleBatch(schema, columns, newSelection.length, newSelection, isEOI);
+  }
+
+  /**
+   * @param row a row of this batch.
+   * @return the row in {@link #columns} that holds the specified row of this batch.
+   */
+  private int columnRow(final int row) {
+    if (selection == null) {
+      return row;
+    }
+    return selection[row];
+  }
+
   /**
    * put the tuple batch into TBB by smashing it into cells and putting them one by one.
    * 
@@ -121,16 +175,17 @@ public class TupleBatch implements ReadableTable, Serializable {
     }
     final int numColumns = columns.size();
     for (int i = 0; i < numTuples; i++) {
+      final int row = columnRow(i);
       for (int column = 0; column < numColumns; column++) {
-        tbb.put(column, columns.get(column), i);
+        tbb.put(column, columns.get(column), row);
       }
     }
   }
 
   /**
-   * Return a new TupleBatch that contains only the filtered rows of the current dataset. Note that if some of the
-   * tuples in this batch are invalid, we will have to map the indices in the specified filter to the "real" indices in
-   * the tuple.
+   * Return a new TupleBatch that contains only the filtered rows of the current dataset. The columns are not copied,
+   * the new batch only records which of their rows it holds. Note that if some of the tuples in this batch are invalid,
+   * we will have to map the indices in the specified filter to the "real" indices in the tuple.
    * 
    * @param filter the rows to be retained.
    * @return a TupleBatch that contains only the filtered rows of the current dataset.
@@ -145,11 +200,36 @@ public class TupleBatch implements ReadableTable, Serializable {
       return this;
     }
 
+    int[] newSelection = new int[newNumTuples];
+    int i = 0;
+    for (int row = filter.nextSetBit(0); row >= 0; row = filter.nextSetBit(row + 1)) {
+      newSelection[i] = columnRow(row);
+      i++;
+    }
+    return withSelection(newSelection);
+  }
+
+  /**
+   * Return a TupleBatch with the same tuples whose columns hold exactly these tuples. The data are copied only if this
+   * batch has a selection vector. Use this where the dense layout is needed, e.g., before inserting into a database.
+   * 
+   * @return a TupleBatch with the same tuples and no selection vector.
+   */
+  public final TupleBatch compact() {
+    if (selection == null) {
+      return this;
+    }
+    List<ColumnBuilder<?>> builders = ColumnFactory.allocateColumns(schema);
     ImmutableList.Builder<Column<?>> newColumns = ImmutableList.builder();
-    for (Column<?> column : columns) {
-      newColumns.add(column.filter(filter));
+    for (int column = 0; column < columns.size(); column++) {
+      final Column<?> source = columns.get(column);
+      final ColumnBuilder<?> builder = builders.get(column);
+      for (int row : selection) {
+        TupleUtils.copyValue(source, row, builder);
+      }
+      newColumns.add(builder.build());
     }
-    return new TupleBatch(schema, newColumns.build(), newNumTuples, isEOI);
+    return new TupleBatch(schema, newColumns.build(), numTuples, isEOI);
   }
 
   /**
@@ -162,6 +242,9 @@ public class TupleBatch implements ReadableTable, Serializable {
   public final TupleBatch prefix(final int prefix) {
     Preconditions.checkArgument(prefix <= numTuples(),
         "Error: cannot take a prefix of length %s from a batch of length %s", prefix, numTuples());
+    if (selection != null) {
+      return withSelection(Arrays.copyOf(selection, prefix));
+    }
     ImmutableList.Builder<Column<?>> newColumns = ImmutableList.builder();
     for (Column<?> column : columns) {
       newColumns.add(new PrefixColumn(column, prefix));
@@ -171,35 +254,35 @@ public class TupleBatch implements ReadableTable, Serializable {
 
   @Override
   public final boolean getBoolean(final int column, final int row) {
-    return columns.get(column).getBoolean(row);
+    return columns.get(column).getBoolean(columnRow(row));
   }
 
   @Override
   public final double getDouble(final int column, final int row) {
-    return columns.get(column).getDouble(row);
+    return columns.get(column).getDouble(columnRow(row));
   }
 
   @Override
   public final float getFloat(final int column, final int row) {
-    return columns.get(column).getFloat(row);
+    return columns.get(column).getFloat(columnRow(row));
   }
 
   @Override
   public final int getInt(final int column, final int row) {
-    return columns.get(column).getInt(row);
+    return columns.get(column).getInt(columnRow(row));
   }
 
   @Override
   public final long getLong(final int column, final int row) {
     Preconditions.checkArgument(columns.get(column).size() >= numTuples, "numTuples %s columnsize %s", numTuples,
         columns.get(column).size());
-    return columns.get(column).getLong(row);
+    return columns.get(column).getLong(columnRow(row));
   }
 
   @Override
   @Deprecated
   public final Object getObject(final int column, final int row) {
-    return columns.get(column).getObject(row);
+    return columns.get(column).getObject(columnRow(row));
   }
 
   @Override
@@ -209,12 +292,12 @@ public class TupleBatch implements ReadableTable, Serializable {
 
   @Override
   public final String getString(final int column, final int row) {
-    return columns.get(column).getString(row);
+    return columns.get(column).getString(columnRow(row));
   }
 
   @Override
   public final DateTime getDateTime(final int column, final int row) {
-    return columns.get(column).getDateTime(row);
+    return columns.get(column).getDateTime(columnRow(row));
   }
 
   @Override
@@ -243,19 +326,33 @@ public class TupleBatch implements ReadableTable, Serializable {
 
     final int[] partitions = pf.partition(this);
 
-    BitSet[] resultBitSet = new BitSet[result.length];
-    for (int i = 0; i < partitions.length; i++) {
-      int p = partitions[i];
+    int[] partitionSizes = new int[result.length];
+    for (int p : partitions) {
       Preconditions.checkElementIndex(p, result.length);
-      if (resultBitSet[p] == null) {
-        resultBitSet[p] = new BitSet(result.length);
+      partitionSizes[p]++;
+    }
+
+    int[][] partitionRows = new int[result.length][];
+    for (int i = 0; i < result.length; i++) {
+      if (numTuples > 0 && partitionSizes[i] == numTuples) {
+        /* Shortcut: all tuples are in one partition. */
+        result[i] = this;
+        return result;
+      } else if (partitionSizes[i] > 0) {
+        partitionRows[i] = new int[partitionSizes[i]];
       }
-      resultBitSet[p].set(i);
+    }
+
+    Arrays.fill(partitionSizes, 0);
+    for (int i = 0; i < partitions.length; i++) {
+      int p = partitions[i];
+      partitionRows[p][partitionSizes[p]] = columnRow(i);
+      partitionSizes[p]++;
     }
 
     for (int i = 0; i < result.length; i++) {
-      if (resultBitSet[i] != null) {
-        result[i] = filter(resultBitSet[i]);
+      if (partitionRows[i] != null) {
+        result[i] = withSelection(partitionRows[i]);
       }
     }
     return result;
@@ -276,7 +373,7 @@ public class TupleBatch implements ReadableTable, Serializable {
     for (final int i : remainingColumns) {
       newColumns.add(columns.get(i));
     }
-    return new TupleBatch(resultSchema, newColumns.build(), numTuples, isEOI);
+    return new TupleBatch(resultSchema, newColumns.build(), numTuples, selection, isEOI);
   }
 
   /**
@@ -299,7 +396,7 @@ public class TupleBatch implements ReadableTable, Serializable {
     for (int i = 0; i < numTuples; i++) {
       sb.append("|\t");
       for (int j = 0; j < schema.numColumns(); j++) {
-        sb.append(columnTypes.get(j).toString(columns.get(j), i));
+        sb.append(columnTypes.get(j).toString(columns.get(j), columnRow(i)));
         sb.append("\t|\t");
       }
       sb.append('\n');
@@ -308,17 +405,56 @@ public class TupleBatch implements ReadableTable, Serializable {
   }
 
   /**
-   * @return the data columns.
+   * Unlike {@link #getDataColumns()}, this does not make views of the selected rows, so it is cheap enough to call for
+   * every cell.
+   * 
+   * @param column a column of this batch.
+   * @return the column if it is a {@link DictionaryStringColumn}, or null.
+   */
+  @Nullable
+  final DictionaryStringColumn getDictionaryColumn(final int column) {
+    final Column<?> c = columns.get(column);
+    if (c instanceof DictionaryStringColumn) {
+      return (DictionaryStringColumn) c;
+    }
+    return null;
+  }
+
+  /**
+   * @param column a column of this batch whose {@link #getDictionaryColumn(int)} is not null.
+   * @param row a row of this batch.
+   * @return the dictionary code of the value of the specified cell.
+   */
+  final int getDictionaryCode(final int column, final int row) {
+    return ((DictionaryStringColumn) columns.get(column)).getCode(columnRow(row));
+  }
+
+  /**
+   * @return the data columns. If this batch has a selection vector, these are views of the selected rows that share
+   *         the data.
    */
   public final ImmutableList<? extends Column<?>> getDataColumns() {
-    return columns;
+    if (selection == null) {
+      return columns;
+    }
+    if (selectedColumns == null) {
+      ImmutableList.Builder<Column<?>> newColumns = ImmutableList.builder();
+      for (Column<?> column : columns) {
+        newColumns.add(column.filter(selection));
+      }
+      selectedColumns = newColumns.build();
+    }
+    return selectedColumns;
   }
 
   /**
-   * @return a TransportMessage encoding the TupleBatch.
+   * @return a TransportMessage encoding the TupleBatch. Only the selected rows are serialized.
    * */
   public final TransportMessage toTransportMessage() {
-    return IPCUtils.normalDataMessage(columns, numTuples);
+    if (selection == null) {
+      return IPCUtils.normalDataMessage(columns, numTuples);
+    }
+    return IPCUtils.normalDataMessage(columns, new ImmutableIntArray(selection));
   }
 
   /**
@@ -350,12 +486,12 @@ public class TupleBatch implements ReadableTable, Serializable {
     Preconditions.checkArgument(numTuples() == column.size(), "Cannot append column of size %s to batch of size %s",
         column.size(), numTuples());
     Schema newSchema = Schema.appendColumn(schema, column.getType(), columnName);
-    List<Column<?>> newColumns = ImmutableList.<Column<?>> builder().addAll(columns).add(column).build();
+    List<Column<?>> newColumns = ImmutableList.<Column<?>> builder().addAll(getDataColumns()).add(column).build();
     return new TupleBatch(newSchema, newColumns, numTuples, isEOI);
   }
 
   @Override
   public ReadableColumn asColumn(final int column) {
-    return columns.get(column);
+    return getDataColumns().get(column);
   }
 }
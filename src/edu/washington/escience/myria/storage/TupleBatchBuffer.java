@@ -13,6 +13,7 @@ import com.google.common.base.Preconditions;
 import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.StringDictionary;
 import edu.washington.escience.myria.column.builder.ColumnBuilder;
 import edu.washington.escience.myria.column.builder.ColumnFactory;
 import edu.washington.escience.myria.column.builder.WritableColumn;
@@ -22,6 +23,8 @@ import edu.washington.escience.myria.util.MyriaUtils;
  * Used for creating TupleBatch objects on the fly. A helper class used in, e.g., the Scatter operator. Currently it
  * doesn't support random access to a specific cell. Use TupleBuffer instead.
  * 
+ * A batch is finished once it has {@link TupleBatch#BATCH_SIZE} tuples or once its tuples reach the byte budget of the
+ * buffer, whichever comes first.
  * 
  */
 public class TupleBatchBuffer implements AppendableTable {
@@ -44,6 +47,10 @@ public class TupleBatchBuffer implements AppendableTable {
   private long lastPoppedTime;
   /** the total number of tuples in readyTuples. */
   private int readyTuplesNum;
+  /** The dictionaries shared by the string columns of the batches, or null if they are not dictionary encoded. */
+  private final StringDictionary[] dictionaries;
+  /** The estimated number of bytes of the in-progress TupleBatch. */
+  private final BatchByteBudget budget;
 
   /**
    * Constructs an empty TupleBatchBuffer to hold tuples matching the specified Schema.
@@ -51,15 +58,46 @@ public class TupleBatchBuffer implements AppendableTable {
    * @param schema specified the columns of the emitted TupleBatch objects.
    */
   public TupleBatchBuffer(final Schema schema) {
+    this(schema, false);
+  }
+
+  /**
+   * Constructs an empty TupleBatchBuffer to hold tuples matching the specified Schema.
+   * 
+   * @param schema specified the columns of the emitted TupleBatch objects.
+   * @param dictionaryEncodeStrings whether the string columns are built as
+   *          {@link edu.washington.escience.myria.column.DictionaryStringColumn}s, sharing a dictionary across batches,
+   *          while they have few distinct values.
+   */
+  public TupleBatchBuffer(final Schema schema, final boolean dictionaryEncodeStrings) {
+    this(schema, dictionaryEncodeStrings, MyriaConstants.BATCH_SIZE_BYTES_DEFAULT_VALUE);
+  }
+
+  /**
+   * Constructs an empty TupleBatchBuffer to hold tuples matching the specified Schema.
+   * 
+   * @param schema specified the columns of the emitted TupleBatch objects.
+   * @param dictionaryEncodeStrings whether the string columns are built as
+   *          {@link edu.washington.escience.myria.column.DictionaryStringColumn}s, sharing a dictionary across batches,
+   *          while they have few distinct values.
+   * @param batchSizeBytes the estimated number of bytes at which a batch is finished.
+   */
+  public TupleBatchBuffer(final Schema schema, final boolean dictionaryEncodeStrings, final long batchSizeBytes) {
     this.schema = Objects.requireNonNull(schema);
     readyTuples = new LinkedList<TupleBatch>();
-    currentBuildingColumns = ColumnFactory.allocateColumns(schema);
+    if (dictionaryEncodeStrings) {
+      dictionaries = ColumnFactory.allocateDictionaries(schema);
+    } else {
+      dictionaries = null;
+    }
+    currentBuildingColumns = ColumnFactory.allocateColumns(schema, dictionaries);
     numColumns = schema.numColumns();
     columnsReady = new BitSet(numColumns);
     numColumnsReady = 0;
     currentInProgressTuples = 0;
     lastPoppedTime = System.nanoTime();
     readyTuplesNum = 0;
+    budget = new BatchByteBudget(schema, batchSizeBytes);
   }
 
   /**
@@ -99,6 +137,7 @@ public class TupleBatchBuffer implements AppendableTable {
     numColumnsReady = 0;
     readyTuples.clear();
     readyTuplesNum = 0;
+    budget.reset();
   }
 
   /**
@@ -112,11 +151,12 @@ public class TupleBatchBuffer implements AppendableTable {
 
     /* All columns are full, move to next line. */
     if (numColumnsReady == numColumns) {
+      budget.addTuple(currentBuildingColumns, currentInProgressTuples);
       currentInProgressTuples++;
       numColumnsReady = 0;
       columnsReady.clear();
       /* See if the current batch is full and finish it if so. */
-      if (currentInProgressTuples == TupleBatch.BATCH_SIZE) {
+      if (currentInProgressTuples == TupleBatch.BATCH_SIZE || budget.isFull()) {
         finishBatch();
       }
     }
@@ -142,8 +182,9 @@ public class TupleBatchBuffer implements AppendableTable {
 
     /* Update the metadata and refresh the building state. */
     readyTuplesNum += buildingColumns.get(0).size();
-    currentBuildingColumns = ColumnFactory.allocateColumns(schema);
+    currentBuildingColumns = ColumnFactory.allocateColumns(schema, dictionaries);
     currentInProgressTuples = 0;
+    budget.reset();
     return true;
   }
 
@@ -350,8 +391,9 @@ public class TupleBatchBuffer implements AppendableTable {
       TupleUtils.copyValue(rightTb.getDataColumns().get(rightAnswerColumns[i]), rightIdx, currentBuildingColumns.get(i
           + leftAnswerColumns.length));
     }
+    budget.addTuple(currentBuildingColumns, currentInProgressTuples);
     currentInProgressTuples++;
-    if (currentInProgressTuples == TupleBatch.BATCH_SIZE) {
+    if (currentInProgressTuples == TupleBatch.BATCH_SIZE || budget.isFull()) {
       finishBatch();
     }
   }
@@ -10,6 +10,7 @@ import org.joda.time.DateTime;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 
+import edu.washington.escience.myria.MyriaConstants;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.column.Column;
 import edu.washington.escience.myria.column.builder.ColumnBuilder;
@@ -22,6 +23,9 @@ import edu.washington.escience.myria.util.MyriaUtils;
  * is done appending, they may fetch the {@link #finalResult} of the {@link #TupleBuffer}, which finalizes it and they
  * may access its built contents as a list of {@link TupleBatch}. After finalizing, the {@link TupleBuffer} can no
  * longer have values appended to it.
+ * 
+ * A batch is finished once it has {@link TupleBatch#BATCH_SIZE} tuples or once its tuples reach the byte budget of the
+ * buffer, so the batches may have different sizes.
  */
 public class TupleBuffer implements ReadableTable, AppendableTable {
   /** Format of the emitted tuples. */
@@ -44,6 +48,10 @@ public class TupleBuffer implements ReadableTable, AppendableTable {
   private ImmutableList<TupleBatch> finalBatches;
   /** The number of tuples in this buffer. */
   private int numTuples;
+  /** The estimated number of bytes of the in-progress TupleBatch. */
+  private final BatchByteBudget budget;
+  /** Maps the rows of this buffer to the rows of the ready batches. */
+  private final BatchRowIndex index;
 
   /**
    * Constructs an empty TupleBuffer to hold tuples matching the specified Schema.
@@ -51,6 +59,16 @@ public class TupleBuffer implements ReadableTable, AppendableTable {
    * @param schema specified the columns of the emitted TupleBatch objects.
    */
   public TupleBuffer(final Schema schema) {
+    this(schema, MyriaConstants.BATCH_SIZE_BYTES_DEFAULT_VALUE);
+  }
+
+  /**
+   * Constructs an empty TupleBuffer to hold tuples matching the specified Schema.
+   * 
+   * @param schema specified the columns of the emitted TupleBatch objects.
+   * @param batchSizeBytes the estimated number of bytes at which a batch is finished.
+   */
+  public TupleBuffer(final Schema schema, final long batchSizeBytes) {
     this.schema = Objects.requireNonNull(schema, "schema");
     numColumns = schema.numColumns();
     Preconditions.checkArgument(numColumns > 0, "cannot create a buffer with no columns");
@@ -61,6 +79,8 @@ public class TupleBuffer implements ReadableTable, AppendableTable {
     currentBatchSize = 0;
     finalized = false;
     numTuples = 0;
+    budget = new BatchByteBudget(schema, batchSizeBytes);
+    index = new BatchRowIndex();
   }
 
   /**
@@ -68,8 +88,9 @@ public class TupleBuffer implements ReadableTable, AppendableTable {
    * 
    */
   private void finishBatch() {
-    Preconditions.checkState(currentBatchSize == TupleBatch.BATCH_SIZE,
-        "cannot finish a batch with %s < %s rows ready", currentBatchSize, TupleBatch.BATCH_SIZE);
+    Preconditions.checkState(currentBatchSize == TupleBatch.BATCH_SIZE || budget.isFull(),
+        "cannot finish a batch with %s < %s rows and %s < %s bytes ready", currentBatchSize, TupleBatch.BATCH_SIZE,
+        budget.getBytes(), budget.getMaxBytes());
     finishBatchEvenIfSmall();
     currentBatch = ColumnFactory.allocateColumns(schema);
   }
@@ -89,7 +110,9 @@ public class TupleBuffer implements ReadableTable, AppendableTable {
       columns.add(cb.build());
     }
     readyBatches.add(new TupleBatch(schema, columns.build()));
+    index.addBatch(currentBatchSize);
     currentBatchSize = 0;
+    budget.reset();
   }
 
   @Override
@@ -106,8 +129,8 @@ public class TupleBuffer implements ReadableTable, AppendableTable {
   @Deprecated
   public final Object getObject(final int column, final int row) {
     Preconditions.checkElementIndex(row, numTuples());
-    int batchIndex = row / TupleBatch.BATCH_SIZE;
-    int localRow = row % TupleBatch.BATCH_SIZE;
+    int batchIndex = index.getBatch(row);
+    int localRow = index.getRowInBatch(row, batchIndex);
     if (batchIndex < readyBatches.size()) {
       return readyBatches.get(batchIndex).getObject(column, localRow);
     }
@@ -117,8 +140,8 @@ public class TupleBuffer implements ReadableTable, AppendableTable {
   @Override
   public final boolean getBoolean(final int column, final int row) {
     Preconditions.checkElementIndex(row, numTuples());
-    int batchIndex = row / TupleBatch.BATCH_SIZE;
-    int localRow = row % TupleBatch.BATCH_SIZE;
+    int batchIndex = index.getBatch(row);
+    int localRow = index.getRowInBatch(row, batchIndex);
     if (batchIndex < readyBatches.size()) {
       return readyBatches.get(batchIndex).getBoolean(column, localRow);
     }
@@ -128,8 +151,8 @@ public class TupleBuffer implements ReadableTable, AppendableTable {
   @Override
   public final DateTime getDateTime(final int column, final int row) {
     Preconditions.checkElementIndex(row, numTuples());
-    int batchIndex = row / TupleBatch.BATCH_SIZE;
-    int localRow = row % TupleBatch.BATCH_SIZE;
+    int batchIndex = index.getBatch(row);
+    int localRow = index.getRowInBatch(row, batchIndex);
     if (batchIndex < readyBatches.size()) {
       return readyBatches.get(batchIndex).getDateTime(column, localRow);
     }
@@ -139,8 +162,8 @@ public class TupleBuffer implements ReadableTable, AppendableTable {
   @Override
   public final double getDouble(final int column, final int row) {
     Preconditions.checkElementIndex(row, numTuples());
-    int batchIndex = row / TupleBatch.BATCH_SIZE;
-    int localRow = row % TupleBatch.BATCH_SIZE;
+    int batchIndex = index.getBatch(row);
+    int localRow = index.getRowInBatch(row, batchIndex);
     if (batchIndex < readyBatches.size()) {
       return readyBatches.get(batchIndex).getDouble(column, localRow);
     }
@@ -150,8 +173,8 @@ public class TupleBuffer implements ReadableTable, AppendableTable {
   @Override
   public final float getFloat(final int column, final int row) {
     Preconditions.checkElementIndex(row, numTuples());
-    int batchIndex = row / TupleBatch.BATCH_SIZE;
-    int localRow = row % TupleBatch.BATCH_SIZE;
+    int batchIndex = index.getBatch(row);
+    int localRow = index.getRowInBatch(row, batchIndex);
     if (batchIndex < readyBatches.size()) {
       return readyBatches.get(batchIndex).getFloat(column, localRow);
     }
@@ -161,8 +184,8 @@ public class TupleBuffer implements ReadableTable, AppendableTable {
   @Override
   public final long getLong(final int column, final int row) {
     Preconditions.checkElementIndex(row, numTuples());
-    int batchIndex = row / TupleBatch.BATCH_SIZE;
-    int localRow = row % TupleBatch.BATCH_SIZE;
+    int batchIndex = index.getBatch(row);
+    int localRow = index.getRowInBatch(row, batchIndex);
     if (batchIndex < readyBatches.size()) {
       return readyBatches.get(batchIndex).getLong(column, localRow);
     }
@@ -172,8 +195,8 @@ public class TupleBuffer implements ReadableTable, AppendableTable {
   @Override
   public final int getInt(final int column, final int row) {
     Preconditions.checkElementIndex(row, numTuples());
-    int batchIndex = row / TupleBatch.BATCH_SIZE;
-    int localRow = row % TupleBatch.BATCH_SIZE;
+    int batchIndex = index.getBatch(row);
+    int localRow = index.getRowInBatch(row, batchIndex);
     if (batchIndex < readyBatches.size()) {
       return readyBatches.get(batchIndex).getInt(column, localRow);
     }
@@ -183,8 +206,8 @@ public class TupleBuffer implements ReadableTable, AppendableTable {
   @Override
   public final String getString(final int column, final int row) {
     Preconditions.checkElementIndex(row, numTuples());
-    int batchIndex = row / TupleBatch.BATCH_SIZE;
-    int localRow = row % TupleBatch.BATCH_SIZE;
+    int batchIndex = index.getBatch(row);
+    int localRow = index.getRowInBatch(row, batchIndex);
     if (batchIndex < readyBatches.size()) {
       return readyBatches.get(batchIndex).getString(column, localRow);
     }
@@ -273,11 +296,12 @@ public class TupleBuffer implements ReadableTable, AppendableTable {
     columnsReady.set(column, true);
     numColumnsReady++;
     if (numColumnsReady == numColumns) {
+      budget.addTuple(currentBatch, currentBatchSize);
       currentBatchSize++;
       numTuples++;
       numColumnsReady = 0;
       columnsReady.clear();
-      if (currentBatchSize == TupleBatch.BATCH_SIZE) {
+      if (currentBatchSize == TupleBatch.BATCH_SIZE || budget.isFull()) {
         finishBatch();
       }
     }
@@ -3,6 +3,7 @@ package edu.washington.escience.myria.storage;
 import com.google.common.base.Preconditions;
 
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.DictionaryStringColumn;
 import edu.washington.escience.myria.column.builder.ColumnBuilder;
 
 /**
@@ -236,6 +237,32 @@ public final class TupleUtils {
     return tupleCompare(table, columnCompareIndexes, rowIdx, table, columnCompareIndexes, rowIdx2, ascending);
   }
 
+  /**
+   * Compare two string cells. Cells of {@link DictionaryStringColumn}s of batches that share a dictionary are compared
+   * by their codes.
+   * 
+   * @param table1 the table holding the first cell
+   * @param column1 the column of the first cell
+   * @param row1 the row of the first cell
+   * @param table2 the table holding the second cell
+   * @param column2 the column of the second cell
+   * @param row2 the row of the second cell
+   * @return true if the cells hold equal strings.
+   */
+  private static boolean stringEquals(final ReadableTable table1, final int column1, final int row1,
+      final ReadableTable table2, final int column2, final int row2) {
+    if (table1 instanceof TupleBatch && table2 instanceof TupleBatch) {
+      final TupleBatch tb1 = (TupleBatch) table1;
+      final TupleBatch tb2 = (TupleBatch) table2;
+      final DictionaryStringColumn d1 = tb1.getDictionaryColumn(column1);
+      final DictionaryStringColumn d2 = tb2.getDictionaryColumn(column2);
+      if (d1 != null && d2 != null && d1.getDictionary() == d2.getDictionary()) {
+        return tb1.getDictionaryCode(column1, row1) == tb2.getDictionaryCode(column2, row2);
+      }
+    }
+    return table1.getString(column1, row1).equals(table2.getString(column2, row2));
+  }
+
   /**
    * Check if a tuple in uniqueTuples equals to the comparing tuple (cntTuple).
    * 
@@ -281,7 +308,7 @@ public final class TupleUtils {
           }
           break;
         case STRING_TYPE:
-          if (!table1.getString(compareColumns1[i], row1).equals(table2.getString(compareColumns2[i], row2))) {
+          if (!stringEquals(table1, compareColumns1[i], row1, table2, compareColumns2[i], row2)) {
             return false;
           }
           break;
@@ -337,7 +364,7 @@ public final class TupleUtils {
           }
           break;
         case STRING_TYPE:
-          if (!table1.getString(i, row1).equals(table2.getString(i, row2))) {
+          if (!stringEquals(table1, i, row1, table2, i, row2)) {
             return false;
           }
           break;
@@ -396,7 +423,7 @@ public final class TupleUtils {
           }
           break;
         case STRING_TYPE:
-          if (!table1.getString(compareColumns[i], row1).equals(table2.getString(i, index))) {
+          if (!stringEquals(table1, compareColumns[i], row1, table2, i, index)) {
             return false;
           }
           break;
@@ -0,0 +1,70 @@
+package edu.washington.escience.myria.util;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
+
+/**
+ * The versions of the functions that {@link HashUtils} uses to hash tuples. The version used by a deployment is stored
+ * in its catalogs under {@link MyriaSystemConfigKeys#HASH_SCHEME_VERSION}, because relations that were hash-partitioned
+ * when they were stored are only partitioned the same way by the same version.
+ */
+public enum HashScheme {
+  /** Guava's 128-bit murmur3 over the values, truncated to 32 bits. Catalogs without a version use this one. */
+  MURMUR3_128(1),
+  /** 32-bit murmur3 rounds over the primitive bits of the values, computed a column at a time. */
+  MURMUR3_32_PRIMITIVE(2);
+
+  /** The scheme used when a deployment does not specify one, i.e., by deployments that predate versioning. */
+  public static final HashScheme LEGACY = MURMUR3_128;
+  /** The scheme used by new deployments. */
+  public static final HashScheme CURRENT = MURMUR3_32_PRIMITIVE;
+
+  /** The version number, as stored in the catalog. */
+  private final int version;
+
+  /**
+   * @param version the version number, as stored in the catalog.
+   */
+  HashScheme(final int version) {
+    this.version = version;
+  }
+
+  /**
+   * @return the version number, as stored in the catalog.
+   */
+  public int getVersion() {
+    return version;
+  }
+
+  /**
+   * @param version a version number, as stored in the catalog.
+   * @return the scheme with the specified version number.
+   */
+  public static HashScheme fromVersion(final int version) {
+    for (HashScheme scheme : values()) {
+      if (scheme.version == version) {
+        return scheme;
+      }
+    }
+    throw new IllegalArgumentException("Unknown hash scheme version " + version);
+  }
+
+  /**
+   * @param execEnvVars the execution environment variables of an operator, which hold the configuration of its worker.
+   *          May be null.
+   * @return the scheme configured for the worker, or {@link #LEGACY} if none is configured.
+   */
+  public static HashScheme fromExecEnvVars(@Nullable final ImmutableMap<String, Object> execEnvVars) {
+    if (execEnvVars == null) {
+      return LEGACY;
+    }
+    Object version = execEnvVars.get(MyriaSystemConfigKeys.HASH_SCHEME_VERSION);
+    if (version == null) {
+      return LEGACY;
+    }
+    return fromVersion(Integer.parseInt(version.toString()));
+  }
+}
@@ -2,16 +2,24 @@ package edu.washington.escience.myria.util;
 
 import java.util.Objects;
 
+import javax.annotation.Nullable;
+
 import com.google.common.base.Preconditions;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 
+import edu.washington.escience.myria.column.DictionaryStringColumn;
+import edu.washington.escience.myria.column.StringDictionary;
 import edu.washington.escience.myria.storage.ReadableColumn;
 import edu.washington.escience.myria.storage.ReadableTable;
 
 /**
  * A utility class for hashing tuples and parts of tuples.
+ * 
+ * The methods that hash one row at a time, and those that hash a whole table a column at a time into an
+ * <code>int[]</code>, use {@link HashScheme#CURRENT} and do not allocate. Partition functions, whose results must match
+ * the partitioning of stored relations, take the {@link HashScheme} of the deployment.
  */
 public final class HashUtils {
   /** Utility classes have no constructors. */
@@ -21,7 +29,7 @@ public final class HashUtils {
   /** picked from http://planetmath.org/goodhashtableprimes. */
   private static final int[] SEEDS = { 243, 402653189, 24593, 786433, 3145739, 12289, 49157, 6151, 98317, 1572869, };
 
-  /** The hash functions. */
+  /** The hash functions of {@link HashScheme#MURMUR3_128}. */
   private static final HashFunction[] HASH_FUNCTIONS = {
       Hashing.murmur3_128(SEEDS[0]), Hashing.murmur3_128(SEEDS[1]), Hashing.murmur3_128(SEEDS[2]),
       Hashing.murmur3_128(SEEDS[3]), Hashing.murmur3_128(SEEDS[4]), Hashing.murmur3_128(SEEDS[5]),
@@ -33,6 +41,13 @@ public final class HashUtils {
    */
   public static final int NUM_OF_HASHFUNCTIONS = 10;
 
+  /** Murmur3 constant. */
+  private static final int C1 = 0xcc9e2d51;
+  /** Murmur3 constant. */
+  private static final int C2 = 0x1b873593;
+  /** Murmur3 constant. */
+  private static final int N = 0xe6546b64;
+
   /**
    * Compute the hash code of all the values in the specified row, in column order.
    * 
@@ -41,11 +56,12 @@ public final class HashUtils {
    * @return the hash code of all the values in the specified row, in column order
    */
   public static int hashRow(final ReadableTable table, final int row) {
-    Hasher hasher = HASH_FUNCTIONS[0].newHasher();
-    for (int i = 0; i < table.numColumns(); ++i) {
-      addValue(hasher, table, i, row);
+    int h = SEEDS[0];
+    final int numColumns = table.numColumns();
+    for (int i = 0; i < numColumns; ++i) {
+      h = addValue(h, table.asColumn(i), row);
     }
-    return hasher.hash().asInt();
+    return finish(h, numColumns);
   }
 
   /**
@@ -57,9 +73,7 @@ public final class HashUtils {
    * @return the hash code of the specified value
    */
   public static int hashValue(final ReadableTable table, final int column, final int row) {
-    Hasher hasher = HASH_FUNCTIONS[0].newHasher();
-    addValue(hasher, table, column, row);
-    return hasher.hash().asInt();
+    return hashValue(table, column, row, 0);
   }
 
   /**
@@ -72,10 +86,8 @@ public final class HashUtils {
    * @return hash code of the specified seed
    */
   public static int hashValue(final ReadableTable table, final int column, final int row, final int seedIndex) {
-    Preconditions.checkPositionIndex(seedIndex, NUM_OF_HASHFUNCTIONS);
-    Hasher hasher = HASH_FUNCTIONS[seedIndex].newHasher();
-    addValue(hasher, table, column, row);
-    return hasher.hash().asInt();
+    Preconditions.checkElementIndex(seedIndex, NUM_OF_HASHFUNCTIONS);
+    return finish(addValue(SEEDS[seedIndex], table.asColumn(column), row), 1);
   }
 
   /**
@@ -87,30 +99,235 @@ public final class HashUtils {
    * @return the hash code of the specified columns in the specified row of the given table
    */
   public static int hashSubRow(final ReadableTable table, final int[] hashColumns, final int row) {
+    return hashSubRow(table, hashColumns, row, 0);
+  }
+
+  /**
+   * Compute the hash code of the specified columns in the specified row of the given table with specific hashcode.
+   * 
+   * @param table the table containing the values to be hashed
+   * @param hashColumns the columns to be hashed. Order matters
+   * @param row the row containing the values to be hashed
+   * @param seedIndex the index of the chosen hashcode
+   * @return hash code of the specified seed
+   */
+  public static int hashSubRow(final ReadableTable table, final int[] hashColumns, final int row, final int seedIndex) {
     Objects.requireNonNull(table, "table");
     Objects.requireNonNull(hashColumns, "hashColumns");
-    Hasher hasher = HASH_FUNCTIONS[0].newHasher();
+    Preconditions.checkElementIndex(seedIndex, NUM_OF_HASHFUNCTIONS);
+    int h = SEEDS[seedIndex];
     for (int column : hashColumns) {
-      addValue(hasher, table, column, row);
+      h = addValue(h, table.asColumn(column), row);
     }
-    return hasher.hash().asInt();
+    return finish(h, hashColumns.length);
   }
 
   /**
-   * Add the value at the specified row and column to the specified hasher.
+   * Compute the hash codes of the specified columns of all rows of the given table, a column at a time. The result is
+   * the same as that of {@link #hashSubRow(ReadableTable, int[], int)} for each row.
    * 
-   * @param hasher the hasher
-   * @param table the table containing the value
+   * @param table the table containing the values to be hashed
+   * @param hashColumns the columns to be hashed. Order matters
+   * @param hashes an array to hold the hash codes, which is reused if it holds at least one per row. May be null.
+   * @return the hash code of each row, in the first <code>table.numTuples()</code> elements of <code>hashes</code>, or
+   *         of a new array if <code>hashes</code> is too small
+   */
+  public static int[] hashSubRows(final ReadableTable table, final int[] hashColumns, @Nullable final int[] hashes) {
+    return hashSubRows(table, hashColumns, 0, HashScheme.CURRENT, hashes);
+  }
+
+  /**
+   * Compute the hash codes of all the values of all rows of the given table, in column order, a column at a time. The
+   * result is the same as that of {@link #hashRow(ReadableTable, int)} for each row.
+   * 
+   * @param table the table containing the values to be hashed
+   * @param hashes an array to hold the hash codes, which is reused if it holds at least one per row. May be null.
+   * @return the hash code of each row, in the first <code>table.numTuples()</code> elements of <code>hashes</code>, or
+   *         of a new array if <code>hashes</code> is too small
+   */
+  public static int[] hashRows(final ReadableTable table, @Nullable final int[] hashes) {
+    final int[] columns = new int[table.numColumns()];
+    for (int i = 0; i < columns.length; ++i) {
+      columns[i] = i;
+    }
+    return hashSubRows(table, columns, 0, HashScheme.CURRENT, hashes);
+  }
+
+  /**
+   * Compute the hash codes of the specified columns of all rows of the given table with the specified hash scheme and
+   * hashcode.
+   * 
+   * @param table the table containing the values to be hashed
+   * @param hashColumns the columns to be hashed. Order matters
+   * @param seedIndex the index of the chosen hashcode
+   * @param scheme the hash scheme
+   * @param hashes an array to hold the hash codes, which is reused if it holds at least one per row. May be null.
+   * @return the hash code of each row, in the first <code>table.numTuples()</code> elements of <code>hashes</code>, or
+   *         of a new array if <code>hashes</code> is too small
+   */
+  public static int[] hashSubRows(final ReadableTable table, final int[] hashColumns, final int seedIndex,
+      final HashScheme scheme, @Nullable final int[] hashes) {
+    Objects.requireNonNull(table, "table");
+    Objects.requireNonNull(hashColumns, "hashColumns");
+    Objects.requireNonNull(scheme, "scheme");
+    Preconditions.checkElementIndex(seedIndex, NUM_OF_HASHFUNCTIONS);
+    final int numTuples = table.numTuples();
+    int[] result = hashes;
+    if (result == null || result.length < numTuples) {
+      result = new int[numTuples];
+    }
+
+    if (scheme == HashScheme.MURMUR3_128) {
+      for (int row = 0; row < numTuples; ++row) {
+        Hasher hasher = HASH_FUNCTIONS[seedIndex].newHasher();
+        for (int column : hashColumns) {
+          addValue(hasher, table.asColumn(column), row);
+        }
+        result[row] = hasher.hash().asInt();
+      }
+      return result;
+    }
+
+    final int seed = SEEDS[seedIndex];
+    for (int row = 0; row < numTuples; ++row) {
+      result[row] = seed;
+    }
+    for (int column : hashColumns) {
+      addColumn(result, table.asColumn(column), numTuples);
+    }
+    for (int row = 0; row < numTuples; ++row) {
+      result[row] = finish(result[row], hashColumns.length);
+    }
+    return result;
+  }
+
+  /**
+   * Mix the values of a column into the hash codes of its rows.
+   * 
+   * @param hashes the hash codes of the rows so far
+   * @param column the column
+   * @param numTuples the number of rows
+   */
+  private static void addColumn(final int[] hashes, final ReadableColumn column, final int numTuples) {
+    switch (column.getType()) {
+      case BOOLEAN_TYPE:
+        for (int row = 0; row < numTuples; ++row) {
+          hashes[row] = round(hashes[row], column.getBoolean(row) ? 1 : 0);
+        }
+        return;
+      case DATETIME_TYPE:
+        for (int row = 0; row < numTuples; ++row) {
+          hashes[row] = round(hashes[row], column.getDateTime(row).getMillis());
+        }
+        return;
+      case DOUBLE_TYPE:
+        for (int row = 0; row < numTuples; ++row) {
+          hashes[row] = round(hashes[row], Double.doubleToLongBits(column.getDouble(row)));
+        }
+        return;
+      case FLOAT_TYPE:
+        for (int row = 0; row < numTuples; ++row) {
+          hashes[row] = round(hashes[row], Float.floatToIntBits(column.getFloat(row)));
+        }
+        return;
+      case INT_TYPE:
+        for (int row = 0; row < numTuples; ++row) {
+          hashes[row] = round(hashes[row], column.getInt(row));
+        }
+        return;
+      case LONG_TYPE:
+        for (int row = 0; row < numTuples; ++row) {
+          hashes[row] = round(hashes[row], column.getLong(row));
+        }
+        return;
+      case STRING_TYPE:
+        if (column instanceof DictionaryStringColumn) {
+          final DictionaryStringColumn dictionaryColumn = (DictionaryStringColumn) column;
+          final StringDictionary dictionary = dictionaryColumn.getDictionary();
+          for (int row = 0; row < numTuples; ++row) {
+            hashes[row] = round(hashes[row], dictionary.getHashCode(dictionaryColumn.getCode(row)));
+          }
+          return;
+        }
+        for (int row = 0; row < numTuples; ++row) {
+          hashes[row] = round(hashes[row], column.getString(row).hashCode());
+        }
+        return;
+    }
+    throw new UnsupportedOperationException("Hashing a column of type " + column.getType());
+  }
+
+  /**
+   * Mix the value at the specified row of a column into a hash code.
+   * 
+   * @param h the hash code so far
    * @param column the column containing the value
    * @param row the row containing the value
-   * @return the hasher
+   * @return the new hash code
+   */
+  private static int addValue(final int h, final ReadableColumn column, final int row) {
+    switch (column.getType()) {
+      case BOOLEAN_TYPE:
+        return round(h, column.getBoolean(row) ? 1 : 0);
+      case DATETIME_TYPE:
+        return round(h, column.getDateTime(row).getMillis());
+      case DOUBLE_TYPE:
+        return round(h, Double.doubleToLongBits(column.getDouble(row)));
+      case FLOAT_TYPE:
+        return round(h, Float.floatToIntBits(column.getFloat(row)));
+      case INT_TYPE:
+        return round(h, column.getInt(row));
+      case LONG_TYPE:
+        return round(h, column.getLong(row));
+      case STRING_TYPE:
+        return round(h, column.getString(row).hashCode());
+    }
+    throw new UnsupportedOperationException("Hashing a column of type " + column.getType());
+  }
+
+  /**
+   * One round of 32-bit murmur3.
+   * 
+   * @param h the hash code so far
+   * @param value the value to mix in
+   * @return the new hash code
+   */
+  private static int round(final int h, final int value) {
+    int k = value * C1;
+    k = Integer.rotateLeft(k, 15) * C2;
+    return Integer.rotateLeft(h ^ k, 13) * 5 + N;
+  }
+
+  /**
+   * Two rounds of 32-bit murmur3, for the low and high halves of a value.
+   * 
+   * @param h the hash code so far
+   * @param value the value to mix in
+   * @return the new hash code
+   */
+  private static int round(final int h, final long value) {
+    return round(round(h, (int) value), (int) (value >>> 32));
+  }
+
+  /**
+   * The finalizer of 32-bit murmur3, so that every bit of the hash code depends on every bit of the values.
+   * 
+   * @param hash the hash code so far
+   * @param numValues the number of values that were mixed in
+   * @return the final hash code
    */
-  private static Hasher addValue(final Hasher hasher, final ReadableTable table, final int column, final int row) {
-    return addValue(hasher, table.asColumn(column), row);
+  private static int finish(final int hash, final int numValues) {
+    int h = hash ^ numValues;
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
   }
 
   /**
-   * Add the value at the specified row and column to the specified hasher.
+   * Add the value at the specified row and column to the specified hasher, for {@link HashScheme#MURMUR3_128}.
    * 
    * @param hasher the hasher
    * @param column the column containing the value
@@ -329,7 +329,7 @@ public final class IPCUtils {
    * @param validIndices which tuples are valid in the columns.
    * @return a data TM encoding the data columns.
    * */
-  public static TransportMessage normalDataMessage(final List<Column<?>> dataColumns,
+  public static TransportMessage normalDataMessage(final List<? extends Column<?>> dataColumns,
       final ImmutableIntArray validIndices) {
     final ColumnMessage[] columnProtos = new ColumnMessage[dataColumns.size()];
 
@@ -0,0 +1,15 @@
+package edu.washington.escience.myria.util.concurrent;
+
+import java.util.concurrent.Callable;
+
+/**
+ * A {@link Runnable} or {@link Callable} that a {@link WorkStealingFairShareExecutionPool} schedules on behalf of a
+ * {@link SchedulingGroup}. The other tasks belong to the default group of the pool.
+ * */
+public interface FairShareTask {
+
+  /**
+   * @return the group of the task.
+   * */
+  SchedulingGroup getSchedulingGroup();
+}
@@ -0,0 +1,107 @@
+package edu.washington.escience.myria.util.concurrent;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The tasks of one query, as seen by a {@link WorkStealingFairShareExecutionPool}. The ready tasks of the groups with
+ * the highest priority run first. Among the groups of the same priority, the threads are shared in proportion to the
+ * weights of the groups: each group has a virtual runtime that grows with the time its tasks run divided by its weight,
+ * and the tasks of the group that is the most behind run first.
+ * */
+public final class SchedulingGroup {
+
+  /**
+   * The priority of the groups that do not choose one.
+   * */
+  public static final int DEFAULT_PRIORITY = 0;
+
+  /**
+   * The weight of the groups that do not choose one.
+   * */
+  public static final int DEFAULT_WEIGHT = 100;
+
+  /**
+   * The priority of the group, higher runs first.
+   * */
+  private final int priority;
+
+  /**
+   * The share of the group among the groups of the same priority.
+   * */
+  private final int weight;
+
+  /**
+   * The virtual runtime in nanoseconds, i.e., the runtime scaled by {@link #DEFAULT_WEIGHT} / {@link #weight}. Guarded
+   * by this.
+   * */
+  private long virtualRuntime;
+
+  /**
+   * The total runtime of the tasks of the group in nanoseconds. Guarded by this.
+   * */
+  private long runtime;
+
+  /**
+   * A group with the default priority and weight.
+   * */
+  public SchedulingGroup() {
+    this(DEFAULT_PRIORITY, DEFAULT_WEIGHT);
+  }
+
+  /**
+   * @param priority the priority of the group, higher runs first.
+   * @param weight the share of the group among the groups of the same priority.
+   * */
+  public SchedulingGroup(final int priority, final int weight) {
+    Preconditions.checkArgument(weight > 0, "weight must be positive");
+    this.priority = priority;
+    this.weight = weight;
+    virtualRuntime = 0;
+    runtime = 0;
+  }
+
+  /**
+   * @return the priority of the group, higher runs first.
+   * */
+  public int getPriority() {
+    return priority;
+  }
+
+  /**
+   * @return the share of the group among the groups of the same priority.
+   * */
+  public int getWeight() {
+    return weight;
+  }
+
+  /**
+   * @return the total runtime of the tasks of the group in nanoseconds.
+   * */
+  public synchronized long getRuntime() {
+    return runtime;
+  }
+
+  /**
+   * Called when a task of the group becomes ready. A group that has been idle for a while is moved up to the virtual
+   * clock of the pool, so that it does not take the threads from the other groups until it catches up.
+   * 
+   * @param virtualClock the virtual runtime of the last task the pool started.
+   * @return the virtual runtime at which the task is queued.
+   * */
+  synchronized long virtualStart(final long virtualClock) {
+    if (virtualRuntime < virtualClock) {
+      virtualRuntime = virtualClock;
+    }
+    return virtualRuntime;
+  }
+
+  /**
+   * Called when a task of the group has run.
+   * 
+   * @param nanos the runtime of the task in nanoseconds.
+   * */
+  synchronized void charge(final long nanos) {
+    runtime += nanos;
+    virtualRuntime += nanos * DEFAULT_WEIGHT / weight;
+  }
+}
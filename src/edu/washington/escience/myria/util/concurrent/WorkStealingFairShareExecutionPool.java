@@ -0,0 +1,557 @@
+package edu.washington.escience.myria.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.util.internal.ConcurrentIdentityWeakKeyHashMap;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A fixed-sized pool with a run queue per thread, from which the idle threads steal.
+ * <ol>
+ * <li>The tasks submitted through the same {@link Runnable} or {@link Callable} instance are executed one at a time, in
+ * the order of their submissions, and all in the thread that executed the first one. The tasks may keep resources that
+ * are confined to a thread, e.g., SQLite connections, from one execution to the next.</li>
+ * <li>The ready tasks of the {@link SchedulingGroup}s with the highest priority run first. Among the groups of the
+ * same priority, the tasks of the group with the least virtual runtime run first, so that the threads are shared in
+ * proportion to the weights of the groups. The tasks that are not {@link FairShareTask}s belong to a default group.
+ * </li>
+ * <li>Each thread has a queue of the tasks that have not started, from which the other threads may steal, and a queue
+ * of the tasks that have started in it, which only it runs. A thread takes the best of the heads of its own queues and
+ * of the queue of not started tasks of another thread, and steals from the other queues of not started tasks when its
+ * own queues are empty. A task that has not started and is submitted from a thread of the pool goes to the queue of
+ * that thread, the other tasks that have not started are spread round-robin.</li>
+ * </ol>
+ * Each submission is one scheduling decision, so the callers submit a task when it is ready to make progress and the
+ * task returns once it cannot, instead of waiting in the thread.
+ * */
+public class WorkStealingFairShareExecutionPool extends AbstractExecutorService {
+
+  /**
+   * The order in which the queued tasks run: priority, then virtual runtime, then submission.
+   * */
+  private static final Comparator<TaskSequence> RUN_ORDER = new Comparator<TaskSequence>() {
+    @Override
+    public int compare(final TaskSequence o1, final TaskSequence o2) {
+      if (o1.group.getPriority() != o2.group.getPriority()) {
+        return o1.group.getPriority() > o2.group.getPriority() ? -1 : 1;
+      }
+      if (o1.virtualStart != o2.virtualStart) {
+        return o1.virtualStart < o2.virtualStart ? -1 : 1;
+      }
+      return Long.compare(o1.queueOrder, o2.queueOrder);
+    }
+  };
+
+  /**
+   * The run queues of the sequences that have not started, one per thread. Each is guarded by itself.
+   * */
+  private final PriorityQueue<TaskSequence>[] queues;
+
+  /**
+   * The run queues of the sequences that have started, one per thread, which only that thread runs. Each is guarded
+   * by itself.
+   * */
+  private final PriorityQueue<TaskSequence>[] homeQueues;
+
+  /**
+   * The threads.
+   * */
+  private final Thread[] threads;
+
+  /**
+   * The index of the queue of the current thread, if it is a thread of this pool.
+   * */
+  private final ThreadLocal<Integer> ownQueue = new ThreadLocal<Integer>();
+
+  /**
+   * {@link Runnable} or {@link Callable} -> the sequence of its submissions.
+   * */
+  private final ConcurrentMap<Object, TaskSequence> sequences =
+      new ConcurrentIdentityWeakKeyHashMap<Object, TaskSequence>();
+
+  /**
+   * The group of the tasks that are not {@link FairShareTask}s.
+   * */
+  private final SchedulingGroup defaultGroup = new SchedulingGroup();
+
+  /**
+   * The number of queued sequences over all the {@link #queues}, i.e., those that any thread may run.
+   * */
+  private final AtomicInteger numQueued = new AtomicInteger(0);
+
+  /**
+   * The idle threads wait on it.
+   * */
+  private final Object idleLock = new Object();
+
+  /**
+   * The number of idle threads. Written under {@link #idleLock}.
+   * */
+  private volatile int numIdle = 0;
+
+  /**
+   * The queue of the next task submitted from outside of the pool.
+   * */
+  private final AtomicInteger nextQueue = new AtomicInteger(0);
+
+  /**
+   * The submission counter, to break the ties in the {@link #RUN_ORDER}.
+   * */
+  private final AtomicLong queueOrder = new AtomicLong(0);
+
+  /**
+   * The virtual runtime of the last task started, see {@link SchedulingGroup#virtualStart(long)}.
+   * */
+  private final AtomicLong virtualClock = new AtomicLong(0);
+
+  /**
+   * The number of tasks taken from the queue of another thread.
+   * */
+  private final AtomicLong numSteals = new AtomicLong(0);
+
+  /**
+   * If the pool is shutdown.
+   * */
+  private volatile boolean shutdown = false;
+
+  /**
+   * If the pool is shutdown and the queued tasks are dropped.
+   * */
+  private volatile boolean stopped = false;
+
+  /**
+   * Counted down by each thread when it exits.
+   * */
+  private final CountDownLatch terminated;
+
+  /**
+   * @param poolSize thread pool size
+   * */
+  public WorkStealingFairShareExecutionPool(final int poolSize) {
+    this(poolSize, null);
+  }
+
+  /**
+   * @param poolSize thread pool size
+   * @param threadFactory thread factory
+   * */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  public WorkStealingFairShareExecutionPool(final int poolSize, final ThreadFactory threadFactory) {
+    Preconditions.checkArgument(poolSize > 0);
+    ThreadFactory tf = threadFactory;
+    if (tf == null) {
+      tf = new ThreadAffinityExecutorService.DefaultThreadFactory();
+    }
+    /* Java cannot create an array of a generic type, and each element is set to a PriorityQueue<TaskSequence> below. */
+    queues = new PriorityQueue[poolSize];
+    homeQueues = new PriorityQueue[poolSize];
+    threads = new Thread[poolSize];
+    terminated = new CountDownLatch(poolSize);
+    for (int i = 0; i < poolSize; i++) {
+      queues[i] = new PriorityQueue<TaskSequence>(16, RUN_ORDER);
+      homeQueues[i] = new PriorityQueue<TaskSequence>(16, RUN_ORDER);
+      threads[i] = tf.newThread(new Runner(i));
+    }
+    for (Thread t : threads) {
+      t.start();
+    }
+  }
+
+  /**
+   * @return the number of tasks that a thread took from the queue of another thread. Only the tasks that have not
+   *         started are taken.
+   * */
+  public long getNumSteals() {
+    return numSteals.get();
+  }
+
+  @Override
+  public void shutdown() {
+    shutdown = true;
+    synchronized (idleLock) {
+      idleLock.notifyAll();
+    }
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    stopped = true;
+    shutdown();
+    ArrayList<Runnable> r = new ArrayList<Runnable>();
+    drain(queues, r);
+    drain(homeQueues, r);
+    for (Thread t : threads) {
+      t.interrupt();
+    }
+    return r;
+  }
+
+  /**
+   * Remove all the sequences from the queues.
+   * 
+   * @param queueArray the queues.
+   * @param dest receives the tasks that have not run.
+   * */
+  private static void drain(final PriorityQueue<TaskSequence>[] queueArray, final List<Runnable> dest) {
+    for (PriorityQueue<TaskSequence> queue : queueArray) {
+      synchronized (queue) {
+        for (TaskSequence sequence : queue) {
+          dest.addAll(sequence.tasks);
+          sequence.tasks.clear();
+        }
+        queue.clear();
+      }
+    }
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return shutdown;
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return terminated.getCount() == 0;
+  }
+
+  @Override
+  public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+    return terminated.await(timeout, unit);
+  }
+
+  @Override
+  public void execute(final Runnable command) {
+    this.submit(command);
+  }
+
+  @Override
+  public ExecutionFuture<?> submit(final Runnable task) {
+    return submit0(task, Executors.callable(task));
+  }
+
+  @Override
+  public <T> ExecutionFuture<T> submit(final Runnable task, final T result) {
+    return submit0(task, Executors.callable(task, result));
+  }
+
+  @Override
+  public <T> ExecutionFuture<T> submit(final Callable<T> task) {
+    return submit0(task, task);
+  }
+
+  /**
+   * @param task the submitted {@link Runnable} or {@link Callable}.
+   * @param callable the task as a {@link Callable}.
+   * @param <T> the return type of the task.
+   * @return the future of the submission.
+   * */
+  private <T> ExecutionFuture<T> submit0(final Object task, final Callable<T> callable) {
+    Preconditions.checkNotNull(task);
+    if (shutdown) {
+      throw new RejectedExecutionException("The pool is shutdown");
+    }
+    TaskSequence sequence = sequences.get(task);
+    if (sequence == null) {
+      SchedulingGroup group = defaultGroup;
+      if (task instanceof FairShareTask) {
+        group = Preconditions.checkNotNull(((FairShareTask) task).getSchedulingGroup(), "schedulingGroup");
+      }
+      sequence = new TaskSequence(group);
+      TaskSequence old = sequences.putIfAbsent(task, sequence);
+      if (old != null) {
+        sequence = old;
+      }
+    }
+    ExecutableExecutionFuture<T> r = new ExecutableExecutionFuture<T>(callable, true);
+    sequence.tasks.add(r);
+    if (sequence.scheduled.compareAndSet(false, true)) {
+      Integer own = ownQueue.get();
+      if (own == null && sequence.home < 0) {
+        own = (nextQueue.getAndIncrement() & Integer.MAX_VALUE) % queues.length;
+      }
+      enqueue(sequence, own);
+    }
+    return r;
+  }
+
+  /**
+   * Queue a sequence that has a task to run. A sequence that has started goes to the home queue of its thread.
+   * 
+   * @param sequence the sequence.
+   * @param queueIndex the index of the queue if the sequence has not started.
+   * */
+  private void enqueue(final TaskSequence sequence, final Integer queueIndex) {
+    sequence.virtualStart = sequence.group.virtualStart(virtualClock.get());
+    sequence.queueOrder = queueOrder.getAndIncrement();
+    final int home = sequence.home;
+    if (home >= 0) {
+      PriorityQueue<TaskSequence> queue = homeQueues[home];
+      synchronized (queue) {
+        queue.add(sequence);
+      }
+      if (numIdle > 0) {
+        synchronized (idleLock) {
+          /* only the home thread may run it, and it is not known which idle thread is the home thread. */
+          idleLock.notifyAll();
+        }
+      }
+      return;
+    }
+    PriorityQueue<TaskSequence> queue = queues[queueIndex];
+    synchronized (queue) {
+      queue.add(sequence);
+    }
+    numQueued.incrementAndGet();
+    if (numIdle > 0) {
+      synchronized (idleLock) {
+        idleLock.notify();
+      }
+    }
+  }
+
+  /**
+   * @param queue a run queue.
+   * @return the head of the queue, or null if the queue is empty.
+   * */
+  private TaskSequence poll(final PriorityQueue<TaskSequence> queue) {
+    TaskSequence sequence;
+    synchronized (queue) {
+      sequence = queue.poll();
+    }
+    if (sequence != null) {
+      if (sequence.home < 0) {
+        numQueued.decrementAndGet();
+      }
+      long clock = virtualClock.get();
+      while (clock < sequence.virtualStart && !virtualClock.compareAndSet(clock, sequence.virtualStart)) {
+        clock = virtualClock.get();
+      }
+    }
+    return sequence;
+  }
+
+  /**
+   * @param queue a run queue.
+   * @return the head of the queue, or null if the queue is empty.
+   * */
+  private static TaskSequence peek(final PriorityQueue<TaskSequence> queue) {
+    synchronized (queue) {
+      return queue.peek();
+    }
+  }
+
+  /**
+   * @param a the head of a queue, or null.
+   * @param b the head of another queue, or null.
+   * @return if a runs before b.
+   * */
+  private static boolean runsBefore(final TaskSequence a, final TaskSequence b) {
+    return a != null && (b == null || RUN_ORDER.compare(a, b) < 0);
+  }
+
+  /**
+   * @param self the index of the queues of the calling thread.
+   * @param victim the index of the other queue to compare with.
+   * @return the next sequence to run, or null if the queues of the calling thread and the queues of the sequences that
+   *         have not started are all empty.
+   * */
+  private TaskSequence take(final int self, final int victim) {
+    if (stopped) {
+      return null;
+    }
+    TaskSequence home = peek(homeQueues[self]);
+    TaskSequence mine = peek(queues[self]);
+    if (victim != self) {
+      TaskSequence other = peek(queues[victim]);
+      if (runsBefore(other, mine) && runsBefore(other, home)) {
+        TaskSequence stolen = poll(queues[victim]);
+        if (stolen != null) {
+          numSteals.incrementAndGet();
+          return stolen;
+        }
+      }
+    }
+    TaskSequence sequence;
+    if (runsBefore(home, mine)) {
+      sequence = poll(homeQueues[self]);
+    } else {
+      sequence = poll(queues[self]);
+    }
+    if (sequence != null) {
+      return sequence;
+    }
+    sequence = poll(homeQueues[self]);
+    if (sequence != null) {
+      return sequence;
+    }
+    for (int i = 1; i < queues.length; i++) {
+      sequence = poll(queues[(self + i) % queues.length]);
+      if (sequence != null) {
+        numSteals.incrementAndGet();
+        return sequence;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Wait until a sequence that the calling thread may run is queued.
+   * 
+   * @param self the index of the queues of the calling thread.
+   * @return false if the pool is shutdown and nothing is queued.
+   * */
+  private boolean awaitWork(final int self) {
+    synchronized (idleLock) {
+      numIdle++;
+      try {
+        while ((numQueued.get() == 0 && peek(homeQueues[self]) == null) || stopped) {
+          if (shutdown) {
+            return false;
+          }
+          idleLock.wait();
+        }
+      } catch (InterruptedException e) {
+        // interrupted by shutdownNow, or by a cancellation that came too late. Check again.
+        return !stopped;
+      } finally {
+        numIdle--;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The submissions of one {@link Runnable} or {@link Callable}, executed one at a time.
+   * */
+  private final class TaskSequence {
+
+    /**
+     * The group of the task.
+     * */
+    private final SchedulingGroup group;
+
+    /**
+     * The submissions that have not run.
+     * */
+    private final Queue<ExecutableExecutionFuture<?>> tasks = new ConcurrentLinkedQueue<ExecutableExecutionFuture<?>>();
+
+    /**
+     * If the sequence is queued or running.
+     * */
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    /**
+     * The virtual runtime at which the sequence is queued. Written before the sequence is queued.
+     * */
+    private long virtualStart;
+
+    /**
+     * The submission counter at which the sequence is queued. Written before the sequence is queued.
+     * */
+    private long queueOrder;
+
+    /**
+     * The index of the thread that ran the first submission, or -1 if the sequence has not started.
+     * */
+    private volatile int home = -1;
+
+    /**
+     * @param group the group of the task.
+     * */
+    TaskSequence(final SchedulingGroup group) {
+      this.group = group;
+    }
+
+    /**
+     * Run the next submission, and queue the sequence again in the home queue of the calling thread if there are more.
+     * 
+     * @param queueIndex the index of the queues of the calling thread.
+     * */
+    void runNext(final int queueIndex) {
+      if (home < 0) {
+        home = queueIndex;
+      }
+      ExecutableExecutionFuture<?> task = tasks.poll();
+      if (task != null) {
+        long start = System.nanoTime();
+        try {
+          task.call();
+        } catch (Exception e) {
+          // the failure is kept in the future.
+        } finally {
+          group.charge(System.nanoTime() - start);
+        }
+        if (!stopped) {
+          // a cancellation may have interrupted the task, do not let it leak into the next one.
+          Thread.interrupted();
+        }
+      }
+      if (tasks.isEmpty()) {
+        scheduled.set(false);
+        if (tasks.isEmpty() || !scheduled.compareAndSet(false, true)) {
+          return;
+        }
+      }
+      enqueue(this, queueIndex);
+    }
+  }
+
+  /**
+   * The loop of a thread of the pool.
+   * */
+  private final class Runner implements Runnable {
+
+    /**
+     * The index of the queue of the thread.
+     * */
+    private final int index;
+
+    /**
+     * @param index the index of the queue of the thread.
+     * */
+    Runner(final int index) {
+      this.index = index;
+    }
+
+    @Override
+    public void run() {
+      ownQueue.set(index);
+      int victim = index;
+      try {
+        while (true) {
+          if (queues.length > 1) {
+            victim = (victim + 1) % queues.length;
+            if (victim == index) {
+              victim = (victim + 1) % queues.length;
+            }
+          }
+          TaskSequence sequence = take(index, victim);
+          if (sequence != null) {
+            sequence.runNext(index);
+          } else if (!awaitWork(index)) {
+            break;
+          }
+        }
+      } finally {
+        terminated.countDown();
+      }
+    }
+  }
+}
@@ -16,8 +16,10 @@ import edu.washington.escience.myria.parallel.SocketInfo;
 import edu.washington.escience.myria.parallel.ipc.IPCConnectionPool;
 import edu.washington.escience.myria.parallel.ipc.IPCMessage;
 import edu.washington.escience.myria.parallel.ipc.InJVMLoopbackChannelSink;
+import edu.washington.escience.myria.parallel.ipc.InputBufferMemoryPool;
 import edu.washington.escience.myria.parallel.ipc.PayloadSerializer;
 import edu.washington.escience.myria.parallel.ipc.QueueBasedShortMessageProcessor;
+import edu.washington.escience.myria.parallel.ipc.StreamMultiplexing;
 
 /**
  * Holds utility functions for IPC testing.
@@ -28,9 +30,19 @@ public class IPCTestUtil {
       final HashMap<Integer, SocketInfo> computingUnits,
       final LinkedBlockingQueue<IPCMessage.Data<PAYLOAD>> shortMessageQueue, final PayloadSerializer ps,
       final int inputBufferCapacity, final int recoverTrigger, final int numNettyWorker) throws Exception {
+    return startIPCConnectionPool(myID, computingUnits, shortMessageQueue, ps, inputBufferCapacity, recoverTrigger,
+        numNettyWorker, StreamMultiplexing.disabled());
+  }
+
+  public final static <PAYLOAD> IPCConnectionPool startIPCConnectionPool(final int myID,
+      final HashMap<Integer, SocketInfo> computingUnits,
+      final LinkedBlockingQueue<IPCMessage.Data<PAYLOAD>> shortMessageQueue, final PayloadSerializer ps,
+      final int inputBufferCapacity, final int recoverTrigger, final int numNettyWorker,
+      final StreamMultiplexing streamMultiplexing) throws Exception {
     final IPCConnectionPool connectionPool =
         new IPCConnectionPool(myID, computingUnits, new ServerBootstrap(), new ClientBootstrap(), ps,
-            new QueueBasedShortMessageProcessor<PAYLOAD>(shortMessageQueue), inputBufferCapacity, recoverTrigger);
+            new QueueBasedShortMessageProcessor<PAYLOAD>(shortMessageQueue), inputBufferCapacity, recoverTrigger,
+            InputBufferMemoryPool.unbounded(), streamMultiplexing);
 
     ExecutorService bossExecutor = Executors.newCachedThreadPool();
     ExecutorService workerExecutor = Executors.newCachedThreadPool();
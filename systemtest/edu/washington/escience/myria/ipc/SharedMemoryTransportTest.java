@@ -0,0 +1,172 @@
+package edu.washington.escience.myria.ipc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSet.Builder;
+
+import edu.washington.escience.myria.parallel.SocketInfo;
+import edu.washington.escience.myria.parallel.TransportMessageSerializer;
+import edu.washington.escience.myria.parallel.ipc.FlowControlBagInputBuffer;
+import edu.washington.escience.myria.parallel.ipc.IPCConnectionPool;
+import edu.washington.escience.myria.parallel.ipc.IPCMessage.StreamData;
+import edu.washington.escience.myria.parallel.ipc.PayloadSerializer;
+import edu.washington.escience.myria.parallel.ipc.StreamIOChannelID;
+import edu.washington.escience.myria.parallel.ipc.StreamMultiplexing;
+import edu.washington.escience.myria.parallel.ipc.StreamOutputChannel;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.TestUtils;
+
+public class SharedMemoryTransportTest {
+
+  final int NUM_PSEUDO_WORKER = 3;
+  final int NUM_STREAM = 10;
+  final int NUM_MSGS_PER_INPUT = 10;
+  final int RECEIVER_ID = 0;
+
+  @Rule
+  public TemporaryFolder sharedMemoryDirectory = new TemporaryFolder();
+
+  IPCConnectionPool[] pools = new IPCConnectionPool[0];
+  final TupleBatch tb = TestUtils.generateRandomTuples(TupleBatch.BATCH_SIZE, TupleBatch.BATCH_SIZE, false).popAny();
+
+  /**
+   * Fails on any attempt to serialize.
+   * */
+  static class NoSerialization implements PayloadSerializer {
+    @Override
+    public ChannelBuffer serialize(final Object p) {
+      throw new UnsupportedOperationException("serialize " + p);
+    }
+
+    @Override
+    public Object deSerialize(final ChannelBuffer buffer, final Object processor, final Object attachment) {
+      throw new UnsupportedOperationException("deSerialize " + buffer);
+    }
+  }
+
+  private HashMap<Integer, SocketInfo> computingUnits(final int num) {
+    final HashMap<Integer, SocketInfo> computingUnits = new HashMap<Integer, SocketInfo>();
+    for (int i = 0; i < num; i++) {
+      computingUnits.put(i, SocketInfo.valueOf("localhost:" + (9150 + i)));
+    }
+    return computingUnits;
+  }
+
+  @After
+  public void cleanup() {
+    for (IPCConnectionPool p : pools) {
+      p.shutdownNow().awaitUninterruptibly();
+      p.releaseExternalResources();
+    }
+  }
+
+  @Test
+  public void localStreamIsNotSerializedTest() throws Throwable {
+    pools = new IPCConnectionPool[1];
+    pools[0] =
+        IPCTestUtil.startIPCConnectionPool(0, computingUnits(1), null, new NoSerialization(), 2, 1, 5,
+            new StreamMultiplexing(1, TupleBatch.BATCH_SIZE));
+    StreamIOChannelID id = new StreamIOChannelID(0, 0);
+    FlowControlBagInputBuffer<TupleBatch> ib =
+        new FlowControlBagInputBuffer<TupleBatch>(pools[0], ImmutableSet.of(id), 2, 1);
+    ib.setAttachment(tb.getSchema());
+    ib.start("Test input buffer");
+
+    StreamOutputChannel<TupleBatch> out = pools[0].<TupleBatch> reserveLongTermConnection(0, 0);
+    out.write(tb);
+    out.release();
+
+    /* the very same batch comes out, i.e., it is neither serialized nor copied. */
+    StreamData<TupleBatch> data = ib.take();
+    assertSame(tb, data.getPayload());
+    while (!ib.isEOS()) {
+      assertEquals(null, ib.take().getPayload());
+    }
+    pools[0].deRegisterStreamInput(ib);
+  }
+
+  @Test
+  public void sharedMemoryCollectTest() throws Throwable {
+    StreamMultiplexing multiplexing =
+        new StreamMultiplexing(1, 2 * TupleBatch.BATCH_SIZE * 20, sharedMemoryDirectory.getRoot(),
+            4 * TupleBatch.BATCH_SIZE * 20);
+    pools = new IPCConnectionPool[NUM_PSEUDO_WORKER];
+    for (int i = 0; i < pools.length; i++) {
+      pools[i] =
+          IPCTestUtil.startIPCConnectionPool(i, computingUnits(NUM_PSEUDO_WORKER), null,
+              new TransportMessageSerializer(), 2, 1, 5, multiplexing);
+    }
+
+    Builder<StreamIOChannelID> builder = ImmutableSet.<StreamIOChannelID> builder();
+    for (int i = 0; i < NUM_PSEUDO_WORKER; i++) {
+      for (int j = 0; j < NUM_STREAM; j++) {
+        builder.add(new StreamIOChannelID(j, i));
+      }
+    }
+    FlowControlBagInputBuffer<TupleBatch> ib =
+        new FlowControlBagInputBuffer<TupleBatch>(pools[RECEIVER_ID], builder.build(), 2, 1);
+    ib.setAttachment(tb.getSchema());
+    ib.start("Test input buffer");
+
+    List<Thread> senders = new ArrayList<Thread>();
+    for (int i = 0; i < NUM_PSEUDO_WORKER; i++) {
+      for (int j = 0; j < NUM_STREAM; j++) {
+        final StreamOutputChannel<TupleBatch> out = pools[i].<TupleBatch> reserveLongTermConnection(RECEIVER_ID, j);
+        senders.add(new Thread(new Runnable() {
+          @Override
+          public void run() {
+            for (int k = 0; k < NUM_MSGS_PER_INPUT; k++) {
+              while (!out.isWritable()) {
+                Thread.yield();
+              }
+              out.write(tb);
+            }
+            out.release();
+          }
+        }));
+      }
+    }
+    for (Thread sender : senders) {
+      sender.start();
+    }
+
+    long numReceived = 0;
+    while (!ib.isEOS() || !ib.isEmpty()) {
+      TupleBatch received = ib.take().getPayload();
+      if (received != null) {
+        assertEquals(tb.numTuples(), received.numTuples());
+        for (int row = 0; row < received.numTuples(); row++) {
+          assertEquals(tb.getObject(0, row), received.getObject(0, row));
+          assertEquals(tb.getObject(1, row), received.getObject(1, row));
+        }
+        numReceived += received.numTuples();
+      }
+    }
+    for (Thread sender : senders) {
+      sender.join();
+    }
+    pools[RECEIVER_ID].deRegisterStreamInput(ib);
+
+    assertEquals(NUM_PSEUDO_WORKER * NUM_STREAM * NUM_MSGS_PER_INPUT * tb.numTuples(), numReceived);
+    for (int i = 0; i < NUM_PSEUDO_WORKER; i++) {
+      if (i != RECEIVER_ID) {
+        assertTrue(pools[i].getSharedMemoryBytesSent() > 0);
+      }
+    }
+    /* the receiver deletes the files once it has mapped them. */
+    assertEquals(0, sharedMemoryDirectory.getRoot().list().length);
+  }
+}
@@ -0,0 +1,123 @@
+package edu.washington.escience.myria.ipc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jboss.netty.channel.Channel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSet.Builder;
+
+import edu.washington.escience.myria.parallel.SocketInfo;
+import edu.washington.escience.myria.parallel.TransportMessageSerializer;
+import edu.washington.escience.myria.parallel.ipc.FlowControlBagInputBuffer;
+import edu.washington.escience.myria.parallel.ipc.IPCConnectionPool;
+import edu.washington.escience.myria.parallel.ipc.IPCMessage.StreamData;
+import edu.washington.escience.myria.parallel.ipc.StreamIOChannelID;
+import edu.washington.escience.myria.parallel.ipc.StreamMultiplexing;
+import edu.washington.escience.myria.parallel.ipc.StreamOutputChannel;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.util.TestUtils;
+
+public class StreamMultiplexingTest {
+
+  final int NUM_PSEUDO_WORKER = 4;
+  final int NUM_STREAM = 30;
+  final int NUM_MSGS_PER_INPUT = 20;
+  final int RECEIVER_ID = 0;
+
+  IPCConnectionPool[] pools = null;
+  final TupleBatch tb = TestUtils.generateRandomTuples(TupleBatch.BATCH_SIZE, TupleBatch.BATCH_SIZE, false).popAny();
+
+  @Before
+  public void init() throws Throwable {
+    final HashMap<Integer, SocketInfo> computingUnits = new HashMap<Integer, SocketInfo>();
+
+    for (int i = 0; i < NUM_PSEUDO_WORKER; i++) {
+      computingUnits.put(i, SocketInfo.valueOf("localhost:" + (9100 + i)));
+    }
+
+    /* One connection per remote, and a credit of about two tuple batches per stream. */
+    StreamMultiplexing multiplexing = new StreamMultiplexing(1, 2 * TupleBatch.BATCH_SIZE * 20);
+    pools = new IPCConnectionPool[NUM_PSEUDO_WORKER];
+    for (int i = 0; i < pools.length; i++) {
+      pools[i] =
+          IPCTestUtil.startIPCConnectionPool(i, computingUnits, null, new TransportMessageSerializer(), 2, 1, 5,
+              multiplexing);
+    }
+  }
+
+  @After
+  public void cleanup() {
+    for (IPCConnectionPool p : pools) {
+      p.shutdownNow().awaitUninterruptibly();
+      p.releaseExternalResources();
+    }
+  }
+
+  @Test
+  public void multiplexedCollectTest() throws Throwable {
+    Builder<StreamIOChannelID> builder = ImmutableSet.<StreamIOChannelID> builder();
+    for (int i = 0; i < NUM_PSEUDO_WORKER; i++) {
+      for (int j = 0; j < NUM_STREAM; j++) {
+        builder.add(new StreamIOChannelID(j, i));
+      }
+    }
+    /* A small input buffer, so that the streams run out of credits. */
+    FlowControlBagInputBuffer<TupleBatch> ib =
+        new FlowControlBagInputBuffer<TupleBatch>(pools[RECEIVER_ID], builder.build(), 2, 1);
+    ib.setAttachment(tb.getSchema());
+    ib.start("Test input buffer");
+
+    List<Thread> senders = new ArrayList<Thread>();
+    for (int i = 0; i < NUM_PSEUDO_WORKER; i++) {
+      Set<Channel> physicalChannels = new HashSet<Channel>();
+      for (int j = 0; j < NUM_STREAM; j++) {
+        final StreamOutputChannel<TupleBatch> out = pools[i].<TupleBatch> reserveLongTermConnection(RECEIVER_ID, j);
+        physicalChannels.add(out.getIOChannel());
+        senders.add(new Thread(new Runnable() {
+          @Override
+          public void run() {
+            for (int k = 0; k < NUM_MSGS_PER_INPUT; k++) {
+              while (!out.isWritable()) {
+                Thread.yield();
+              }
+              out.write(tb);
+            }
+            out.release();
+          }
+        }));
+      }
+      if (i != RECEIVER_ID) {
+        /* All the streams to a remote share its connection, while local streams keep their in-JVM channels. */
+        assertEquals(1, physicalChannels.size());
+      }
+    }
+
+    for (Thread sender : senders) {
+      sender.start();
+    }
+
+    long numReceived = 0;
+    while (!ib.isEOS() || !ib.isEmpty()) {
+      StreamData<TupleBatch> data = ib.take();
+      if (data.getPayload() != null) {
+        numReceived += data.getPayload().numTuples();
+      }
+    }
+    for (Thread sender : senders) {
+      sender.join();
+    }
+    pools[RECEIVER_ID].deRegisterStreamInput(ib);
+
+    assertEquals(NUM_PSEUDO_WORKER * NUM_STREAM * NUM_MSGS_PER_INPUT * tb.numTuples(), numReceived);
+  }
+}
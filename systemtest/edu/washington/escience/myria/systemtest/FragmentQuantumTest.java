@@ -0,0 +1,97 @@
+package edu.washington.escience.myria.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.operator.RootOperator;
+import edu.washington.escience.myria.operator.SinkRoot;
+import edu.washington.escience.myria.operator.TupleSource;
+import edu.washington.escience.myria.operator.network.CollectConsumer;
+import edu.washington.escience.myria.operator.network.CollectProducer;
+import edu.washington.escience.myria.parallel.ExchangePairID;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.TestUtils;
+
+/**
+ * Runs the fragments with a quantum of a single tuple, i.e., every fragment yields its thread after each batch.
+ * */
+public class FragmentQuantumTest extends SystemTestBase {
+
+  /**
+   * A {@link SinkRoot} that records how many times its fragment yielded the thread.
+   * */
+  private static final class YieldCountingSinkRoot extends SinkRoot {
+    /** Required for Java serialization. */
+    private static final long serialVersionUID = 1L;
+    /** The number of yields of the fragment, once the child is done. */
+    private final AtomicLong numYields = new AtomicLong(-1);
+
+    /**
+     * @param child the child.
+     * */
+    YieldCountingSinkRoot(final Operator child) {
+      super(child);
+    }
+
+    @Override
+    protected void childEOS() throws DbException {
+      numYields.set(getFragment().getNumYields());
+    }
+  }
+
+  @Override
+  public Map<String, String> getMasterConfigurations() {
+    HashMap<String, String> masterConfigurations = new HashMap<String, String>();
+    masterConfigurations.put(MyriaSystemConfigKeys.FRAGMENT_QUANTUM_TUPLES, "1");
+    return masterConfigurations;
+  }
+
+  @Override
+  public Map<String, String> getWorkerConfigurations() {
+    HashMap<String, String> workerConfigurations = new HashMap<String, String>();
+    workerConfigurations.put(MyriaSystemConfigKeys.FRAGMENT_QUANTUM_TUPLES, "1");
+    return workerConfigurations;
+  }
+
+  @Test
+  public void yieldEveryBatchTest() throws Exception {
+    final int numTuples = TupleBatch.BATCH_SIZE * 20;
+
+    final Schema schema =
+        new Schema(ImmutableList.of(Type.LONG_TYPE, Type.STRING_TYPE), ImmutableList.of("id", "name"));
+
+    final ExchangePairID serverReceiveID = ExchangePairID.newID();
+    final HashMap<Integer, RootOperator[]> workerPlans = new HashMap<Integer, RootOperator[]>();
+    for (int workerID : workerIDs) {
+      final TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+      for (int i = 0; i < numTuples; i++) {
+        tbb.putLong(0, TestUtils.randomLong(0, 100000, 1)[0]);
+        tbb.putString(1, TestUtils.randomFixedLengthNumericString(0, 100000, 1, 20)[0]);
+      }
+      final CollectProducer cp = new CollectProducer(new TupleSource(tbb), serverReceiveID, MASTER_ID);
+      workerPlans.put(workerID, new RootOperator[] { cp });
+    }
+
+    final CollectConsumer serverCollect = new CollectConsumer(schema, serverReceiveID, workerIDs);
+    final YieldCountingSinkRoot serverPlan = new YieldCountingSinkRoot(serverCollect);
+
+    server.submitQueryPlan(serverPlan, workerPlans).get();
+    assertEquals(numTuples * workerIDs.length, serverPlan.getCount());
+    /* The master fragment receives a batch at a time, so it must have yielded after some of them. */
+    assertTrue("the fragment never yielded", serverPlan.numYields.get() > 0);
+  }
+}
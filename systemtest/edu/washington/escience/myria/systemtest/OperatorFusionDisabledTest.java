@@ -0,0 +1,12 @@
+package edu.washington.escience.myria.systemtest;
+
+/**
+ * Runs the fragment of {@link OperatorFusionTest} with operator fusion off.
+ * */
+public class OperatorFusionDisabledTest extends OperatorFusionTest {
+
+  @Override
+  protected boolean isFusionEnabled() {
+    return false;
+  }
+}
@@ -0,0 +1,145 @@
+package edu.washington.escience.myria.systemtest;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.api.encoding.ApplyEncoding;
+import edu.washington.escience.myria.api.encoding.DbInsertEncoding;
+import edu.washington.escience.myria.api.encoding.FilterEncoding;
+import edu.washington.escience.myria.api.encoding.PlanFragmentEncoding;
+import edu.washington.escience.myria.api.encoding.QueryConstruct;
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.api.encoding.QueryEncoding;
+import edu.washington.escience.myria.api.encoding.TableScanEncoding;
+import edu.washington.escience.myria.expression.ConstantExpression;
+import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.expression.LessThanExpression;
+import edu.washington.escience.myria.expression.PlusExpression;
+import edu.washington.escience.myria.expression.TimesExpression;
+import edu.washington.escience.myria.expression.VariableExpression;
+import edu.washington.escience.myria.operator.FusedFilterApply;
+import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.operator.TupleSource;
+import edu.washington.escience.myria.operator.network.partition.SingleFieldHashPartitionFunction;
+import edu.washington.escience.myria.parallel.JsonSubQuery;
+import edu.washington.escience.myria.parallel.SubQueryPlan;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.JsonAPIUtils;
+import edu.washington.escience.myria.util.TestUtils;
+
+/**
+ * Runs a fragment with a chain of a filter and two applies with operator fusion on. {@link OperatorFusionDisabledTest}
+ * runs the same fragment with operator fusion off, and expects the same results.
+ * */
+public class OperatorFusionTest extends SystemTestBase {
+
+  /**
+   * @return if the master fuses chains of filters and applies.
+   * */
+  protected boolean isFusionEnabled() {
+    return true;
+  }
+
+  @Override
+  public Map<String, String> getMasterConfigurations() {
+    HashMap<String, String> masterConfigurations = new HashMap<String, String>();
+    masterConfigurations.put(MyriaSystemConfigKeys.OPERATOR_FUSION, String.valueOf(isFusionEnabled()));
+    return masterConfigurations;
+  }
+
+  @Test
+  public void filterApplyApplyTest() throws Exception {
+    final int numTuples = TupleBatch.BATCH_SIZE * 3 + 7;
+    final long limit = numTuples / 2;
+
+    TupleBatchBuffer data = new TupleBatchBuffer(Schema.ofFields("g", Type.LONG_TYPE, "v", Type.LONG_TYPE));
+    List<String> expected = new ArrayList<String>();
+    for (int i = 0; i < numTuples; ++i) {
+      data.putLong(0, i % 13);
+      data.putLong(1, i);
+      if (i < limit) {
+        expected.add(i % 13 + "," + (2L * i + 1) * 3);
+      }
+    }
+    RelationKey input = RelationKey.of("test", "fusion", "input");
+    RelationKey output = RelationKey.of("test", "fusion", "output");
+    QueryEncoding insertEncoding = new QueryEncoding();
+    insertEncoding.rawQuery = "insert";
+    insertEncoding.logicalRa = "insert";
+    server.getQueryManager().submitQuery(insertEncoding,
+        TestUtils.insertRelation(new TupleSource(data), input, new SingleFieldHashPartitionFunction(workerIDs.length, 0),
+            workerIDs)).get();
+
+    QueryEncoding encoding = new QueryEncoding();
+    encoding.rawQuery = "fusion";
+    encoding.logicalRa = "fusion";
+    server.getQueryManager().submitQuery(encoding,
+        new JsonSubQuery(ImmutableList.of(filterApplyApplyFragment(input, output, limit)))).get();
+
+    String csv =
+        JsonAPIUtils.download("localhost", masterDaemonPort, output.getUserName(), output.getProgramName(), output
+            .getRelationName(), "csv");
+    List<String> actual = new ArrayList<String>(ImmutableList.copyOf(csv.split("\r\n")));
+    actual.remove(0);
+    Collections.sort(expected);
+    Collections.sort(actual);
+    assertEquals(expected, actual);
+
+    /* The insert reads from the fused chain if and only if operator fusion is on. */
+    Map<Integer, SubQueryPlan> plans =
+        QueryConstruct.instantiate(ImmutableList.of(filterApplyApplyFragment(input, output, limit)), new ConstructArgs(
+            server, -1));
+    Operator insert = plans.get(workerIDs[0]).getRootOps().get(0);
+    assertEquals(isFusionEnabled(), insert.getChildren()[0] instanceof FusedFilterApply);
+  }
+
+  /**
+   * @param input the input relation.
+   * @param output the output relation.
+   * @param limit the filter keeps the tuples whose value is below the limit.
+   * @return a fragment that scans, filters, applies twice and inserts the input.
+   */
+  private PlanFragmentEncoding filterApplyApplyFragment(final RelationKey input, final RelationKey output,
+      final long limit) {
+    TableScanEncoding scan = new TableScanEncoding();
+    scan.opId = 0;
+    scan.relationKey = input;
+    FilterEncoding filter = new FilterEncoding();
+    filter.opId = 1;
+    filter.argChild = scan.opId;
+    filter.argPredicate =
+        new Expression("lt", new LessThanExpression(new VariableExpression(1), new ConstantExpression(limit)));
+    ApplyEncoding twice = new ApplyEncoding();
+    twice.opId = 2;
+    twice.argChild = filter.opId;
+    twice.emitExpressions =
+        ImmutableList.of(new Expression("g", new VariableExpression(0)), new Expression("w", new PlusExpression(
+            new PlusExpression(new VariableExpression(1), new VariableExpression(1)), new ConstantExpression(1L))));
+    ApplyEncoding thrice = new ApplyEncoding();
+    thrice.opId = 3;
+    thrice.argChild = twice.opId;
+    thrice.emitExpressions =
+        ImmutableList.of(new Expression("g", new VariableExpression(0)), new Expression("x", new TimesExpression(
+            new VariableExpression(1), new ConstantExpression(3L))));
+    DbInsertEncoding insert = new DbInsertEncoding();
+    insert.opId = 4;
+    insert.argChild = thrice.opId;
+    insert.relationKey = output;
+    insert.argOverwriteTable = true;
+    return PlanFragmentEncoding.of(scan, filter, twice, thrice, insert);
+  }
+}
@@ -0,0 +1,168 @@
+package edu.washington.escience.myria.systemtest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.RelationKey;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.api.encoding.ApplyEncoding;
+import edu.washington.escience.myria.api.encoding.DbInsertEncoding;
+import edu.washington.escience.myria.api.encoding.FilterEncoding;
+import edu.washington.escience.myria.api.encoding.PlanFragmentEncoding;
+import edu.washington.escience.myria.api.encoding.QueryConstruct;
+import edu.washington.escience.myria.api.encoding.QueryConstruct.ConstructArgs;
+import edu.washington.escience.myria.api.encoding.QueryEncoding;
+import edu.washington.escience.myria.api.encoding.SingleGroupByAggregateEncoding;
+import edu.washington.escience.myria.api.encoding.TableScanEncoding;
+import edu.washington.escience.myria.expression.ConstantExpression;
+import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.expression.LessThanExpression;
+import edu.washington.escience.myria.expression.PlusExpression;
+import edu.washington.escience.myria.expression.VariableExpression;
+import edu.washington.escience.myria.operator.Operator;
+import edu.washington.escience.myria.operator.ParallelPipeline;
+import edu.washington.escience.myria.operator.TupleSource;
+import edu.washington.escience.myria.operator.agg.AggregatorFactory;
+import edu.washington.escience.myria.operator.agg.CountAllAggregatorFactory;
+import edu.washington.escience.myria.operator.agg.PrimitiveAggregator.AggregationOp;
+import edu.washington.escience.myria.operator.agg.SingleColumnAggregatorFactory;
+import edu.washington.escience.myria.operator.network.partition.SingleFieldHashPartitionFunction;
+import edu.washington.escience.myria.parallel.JsonSubQuery;
+import edu.washington.escience.myria.parallel.SubQueryPlan;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.JsonAPIUtils;
+import edu.washington.escience.myria.util.TestUtils;
+
+/**
+ * Runs the pipeline of a fragment, scan, filter, apply and group-by aggregate, on several threads of each worker.
+ * */
+public class ParallelFragmentTest extends SystemTestBase {
+
+  @Test
+  public void scanFilterApplyAggregateTest() throws Exception {
+    final int numTuples = TupleBatch.BATCH_SIZE * 10;
+    final int numGroups = 50;
+    final long limit = numTuples - TupleBatch.BATCH_SIZE / 2;
+
+    Schema schema = Schema.ofFields("g", Type.LONG_TYPE, "v", Type.LONG_TYPE);
+    TupleBatchBuffer data = new TupleBatchBuffer(schema);
+    long[] counts = new long[numGroups];
+    long[] sums = new long[numGroups];
+    for (int i = 0; i < numTuples; ++i) {
+      data.putLong(0, i % numGroups);
+      data.putLong(1, i);
+      if (i < limit) {
+        counts[i % numGroups]++;
+        sums[i % numGroups] += 2L * i;
+      }
+    }
+    RelationKey input = RelationKey.of("test", "parallel", "input");
+    RelationKey output = RelationKey.of("test", "parallel", "output");
+    QueryEncoding insertEncoding = new QueryEncoding();
+    insertEncoding.rawQuery = "insert";
+    insertEncoding.logicalRa = "insert";
+    server.getQueryManager().submitQuery(insertEncoding,
+        TestUtils.insertRelation(new TupleSource(data), input, new SingleFieldHashPartitionFunction(workerIDs.length, 0),
+            workerIDs)).get();
+
+    PlanFragmentEncoding fragment = parallelFragment(input, output, limit);
+
+    QueryEncoding encoding = new QueryEncoding();
+    encoding.rawQuery = "parallel";
+    encoding.logicalRa = "parallel";
+    server.getQueryManager().submitQuery(encoding, new JsonSubQuery(ImmutableList.of(fragment))).get();
+
+    /* each group is on one worker, so the merged partial results are the final results. */
+    List<String> expected = new ArrayList<String>();
+    for (int g = 0; g < numGroups; ++g) {
+      expected.add(g + "," + counts[g] + "," + sums[g]);
+    }
+    String csv =
+        JsonAPIUtils.download("localhost", masterDaemonPort, output.getUserName(), output.getProgramName(), output
+            .getRelationName(), "csv");
+    List<String> actual = new ArrayList<String>(ImmutableList.copyOf(csv.split("\r\n")));
+    actual.remove(0);
+    Collections.sort(expected);
+    Collections.sort(actual);
+    assertEquals(expected, actual);
+
+    /* The operators that run the pipeline in parallel do not take the ids of the operators of the plan. */
+    Map<Integer, SubQueryPlan> plans =
+        QueryConstruct.instantiate(ImmutableList.of(parallelFragment(input, output, limit)), new ConstructArgs(server,
+            -1));
+    Set<Integer> opIds = new HashSet<Integer>();
+    int numOperators = addOpIds(plans.get(workerIDs[0]).getRootOps().get(0), opIds);
+    assertEquals(numOperators, opIds.size());
+    assertTrue(opIds.containsAll(ImmutableList.of(0, 4)));
+  }
+
+  /**
+   * @param input the input relation.
+   * @param output the output relation.
+   * @param limit the filter keeps the tuples whose value is below the limit.
+   * @return a fragment that scans, filters, applies and aggregates the input on 4 threads.
+   */
+  private PlanFragmentEncoding parallelFragment(final RelationKey input, final RelationKey output, final long limit) {
+    TableScanEncoding scan = new TableScanEncoding();
+    scan.opId = 0;
+    scan.relationKey = input;
+    FilterEncoding filter = new FilterEncoding();
+    filter.opId = 1;
+    filter.argChild = scan.opId;
+    filter.argPredicate =
+        new Expression("lt", new LessThanExpression(new VariableExpression(1), new ConstantExpression(limit)));
+    ApplyEncoding apply = new ApplyEncoding();
+    apply.opId = 2;
+    apply.argChild = filter.opId;
+    apply.emitExpressions =
+        ImmutableList.of(new Expression("g", new VariableExpression(0)), new Expression("w", new PlusExpression(
+            new VariableExpression(1), new VariableExpression(1))));
+    SingleGroupByAggregateEncoding agg = new SingleGroupByAggregateEncoding();
+    agg.opId = 3;
+    agg.argChild = apply.opId;
+    agg.argGroupField = 0;
+    agg.aggregators =
+        new AggregatorFactory[] { new CountAllAggregatorFactory(),
+            new SingleColumnAggregatorFactory(1, AggregationOp.SUM) };
+    DbInsertEncoding insert = new DbInsertEncoding();
+    insert.opId = 4;
+    insert.argChild = agg.opId;
+    insert.relationKey = output;
+    insert.argOverwriteTable = true;
+    PlanFragmentEncoding fragment = PlanFragmentEncoding.of(scan, filter, apply, agg, insert);
+    fragment.parallelism = 4;
+    return fragment;
+  }
+
+  /**
+   * @param op the root of an operator tree.
+   * @param opIds the ids of the operators in the tree, which this adds to.
+   * @return the number of operators in the tree, including the pipelines of {@link ParallelPipeline}s.
+   */
+  private int addOpIds(final Operator op, final Set<Integer> opIds) {
+    opIds.add(op.getOpId());
+    int numOperators = 1;
+    if (op instanceof ParallelPipeline) {
+      numOperators += addOpIds(((ParallelPipeline) op).getPipeline(), opIds);
+    }
+    if (op.getChildren() != null) {
+      for (Operator child : op.getChildren()) {
+        numOperators += addOpIds(child, opIds);
+      }
+    }
+    return numOperators;
+  }
+}
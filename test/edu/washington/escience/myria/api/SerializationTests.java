@@ -3,16 +3,21 @@ package edu.washington.escience.myria.api;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
+import java.util.List;
+
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.collect.ImmutableList;
 
 import edu.washington.escience.myria.operator.network.partition.MultiFieldHashPartitionFunction;
 import edu.washington.escience.myria.operator.network.partition.PartitionFunction;
 import edu.washington.escience.myria.operator.network.partition.RoundRobinPartitionFunction;
 import edu.washington.escience.myria.operator.network.partition.SingleFieldHashPartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.SkewAwareHashPartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.SkewAwareHashPartitionFunction.HeavyHitterPolicy;
 import edu.washington.escience.myria.operator.network.partition.WholeTupleHashPartitionFunction;
 
 public class SerializationTests {
@@ -64,6 +69,19 @@ public class SerializationTests {
     deserialized = reader.readValue(serialized);
     assertEquals(pf.getClass(), deserialized.getClass());
     assertEquals(5, deserialized.numPartition());
+
+    /* Skew-aware hash */
+    List<List<Object>> heavyHitters = ImmutableList.<List<Object>> of(ImmutableList.<Object> of(7L, "a"));
+    pf = new SkewAwareHashPartitionFunction(6, new int[] { 1, 0 }, heavyHitters, HeavyHitterPolicy.BROADCAST);
+    serialized = mapper.writeValueAsString(pf);
+    deserialized = reader.readValue(serialized);
+    assertEquals(pf.getClass(), deserialized.getClass());
+    assertEquals(6, deserialized.numPartition());
+    SkewAwareHashPartitionFunction pfSAH = (SkewAwareHashPartitionFunction) deserialized;
+    assertArrayEquals(new int[] { 1, 0 }, pfSAH.getIndexes());
+    assertEquals(HeavyHitterPolicy.BROADCAST, pfSAH.getHeavyHitterPolicy());
+    assertEquals(5, pfSAH.numWorkers());
+    assertEquals("a", pfSAH.getHeavyHitters().get(0).get(1));
   }
 
   @Test
@@ -0,0 +1,127 @@
+package edu.washington.escience.myria.column;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.builder.ColumnBuilder;
+import edu.washington.escience.myria.column.builder.ColumnFactory;
+import edu.washington.escience.myria.parallel.ColumnarFrame;
+import edu.washington.escience.myria.parallel.TransportMessageSerializer;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+public class ChannelBufferColumnTest {
+
+  private static final Schema SCHEMA = new Schema(ImmutableList.of(Type.INT_TYPE, Type.LONG_TYPE, Type.FLOAT_TYPE,
+      Type.DOUBLE_TYPE, Type.BOOLEAN_TYPE, Type.STRING_TYPE, Type.DATETIME_TYPE), ImmutableList.of("i", "l", "f", "d",
+      "b", "s", "t"));
+
+  private TupleBatch generateTupleBatch(final int numTuples) {
+    Random rand = new Random(42);
+    TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    for (int i = 0; i < numTuples; i++) {
+      tbb.putInt(0, rand.nextInt());
+      tbb.putLong(1, rand.nextLong());
+      tbb.putFloat(2, rand.nextFloat());
+      tbb.putDouble(3, rand.nextDouble());
+      tbb.putBoolean(4, rand.nextBoolean());
+      tbb.putString(5, i % 5 == 0 ? "" : "välue漢" + rand.nextInt(100));
+      tbb.putDateTime(6, new DateTime(rand.nextLong() / 1000));
+    }
+    return tbb.popAny();
+  }
+
+  /**
+   * Copy the frame into one array, as the receiver sees it.
+   */
+  private ChannelBuffer send(final TransportMessageSerializer serializer, final TupleBatch tb) {
+    ChannelBuffer sent = serializer.serialize(tb);
+    byte[] bytes = new byte[sent.readableBytes()];
+    sent.getBytes(sent.readerIndex(), bytes);
+    return ChannelBuffers.wrappedBuffer(bytes);
+  }
+
+  private void assertBatchEquals(final TupleBatch expected, final TupleBatch actual) {
+    assertEquals(expected.numTuples(), actual.numTuples());
+    assertEquals(expected.getSchema(), actual.getSchema());
+    for (int column = 0; column < expected.numColumns(); column++) {
+      for (int row = 0; row < expected.numTuples(); row++) {
+        assertEquals(expected.getObject(column, row), actual.getObject(column, row));
+      }
+    }
+  }
+
+  @Test
+  public void testColumnarRoundTrip() throws Exception {
+    TransportMessageSerializer serializer = new TransportMessageSerializer(true);
+    for (int numTuples : new int[] { 1, 7, 8, 9, 1000 }) {
+      TupleBatch tb = generateTupleBatch(numTuples);
+      ChannelBuffer frame = send(serializer, tb);
+      assertTrue(ColumnarFrame.isColumnarFrame(frame));
+      TupleBatch received = (TupleBatch) serializer.deSerialize(frame, null, SCHEMA);
+      for (int column = 0; column < received.numColumns(); column++) {
+        assertTrue(received.getDataColumns().get(column) instanceof ChannelBufferColumn);
+      }
+      assertBatchEquals(tb, received);
+    }
+  }
+
+  @Test
+  public void testEmptyBatch() throws Exception {
+    TransportMessageSerializer serializer = new TransportMessageSerializer(true);
+    List<Column<?>> columns = new ArrayList<>();
+    for (ColumnBuilder<?> builder : ColumnFactory.allocateColumns(SCHEMA)) {
+      columns.add(builder.build());
+    }
+    TupleBatch tb = new TupleBatch(SCHEMA, columns, 0);
+    TupleBatch received = (TupleBatch) serializer.deSerialize(send(serializer, tb), null, SCHEMA);
+    assertEquals(0, received.numTuples());
+  }
+
+  @Test
+  public void testProtobufStillAccepted() throws Exception {
+    TupleBatch tb = generateTupleBatch(100);
+    ChannelBuffer message = send(new TransportMessageSerializer(false), tb);
+    assertTrue(!ColumnarFrame.isColumnarFrame(message));
+    TransportMessageSerializer receiver = new TransportMessageSerializer(true);
+    assertBatchEquals(tb, (TupleBatch) receiver.deSerialize(message, null, SCHEMA));
+    assertNull(receiver.deSerialize(send(receiver, tb), null, null));
+  }
+
+  @Test
+  public void testJavaSerialization() throws Exception {
+    TupleBatch tb = generateTupleBatch(10);
+    TransportMessageSerializer serializer = new TransportMessageSerializer(true);
+    TupleBatch received = (TupleBatch) serializer.deSerialize(send(serializer, tb), null, SCHEMA);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(received.getDataColumns().get(5));
+    }
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      Column<?> column = (Column<?>) in.readObject();
+      assertEquals(Type.STRING_TYPE, column.getType());
+      for (int row = 0; row < tb.numTuples(); row++) {
+        assertEquals(tb.getString(5, row), column.getString(row));
+      }
+    }
+  }
+}
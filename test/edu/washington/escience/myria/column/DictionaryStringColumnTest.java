@@ -0,0 +1,143 @@
+package edu.washington.escience.myria.column;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.builder.DictionaryStringColumnBuilder;
+import edu.washington.escience.myria.column.builder.StringColumnBuilder;
+import edu.washington.escience.myria.parallel.ColumnarFrame;
+import edu.washington.escience.myria.parallel.IPCCompression;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.storage.TupleUtils;
+import edu.washington.escience.myria.util.HashUtils;
+
+public class DictionaryStringColumnTest {
+
+  private static final Schema SCHEMA = new Schema(ImmutableList.of(Type.STRING_TYPE, Type.INT_TYPE), ImmutableList.of(
+      "s", "i"));
+
+  @Test
+  public void testBuild() {
+    final DictionaryStringColumnBuilder builder = new DictionaryStringColumnBuilder();
+    for (int i = 0; i < 100; i++) {
+      builder.appendString("value" + (i % 3));
+    }
+    final StringColumn column = builder.build();
+    assertTrue(column instanceof DictionaryStringColumn);
+    assertEquals(3, ((DictionaryStringColumn) column).getDictionary().size());
+    for (int i = 0; i < 100; i++) {
+      assertEquals("value" + (i % 3), column.getString(i));
+      assertEquals(i % 3, ((DictionaryStringColumn) column).getCode(i));
+    }
+  }
+
+  @Test
+  public void testFallBackWhenDictionaryIsFull() {
+    final StringDictionary dictionary = new StringDictionary();
+    final DictionaryStringColumnBuilder builder = new DictionaryStringColumnBuilder(dictionary, 10);
+    for (int i = 0; i < 100; i++) {
+      builder.appendString("value" + i);
+    }
+    final StringColumn column = builder.build();
+    assertTrue(column instanceof StringArrayColumn);
+    assertEquals(10, dictionary.size());
+    for (int i = 0; i < 100; i++) {
+      assertEquals("value" + i, column.getString(i));
+    }
+  }
+
+  @Test
+  public void testSharedDictionary() {
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA, true);
+    for (int i = 0; i < TupleBatch.BATCH_SIZE + 10; i++) {
+      tbb.putString(0, "value" + (i % 7));
+      tbb.putInt(1, i);
+    }
+    final List<TupleBatch> batches = tbb.getAll();
+    assertEquals(2, batches.size());
+    final DictionaryStringColumn first = (DictionaryStringColumn) batches.get(0).getDataColumns().get(0);
+    final DictionaryStringColumn second = (DictionaryStringColumn) batches.get(1).getDataColumns().get(0);
+    assertSame(first.getDictionary(), second.getDictionary());
+    assertEquals(7, first.getDictionary().size());
+    /* Row 0 of the first batch and row 3 of the second both hold value0. */
+    assertTrue(TupleUtils.tupleEquals(batches.get(0), new int[] { 0 }, 0, batches.get(1), new int[] { 0 }, 3));
+    assertFalse(TupleUtils.tupleEquals(batches.get(0), new int[] { 0 }, 0, batches.get(1), new int[] { 0 }, 0));
+  }
+
+  @Test
+  public void testSharedDictionaryFiltered() {
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA, true);
+    for (int i = 0; i < TupleBatch.BATCH_SIZE + 10; i++) {
+      tbb.putString(0, "value" + (i % 7));
+      tbb.putInt(1, i);
+    }
+    final List<TupleBatch> batches = tbb.getAll();
+    final BitSet odd = new BitSet();
+    for (int i = 1; i < 10; i += 2) {
+      odd.set(i);
+    }
+    /* The odd rows of the first batch hold value1, value3, value5, value0, ..., those of the second value5, value0. */
+    final TupleBatch first = batches.get(0).filter(odd);
+    final TupleBatch second = batches.get(1).filter(odd);
+    assertTrue(TupleUtils.tupleEquals(first, new int[] { 0 }, 0, batches.get(1), new int[] { 0 }, 4));
+    assertFalse(TupleUtils.tupleEquals(first, new int[] { 0 }, 0, second, new int[] { 0 }, 0));
+    assertTrue(TupleUtils.tupleEquals(first, new int[] { 0 }, 3, second, new int[] { 0 }, 1));
+  }
+
+  @Test
+  public void testHashesMatchStringColumn() {
+    final TupleBatchBuffer dictionaryBuffer = new TupleBatchBuffer(SCHEMA, true);
+    final TupleBatchBuffer plainBuffer = new TupleBatchBuffer(SCHEMA);
+    for (int i = 0; i < 1000; i++) {
+      dictionaryBuffer.putString(0, "value" + (i % 7));
+      dictionaryBuffer.putInt(1, i);
+      plainBuffer.putString(0, "value" + (i % 7));
+      plainBuffer.putInt(1, i);
+    }
+    final TupleBatch dictionaryBatch = dictionaryBuffer.popAny();
+    final TupleBatch plainBatch = plainBuffer.popAny();
+    assertTrue(dictionaryBatch.getDataColumns().get(0) instanceof DictionaryStringColumn);
+    final int[] expected = HashUtils.hashRows(plainBatch, null);
+    final int[] actual = HashUtils.hashRows(dictionaryBatch, null);
+    for (int row = 0; row < 1000; row++) {
+      assertEquals(expected[row], actual[row]);
+    }
+  }
+
+  @Test
+  public void testColumnarFrame() {
+    final StringDictionary dictionary = new StringDictionary();
+    for (int i = 0; i < 1000; i++) {
+      dictionary.add("unused" + i);
+    }
+    final DictionaryStringColumnBuilder builder = new DictionaryStringColumnBuilder(dictionary, 2000);
+    final StringColumnBuilder plain = new StringColumnBuilder();
+    for (int i = 0; i < 10; i++) {
+      builder.appendString("value" + (i % 2));
+      plain.appendString("x");
+    }
+    final Schema schema = new Schema(ImmutableList.of(Type.STRING_TYPE, Type.STRING_TYPE), ImmutableList.of("a", "b"));
+    final TupleBatch tb =
+        new TupleBatch(schema, ImmutableList.<Column<?>> of(builder.build(), plain.build()), builder.size());
+    final TupleBatch received = ColumnarFrame.decode(ColumnarFrame.encode(tb, IPCCompression.NONE), schema);
+    final DictionaryStringColumn column = (DictionaryStringColumn) received.getDataColumns().get(0);
+    /* Only the strings of the batch are sent. */
+    assertEquals(2, column.getDictionary().size());
+    for (int row = 0; row < 10; row++) {
+      assertEquals(tb.getString(0, row), received.getString(0, row));
+      assertEquals(tb.getString(1, row), received.getString(1, row));
+    }
+  }
+}
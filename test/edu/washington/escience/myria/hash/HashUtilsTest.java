@@ -0,0 +1,112 @@
+package edu.washington.escience.myria.hash;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+
+import edu.washington.escience.myria.MyriaSystemConfigKeys;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.operator.network.partition.SingleFieldHashPartitionFunction;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.HashScheme;
+import edu.washington.escience.myria.util.HashUtils;
+
+public class HashUtilsTest {
+
+  private static final int NUM_PARTITIONS = 7;
+
+  /*
+   * Generates a tuple batch with one column of each type.
+   */
+  private TupleBatch generateTupleBatch(final int numTuples) {
+    final Schema schema =
+        new Schema(ImmutableList.of(Type.INT_TYPE, Type.LONG_TYPE, Type.FLOAT_TYPE, Type.DOUBLE_TYPE,
+            Type.BOOLEAN_TYPE, Type.STRING_TYPE, Type.DATETIME_TYPE), ImmutableList.of("i", "l", "f", "d", "b", "s",
+            "t"));
+    Random rand = new Random(42);
+    TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (int i = 0; i < numTuples; i++) {
+      tbb.putInt(0, rand.nextInt(100));
+      tbb.putLong(1, rand.nextLong());
+      tbb.putFloat(2, rand.nextFloat());
+      tbb.putDouble(3, rand.nextDouble());
+      tbb.putBoolean(4, rand.nextBoolean());
+      tbb.putString(5, "value" + rand.nextInt(100));
+      tbb.putDateTime(6, new DateTime(rand.nextInt()));
+    }
+    return tbb.popAny();
+  }
+
+  @Test
+  public void testColumnHashesMatchRowHashes() {
+    TupleBatch tb = generateTupleBatch(1000);
+    int[] hashes = HashUtils.hashRows(tb, null);
+    for (int row = 0; row < tb.numTuples(); row++) {
+      assertEquals(HashUtils.hashRow(tb, row), hashes[row]);
+    }
+
+    int[] columns = new int[] { 5, 0, 3 };
+    int[] reused = new int[2 * tb.numTuples()];
+    assertSame(reused, HashUtils.hashSubRows(tb, columns, reused));
+    for (int row = 0; row < tb.numTuples(); row++) {
+      assertEquals(HashUtils.hashSubRow(tb, columns, row), reused[row]);
+    }
+
+    for (int column = 0; column < tb.numColumns(); column++) {
+      for (int seed = 0; seed < HashUtils.NUM_OF_HASHFUNCTIONS; seed++) {
+        hashes = HashUtils.hashSubRows(tb, new int[] { column }, seed, HashScheme.CURRENT, hashes);
+        for (int row = 0; row < tb.numTuples(); row++) {
+          assertEquals(HashUtils.hashValue(tb, column, row, seed), hashes[row]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testLegacySchemeMatchesMurmur3() {
+    TupleBatch tb = generateTupleBatch(100);
+    int[] hashes = HashUtils.hashSubRows(tb, new int[] { 1, 0 }, 0, HashScheme.MURMUR3_128, null);
+    for (int row = 0; row < tb.numTuples(); row++) {
+      int expected =
+          Hashing.murmur3_128(243).newHasher().putLong(tb.getLong(1, row)).putInt(tb.getInt(0, row)).hash().asInt();
+      assertEquals(expected, hashes[row]);
+    }
+  }
+
+  @Test
+  public void testPartitionFunctionHashScheme() {
+    TupleBatch tb = generateTupleBatch(100);
+    SingleFieldHashPartitionFunction pf = new SingleFieldHashPartitionFunction(NUM_PARTITIONS, 0);
+    int[] partitions = pf.partition(tb);
+    for (int row = 0; row < tb.numTuples(); row++) {
+      int expected = Hashing.murmur3_128(243).newHasher().putInt(tb.getInt(0, row)).hash().asInt() % NUM_PARTITIONS;
+      assertEquals((expected + NUM_PARTITIONS) % NUM_PARTITIONS, partitions[row]);
+    }
+
+    pf.setHashScheme(HashScheme.CURRENT);
+    partitions = pf.partition(tb);
+    for (int row = 0; row < tb.numTuples(); row++) {
+      int expected = HashUtils.hashValue(tb, 0, row) % NUM_PARTITIONS;
+      assertEquals((expected + NUM_PARTITIONS) % NUM_PARTITIONS, partitions[row]);
+    }
+  }
+
+  @Test
+  public void testHashSchemeFromConfiguration() {
+    assertEquals(HashScheme.LEGACY, HashScheme.fromExecEnvVars(null));
+    assertEquals(HashScheme.LEGACY, HashScheme.fromExecEnvVars(ImmutableMap.<String, Object> of()));
+    assertEquals(HashScheme.MURMUR3_32_PRIMITIVE, HashScheme.fromExecEnvVars(ImmutableMap.<String, Object> of(
+        MyriaSystemConfigKeys.HASH_SCHEME_VERSION, "2")));
+    assertEquals(HashScheme.MURMUR3_128, HashScheme.fromVersion(1));
+  }
+}
@@ -0,0 +1,110 @@
+package edu.washington.escience.myria.hash;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.operator.network.partition.HeavyHitterSketch;
+import edu.washington.escience.myria.operator.network.partition.SingleFieldHashPartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.SkewAwareHashPartitionFunction;
+import edu.washington.escience.myria.operator.network.partition.SkewAwareHashPartitionFunction.HeavyHitterPolicy;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+public class SkewAwareHashPartitionFunctionTest {
+
+  private static final int NUM_WORKERS = 4;
+  /** The heavy hitter, which is the key of every other tuple. */
+  private static final long HEAVY_KEY = 42;
+  private static final List<List<Object>> HEAVY_HITTERS = ImmutableList.<List<Object>> of(ImmutableList
+      .<Object> of((int) HEAVY_KEY));
+
+  /**
+   * @return a batch in which every other tuple has the heavy-hitter key.
+   */
+  private TupleBatch skewedBatch() {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(Schema.ofFields("v", Type.STRING_TYPE, "k", Type.LONG_TYPE));
+    for (int i = 0; i < 1000; ++i) {
+      tbb.putString(0, "v" + i);
+      if (i % 2 == 0) {
+        tbb.putLong(1, HEAVY_KEY);
+      } else {
+        tbb.putLong(1, i);
+      }
+    }
+    return tbb.popAny();
+  }
+
+  @Test
+  public void testSpread() {
+    TupleBatch tb = skewedBatch();
+    SkewAwareHashPartitionFunction pf =
+        new SkewAwareHashPartitionFunction(NUM_WORKERS, new int[] { 1 }, HEAVY_HITTERS, HeavyHitterPolicy.SPREAD);
+    int[] partitions = pf.partition(tb);
+    int[] expected = new SingleFieldHashPartitionFunction(NUM_WORKERS, 1).partition(tb);
+    int[] heavyCounts = new int[NUM_WORKERS];
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      if (tb.getLong(1, row) == HEAVY_KEY) {
+        heavyCounts[partitions[row]]++;
+      } else {
+        assertEquals(expected[row], partitions[row]);
+      }
+    }
+    for (int count : heavyCounts) {
+      assertEquals(500 / NUM_WORKERS, count);
+    }
+  }
+
+  @Test
+  public void testSpreadSmallBatches() {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(Schema.ofFields("k", Type.LONG_TYPE));
+    tbb.putLong(0, HEAVY_KEY);
+    TupleBatch tb = tbb.popAny();
+    SkewAwareHashPartitionFunction pf =
+        new SkewAwareHashPartitionFunction(NUM_WORKERS, new int[] { 0 }, HEAVY_HITTERS, HeavyHitterPolicy.SPREAD);
+    int[] heavyCounts = new int[NUM_WORKERS];
+    for (int i = 0; i < 10 * NUM_WORKERS; ++i) {
+      heavyCounts[pf.partition(tb)[0]]++;
+    }
+    /* The batches of one heavy-hitter tuple each go to the workers in turn, not all to the first worker. */
+    assertArrayEquals(new int[] { 10, 10, 10, 10 }, heavyCounts);
+  }
+
+  @Test
+  public void testBroadcast() {
+    TupleBatch tb = skewedBatch();
+    SkewAwareHashPartitionFunction pf =
+        new SkewAwareHashPartitionFunction(NUM_WORKERS + 1, new int[] { 1 }, HEAVY_HITTERS,
+            HeavyHitterPolicy.BROADCAST);
+    int[] partitions = pf.partition(tb);
+    int[] expected = new SingleFieldHashPartitionFunction(NUM_WORKERS, 1).partition(tb);
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      if (tb.getLong(1, row) == HEAVY_KEY) {
+        assertEquals(NUM_WORKERS, partitions[row]);
+      } else {
+        assertEquals(expected[row], partitions[row]);
+      }
+    }
+    assertEquals(NUM_WORKERS + 1, tb.partition(pf).length);
+  }
+
+  @Test
+  public void testSketchFindsHeavyHitter() {
+    HeavyHitterSketch sketch = new HeavyHitterSketch(new int[] { 1 }, 8, 3);
+    for (int i = 0; i < 5; ++i) {
+      sketch.add(skewedBatch());
+    }
+    List<List<Object>> heavyHitters = sketch.getHeavyHitters(1.0 / NUM_WORKERS);
+    assertTrue(heavyHitters.size() >= 1);
+    assertEquals(HEAVY_KEY, heavyHitters.get(0).get(0));
+    assertEquals((5 * 1000 + 2) / 3, sketch.getNumSampled());
+  }
+}
@@ -1,6 +1,7 @@
 package edu.washington.escience.myria.operator;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -36,7 +37,9 @@ import edu.washington.escience.myria.column.builder.LongColumnBuilder;
 import edu.washington.escience.myria.column.builder.StringColumnBuilder;
 import edu.washington.escience.myria.operator.agg.Aggregate;
 import edu.washington.escience.myria.operator.agg.AggregatorFactory;
+import edu.washington.escience.myria.operator.agg.CountAllAggregatorFactory;
 import edu.washington.escience.myria.operator.agg.MultiGroupByAggregate;
+import edu.washington.escience.myria.operator.agg.PartialAggregate;
 import edu.washington.escience.myria.operator.agg.PrimitiveAggregator.AggregationOp;
 import edu.washington.escience.myria.operator.agg.SingleColumnAggregatorFactory;
 import edu.washington.escience.myria.operator.agg.SingleGroupByAggregate;
@@ -834,31 +837,31 @@ public class AggregateTest {
 
     /* I used the following code to compute these two collision values. */
     // TupleBatch collision = findIntsHashCollision(3, groupCols);
-    // System.err.println(collision.getInt(0, 0)); // 94328
-    // System.err.println(collision.getInt(1, 1)); // 113814
+    // System.err.println(collision.getInt(0, 0)); // 62236
+    // System.err.println(collision.getInt(1, 1)); // 115457
 
     Schema schema = Schema.ofFields(Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE);
     TupleBuffer buffer = new TupleBuffer(schema);
     /* First row */
-    buffer.putInt(0, 113814);
-    buffer.putInt(1, 113814);
-    buffer.putInt(2, 113814);
+    buffer.putInt(0, 115457);
+    buffer.putInt(1, 115457);
+    buffer.putInt(2, 115457);
     /* Second row */
     buffer.putInt(0, 3);
     buffer.putInt(1, 5);
     buffer.putInt(2, 4);
     /* Third row */
-    buffer.putInt(0, 94328);
-    buffer.putInt(1, 94328);
-    buffer.putInt(2, 94328);
+    buffer.putInt(0, 62236);
+    buffer.putInt(1, 62236);
+    buffer.putInt(2, 62236);
     /* Fourth row */
-    buffer.putInt(0, 113814);
-    buffer.putInt(1, 113814);
-    buffer.putInt(2, 113814);
+    buffer.putInt(0, 115457);
+    buffer.putInt(1, 115457);
+    buffer.putInt(2, 115457);
     /* Fifth row */
-    buffer.putInt(0, 113814);
-    buffer.putInt(1, 113814);
-    buffer.putInt(2, 113814);
+    buffer.putInt(0, 115457);
+    buffer.putInt(1, 115457);
+    buffer.putInt(2, 115457);
     /* Verify that the collisions hold where expected. */
     assertEquals(HashUtils.hashSubRow(buffer, groupCols, 0), HashUtils.hashSubRow(buffer, groupCols, 2));
     assertEquals(HashUtils.hashSubRow(buffer, groupCols, 0), HashUtils.hashSubRow(buffer, groupCols, 3));
@@ -874,21 +877,205 @@ public class AggregateTest {
     assertNotNull(result);
     assertEquals(3, result.numTuples());
     assertEquals(3, result.getSchema().numColumns());
-    // 113814 3 times
-    assertEquals(113814, result.getInt(0, 0));
-    assertEquals(113814, result.getInt(1, 0));
+    // 115457 3 times
+    assertEquals(115457, result.getInt(0, 0));
+    assertEquals(115457, result.getInt(1, 0));
     assertEquals(3, result.getLong(2, 0));
     // random vals once
     assertEquals(4, result.getInt(0, 1));
     assertEquals(3, result.getInt(1, 1));
     assertEquals(1, result.getLong(2, 1));
-    // 94328 once
-    assertEquals(94328, result.getInt(0, 2));
-    assertEquals(94328, result.getInt(1, 2));
+    // 62236 once
+    assertEquals(62236, result.getInt(0, 2));
+    assertEquals(62236, result.getInt(1, 2));
     assertEquals(1, result.getLong(2, 2));
     mga.close();
   }
 
+  @Test
+  public void testMultiGroupManyGroups() throws DbException {
+    checkMultiGroupManyGroups(Long.MAX_VALUE);
+  }
+
+  @Test
+  public void testMultiGroupSpill() throws DbException {
+    checkMultiGroupManyGroups(1000);
+  }
+
+  private void checkMultiGroupManyGroups(final long maxGroupsInMemory) throws DbException {
+    final int numTuples = 100000;
+    final int numGroups = 30000;
+    Schema schema =
+        Schema.ofFields("a", Type.LONG_TYPE, "b", Type.STRING_TYPE, "c", Type.INT_TYPE, "d", Type.DOUBLE_TYPE);
+    TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    Map<String, long[]> expected = new HashMap<>();
+    for (int i = 0; i < numTuples; ++i) {
+      int group = (i * 7919) % numGroups;
+      int value = i % 1000 - 500;
+      tbb.putLong(0, group);
+      tbb.putString(1, "g" + (group % 13));
+      tbb.putInt(2, value);
+      tbb.putDouble(3, -value);
+      long[] stats = expected.get(group + "g" + (group % 13));
+      if (stats == null) {
+        stats = new long[] { 0, 0, Long.MAX_VALUE, Long.MIN_VALUE };
+        expected.put(group + "g" + (group % 13), stats);
+      }
+      stats[0]++;
+      stats[1] += value;
+      stats[2] = Math.min(stats[2], value);
+      stats[3] = Math.max(stats[3], -value);
+    }
+
+    MultiGroupByAggregate mga =
+        new MultiGroupByAggregate(new TupleSource(tbb), new int[] { 0, 1 }, new CountAllAggregatorFactory(),
+            new SingleColumnAggregatorFactory(2, AggregationOp.SUM, AggregationOp.MIN),
+            new SingleColumnAggregatorFactory(3, AggregationOp.MAX));
+    mga.setMaxGroupsInMemory(maxGroupsInMemory);
+    mga.open(null);
+    int numResults = 0;
+    while (!mga.eos()) {
+      TupleBatch result = mga.nextReady();
+      if (result == null) {
+        continue;
+      }
+      for (int row = 0; row < result.numTuples(); ++row) {
+        long[] stats = expected.remove(result.getLong(0, row) + result.getString(1, row));
+        assertNotNull(stats);
+        assertEquals(stats[0], result.getLong(2, row));
+        assertEquals(stats[1], result.getLong(3, row));
+        assertEquals(stats[2], result.getInt(4, row));
+        assertEquals(stats[3], result.getDouble(5, row), 0);
+        ++numResults;
+      }
+    }
+    mga.close();
+    assertEquals(numGroups, numResults);
+    assertTrue(expected.isEmpty());
+  }
+
+  @Test
+  public void testSingleGroupSpillNotDecomposable() throws DbException {
+    final int numTuples = 50000;
+    final int numGroups = 7000;
+    Schema schema = Schema.ofFields("a", Type.LONG_TYPE, "b", Type.STRING_TYPE, "c", Type.INT_TYPE);
+    TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    Map<Long, String> expectedMin = new HashMap<>();
+    Map<Long, long[]> expectedSum = new HashMap<>();
+    for (int i = 0; i < numTuples; ++i) {
+      long group = (i * 7919L) % numGroups;
+      String value = "s" + (i % 997);
+      tbb.putLong(0, group);
+      tbb.putString(1, value);
+      tbb.putInt(2, i);
+      String min = expectedMin.get(group);
+      if (min == null || value.compareTo(min) < 0) {
+        expectedMin.put(group, value);
+      }
+      long[] sum = expectedSum.get(group);
+      if (sum == null) {
+        sum = new long[2];
+        expectedSum.put(group, sum);
+      }
+      sum[0] += i;
+      sum[1]++;
+    }
+
+    /* The STRING aggregate cannot be merged from partial results, so new groups are spilled as raw tuples. */
+    SingleGroupByAggregate agg =
+        new SingleGroupByAggregate(new TupleSource(tbb), 0, new SingleColumnAggregatorFactory(1, AggregationOp.MIN),
+            new SingleColumnAggregatorFactory(2, AggregationOp.SUM, AggregationOp.AVG));
+    agg.setMaxGroupsInMemory(500);
+    agg.open(null);
+    int numResults = 0;
+    while (!agg.eos()) {
+      TupleBatch result = agg.nextReady();
+      if (result == null) {
+        continue;
+      }
+      for (int row = 0; row < result.numTuples(); ++row) {
+        long group = result.getLong(0, row);
+        assertEquals(expectedMin.remove(group), result.getString(1, row));
+        long[] sum = expectedSum.get(group);
+        assertEquals(sum[0], result.getLong(2, row));
+        assertEquals((double) sum[0] / sum[1], result.getDouble(3, row), 0.0001);
+        ++numResults;
+      }
+    }
+    agg.close();
+    assertEquals(numGroups, numResults);
+    assertTrue(expectedMin.isEmpty());
+  }
+
+  private HashMap<Tuple, Integer> runToBag(final Operator op) throws DbException {
+    TupleBatchBuffer results = new TupleBatchBuffer(op.getSchema());
+    op.open(null);
+    while (!op.eos()) {
+      TupleBatch tb = op.nextReady();
+      if (tb != null) {
+        for (int row = 0; row < tb.numTuples(); ++row) {
+          results.put(tb, row);
+        }
+      }
+    }
+    op.close();
+    return TestUtils.tupleBatchToTupleBag(results);
+  }
+
+  private TupleBatchBuffer partialAggregateInput(final int numTuples, final int numGroups) {
+    Schema schema =
+        Schema.ofFields("a", Type.LONG_TYPE, "b", Type.INT_TYPE, "c", Type.INT_TYPE, "d", Type.DOUBLE_TYPE);
+    TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (int i = 0; i < numTuples; ++i) {
+      int group = (i * 7919) % numGroups;
+      tbb.putLong(0, group);
+      tbb.putInt(1, group % 7);
+      tbb.putInt(2, i % 1000 - 500);
+      tbb.putDouble(3, i % 77);
+    }
+    return tbb;
+  }
+
+  @Test
+  public void testPartialAggregateMerge() throws DbException {
+    TupleBatchBuffer input = partialAggregateInput(100000, 3000);
+    AggregatorFactory[] factories =
+        new AggregatorFactory[] {
+            new CountAllAggregatorFactory(),
+            new SingleColumnAggregatorFactory(2, AggregationOp.SUM, AggregationOp.MIN, AggregationOp.AVG,
+                AggregationOp.COUNT), new SingleColumnAggregatorFactory(3, AggregationOp.MAX) };
+
+    HashMap<Tuple, Integer> expected =
+        runToBag(new MultiGroupByAggregate(new TupleSource(input), new int[] { 0, 1 }, factories));
+
+    PartialAggregate partial = new PartialAggregate(new TupleSource(input), new int[] { 0, 1 }, factories);
+    partial.setMaxGroupsInMemory(500);
+    MultiGroupByAggregate merge = new MultiGroupByAggregate(partial, new int[] { 0, 1 }, true, factories);
+    assertEquals(
+        new MultiGroupByAggregate(new TupleSource(input), new int[] { 0, 1 }, factories).getSchema(),
+        merge.getSchema());
+    TestUtils.assertTupleBagEqual(expected, runToBag(merge));
+    assertFalse(partial.isPassThrough());
+  }
+
+  @Test
+  public void testPartialAggregatePassThrough() throws DbException {
+    TupleBatchBuffer input = partialAggregateInput(200000, 150000);
+    AggregatorFactory[] factories =
+        new AggregatorFactory[] {
+            new SingleColumnAggregatorFactory(2, AggregationOp.MIN, AggregationOp.MAX, AggregationOp.STDEV),
+            new CountAllAggregatorFactory() };
+
+    HashMap<Tuple, Integer> expected = runToBag(new SingleGroupByAggregate(new TupleSource(input), 0, factories));
+
+    PartialAggregate partial = new PartialAggregate(new TupleSource(input), new int[] { 0 }, factories);
+    SingleGroupByAggregate merge = new SingleGroupByAggregate(partial, 0, true, factories);
+    assertEquals(new SingleGroupByAggregate(new TupleSource(input), 0, factories).getSchema(), merge.getSchema());
+    TestUtils.assertTupleBagEqual(expected, runToBag(merge));
+    /* Almost every tuple is its own group, so aggregating locally does not pay off. */
+    assertTrue(partial.isPassThrough());
+  }
+
   @Test
   public void testMultiGroupCountMultiColumnEmpty() throws DbException {
     final Schema schema =
@@ -0,0 +1,98 @@
+package edu.washington.escience.myria.operator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.TestEnvVars;
+
+public class BloomFilterSemiJoinTest {
+
+  private static final Schema SCHEMA = new Schema(ImmutableList.of(Type.LONG_TYPE, Type.STRING_TYPE), ImmutableList
+      .of("key", "value"));
+
+  private static final long NUM_BITS = 4096;
+
+  private static TupleBatchBuffer keys(final long from, final long to, final long step) {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    for (long key = from; key < to; key += step) {
+      tbb.putLong(0, key);
+      tbb.putString(1, "v" + key);
+    }
+    return tbb;
+  }
+
+  private static List<TupleBatch> drain(final Operator operator) throws DbException {
+    operator.open(TestEnvVars.get());
+    List<TupleBatch> ret = new ArrayList<TupleBatch>();
+    while (!operator.eos()) {
+      TupleBatch tb = operator.nextReady();
+      if (tb != null) {
+        ret.add(tb);
+      }
+    }
+    operator.close();
+    return ret;
+  }
+
+  @Test
+  public void testDropsProbeTuplesWithoutMatch() throws DbException {
+    /* The build side is split across two workers, whose filters are merged. */
+    List<TupleBatch> words = new ArrayList<TupleBatch>();
+    words.addAll(drain(new BloomFilterBuilder(new TupleSource(keys(0, 500, 10)), new int[] { 0 }, NUM_BITS, 3)));
+    words.addAll(drain(new BloomFilterBuilder(new TupleSource(keys(500, 1000, 10)), new int[] { 0 }, NUM_BITS, 3)));
+
+    BloomFilterSemiJoin semiJoin =
+        new BloomFilterSemiJoin(new TupleSource(words, BloomFilter.WORDS_SCHEMA), new TupleSource(keys(0, 10000, 1)),
+            new int[] { 0 }, NUM_BITS, 3);
+    assertEquals(SCHEMA, semiJoin.getSchema());
+    Set<Long> passed = new HashSet<Long>();
+    for (TupleBatch tb : drain(semiJoin)) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        passed.add(tb.getLong(0, row));
+        assertEquals("v" + tb.getLong(0, row), tb.getString(1, row));
+      }
+    }
+
+    /* No probe tuple that has a match is dropped, and most of those that do not are. */
+    for (long key = 0; key < 1000; key += 10) {
+      assertTrue(passed.contains(key));
+    }
+    assertTrue(passed.size() < 100 + 10000 / 10);
+  }
+
+  @Test
+  public void testMergedFilterEqualsFilterOfAllKeys() {
+    TupleBatch all = keys(0, 200, 1).popAny();
+    BloomFilter whole = new BloomFilter(NUM_BITS, 4);
+    whole.add(all, new int[] { 0, 1 });
+
+    BloomFilter merged = new BloomFilter(NUM_BITS, 4);
+    for (long from = 0; from < 200; from += 50) {
+      BloomFilter part = new BloomFilter(NUM_BITS, 4);
+      part.add(keys(from, from + 50, 1).popAny(), new int[] { 0, 1 });
+      TupleBatchBuffer words = new TupleBatchBuffer(BloomFilter.WORDS_SCHEMA);
+      part.writeWords(words);
+      for (TupleBatch tb : words.getAll()) {
+        merged.merge(tb);
+      }
+    }
+
+    TupleBatch probe = keys(0, 5000, 1).popAny();
+    assertEquals(whole.mightContain(probe, new int[] { 0, 1 }), merged.mightContain(probe, new int[] { 0, 1 }));
+    assertEquals(200, whole.mightContain(all, new int[] { 0, 1 }).cardinality());
+  }
+}
@@ -1,6 +1,11 @@
 package edu.washington.escience.myria.operator;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -11,11 +16,16 @@ import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
 import edu.washington.escience.myria.expression.AndExpression;
 import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.expression.ConstantExpression;
 import edu.washington.escience.myria.expression.ExpressionOperator;
+import edu.washington.escience.myria.expression.LenExpression;
 import edu.washington.escience.myria.expression.LessThanExpression;
 import edu.washington.escience.myria.expression.MinusExpression;
 import edu.washington.escience.myria.expression.PlusExpression;
+import edu.washington.escience.myria.expression.TimesExpression;
 import edu.washington.escience.myria.expression.VariableExpression;
+import edu.washington.escience.myria.expression.evaluate.BooleanEvaluator;
+import edu.washington.escience.myria.expression.evaluate.ExpressionOperatorParameter;
 import edu.washington.escience.myria.storage.TupleBatch;
 import edu.washington.escience.myria.storage.TupleBatchBuffer;
 import edu.washington.escience.myria.util.TestEnvVars;
@@ -140,6 +150,54 @@ public class FilterTest {
     assertEquals(2, getRowCount(filter));
   }
 
+  @Test
+  public void testBatchEvaluation() throws Exception {
+    final int numTuples = 100;
+    final Schema schema =
+        new Schema(ImmutableList.of(Type.LONG_TYPE, Type.INT_TYPE, Type.STRING_TYPE), ImmutableList.of("a", "b", "c"));
+    final TupleBatchBuffer testBase = new TupleBatchBuffer(schema);
+    final List<Long> expected = new ArrayList<Long>();
+    for (int i = 0; i < numTuples; i++) {
+      testBase.putLong(0, i * 3L);
+      testBase.putInt(1, i - 40);
+      testBase.putString(2, "Foo" + i);
+      if ((i * 3L + i - 40) * ("Foo" + i).length() < 400) {
+        expected.add(i * 3L);
+      }
+    }
+
+    // Predicate: (a + b) * len(c) < 400
+    Expression predicate =
+        new Expression("batch", new LessThanExpression(new TimesExpression(new PlusExpression(new VariableExpression(
+            0), new VariableExpression(1)), new LenExpression(new VariableExpression(2))), new ConstantExpression(
+            400L)));
+    BooleanEvaluator eval = new BooleanEvaluator(predicate, new ExpressionOperatorParameter(schema, -1));
+    assertTrue(eval.canEvaluateBatch());
+    eval.compile();
+    assertTrue(eval.isBatchCompiled());
+    TupleBatch tb = testBase.popAny();
+    BitSet bits = eval.evalBatch(tb);
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      assertEquals(eval.eval(tb, row), bits.get(row));
+    }
+
+    Filter filter = new Filter(predicate, new TupleSource(tb));
+    filter.open(TestEnvVars.get());
+    final List<Long> actual = new ArrayList<Long>();
+    while (!filter.eos()) {
+      TupleBatch result = filter.nextReady();
+      if (result != null) {
+        for (int row = 0; row < result.numTuples(); ++row) {
+          actual.add(result.getLong(0, row));
+        }
+      }
+    }
+    filter.close();
+    /* the predicate holds for the first 30 rows only. */
+    assertEquals(30, expected.size());
+    assertEquals(expected, actual);
+  }
+
   /*
    * helper method for getting the row count
    */
@@ -0,0 +1,120 @@
+package edu.washington.escience.myria.operator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.expression.ConstantExpression;
+import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.expression.GreaterThanExpression;
+import edu.washington.escience.myria.expression.LenExpression;
+import edu.washington.escience.myria.expression.LessThanExpression;
+import edu.washington.escience.myria.expression.ModuloExpression;
+import edu.washington.escience.myria.expression.NotEqualsExpression;
+import edu.washington.escience.myria.expression.PlusExpression;
+import edu.washington.escience.myria.expression.TimesExpression;
+import edu.washington.escience.myria.expression.VariableExpression;
+import edu.washington.escience.myria.expression.evaluate.FusedEvaluator.Stage;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.TestEnvVars;
+import edu.washington.escience.myria.util.TestUtils;
+import edu.washington.escience.myria.util.Tuple;
+
+public class FusedFilterApplyTest {
+
+  private static final Schema SCHEMA = Schema.ofFields("a", Type.LONG_TYPE, "b", Type.INT_TYPE, "s", Type.STRING_TYPE);
+
+  private TupleBatchBuffer input(final int numTuples) {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    for (int i = 0; i < numTuples; ++i) {
+      tbb.putLong(0, i);
+      tbb.putInt(1, i % 13);
+      tbb.putString(2, "s" + (i % 101));
+    }
+    return tbb;
+  }
+
+  private HashMap<Tuple, Integer> runToBag(final Operator op) throws DbException {
+    TupleBatchBuffer results = new TupleBatchBuffer(op.getSchema());
+    op.open(TestEnvVars.get());
+    while (!op.eos()) {
+      TupleBatch tb = op.nextReady();
+      if (tb != null) {
+        for (int row = 0; row < tb.numTuples(); ++row) {
+          results.put(tb, row);
+        }
+      }
+    }
+    op.close();
+    return TestUtils.tupleBatchToTupleBag(results);
+  }
+
+  @Test
+  public void testFilterApplyFilterApply() throws DbException {
+    int numTuples = 3 * TupleBatch.BATCH_SIZE + 7;
+    Expression bNotZero =
+        new Expression("b != 0", new NotEqualsExpression(new VariableExpression(1), new ConstantExpression(0)));
+    ImmutableList<Expression> first =
+        ImmutableList.of(new Expression("s", new VariableExpression(2)), new Expression("ab", new TimesExpression(
+            new VariableExpression(0), new VariableExpression(1))), new Expression("len", new LenExpression(
+            new VariableExpression(2))));
+    Expression evenProduct =
+        new Expression("even", new LessThanExpression(new ModuloExpression(new VariableExpression(1),
+            new ConstantExpression(2L)), new ConstantExpression(1L)));
+    ImmutableList<Expression> second =
+        ImmutableList.of(new Expression("x", new PlusExpression(new VariableExpression(1), new VariableExpression(2))),
+            new Expression("s", new VariableExpression(0)), new Expression("big", new GreaterThanExpression(
+                new VariableExpression(1), new ConstantExpression(1000L))));
+
+    HashMap<Tuple, Integer> expected =
+        runToBag(new Apply(new Filter(evenProduct, new Apply(new Filter(bNotZero, new TupleSource(input(numTuples))),
+            first)), second));
+
+    FusedFilterApply fused =
+        new FusedFilterApply(new TupleSource(input(numTuples)), ImmutableList.of(Stage.filter(bNotZero), Stage
+            .apply(first), Stage.filter(evenProduct), Stage.apply(second)));
+    assertEquals(Schema.ofFields("x", Type.LONG_TYPE, "s", Type.STRING_TYPE, "big", Type.BOOLEAN_TYPE), fused
+        .getSchema());
+    HashMap<Tuple, Integer> actual = runToBag(fused);
+    assertTrue(fused.isFused());
+    TestUtils.assertTupleBagEqual(expected, actual);
+  }
+
+  @Test
+  public void testFilters() throws DbException {
+    int numTuples = 2 * TupleBatch.BATCH_SIZE;
+    Expression small =
+        new Expression("small", new LessThanExpression(new VariableExpression(0), new ConstantExpression(5000L)));
+    Expression shortString =
+        new Expression("short", new LessThanExpression(new LenExpression(new VariableExpression(2)),
+            new ConstantExpression(3)));
+
+    HashMap<Tuple, Integer> expected =
+        runToBag(new Filter(shortString, new Filter(small, new TupleSource(input(numTuples)))));
+
+    FusedFilterApply fused =
+        new FusedFilterApply(new TupleSource(input(numTuples)), ImmutableList.of(Stage.filter(small), Stage
+            .filter(shortString)));
+    assertEquals(SCHEMA, fused.getSchema());
+    TestUtils.assertTupleBagEqual(expected, runToBag(fused));
+  }
+
+  @Test
+  public void testNothingPasses() throws DbException {
+    Expression never =
+        new Expression("never", new LessThanExpression(new VariableExpression(0), new ConstantExpression(0L)));
+    FusedFilterApply fused =
+        new FusedFilterApply(new TupleSource(input(TupleBatch.BATCH_SIZE)), ImmutableList.of(Stage.filter(never), Stage
+            .apply(ImmutableList.of(new Expression("a", new VariableExpression(0))))));
+    assertTrue(runToBag(fused).isEmpty());
+  }
+}
@@ -0,0 +1,143 @@
+package edu.washington.escience.myria.operator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.TestUtils;
+
+public class OrderByTest {
+
+  private static final int NUM_TUPLES = 52300;
+
+  private List<Entry<Long, String>> entries(final TupleBatchBuffer tuples) {
+    List<Entry<Long, String>> entries = new ArrayList<>();
+    for (TupleBatch tb : tuples.getAll()) {
+      for (int i = 0; i < tb.numTuples(); i++) {
+        entries.add(new SimpleEntry<Long, String>(tb.getLong(0, i), tb.getString(1, i)));
+      }
+    }
+    return entries;
+  }
+
+  private List<Entry<Long, String>> run(final OrderBy order) throws DbException {
+    order.open(null);
+    List<Entry<Long, String>> entries = new ArrayList<>();
+    while (!order.eos()) {
+      TupleBatch tb = order.nextReady();
+      if (tb != null) {
+        for (int i = 0; i < tb.numTuples(); i++) {
+          entries.add(new SimpleEntry<Long, String>(tb.getLong(0, i), tb.getString(1, i)));
+        }
+      }
+    }
+    order.close();
+    return entries;
+  }
+
+  private void checkOrder(final long maxTuplesInMemory, final Long limit, final Comparator<Entry<Long, String>> order,
+      final int[] sortColumns, final boolean[] ascending) throws DbException {
+    TupleBatchBuffer randomTuples = TestUtils.generateRandomTuples(NUM_TUPLES, 5000, false);
+    List<Entry<Long, String>> expected = entries(randomTuples);
+    Collections.sort(expected, order);
+    if (limit != null) {
+      expected = expected.subList(0, (int) Math.min(limit, expected.size()));
+    }
+
+    OrderBy orderBy = new OrderBy(new TupleSource(randomTuples), sortColumns, ascending, limit);
+    orderBy.setMaxTuplesInMemory(maxTuplesInMemory);
+    List<Entry<Long, String>> actual = run(orderBy);
+
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); ++i) {
+      assertEquals(0, order.compare(expected.get(i), actual.get(i)));
+    }
+  }
+
+  @Test
+  public void testInMemory() throws DbException {
+    checkOrder(OrderBy.DEFAULT_MAX_TUPLES_IN_MEMORY, null, new TestUtils.EntryComparator(), new int[] { 0, 1 },
+        new boolean[] { true, true });
+  }
+
+  @Test
+  public void testSpill() throws DbException {
+    checkOrder(3000, null, new TestUtils.EntryComparator(), new int[] { 0, 1 }, new boolean[] { true, true });
+  }
+
+  @Test
+  public void testSpillDescending() throws DbException {
+    checkOrder(3000, null, new Comparator<Entry<Long, String>>() {
+      @Override
+      public int compare(final Entry<Long, String> o1, final Entry<Long, String> o2) {
+        int compared = o2.getValue().compareTo(o1.getValue());
+        if (compared != 0) {
+          return compared;
+        }
+        return Long.compare(o1.getKey(), o2.getKey());
+      }
+    }, new int[] { 1, 0 }, new boolean[] { false, true });
+  }
+
+  @Test
+  public void testLimit() throws DbException {
+    checkOrder(OrderBy.DEFAULT_MAX_TUPLES_IN_MEMORY, 1234L, new TestUtils.EntryComparator(), new int[] { 0, 1 },
+        new boolean[] { true, true });
+    checkOrder(OrderBy.DEFAULT_MAX_TUPLES_IN_MEMORY, 0L, new TestUtils.EntryComparator(), new int[] { 0, 1 },
+        new boolean[] { true, true });
+  }
+
+  @Test
+  public void testLimitLargerThanMemory() throws DbException {
+    checkOrder(3000, 12345L, new TestUtils.EntryComparator(), new int[] { 0, 1 }, new boolean[] { true, true });
+  }
+
+  @Test
+  public void testDoubles() throws DbException {
+    Schema schema = Schema.ofFields(Type.DOUBLE_TYPE, "d");
+    TupleBatchBuffer input = new TupleBatchBuffer(schema);
+    List<Double> expected = new ArrayList<>();
+    Random random = new Random(1);
+    double[] specials = { -0.0, 0.0, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NaN, -Double.MIN_VALUE };
+    for (double special : specials) {
+      input.putDouble(0, special);
+      expected.add(special);
+    }
+    for (int i = 0; i < 10000; ++i) {
+      double d = random.nextGaussian() * 1000;
+      input.putDouble(0, d);
+      expected.add(d);
+    }
+    Collections.sort(expected, Collections.reverseOrder());
+
+    OrderBy order = new OrderBy(new TupleSource(input), new int[] { 0 }, new boolean[] { false });
+    order.setMaxTuplesInMemory(777);
+    order.open(null);
+    List<Double> actual = new ArrayList<>();
+    while (!order.eos()) {
+      TupleBatch tb = order.nextReady();
+      if (tb != null) {
+        for (int i = 0; i < tb.numTuples(); i++) {
+          actual.add(tb.getDouble(0, i));
+        }
+      }
+    }
+    order.close();
+    assertEquals(ImmutableList.copyOf(expected), ImmutableList.copyOf(actual));
+  }
+}
@@ -0,0 +1,113 @@
+package edu.washington.escience.myria.operator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import edu.washington.escience.myria.DbException;
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.expression.ConstantExpression;
+import edu.washington.escience.myria.expression.Expression;
+import edu.washington.escience.myria.expression.LessThanExpression;
+import edu.washington.escience.myria.expression.PlusExpression;
+import edu.washington.escience.myria.expression.VariableExpression;
+import edu.washington.escience.myria.operator.agg.AggregatorFactory;
+import edu.washington.escience.myria.operator.agg.CountAllAggregatorFactory;
+import edu.washington.escience.myria.operator.agg.PartialAggregate;
+import edu.washington.escience.myria.operator.agg.PrimitiveAggregator.AggregationOp;
+import edu.washington.escience.myria.operator.agg.SingleColumnAggregatorFactory;
+import edu.washington.escience.myria.operator.agg.SingleGroupByAggregate;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+import edu.washington.escience.myria.util.TestEnvVars;
+import edu.washington.escience.myria.util.TestUtils;
+import edu.washington.escience.myria.util.Tuple;
+
+public class ParallelPipelineTest {
+
+  private static final Schema SCHEMA = Schema.ofFields("a", Type.LONG_TYPE, "b", Type.LONG_TYPE);
+
+  private TupleBatchBuffer input(final int numTuples) {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    for (int i = 0; i < numTuples; ++i) {
+      tbb.putLong(0, i % 97);
+      tbb.putLong(1, i);
+    }
+    return tbb;
+  }
+
+  private HashMap<Tuple, Integer> runToBag(final Operator op) throws DbException {
+    TupleBatchBuffer results = new TupleBatchBuffer(op.getSchema());
+    op.open(TestEnvVars.get());
+    while (!op.eos()) {
+      TupleBatch tb = op.nextReady();
+      if (tb != null) {
+        for (int row = 0; row < tb.numTuples(); ++row) {
+          results.put(tb, row);
+        }
+      }
+    }
+    op.close();
+    return TestUtils.tupleBatchToTupleBag(results);
+  }
+
+  @Test
+  public void testFilterApply() throws DbException {
+    int numTuples = 10 * TupleBatch.BATCH_SIZE + 17;
+    Expression lessThan =
+        new Expression("lt", new LessThanExpression(new VariableExpression(0), new ConstantExpression(50L)));
+    Expression plus = new Expression("c", new PlusExpression(new VariableExpression(0), new VariableExpression(1)));
+
+    HashMap<Tuple, Integer> expected =
+        runToBag(new Apply(new Filter(lessThan, new TupleSource(input(numTuples))), Arrays.asList(plus)));
+
+    Operator pipeline = new Apply(new Filter(lessThan, new MorselScan(SCHEMA)), Arrays.asList(plus));
+    ParallelPipeline parallel = new ParallelPipeline(new TupleSource(input(numTuples)), pipeline, 4);
+    assertEquals(pipeline.getSchema(), parallel.getSchema());
+    TestUtils.assertTupleBagEqual(expected, runToBag(parallel));
+  }
+
+  @Test
+  public void testPartialAggregateMerge() throws DbException {
+    int numTuples = 20 * TupleBatch.BATCH_SIZE;
+    AggregatorFactory[] factories =
+        new AggregatorFactory[] {
+            new CountAllAggregatorFactory(),
+            new SingleColumnAggregatorFactory(1, AggregationOp.SUM, AggregationOp.MIN, AggregationOp.AVG) };
+
+    HashMap<Tuple, Integer> expected =
+        runToBag(new SingleGroupByAggregate(new TupleSource(input(numTuples)), 0, factories));
+
+    TupleSource source = new TupleSource(input(numTuples));
+    ParallelPipeline parallel =
+        new ParallelPipeline(source, new PartialAggregate(new MorselScan(SCHEMA), new int[] { 0 }, factories), 3);
+    SingleGroupByAggregate merge = new SingleGroupByAggregate(parallel, 0, true, factories);
+    TestUtils.assertTupleBagEqual(expected, runToBag(merge));
+  }
+
+  @Test
+  public void testMorselsAreSharedByTheCopies() throws DbException {
+    int numTuples = 12 * TupleBatch.BATCH_SIZE;
+    Expression always =
+        new Expression("true", new LessThanExpression(new VariableExpression(0), new ConstantExpression(1000L)));
+    ParallelPipeline parallel =
+        new ParallelPipeline(new TupleSource(input(numTuples)), new Filter(always, new MorselScan(SCHEMA)), 5);
+    HashMap<Tuple, Integer> bag = runToBag(parallel);
+    int count = 0;
+    for (int c : bag.values()) {
+      count += c;
+    }
+    assertEquals(numTuples, count);
+    /* each batch of the source is handed out once, to one of the copies. */
+    assertEquals(input(numTuples).getAll().size(), parallel.getNumMorsels());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPipelineMustBeAChain() {
+    new ParallelPipeline(null, new UnionAll(new Operator[] { new MorselScan(SCHEMA), new MorselScan(SCHEMA) }), 2);
+  }
+}
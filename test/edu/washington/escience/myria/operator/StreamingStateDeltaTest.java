@@ -0,0 +1,90 @@
+package edu.washington.escience.myria.operator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+public class StreamingStateDeltaTest {
+
+  private static final Schema SCHEMA = Schema.ofFields("key", Type.LONG_TYPE, "value", Type.LONG_TYPE);
+
+  private static TupleBatch batch(final long... keysAndValues) {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      tbb.putLong(0, keysAndValues[i]);
+      tbb.putLong(1, keysAndValues[i + 1]);
+    }
+    return tbb.popAny();
+  }
+
+  private static StreamingState open(final StreamingState state) {
+    new StreamingStateWrapper(new TupleSource(new TupleBatchBuffer(SCHEMA)), state);
+    state.init(ImmutableMap.<String, Object> of());
+    return state;
+  }
+
+  private static List<String> rows(final List<TupleBatch> batches) {
+    List<String> ret = new ArrayList<String>();
+    for (TupleBatch tb : batches) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        ret.add(tb.getLong(0, row) + "," + tb.getLong(1, row));
+      }
+    }
+    return ret;
+  }
+
+  private static List<String> sortedRows(final List<TupleBatch> batches) {
+    List<String> ret = rows(batches);
+    Collections.sort(ret);
+    return ret;
+  }
+
+  @Test
+  public void testDupElimDelta() {
+    StreamingState state = open(new DupElim());
+    state.update(batch(1, 1, 2, 2));
+    state.startDelta();
+    state.update(batch(2, 2, 3, 3));
+    state.update(batch(3, 3, 4, 4));
+    assertEquals(ImmutableList.of("3,3", "4,4"), sortedRows(state.exportDelta()));
+    assertEquals(ImmutableList.of(), rows(state.exportDelta()));
+    state.update(batch(1, 1, 5, 5));
+    assertEquals(ImmutableList.of("5,5"), rows(state.exportDelta()));
+    assertEquals(5, state.numTuples());
+  }
+
+  @Test
+  public void testKeepMinValueDelta() {
+    StreamingState state = open(new KeepMinValue(new int[] { 0 }, 1));
+    state.update(batch(1, 10, 2, 20));
+    state.startDelta();
+    state.update(batch(1, 5, 3, 30));
+    state.update(batch(1, 7, 3, 25, 2, 30));
+    /* each changed key once, with its current value. */
+    assertEquals(ImmutableList.of("1,5", "3,25"), sortedRows(state.exportDelta()));
+    state.update(batch(2, 15, 1, 6));
+    assertEquals(ImmutableList.of("2,15"), rows(state.exportDelta()));
+  }
+
+  @Test
+  public void testKeepAndSortOnMinValueDelta() {
+    StreamingState state = open(new KeepAndSortOnMinValue(new int[] { 0 }, 1));
+    state.update(batch(1, 10));
+    state.startDelta();
+    state.update(batch(3, 30, 2, 20, 1, 5));
+    state.update(batch(4, 1, 3, 35));
+    assertEquals(ImmutableList.of("4,1", "2,20", "3,30"), rows(state.exportDelta()));
+  }
+}
@@ -2,11 +2,17 @@ package edu.washington.escience.myria.operator;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
 
+import com.google.common.collect.ImmutableList;
+
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
 import edu.washington.escience.myria.util.JoinTestUtils;
 import edu.washington.escience.myria.util.TestEnvVars;
 
@@ -38,4 +44,87 @@ public class SymmetricHashJoinTest {
     Operator join = new SymmetricHashJoin(left, right, new int[] { 0 }, new int[] { 0 });
     join.open(TestEnvVars.get());
   }
+
+  @Test
+  public void testPrimitiveKeys() throws DbException {
+    /* Keys 0..999 appear 5 times on the left, keys 0..1499 appear twice on the right. */
+    TupleSource left = new TupleSource(JoinTestUtils.makeKeyInput(5000, 1000));
+    TupleSource right = new TupleSource(JoinTestUtils.makeKeyInput(3000, 1500));
+    Operator join = new SymmetricHashJoin(ImmutableList.of("k1", "v1", "k2", "v2"), left, right, new int[] { 0, 1 }, new int[] {
+        0, 1 });
+    join.open(TestEnvVars.get());
+    long count = 0;
+    while (!join.eos()) {
+      TupleBatch tb = join.nextReady();
+      if (tb == null) {
+        continue;
+      }
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        assertEquals(tb.getLong(0, row), tb.getLong(2, row));
+        assertEquals(tb.getInt(1, row), tb.getInt(3, row));
+      }
+      count += tb.numTuples();
+    }
+    join.close();
+    assertEquals(1000 * 5 * 2L, count);
+  }
+
+  @Test
+  public void testSpill() throws DbException {
+    TupleSource left = new TupleSource(JoinTestUtils.makeKeyInput(5000, 1000));
+    TupleSource right = new TupleSource(JoinTestUtils.makeKeyInput(3000, 1500));
+    SymmetricHashJoin join =
+        new SymmetricHashJoin(ImmutableList.of("k1", "v1", "k2", "v2"), left, right, new int[] { 0 }, new int[] { 0 });
+    /* Small enough that the partitions must be partitioned again. */
+    join.setMaxTuplesInMemory(100);
+    assertEquals(1000 * 5 * 2L, countMatchingKeys(join));
+  }
+
+  @Test
+  public void testSpillAcrossIterations() throws DbException {
+    /* Every key is repeated in each iteration, so tuples of each iteration also join those of earlier iterations. */
+    List<TupleBatch> left = new ArrayList<>();
+    List<TupleBatch> right = new ArrayList<>();
+    for (int i = 0; i < 3; ++i) {
+      TupleBatchBuffer leftInput = JoinTestUtils.makeKeyInput(1000, 200);
+      left.addAll(leftInput.getAll());
+      left.add(TupleBatch.eoiTupleBatch(leftInput.getSchema()));
+      TupleBatchBuffer rightInput = JoinTestUtils.makeKeyInput(600, 300);
+      right.addAll(rightInput.getAll());
+      right.add(TupleBatch.eoiTupleBatch(rightInput.getSchema()));
+    }
+    SymmetricHashJoin join =
+        new SymmetricHashJoin(ImmutableList.of("k1", "v1", "k2", "v2"), new TupleSource(left), new TupleSource(right),
+            new int[] { 0 }, new int[] { 0 });
+    join.setMaxTuplesInMemory(300);
+    /* Keys 0..199 appear 5 times per iteration on the left and twice per iteration on the right. */
+    assertEquals(200 * 15 * 6L, countMatchingKeys(join));
+  }
+
+  /**
+   * Run a join of inputs made by {@link JoinTestUtils#makeKeyInput(int, int)}.
+   * 
+   * @param join the join.
+   * @return the number of results, after checking that each joins equal tuples.
+   * @throws DbException if any error occurs.
+   */
+  private long countMatchingKeys(final Operator join) throws DbException {
+    join.open(TestEnvVars.get());
+    long count = 0;
+    while (!join.eos()) {
+      TupleBatch tb = join.nextReady();
+      if (tb == null) {
+        /* Results are complete only after the last iteration. */
+        join.setEOI(false);
+        continue;
+      }
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        assertEquals(tb.getLong(0, row), tb.getLong(2, row));
+        assertEquals(tb.getInt(1, row), tb.getInt(3, row));
+      }
+      count += tb.numTuples();
+    }
+    join.close();
+    return count;
+  }
 }
@@ -13,6 +13,9 @@ import com.google.common.hash.Hashing;
 import edu.washington.escience.myria.DbException;
 import edu.washington.escience.myria.Schema;
 import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.column.Column;
+import edu.washington.escience.myria.column.builder.ColumnBuilder;
+import edu.washington.escience.myria.column.builder.ColumnFactory;
 import edu.washington.escience.myria.expression.AbsExpression;
 import edu.washington.escience.myria.expression.AndExpression;
 import edu.washington.escience.myria.expression.CeilExpression;
@@ -647,4 +650,36 @@ public class ApplyTest {
     conditional.getOutputType(new ExpressionOperatorParameter());
   }
 
+  @Test
+  public void testBatchEvaluation() throws Exception {
+    final Schema schema =
+        new Schema(ImmutableList.of(Type.LONG_TYPE, Type.INT_TYPE, Type.STRING_TYPE), ImmutableList.of("a", "b", "c"));
+    final TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (int i = 0; i < SMALL_NUM_TUPLES; i++) {
+      tbb.putLong(0, i * 3L);
+      tbb.putInt(1, i - 4);
+      tbb.putString(2, "Foo" + i);
+    }
+    TupleBatch tb = tbb.popAny();
+
+    // Expression: (a + b) * len(c)
+    Expression expr =
+        new Expression("batch", new TimesExpression(new PlusExpression(new VariableExpression(0),
+            new VariableExpression(1)), new LenExpression(new VariableExpression(2))));
+    GenericEvaluator eval = new GenericEvaluator(expr, new ExpressionOperatorParameter(schema, -1));
+    assertTrue(eval.canEvaluateBatch());
+    eval.compile();
+    assertTrue(eval.isBatchCompiled());
+
+    Column<?> batchResult = eval.evaluateColumn(tb);
+    ColumnBuilder<?> rowResult = ColumnFactory.allocateColumn(Type.LONG_TYPE);
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      eval.eval(tb, row, rowResult, null);
+    }
+    assertEquals(SMALL_NUM_TUPLES, batchResult.size());
+    for (int i = 0; i < SMALL_NUM_TUPLES; i++) {
+      assertEquals((i * 3L + i - 4) * ("Foo" + i).length(), batchResult.getLong(i));
+      assertEquals(rowResult.getLong(i), batchResult.getLong(i));
+    }
+  }
 }
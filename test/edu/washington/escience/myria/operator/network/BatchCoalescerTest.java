@@ -0,0 +1,78 @@
+package edu.washington.escience.myria.operator.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+public class BatchCoalescerTest {
+
+  /** Schema of the test tuples. */
+  private static final Schema SCHEMA = Schema.ofFields("a", Type.LONG_TYPE);
+
+  /**
+   * @param first the value of the first tuple.
+   * @param numTuples the number of tuples.
+   * @return a batch of consecutive values.
+   */
+  private TupleBatch batch(final long first, final int numTuples) {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    for (int i = 0; i < numTuples; ++i) {
+      tbb.putLong(0, first + i);
+    }
+    return tbb.popAny();
+  }
+
+  @Test
+  public void testMergesUntilTarget() {
+    BatchCoalescer coalescer = new BatchCoalescer(100, Long.MAX_VALUE, Long.MAX_VALUE);
+    for (int i = 0; i < 10; ++i) {
+      coalescer.add(batch(10 * i, 10));
+      if (i < 9) {
+        assertNull(coalescer.poll(true));
+      }
+    }
+    TupleBatch merged = coalescer.poll(true);
+    assertEquals(100, merged.numTuples());
+    for (int i = 0; i < 100; ++i) {
+      assertEquals(i, merged.getLong(0, i));
+    }
+    assertNull(coalescer.poll(true));
+  }
+
+  @Test
+  public void testNeverExceedsTarget() {
+    BatchCoalescer coalescer = new BatchCoalescer(100, Long.MAX_VALUE, Long.MAX_VALUE);
+    coalescer.add(batch(0, 60));
+    coalescer.add(batch(60, 60));
+    assertEquals(60, coalescer.poll(true).numTuples());
+    assertNull(coalescer.poll(true));
+    assertEquals(60, coalescer.poll(false).getLong(0, 0));
+  }
+
+  @Test
+  public void testLinger() {
+    BatchCoalescer coalescer = new BatchCoalescer(100, Long.MAX_VALUE, 0);
+    coalescer.add(batch(0, 10));
+    assertEquals(10, coalescer.poll(true).numTuples());
+  }
+
+  @Test
+  public void testEOIKeepsOrder() {
+    BatchCoalescer coalescer = new BatchCoalescer(100, Long.MAX_VALUE, Long.MAX_VALUE);
+    coalescer.add(batch(0, 10));
+    coalescer.add(batch(10, 10));
+    coalescer.add(TupleBatch.eoiTupleBatch(SCHEMA));
+    coalescer.add(batch(20, 200));
+    assertEquals(20, coalescer.poll(true).numTuples());
+    assertTrue(coalescer.poll(true).isEOI());
+    assertEquals(200, coalescer.poll(true).numTuples());
+    assertNull(coalescer.poll(false));
+  }
+}
@@ -0,0 +1,114 @@
+package edu.washington.escience.myria.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.storage.TupleBatch;
+import edu.washington.escience.myria.storage.TupleBatchBuffer;
+
+public class ColumnarFrameTest {
+
+  private static final Schema SCHEMA = new Schema(ImmutableList.of(Type.INT_TYPE, Type.LONG_TYPE, Type.STRING_TYPE,
+      Type.BOOLEAN_TYPE, Type.INT_TYPE, Type.LONG_TYPE, Type.STRING_TYPE, Type.DOUBLE_TYPE, Type.DATETIME_TYPE),
+      ImmutableList.of("sorted", "narrow", "category", "runs", "random", "extreme", "unique", "d", "t"));
+
+  private TupleBatch generateTupleBatch(final int numTuples) {
+    Random rand = new Random(42);
+    TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    int sorted = -1000;
+    for (int i = 0; i < numTuples; i++) {
+      sorted += rand.nextInt(10);
+      tbb.putInt(0, sorted);
+      tbb.putLong(1, (1L << 40) + rand.nextInt(60000));
+      tbb.putString(2, "категория" + rand.nextInt(20));
+      tbb.putBoolean(3, i < numTuples / 3);
+      tbb.putInt(4, rand.nextInt());
+      tbb.putLong(5, rand.nextBoolean() ? Long.MIN_VALUE : Long.MAX_VALUE);
+      tbb.putString(6, "unique" + i);
+      tbb.putDouble(7, rand.nextDouble());
+      tbb.putDateTime(8, new DateTime(rand.nextInt()));
+    }
+    return tbb.popAny();
+  }
+
+  private ChannelBuffer toArray(final ChannelBuffer frame) {
+    byte[] bytes = new byte[frame.readableBytes()];
+    frame.getBytes(frame.readerIndex(), bytes);
+    return ChannelBuffers.wrappedBuffer(bytes);
+  }
+
+  private ColumnEncoding encoding(final ChannelBuffer frame, final int column) {
+    return ColumnEncoding.fromId(frame.getByte(11 + 5 * column));
+  }
+
+  private void assertBatchEquals(final TupleBatch expected, final TupleBatch actual) {
+    assertEquals(expected.numTuples(), actual.numTuples());
+    for (int column = 0; column < expected.numColumns(); column++) {
+      for (int row = 0; row < expected.numTuples(); row++) {
+        assertEquals(expected.getObject(column, row), actual.getObject(column, row));
+      }
+    }
+  }
+
+  @Test
+  public void testLightweightEncodings() {
+    TupleBatch tb = generateTupleBatch(TupleBatch.BATCH_SIZE);
+    ChannelBuffer plain = toArray(ColumnarFrame.encode(tb, IPCCompression.NONE));
+    ChannelBuffer frame = toArray(ColumnarFrame.encode(tb, IPCCompression.LIGHTWEIGHT));
+    assertEquals(ColumnEncoding.DELTA, encoding(frame, 0));
+    assertEquals(ColumnEncoding.FRAME_OF_REFERENCE, encoding(frame, 1));
+    assertEquals(ColumnEncoding.DICTIONARY, encoding(frame, 2));
+    assertEquals(ColumnEncoding.RUN_LENGTH, encoding(frame, 3));
+    assertEquals(ColumnEncoding.PLAIN, encoding(frame, 4));
+    assertEquals(ColumnEncoding.PLAIN, encoding(frame, 5));
+    assertEquals(ColumnEncoding.PLAIN, encoding(frame, 6));
+    assertTrue(frame.readableBytes() < plain.readableBytes());
+    assertBatchEquals(tb, ColumnarFrame.decode(frame, SCHEMA));
+  }
+
+  @Test
+  public void testDeflate() {
+    TupleBatch tb = generateTupleBatch(TupleBatch.BATCH_SIZE);
+    ChannelBuffer lightweight = ColumnarFrame.encode(tb, IPCCompression.LIGHTWEIGHT);
+    ChannelBuffer frame = toArray(ColumnarFrame.encode(tb, IPCCompression.DEFLATE));
+    assertEquals(ColumnarFrame.FLAG_DEFLATED, frame.getByte(2));
+    assertTrue(frame.readableBytes() < lightweight.readableBytes());
+    assertBatchEquals(tb, ColumnarFrame.decode(frame, SCHEMA));
+  }
+
+  @Test
+  public void testSmallBatches() {
+    for (int numTuples : new int[] { 1, 2, 3, 17 }) {
+      TupleBatch tb = generateTupleBatch(numTuples);
+      for (IPCCompression compression : IPCCompression.values()) {
+        assertBatchEquals(tb, ColumnarFrame.decode(toArray(ColumnarFrame.encode(tb, compression)), SCHEMA));
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectOtherVersions() {
+    ChannelBuffer frame = toArray(ColumnarFrame.encode(generateTupleBatch(3)));
+    /* a version 1 frame, whose header has neither flags nor column encodings. */
+    frame.setByte(1, 1);
+    ColumnarFrame.decode(frame, SCHEMA);
+  }
+
+  @Test
+  public void testCompressionFromConfiguration() {
+    assertEquals(IPCCompression.NONE, IPCCompression.fromConfiguration(null));
+    assertEquals(IPCCompression.LIGHTWEIGHT, IPCCompression.fromConfiguration("lightweight"));
+    assertEquals(IPCCompression.DEFLATE, IPCCompression.fromConfiguration(" Deflate "));
+  }
+}
@@ -0,0 +1,39 @@
+package edu.washington.escience.myria.parallel.ipc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class InputBufferMemoryPoolTest {
+
+  @Test
+  public void testExhaustAndRecover() {
+    InputBufferMemoryPool pool = new InputBufferMemoryPool(400, 100, 50);
+    pool.reserve(350);
+    assertFalse(pool.isExhausted());
+    pool.reserve(100);
+    assertTrue(pool.isExhausted());
+    assertFalse(pool.isRecovered());
+    pool.release(100);
+    assertFalse(pool.isExhausted());
+    assertFalse(pool.isRecovered());
+    pool.release(50);
+    assertTrue(pool.isRecovered());
+    assertEquals(300, pool.getUsed());
+  }
+
+  @Test
+  public void testUnbounded() {
+    InputBufferMemoryPool pool = InputBufferMemoryPool.unbounded();
+    pool.reserve(Integer.MAX_VALUE);
+    assertFalse(pool.isExhausted());
+    assertTrue(pool.isRecovered());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRecoverTriggerMustBeBelowCapacity() {
+    new InputBufferMemoryPool(400, 100, 100);
+  }
+}
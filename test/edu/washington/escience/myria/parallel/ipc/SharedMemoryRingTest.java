@@ -0,0 +1,84 @@
+package edu.washington.escience.myria.parallel.ipc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SharedMemoryRingTest {
+
+  private static final int CAPACITY = 4096;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * @param file a file.
+   * @return the file, after making it the size of a ring.
+   * @throws IOException if the file cannot be written.
+   */
+  private File ringSized(final File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(CAPACITY);
+    }
+    return file;
+  }
+
+  /**
+   * Check that the receiver refuses to open a ring, and leaves its file alone.
+   * 
+   * @param directory the shared memory directory.
+   * @param path the path of the ring.
+   * @param file the file behind the path.
+   * @param capacity the capacity of the ring.
+   * @throws IOException if an I/O error occurs.
+   */
+  private void checkRejected(final File directory, final String path, final File file, final int capacity)
+      throws IOException {
+    try {
+      SharedMemoryRing.open(directory, path, capacity, CAPACITY);
+      fail("opened " + path);
+    } catch (IllegalArgumentException e) {
+      assertTrue(file.exists());
+    }
+  }
+
+  @Test
+  public void testOpen() throws IOException {
+    File directory = folder.newFolder("shm");
+    SharedMemoryRing ring = SharedMemoryRing.create(directory, CAPACITY);
+    File file = new File(ring.getPath());
+    SharedMemoryRing opened = SharedMemoryRing.open(directory, ring.getPath(), CAPACITY, CAPACITY);
+    assertTrue(opened.isAttached());
+    assertEquals(CAPACITY, opened.getCapacity());
+    assertFalse(file.exists());
+  }
+
+  @Test
+  public void testRejectOtherFiles() throws IOException {
+    File directory = folder.newFolder("shm");
+    File outside = ringSized(folder.newFile("myria-ipc-1.ring"));
+    checkRejected(directory, outside.getPath(), outside, CAPACITY);
+    checkRejected(directory, new File(directory, "../myria-ipc-1.ring").getPath(), outside, CAPACITY);
+    File misnamed = ringSized(new File(directory, "data.bin"));
+    checkRejected(directory, misnamed.getPath(), misnamed, CAPACITY);
+  }
+
+  @Test
+  public void testRejectLargeCapacity() throws IOException {
+    File directory = folder.newFolder("shm");
+    File large = new File(directory, "myria-ipc-2.ring");
+    try (RandomAccessFile raf = new RandomAccessFile(large, "rw")) {
+      raf.setLength(2 * CAPACITY);
+    }
+    checkRejected(directory, large.getPath(), large, 2 * CAPACITY);
+  }
+}
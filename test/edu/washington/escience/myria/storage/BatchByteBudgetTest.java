@@ -0,0 +1,126 @@
+package edu.washington.escience.myria.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+
+public class BatchByteBudgetTest {
+
+  /** Schema of the test tuples. */
+  private static final Schema SCHEMA = Schema.ofFields("a", Type.INT_TYPE, "b", Type.LONG_TYPE, "c", Type.STRING_TYPE);
+  /** The estimated number of bytes of a test tuple: 4 + 8 + 4 + 2 * 100. */
+  private static final int TUPLE_BYTES = 216;
+  /** The byte budget, which fits 100 test tuples. */
+  private static final long BUDGET = 100L * TUPLE_BYTES;
+
+  /**
+   * @param i the number of the tuple.
+   * @return the string of the test tuple, which has 100 chars.
+   */
+  private String string(final int i) {
+    return Strings.padStart(String.valueOf(i), 100, '0');
+  }
+
+  /**
+   * Append the test tuples to a table.
+   * 
+   * @param table the table.
+   * @param numTuples the number of tuples.
+   */
+  private void fill(final AppendableTable table, final int numTuples) {
+    for (int i = 0; i < numTuples; ++i) {
+      table.putInt(0, i);
+      table.putLong(1, -(long) i << 40);
+      table.putString(2, string(i));
+    }
+  }
+
+  /**
+   * Check that the tuples of a table are the test tuples.
+   * 
+   * @param table the table.
+   * @param numTuples the number of tuples.
+   */
+  private void check(final ReadableTable table, final int numTuples) {
+    assertEquals(numTuples, table.numTuples());
+    for (int i = 0; i < numTuples; ++i) {
+      assertEquals(i, table.getInt(0, i));
+      assertEquals(-(long) i << 40, table.getLong(1, i));
+      assertEquals(string(i), table.getString(2, i));
+    }
+  }
+
+  @Test
+  public void testTupleBatchBuffer() {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA, false, BUDGET);
+    fill(tbb, 1050);
+    List<TupleBatch> batches = tbb.getAll();
+    assertEquals(11, batches.size());
+    for (int i = 0; i < 10; ++i) {
+      assertEquals(100, batches.get(i).numTuples());
+    }
+    assertEquals(50, batches.get(10).numTuples());
+  }
+
+  @Test
+  public void testNarrowTuplesAreLimitedByBatchSize() {
+    Schema narrow = Schema.ofFields("a", Type.INT_TYPE);
+    TupleBatchBuffer tbb = new TupleBatchBuffer(narrow, false, BUDGET * 1000);
+    for (int i = 0; i < TupleBatch.BATCH_SIZE + 1; ++i) {
+      tbb.putInt(0, i);
+    }
+    assertEquals(TupleBatch.BATCH_SIZE, tbb.popFilled().numTuples());
+    assertEquals(1, tbb.popAny().numTuples());
+  }
+
+  @Test
+  public void testTupleBuffer() {
+    TupleBuffer buffer = new TupleBuffer(SCHEMA, BUDGET);
+    fill(buffer, 1050);
+    check(buffer, 1050);
+    List<TupleBatch> batches = buffer.finalResult();
+    assertEquals(11, batches.size());
+    assertEquals(50, batches.get(10).numTuples());
+  }
+
+  @Test
+  public void testMutableTupleBuffer() {
+    MutableTupleBuffer buffer = new MutableTupleBuffer(SCHEMA, BUDGET);
+    fill(buffer, 1050);
+    check(buffer, 1050);
+    assertEquals(11, buffer.getAll().size());
+    assertEquals(49, buffer.getTupleIndexInContainingTB(949));
+    assertEquals(string(949), buffer.getColumns(949)[2].getString(49));
+
+    /* Swap the first and last tuples, across batches. */
+    for (int column = 0; column < SCHEMA.numColumns(); ++column) {
+      buffer.swap(column, 0, 1049);
+    }
+    assertEquals(1049, buffer.getInt(0, 0));
+    assertEquals(string(0), buffer.getString(2, 1049));
+
+    MutableTupleBuffer clone = buffer.clone();
+    fill(clone, 100);
+    assertEquals(1150, clone.numTuples());
+    assertEquals(string(99), clone.getString(2, 1149));
+    assertTrue(clone.getAll().size() >= 12);
+    assertEquals(1050, buffer.numTuples());
+  }
+
+  @Test
+  public void testEstimateBytes() {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA, false, BUDGET);
+    fill(tbb, 100);
+    TupleBatch batch = tbb.popAny();
+    assertEquals(BUDGET, BatchByteBudget.estimateBytes(batch));
+    assertEquals(0, BatchByteBudget.estimateBytes(TupleBatch.eoiTupleBatch(SCHEMA)));
+  }
+}
@@ -0,0 +1,109 @@
+package edu.washington.escience.myria.storage;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+
+public class GroupIdTableTest {
+
+  /** Schema of the test tuples. */
+  private static final Schema SCHEMA = Schema.ofFields("a", Type.INT_TYPE, "b", Type.LONG_TYPE, "c", Type.STRING_TYPE);
+
+  /**
+   * @param column a column of the test tuples.
+   * @param i the number of the tuple.
+   * @return the value of the column of the test tuple.
+   */
+  private Object value(final int column, final int i) {
+    switch (column) {
+      case 0:
+        return i;
+      case 1:
+        return -(long) i << 40;
+      default:
+        return String.valueOf(i);
+    }
+  }
+
+  /**
+   * Add every key (i, -i << 40, "i") three times, and check that the ids are dense and that the keys round-trip.
+   * 
+   * @param keyColumns the key columns.
+   */
+  private void checkIds(final int[] keyColumns) {
+    final int numKeys = 20000;
+    TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    for (int copy = 0; copy < 3; ++copy) {
+      for (int i = 0; i < numKeys; ++i) {
+        for (int column = 0; column < SCHEMA.numColumns(); ++column) {
+          tbb.putObject(column, value(column, i));
+        }
+      }
+    }
+    GroupIdTable table = new GroupIdTable(SCHEMA, keyColumns);
+    int expected = 0;
+    for (TupleBatch tb : tbb.getAll()) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        assertEquals(expected % numKeys, table.getOrAdd(tb, row));
+        ++expected;
+      }
+    }
+    assertEquals(numKeys, table.numKeys());
+
+    TupleBatchBuffer keys = new TupleBatchBuffer(table.getKeySchema());
+    for (int id = 0; id < numKeys; ++id) {
+      table.appendKey(id, keys, 0);
+    }
+    int id = 0;
+    for (TupleBatch tb : keys.getAll()) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        for (int column = 0; column < keyColumns.length; ++column) {
+          assertEquals(value(keyColumns[column], id), tb.getObject(column, row));
+        }
+        ++id;
+      }
+    }
+    assertEquals(numKeys, id);
+  }
+
+  @Test
+  public void testInlineKeys() {
+    checkIds(new int[] { 0, 1 });
+    checkIds(new int[] { 1 });
+  }
+
+  @Test
+  public void testStringKeys() {
+    checkIds(new int[] { 2 });
+    checkIds(new int[] { 1, 2 });
+  }
+
+  @Test
+  public void testNaNKeys() {
+    Schema schema = Schema.ofFields("d", Type.DOUBLE_TYPE, "f", Type.FLOAT_TYPE);
+    TupleBatchBuffer tbb = new TupleBatchBuffer(schema);
+    for (int i = 0; i < 10; ++i) {
+      tbb.putDouble(0, Double.NaN);
+      tbb.putFloat(1, Float.NaN);
+      tbb.putDouble(0, i % 2);
+      tbb.putFloat(1, Float.NaN);
+    }
+    TupleBatch tb = tbb.popAny();
+    GroupIdTable doubles = new GroupIdTable(schema, new int[] { 0 });
+    GroupIdTable floats = new GroupIdTable(schema, new int[] { 1 });
+    GroupIdTable both = new GroupIdTable(schema, new int[] { 0, 1 });
+    for (int row = 0; row < tb.numTuples(); ++row) {
+      doubles.getOrAdd(tb, row);
+      floats.getOrAdd(tb, row);
+      both.getOrAdd(tb, row);
+    }
+    /* All NaN keys are in one group. */
+    assertEquals(3, doubles.numKeys());
+    assertEquals(1, floats.numKeys());
+    assertEquals(3, both.numKeys());
+    assertEquals(0, doubles.get(tb, 0));
+  }
+}
@@ -0,0 +1,70 @@
+package edu.washington.escience.myria.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+
+public class PrimitiveJoinHashTableTest {
+
+  /** Schema of the test tuples. */
+  private static final Schema SCHEMA = Schema.ofFields("a", Type.INT_TYPE, "b", Type.LONG_TYPE, "c", Type.STRING_TYPE);
+  /** The compound key. */
+  private static final int[] KEY = new int[] { 0, 1 };
+
+  @Test
+  public void testSupports() {
+    assertTrue(PrimitiveJoinHashTable.supports(SCHEMA, KEY));
+    assertTrue(PrimitiveJoinHashTable.supports(SCHEMA, new int[] { 1 }));
+    assertFalse(PrimitiveJoinHashTable.supports(SCHEMA, new int[] { 1, 2 }));
+    assertFalse(PrimitiveJoinHashTable.supports(SCHEMA, new int[] {}));
+  }
+
+  @Test
+  public void testCompoundKeys() {
+    final int numKeys = 20000;
+    TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    /* Every key (i, -i << 40) appears three times, and the tuples are added in order of their third column. */
+    for (int copy = 0; copy < 3; ++copy) {
+      for (int i = 0; i < numKeys; ++i) {
+        tbb.putInt(0, i);
+        tbb.putLong(1, -(long) i << 40);
+        tbb.putString(2, String.valueOf(copy));
+      }
+    }
+    MutableTupleBuffer rows = new MutableTupleBuffer(SCHEMA);
+    PrimitiveJoinHashTable table = new PrimitiveJoinHashTable(SCHEMA, KEY);
+    for (TupleBatch tb : tbb.getAll()) {
+      for (int row = 0; row < tb.numTuples(); ++row) {
+        assertEquals(rows.numTuples(), table.add(tb, KEY, row));
+        for (int column = 0; column < tb.numColumns(); ++column) {
+          rows.put(column, tb.getDataColumns().get(column), row);
+        }
+      }
+    }
+    assertEquals(3 * numKeys, table.numRows());
+    assertEquals(numKeys, table.numKeys());
+
+    for (int i = 0; i < numKeys; ++i) {
+      int count = 0;
+      for (int index = table.firstMatch(rows, KEY, i); index >= 0; index = table.nextMatch(index)) {
+        assertEquals(i, rows.getInt(0, index));
+        assertEquals(-(long) i << 40, rows.getLong(1, index));
+        assertEquals(String.valueOf(count), rows.getString(2, index));
+        ++count;
+      }
+      assertEquals(3, count);
+    }
+
+    /* A key that matches in one column but not the other. */
+    TupleBatchBuffer probe = new TupleBatchBuffer(SCHEMA);
+    probe.putInt(0, 1);
+    probe.putLong(1, 1L);
+    probe.putString(2, "");
+    assertEquals(-1, table.firstMatch(probe.popAny(), KEY, 0));
+  }
+}
@@ -0,0 +1,114 @@
+package edu.washington.escience.myria.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import edu.washington.escience.myria.Schema;
+import edu.washington.escience.myria.Type;
+import edu.washington.escience.myria.operator.network.partition.SingleFieldHashPartitionFunction;
+import edu.washington.escience.myria.util.IPCUtils;
+
+public class TupleBatchTest {
+
+  /** Schema of the test batch. */
+  private static final Schema SCHEMA = Schema.ofFields("id", Type.LONG_TYPE, "name", Type.STRING_TYPE);
+
+  /**
+   * @param numTuples the number of tuples.
+   * @return a batch with the tuples (i, "name" + i) for i in [0, numTuples).
+   */
+  private static TupleBatch makeBatch(final int numTuples) {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(SCHEMA);
+    for (int i = 0; i < numTuples; ++i) {
+      tbb.putLong(0, i);
+      tbb.putString(1, "name" + i);
+    }
+    return tbb.popAny();
+  }
+
+  /**
+   * Checks that the specified batch holds exactly the tuples (i, "name" + i) for the multiples i of step.
+   * 
+   * @param tb the batch.
+   * @param step the step.
+   * @param numTuples the expected number of tuples.
+   */
+  private static void checkMultiples(final TupleBatch tb, final int step, final int numTuples) {
+    assertEquals(numTuples, tb.numTuples());
+    for (int row = 0; row < numTuples; ++row) {
+      assertEquals(row * step, tb.getLong(0, row));
+      assertEquals("name" + row * step, tb.getString(1, row));
+      assertEquals(row * step, tb.getDataColumns().get(0).getLong(row));
+      assertEquals("name" + row * step, tb.asColumn(1).getString(row));
+    }
+  }
+
+  /**
+   * @param numTuples the number of tuples in the bit set.
+   * @param step keep every step-th tuple.
+   * @return a BitSet with the multiples of step set.
+   */
+  private static BitSet multiples(final int numTuples, final int step) {
+    BitSet bits = new BitSet(numTuples);
+    for (int i = 0; i < numTuples; i += step) {
+      bits.set(i);
+    }
+    return bits;
+  }
+
+  @Test
+  public void testFilterComposes() {
+    TupleBatch tb = makeBatch(100);
+    TupleBatch evens = tb.filter(multiples(100, 2));
+    checkMultiples(evens, 2, 50);
+    /* Every 3rd even number is a multiple of 6. */
+    TupleBatch sixes = evens.filter(multiples(50, 3));
+    checkMultiples(sixes, 6, 17);
+    checkMultiples(sixes.prefix(5), 6, 5);
+    checkMultiples(sixes.selectColumns(new int[] { 0, 1 }, SCHEMA), 6, 17);
+    assertSame(evens, evens.filter(multiples(50, 1)));
+  }
+
+  @Test
+  public void testCompact() {
+    TupleBatch evens = makeBatch(100).filter(multiples(100, 2));
+    TupleBatch compacted = evens.compact();
+    checkMultiples(compacted, 2, 50);
+    assertEquals(50, compacted.getDataColumns().get(0).size());
+    assertSame(compacted, compacted.compact());
+  }
+
+  @Test
+  public void testSerializeFiltered() {
+    TupleBatch threes = makeBatch(100).filter(multiples(100, 3));
+    TupleBatch received = IPCUtils.tmToTupleBatch(threes.toTransportMessage().getDataMessage(), SCHEMA);
+    checkMultiples(received, 3, 34);
+  }
+
+  @Test
+  public void testAppendColumn() {
+    TupleBatch tb = makeBatch(100).filter(multiples(100, 2));
+    TupleBatch appended = tb.appendColumn("id2", tb.getDataColumns().get(0));
+    assertEquals(ImmutableList.of("id", "name", "id2"), appended.getSchema().getColumnNames());
+    for (int row = 0; row < appended.numTuples(); ++row) {
+      assertEquals(appended.getLong(0, row), appended.getLong(2, row));
+    }
+  }
+
+  @Test
+  public void testPartitionSinglePartition() {
+    TupleBatch tb = makeBatch(100).filter(multiples(100, 2));
+    TupleBatch[] partitions = tb.partition(new SingleFieldHashPartitionFunction(1, 0));
+    assertSame(tb, partitions[0]);
+    /* An empty batch has no tuples in any partition. */
+    partitions = tb.prefix(0).partition(new SingleFieldHashPartitionFunction(1, 0));
+    assertNull(partitions[0]);
+  }
+}
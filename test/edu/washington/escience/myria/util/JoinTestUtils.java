@@ -86,4 +86,23 @@ public final class JoinTestUtils {
 
     return ret;
   }
+
+  /** Schema of the inputs made by {@link #makeKeyInput(int, int)}. */
+  private static final Schema KEY_SCHEMA = Schema.ofFields("key", Type.LONG_TYPE, "value", Type.INT_TYPE);
+
+  /**
+   * @param numTuples the number of tuples.
+   * @param numKeys the number of distinct keys.
+   * @return tuples with numKeys distinct LONG keys that differ only in their high bits, each repeated about numTuples /
+   *         numKeys times, and the INT value key % 7.
+   */
+  public static TupleBatchBuffer makeKeyInput(final int numTuples, final int numKeys) {
+    TupleBatchBuffer tbb = new TupleBatchBuffer(KEY_SCHEMA);
+    for (int i = 0; i < numTuples; ++i) {
+      long key = (long) (i % numKeys) << 32;
+      tbb.putLong(0, key);
+      tbb.putInt(1, (i % numKeys) % 7);
+    }
+    return tbb;
+  }
 }
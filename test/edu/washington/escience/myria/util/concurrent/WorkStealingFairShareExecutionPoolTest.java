@@ -0,0 +1,216 @@
+package edu.washington.escience.myria.util.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class WorkStealingFairShareExecutionPoolTest {
+
+  private WorkStealingFairShareExecutionPool pool;
+
+  @After
+  public void shutdown() throws InterruptedException {
+    pool.shutdown();
+    assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+  }
+
+  /** A task of a group that records its name when it runs. */
+  private static class GroupTask implements Runnable, FairShareTask {
+    private final SchedulingGroup group;
+    private final String name;
+    private final List<String> log;
+
+    GroupTask(final SchedulingGroup group, final String name, final List<String> log) {
+      this.group = group;
+      this.name = name;
+      this.log = log;
+    }
+
+    @Override
+    public SchedulingGroup getSchedulingGroup() {
+      return group;
+    }
+
+    @Override
+    public void run() {
+      log.add(name);
+    }
+  }
+
+  /** Blocks a thread of the pool until the returned latch is counted down. */
+  private CountDownLatch blockOneThread() throws InterruptedException {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    pool.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        started.countDown();
+        release.await();
+        return null;
+      }
+    });
+    started.await();
+    return release;
+  }
+
+  @Test
+  public void sameTaskRunsOneAtATimeTest() throws Exception {
+    pool = new WorkStealingFairShareExecutionPool(4);
+    final AtomicInteger running = new AtomicInteger(0);
+    final AtomicInteger overlaps = new AtomicInteger(0);
+    final AtomicInteger runs = new AtomicInteger(0);
+    final Runnable task = new Runnable() {
+      @Override
+      public void run() {
+        if (running.incrementAndGet() > 1) {
+          overlaps.incrementAndGet();
+        }
+        Thread.yield();
+        runs.incrementAndGet();
+        running.decrementAndGet();
+      }
+    };
+    List<Future<?>> futures = new ArrayList<Future<?>>();
+    for (int i = 0; i < 1000; i++) {
+      futures.add(pool.submit(task));
+    }
+    for (Future<?> f : futures) {
+      f.get();
+    }
+    assertEquals(1000, runs.get());
+    assertEquals(0, overlaps.get());
+  }
+
+  @Test
+  public void startedTaskStaysInItsThreadTest() throws Exception {
+    pool = new WorkStealingFairShareExecutionPool(4);
+    final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+    final Runnable task = new Runnable() {
+      @Override
+      public void run() {
+        threads.add(Thread.currentThread());
+        Thread.yield();
+      }
+    };
+    List<Future<?>> futures = new ArrayList<Future<?>>();
+    for (int i = 0; i < 1000; i++) {
+      futures.add(pool.submit(task));
+    }
+    for (Future<?> f : futures) {
+      f.get();
+    }
+    /* the other threads are idle, but they only steal the tasks that have not started. */
+    assertEquals(1, threads.size());
+  }
+
+  @Test
+  public void idleThreadStealsTest() throws Exception {
+    pool = new WorkStealingFairShareExecutionPool(2);
+    /* the blocker goes to the first queue, the next two tasks to the second and the first. */
+    CountDownLatch release = blockOneThread();
+    final CountDownLatch done = new CountDownLatch(2);
+    for (int i = 0; i < 2; i++) {
+      pool.submit(new Runnable() {
+        @Override
+        public void run() {
+          done.countDown();
+        }
+      });
+    }
+    /* both run while the first thread is still blocked. */
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertTrue(pool.getNumSteals() > 0);
+    release.countDown();
+  }
+
+  @Test
+  public void higherPriorityRunsFirstTest() throws Exception {
+    pool = new WorkStealingFairShareExecutionPool(1);
+    SchedulingGroup etl = new SchedulingGroup(0, SchedulingGroup.DEFAULT_WEIGHT);
+    SchedulingGroup dashboard = new SchedulingGroup(1, SchedulingGroup.DEFAULT_WEIGHT);
+    List<String> log = Collections.synchronizedList(new ArrayList<String>());
+
+    CountDownLatch release = blockOneThread();
+    List<Future<?>> futures = new ArrayList<Future<?>>();
+    for (int i = 0; i < 5; i++) {
+      futures.add(pool.submit(new GroupTask(etl, "etl", log)));
+    }
+    for (int i = 0; i < 5; i++) {
+      futures.add(pool.submit(new GroupTask(dashboard, "dashboard", log)));
+    }
+    release.countDown();
+    for (Future<?> f : futures) {
+      f.get();
+    }
+    assertEquals(10, log.size());
+    for (int i = 0; i < 5; i++) {
+      assertEquals("dashboard", log.get(i));
+      assertEquals("etl", log.get(i + 5));
+    }
+  }
+
+  @Test
+  public void weightsShareTheThreadsTest() throws Exception {
+    pool = new WorkStealingFairShareExecutionPool(1);
+    final SchedulingGroup heavy = new SchedulingGroup(0, 3 * SchedulingGroup.DEFAULT_WEIGHT);
+    final SchedulingGroup light = new SchedulingGroup(0, SchedulingGroup.DEFAULT_WEIGHT);
+    final AtomicInteger remaining = new AtomicInteger(400);
+    final CountDownLatch done = new CountDownLatch(2);
+    final AtomicInteger heavyRuns = new AtomicInteger(0);
+
+    CountDownLatch release = blockOneThread();
+    for (final SchedulingGroup group : new SchedulingGroup[] { heavy, light }) {
+      /* each task spins for a while and submits itself again, i.e., it is always ready. */
+      pool.submit(new FairShareRunnable(group) {
+        @Override
+        public void run() {
+          if (remaining.getAndDecrement() <= 0) {
+            done.countDown();
+            return;
+          }
+          if (group == heavy) {
+            heavyRuns.incrementAndGet();
+          }
+          long end = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(200);
+          while (System.nanoTime() < end) {
+            Thread.yield();
+          }
+          pool.submit(this);
+        }
+      });
+    }
+    release.countDown();
+    assertTrue(done.await(30, TimeUnit.SECONDS));
+    /* 3 to 1, i.e., 300 of the 400 runs, give or take the runs that the OS preempted. */
+    assertTrue("heavy ran " + heavyRuns.get() + " times", heavyRuns.get() > 220 && heavyRuns.get() < 370);
+    assertFalse(light.getRuntime() > heavy.getRuntime());
+  }
+
+  /** A {@link Runnable} of a group. */
+  private abstract static class FairShareRunnable implements Runnable, FairShareTask {
+    private final SchedulingGroup group;
+
+    FairShareRunnable(final SchedulingGroup group) {
+      this.group = group;
+    }
+
+    @Override
+    public SchedulingGroup getSchedulingGroup() {
+      return group;
+    }
+  }
+}